@@ -7,4 +7,12 @@ aws s3 cp s3://test-aws-cicd-webappdeploymentbucket-zrtourgqaflj/SpringBootHello
 
 
 # Ensure the ownership permissions are correct.
-chown -R tomcat:tomcat /usr/local/tomcat9/webapps
\ No newline at end of file
+chown -R tomcat:tomcat /usr/local/tomcat9/webapps
+
+# Class data sharing for the JDK's own classes: OpenJDK 8 has no AppCDS, but the shared
+# archive of boot classes still cuts class loading at startup. Dumping takes a few seconds;
+# -Xshare:auto falls back to normal loading if the archive is missing or unusable.
+java -Xshare:dump > /dev/null 2>&1 || echo "CDS archive dump failed; continuing without it."
+if ! grep -q -- "-Xshare:auto" /usr/local/tomcat9/bin/setenv.sh; then
+  echo 'JAVA_OPTS="$JAVA_OPTS -Xshare:auto"' >> /usr/local/tomcat9/bin/setenv.sh
+fi
@@ -1,20 +1,28 @@
 #!/bin/bash
 set -x
 
-NUMBER_OF_ATTEMPTS=10
-SLEEP_TIME=3
+# The app warms up (JIT, serialisation, export paths) after Tomcat starts and only then
+# reports ready. Poll against a deadline that leaves headroom under the 300s ValidateService
+# timeout in appspec.yml, whatever each curl attempt costs.
+DEADLINE_SECONDS=270
+SLEEP_TIME=5
+READY_URL=http://localhost:8080/SpringBootHelloWorldExampleApplication/health/ready
 
-# Ensure Tomcat is running by making an HTTPS GET request to the default page.
-# Don't try and verify the certificate; use the --insecure flag.
-for i in `seq 1 $NUMBER_OF_ATTEMPTS`;
+# Wait for the readiness endpoint rather than Tomcat's root page, which answers as soon as the
+# container is up, before the application has even been deployed. The ALB probes the same
+# endpoint, but only after the deployment has already been marked successful.
+DEADLINE=$((SECONDS + DEADLINE_SECONDS))
+while [ $SECONDS -lt $DEADLINE ];
 do
-  HTTP_CODE=`curl --insecure --write-out '%{http_code}' -o /dev/null -m 10 -q -s http://localhost:8080`
+  HTTP_CODE=`curl --insecure --write-out '%{http_code}' -o /tmp/ready.json -m 5 -q -s $READY_URL`
   if [ "$HTTP_CODE" == "200" ]; then
-    echo "app server is running."
+    echo "app server is ready."
+    cat /tmp/ready.json
     exit 0
   fi
-  echo "Attempt to curl endpoint returned HTTP Code $HTTP_CODE. Backing off and retrying."
+  echo "Attempt to curl readiness endpoint returned HTTP Code $HTTP_CODE. Backing off and retrying."
   sleep $SLEEP_TIME
 done
-echo "Server did not come up after expected time. Failing."
-exit 1
\ No newline at end of file
+echo "Server did not become ready within ${DEADLINE_SECONDS}s. Failing."
+cat /tmp/ready.json
+exit 1
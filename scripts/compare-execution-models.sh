@@ -0,0 +1,49 @@
+#!/bin/bash
+# 执行模型对比压测：同步（重接口占用 Tomcat 线程）vs 舱壁（重接口在各自的线程池上异步执行）
+# 用法: ./compare-execution-models.sh [每秒请求数] [时长秒] [Tomcat 最大线程数]
+# 示例: ./compare-execution-models.sh 200 60 50
+#
+# 两轮使用同样的请求组合和到达速率，各自在独立 JVM 中启动应用；
+# Tomcat 线程数调小，让重接口在同步模式下能占满线程池，便于观察轻接口的延迟变化。
+# 结果写入 spring-boot-hello-world-example/target/loadtest/{blocking,async}.json
+
+set -e
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+APP_DIR="$SCRIPT_DIR/../spring-boot-hello-world-example"
+RATE="${1:-200}"
+DURATION="${2:-60}"
+TOMCAT_THREADS="${3:-50}"
+MIX="tasks-list:40,tasks-get:20,tasks-stats:10,search:10,export-tasks:10,export-reports:10"
+RESULT_DIR="$APP_DIR/target/loadtest"
+
+run() {
+    local name="$1"
+    local bulkhead_enabled="$2"
+    echo "========== $name（bulkhead.enabled=$bulkhead_enabled）=========="
+    (cd "$APP_DIR" && mvn -B -q -P loadtest test-compile exec:exec \
+        -Dloadtest.result.file="$RESULT_DIR/$name.json" \
+        -Dloadtest.args="--rate=$RATE --duration=$DURATION --mix=$MIX --max-error-percent=100 \
+--app-args=--server.tomcat.max-threads=$TOMCAT_THREADS,--bulkhead.enabled=$bulkhead_enabled")
+}
+
+run blocking false
+run async true
+
+echo ""
+echo "对比（响应时间从计划发出时刻起算，单位 ms）"
+python3 - "$RESULT_DIR/blocking.json" "$RESULT_DIR/async.json" <<'PY'
+import json, sys
+
+def load(path):
+    return {op["operation"]: op for op in json.load(open(path))["operations"]}
+
+blocking, async_ = load(sys.argv[1]), load(sys.argv[2])
+print("%-16s %12s %12s %12s %12s %10s %10s" % ("operation", "p99 sync", "p99 async", "p99.9 sync", "p99.9 async", "shed sync", "shed async"))
+for name in blocking:
+    b, a = blocking[name], async_.get(name)
+    if a is None:
+        continue
+    print("%-16s %12.1f %12.1f %12.1f %12.1f %10d %10d" % (
+        name, b["p99Ms"], a["p99Ms"], b["p999Ms"], a["p999Ms"], b["shed"], a["shed"]))
+PY
@@ -0,0 +1,19 @@
+#!/bin/bash
+# 两节点复制测试：本机启动两个互为对端的实例，验证创建/修改/并发修改/删除/批量写入都能收敛
+# 用法: ./replication-test.sh [每个节点批量创建的任务数]
+# 示例: ./replication-test.sh 500
+#
+# 各场景从写入到对端可见的耗时和两边的 replication_lag_seconds 写入
+# spring-boot-hello-world-example/target/loadtest/replication.json，应用日志在同目录 node{1,2}.log。
+# 任一场景未在超时内收敛时以非零状态退出。
+
+set -e
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+APP_DIR="$SCRIPT_DIR/../spring-boot-hello-world-example"
+BULK="${1:-200}"
+
+(cd "$APP_DIR" && mvn -B -q -P loadtest test-compile exec:exec \
+    -Dloadtest.main=com.helloworld.loadtest.ReplicationTest \
+    -Dloadtest.result.file="$APP_DIR/target/loadtest/replication.json" \
+    -Dloadtest.args="--bulk=$BULK")
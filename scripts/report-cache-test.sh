@@ -0,0 +1,19 @@
+#!/bin/bash
+# 分片报表缓存测试：本机启动多个实例组成哈希环，验证整组只缓存一份报表、任一节点都能读到和下载
+# 用法: ./report-cache-test.sh [实例数] [报表数]
+# 示例: ./report-cache-test.sh 3 30
+#
+# 各节点缓存的报表数写入 spring-boot-hello-world-example/target/loadtest/report-cache.json，
+# 应用日志在同目录 report-node{1..N}.log。整组缓存数与生成数不一致或有节点读不到时以非零状态退出。
+
+set -e
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+APP_DIR="$SCRIPT_DIR/../spring-boot-hello-world-example"
+NODES="${1:-3}"
+REPORTS="${2:-30}"
+
+(cd "$APP_DIR" && mvn -B -q -P loadtest test-compile exec:exec \
+    -Dloadtest.main=com.helloworld.loadtest.ReportCacheTest \
+    -Dloadtest.result.file="$APP_DIR/target/loadtest/report-cache.json" \
+    -Dloadtest.args="--nodes=$NODES --reports=$REPORTS")
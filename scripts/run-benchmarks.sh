@@ -0,0 +1,59 @@
+#!/bin/bash
+# JMH 基准测试
+# 用法: ./run-benchmarks.sh [基准名正则] [对比的基线结果 JSON]
+# 示例: ./run-benchmarks.sh                                   # 全部基准
+#       ./run-benchmarks.sh SearchBenchmark                   # 只跑搜索
+#       ./run-benchmarks.sh TaskRepository results/abc123.json # 与某次提交的结果对比
+#
+# 结果写入 spring-boot-hello-world-example/target/jmh/<commit>.json（JMH JSON 格式，含 -prof gc 分配数据）
+
+set -e
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+APP_DIR="$SCRIPT_DIR/../spring-boot-hello-world-example"
+FILTER="${1:-}"
+BASELINE="${2:-}"
+
+COMMIT=$(git -C "$SCRIPT_DIR" rev-parse --short HEAD)
+if [ -n "$(git -C "$SCRIPT_DIR" status --porcelain)" ]; then
+    COMMIT="$COMMIT-dirty"
+fi
+RESULT_DIR="$APP_DIR/target/jmh"
+RESULT_FILE="$RESULT_DIR/$COMMIT.json"
+mkdir -p "$RESULT_DIR"
+
+echo "运行基准测试: ${FILTER:-全部} → $RESULT_FILE"
+(cd "$APP_DIR" && mvn -B -q -P benchmark test-compile exec:exec \
+    -Djmh.args="-prof gc -rf json -rff $RESULT_FILE $FILTER")
+
+if [ -z "$BASELINE" ]; then
+    exit 0
+fi
+
+echo ""
+echo "与基线对比: $BASELINE"
+python3 - "$BASELINE" "$RESULT_FILE" <<'PY'
+import json, sys
+
+def load(path):
+    rows = {}
+    for r in json.load(open(path)):
+        params = ",".join("%s=%s" % kv for kv in sorted(r.get("params", {}).items()))
+        key = r["benchmark"].rsplit(".", 2)[-2] + "." + r["benchmark"].rsplit(".", 1)[-1] + ("[" + params + "]" if params else "")
+        secondary = r.get("secondaryMetrics", {})
+        alloc = secondary.get("gc.alloc.rate.norm") or secondary.get("·gc.alloc.rate.norm") or {}
+        rows[key] = (r["mode"], r["primaryMetric"]["score"], r["primaryMetric"]["scoreUnit"], alloc.get("score"))
+    return rows
+
+base, current = load(sys.argv[1]), load(sys.argv[2])
+print("%-60s %14s %14s %9s %14s" % ("benchmark", "baseline", "current", "change", "B/op"))
+for key in sorted(current):
+    mode, score, unit, alloc = current[key]
+    if key not in base:
+        print("%-60s %14s %14.3f %9s %14s" % (key, "-", score, "new", alloc))
+        continue
+    old = base[key][1]
+    # thrpt 越大越好，其余模式越小越好；正数表示变好
+    change = (score - old) / old * 100 if mode == "thrpt" else (old - score) / old * 100
+    print("%-60s %14.3f %14.3f %+8.1f%% %14s" % (key, old, score, change, "%.0f" % alloc if alloc is not None else "-"))
+PY
@@ -35,7 +35,7 @@ info() {
 # 检查服务状态
 check_health() {
     log "检查服务状态..."
-    curl -s "$APP_URL/api/health" 2>/dev/null || echo "服务无响应"
+    curl -s "$APP_URL/health/ready" 2>/dev/null || echo "服务无响应"
     echo ""
 }
 
@@ -51,6 +51,18 @@ check_memory() {
     echo ""
 }
 
+# 查看分配大户（按接口汇总的分配量）
+check_allocations() {
+    log "分配大户排行（Top 5）:"
+    response=$(curl -s "$APP_URL/api/diagnostics/allocations?top=5" 2>/dev/null)
+    if [ -n "$response" ]; then
+        echo "$response" | python3 -m json.tool 2>/dev/null || echo "$response"
+    else
+        error "无法获取分配统计（服务可能已崩溃）"
+    fi
+    echo ""
+}
+
 # ========== 场景1: 内存泄漏（常驻内存）==========
 scenario_leak() {
     log "========== 场景1: 内存泄漏测试（常驻内存）=========="
@@ -281,6 +293,25 @@ scenario_oom() {
     log "OOM 测试完成"
 }
 
+# ========== 开放模型压测 ==========
+# 以固定到达速率并发发请求，输出修正协调遗漏后的延迟分位数（LoadGenerator）
+# 可用环境变量调整: LOAD_RATE（每秒请求数）、LOAD_DURATION（秒）、LOAD_MAX_P99_MS（p99 门禁，0 不检查）
+scenario_load() {
+    log "========== 开放模型压测 =========="
+    local rate="${LOAD_RATE:-50}"
+    local duration="${LOAD_DURATION:-60}"
+    local max_p99="${LOAD_MAX_P99_MS:-0}"
+    local app_dir
+    app_dir="$(cd "$(dirname "$0")/../spring-boot-hello-world-example" && pwd)"
+
+    check_health
+    info "速率: ${rate} req/s, 时长: ${duration}s, p99 门禁: ${max_p99}ms"
+    (cd "$app_dir" && mvn -B -q -P loadtest test-compile exec:exec \
+        -Dloadtest.args="--target=$APP_URL --rate=$rate --duration=$duration --max-p99-ms=$max_p99")
+    check_allocations
+    log "压测完成，结果: $app_dir/target/loadtest/result.json"
+}
+
 # ========== 重置测试环境 ==========
 reset_env() {
     log "重置测试环境..."
@@ -306,9 +337,15 @@ case "$SCENARIO" in
     oom)
         scenario_oom
         ;;
+    load)
+        scenario_load
+        ;;
     memory)
         check_memory
         ;;
+    allocations)
+        check_allocations
+        ;;
     health)
         check_health
         ;;
@@ -324,9 +361,11 @@ case "$SCENARIO" in
         echo "  stress    - 压力测试（快速分配内存）"
         echo "  combined  - 复合场景（泄漏 + GC 压力）"
         echo "  oom       - 快速 OOM 测试（危险）"
+        echo "  load      - 开放模型压测（固定速率，输出 p50/p99/p99.9，可设 LOAD_RATE/LOAD_DURATION/LOAD_MAX_P99_MS）"
         echo ""
         echo "辅助命令:"
         echo "  memory    - 查看内存状态"
+        echo "  allocations - 查看分配大户（按接口）"
         echo "  health    - 检查服务健康"
         echo "  reset     - 清理缓存，重置测试环境"
         echo ""
@@ -0,0 +1,51 @@
+package com.helloworld.benchmark;
+
+import com.helloworld.service.SearchService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜索与搜索建议在不同语料规模下的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SearchBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int corpusSize;
+
+    private SearchService searchService;
+
+    @Setup
+    public void setUp() {
+        searchService = new SearchService(SearchService.generateDocuments(corpusSize));
+    }
+
+    /**
+     * 命中约 1/10 文档
+     */
+    @Benchmark
+    public List<Map<String, Object>> searchSelective() {
+        return searchService.search("优化数据库");
+    }
+
+    /**
+     * 无命中时退化为返回全部文档
+     */
+    @Benchmark
+    public List<Map<String, Object>> searchNoMatch() {
+        return searchService.search("kubernetes");
+    }
+
+    @Benchmark
+    public List<String> suggest() {
+        return searchService.suggest("安全");
+    }
+}
@@ -0,0 +1,68 @@
+package com.helloworld.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.helloworld.config.TaskSerializationModule;
+import com.helloworld.model.ApiResponse;
+import com.helloworld.model.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务列表响应（ApiResponse<List<Task>>）的序列化吞吐，对应 /api/tasks 与导出路径
+ *
+ * json 使用 Jackson 默认的反射式 BeanSerializer，jsonCustom 使用应用实际注册的 TaskSerializationModule；
+ * 二进制格式（CBOR、Smile）同样注册该模块，与线上一致。各格式的响应体大小在 Setup 时打印到输出中。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class SerializationBenchmark {
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper customMapper = new ObjectMapper().registerModule(new TaskSerializationModule());
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory()).registerModule(new TaskSerializationModule());
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory()).registerModule(new TaskSerializationModule());
+    private ApiResponse<List<Task>> response;
+
+    @Setup
+    public void setUp() throws Exception {
+        List<Task> tasks = TaskFixtures.tasks(size);
+        response = ApiResponse.success(tasks, tasks.size());
+
+        int json = objectMapper.writeValueAsBytes(response).length;
+        int cbor = cborMapper.writeValueAsBytes(response).length;
+        int smile = smileMapper.writeValueAsBytes(response).length;
+        System.out.printf("%npayload bytes (size=%d): json=%d, cbor=%d (%.0f%%), smile=%d (%.0f%%)%n",
+                size, json, cbor, cbor * 100.0 / json, smile, smile * 100.0 / json);
+    }
+
+    @Benchmark
+    public byte[] json() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] jsonCustom() throws Exception {
+        return customMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws Exception {
+        return cborMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] smile() throws Exception {
+        return smileMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,60 @@
+package com.helloworld.benchmark;
+
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.repository.TaskRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 压测用的任务数据
+ *
+ * 标题和描述从固定集合中复用，避免千万级任务时字符串本身把堆撑满，
+ * 状态和优先级按固定种子随机分布，每次运行数据一致。
+ */
+final class TaskFixtures {
+
+    private static final String[] TITLES = {
+            "完成 CI/CD 配置", "学习 AWS CloudFormation", "编写单元测试", "优化数据库查询", "部署生产环境",
+            "代码审查", "性能优化", "安全加固", "监控告警配置", "日志采集设置"
+    };
+
+    private TaskFixtures() {
+    }
+
+    static Task newTask(Random random) {
+        Task task = new Task();
+        String title = TITLES[random.nextInt(TITLES.length)];
+        task.setTitle(title);
+        task.setDescription(title);
+        task.setStatus(TaskStatus.values()[random.nextInt(TaskStatus.values().length)]);
+        task.setPriority(TaskPriority.values()[random.nextInt(TaskPriority.values().length)]);
+        return task;
+    }
+
+    static List<Task> tasks(int count) {
+        Random random = new Random(42);
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task task = newTask(random);
+            task.setId((long) i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    /**
+     * 不触发 @PostConstruct 示例数据的仓库，id 从 1 到 count 连续
+     */
+    static TaskRepository repository(int count) {
+        TaskRepository repository = new TaskRepository();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            repository.save(newTask(random));
+        }
+        return repository;
+    }
+}
@@ -0,0 +1,73 @@
+package com.helloworld.benchmark;
+
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.repository.TaskRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaskRepository 热点路径：按 id 查询、保存、按状态/优先级过滤、全量读取
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+public class TaskRepositoryBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private TaskRepository repository;
+    private final Random random = new Random(7);
+
+    @Setup
+    public void setUp() {
+        repository = TaskFixtures.repository(size);
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, size + 1);
+    }
+
+    @Benchmark
+    public Optional<Task> findById() {
+        return repository.findById(randomId());
+    }
+
+    @Benchmark
+    public Task saveNew() {
+        Task task = repository.save(TaskFixtures.newTask(random));
+        repository.deleteById(task.getId());
+        return task;
+    }
+
+    @Benchmark
+    public Task updateExisting() {
+        Task task = repository.findById(randomId()).get();
+        return repository.save(task);
+    }
+
+    @Benchmark
+    public List<Task> findByStatus() {
+        return repository.findByStatus(TaskStatus.PENDING);
+    }
+
+    @Benchmark
+    public List<Task> findByPriority() {
+        return repository.findByPriority(TaskPriority.HIGH);
+    }
+
+    @Benchmark
+    public List<Task> findAll() {
+        return repository.findAll();
+    }
+}
@@ -0,0 +1,46 @@
+package com.helloworld.benchmark;
+
+import com.helloworld.analytics.TaskColumnStore;
+import com.helloworld.controller.TaskController;
+import com.helloworld.repository.TaskRepository;
+import com.helloworld.service.TaskService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /api/tasks/stats 的统计计算
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TaskStatsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private TaskColumnStore columns;
+    private TaskController controller;
+
+    @Setup
+    public void setUp() {
+        TaskRepository repository = TaskFixtures.repository(size);
+        columns = new TaskColumnStore(repository, 65536, 0);
+        columns.start();
+        // 统计接口不涉及变更推送
+        controller = new TaskController(new TaskService(repository), null, columns);
+    }
+
+    @TearDown
+    public void tearDown() {
+        columns.shutdown();
+    }
+
+    @Benchmark
+    public Object stats() {
+        return controller.getTaskStats();
+    }
+}
@@ -0,0 +1,164 @@
+package com.helloworld.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在独立 JVM 中启动被测应用（与压测进程隔离，互不干扰 GC 和 CPU）
+ *
+ * 每个实例有自己的临时数据目录（搜索索引、任务归档），关闭时删除：
+ * 同一台机器上的多个实例共用默认目录会互相删掉对方的文件，而且第二个实例会因目录被占用而启动失败。
+ */
+class AppLauncher implements AutoCloseable {
+
+    private static final long STARTUP_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+
+    private final Process process;
+    private final String baseUrl;
+    private final Path dataDir;
+
+    private AppLauncher(Process process, String baseUrl, Path dataDir) {
+        this.process = process;
+        this.baseUrl = baseUrl;
+        this.dataDir = dataDir;
+    }
+
+    /**
+     * 启动应用并等待 /health 返回 200
+     *
+     * @param jvmOptions 例如 -Xmx512m，空格分隔
+     * @param appArgs    追加的应用参数，例如 --bulkhead.enabled=false，逗号分隔
+     * @param logFile    应用标准输出写入的文件
+     */
+    static AppLauncher start(String jvmOptions, String appArgs, File logFile) throws IOException, InterruptedException {
+        return start(freePort(), jvmOptions, appArgs, logFile);
+    }
+
+    /**
+     * 在指定端口启动应用；多实例测试需要事先知道各实例的地址
+     */
+    static AppLauncher start(int port, String jvmOptions, String appArgs, File logFile)
+            throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>();
+        for (String arg : appArgs.split(",")) {
+            if (!arg.trim().isEmpty()) {
+                args.add(arg.trim());
+            }
+        }
+        return start(port, jvmOptions, args, logFile);
+    }
+
+    /**
+     * 应用参数逐个传入，参数值本身可以带逗号（例如节点列表）
+     */
+    static AppLauncher start(int port, String jvmOptions, List<String> appArgs, File logFile)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String option : jvmOptions.trim().split("\\s+")) {
+            if (!option.isEmpty()) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("com.helloworld.SpringBootHelloWorldExampleApplication");
+        command.add("--server.port=" + port);
+        command.add("--failure-injection.enabled=false");
+        Path dataDir = Files.createTempDirectory("helloworld-" + port + "-");
+        addUnlessGiven(command, appArgs, "search.index-dir", dataDir.resolve("search-index"));
+        addUnlessGiven(command, appArgs, "archive.dir", dataDir.resolve("task-archive"));
+        command.addAll(appArgs);
+
+        logFile.getParentFile().mkdirs();
+        Process process;
+        try {
+            process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(logFile)
+                    .start();
+        } catch (IOException e) {
+            deleteRecursively(dataDir);
+            throw e;
+        }
+        AppLauncher launcher = new AppLauncher(process, "http://localhost:" + port, dataDir);
+        try {
+            launcher.awaitHealthy();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            launcher.close();
+            throw e;
+        }
+        return launcher;
+    }
+
+    /**
+     * appArgs 里没有显式配置 name 时用 value；同名参数传两次 Spring 会拼成逗号分隔的值
+     */
+    private static void addUnlessGiven(List<String> command, List<String> appArgs, String name, Object value) {
+        for (String arg : appArgs) {
+            if (arg.startsWith("--" + name + "=")) {
+                return;
+            }
+        }
+        command.add("--" + name + "=" + value);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            // 临时目录，删不掉不影响结果
+        }
+    }
+
+    static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    String getBaseUrl() {
+        return baseUrl;
+    }
+
+    private void awaitHealthy() throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("Application exited during startup with code " + process.exitValue());
+            }
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/health").openConnection();
+                connection.setConnectTimeout(1000);
+                connection.setReadTimeout(1000);
+                if (connection.getResponseCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // 端口尚未监听，继续等待
+            }
+            Thread.sleep(500);
+        }
+        throw new IOException("Application did not become healthy within " + STARTUP_TIMEOUT_MS + "ms");
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+        deleteRecursively(dataDir);
+    }
+}
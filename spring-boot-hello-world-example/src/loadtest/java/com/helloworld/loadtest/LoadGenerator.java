@@ -0,0 +1,331 @@
+package com.helloworld.loadtest;
+
+import com.helloworld.metrics.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 本地压测工具：开放模型（固定到达速率）负载生成器
+ *
+ * 调度线程按计划时间 start + i / rate 发出请求，交给连接池执行，不等待上一个请求返回；
+ * 服务端变慢时请求在客户端排队，排队时间计入延迟（响应时间 = 完成时间 - 计划发出时间），
+ * 从而修正协调遗漏（coordinated omission）。同时记录不含排队的服务时间便于对比。
+ *
+ * 用法（参数均为 --key=value）：
+ *   --target=http://localhost:8080  压测已运行的实例；不指定时在独立 JVM 中启动应用
+ *   --rate=50                       每秒请求数
+ *   --duration=60                   统计阶段时长（秒）
+ *   --warmup=10                     预热时长（秒），不计入结果
+ *   --connections=64                最大并发连接数
+ *   --mix=tasks-list:30,search:15   接口权重，见 Workload.DEFAULT_MIX
+ *   --max-p99-ms=0                  全部请求 p99 超过该值时以非零状态退出（0 表示不检查）
+ *   --max-error-percent=1           错误率（不含 429/503 限流）超过该值时以非零状态退出
+ *   --jvm-options=-Xmx512m          启动应用时的 JVM 参数
+ *   --app-args=--server.tomcat.max-threads=50,--bulkhead.enabled=false
+ *                                   启动应用时追加的参数，逗号分隔
+ *   --result=target/loadtest/result.json
+ *
+ * Maven 调用示例：
+ *   以 p99 作为回归门禁：
+ *     mvn -P loadtest test-compile exec:exec -Dloadtest.args="--rate=200 --duration=120 --max-p99-ms=250"
+ *   压测已部署的实例：
+ *     mvn -P loadtest test-compile exec:exec \
+ *         -Dloadtest.args="--target=http://host:8080/SpringBootHelloWorldExampleApplication"
+ */
+public class LoadGenerator {
+
+    private static final int TIMEOUT_MS = 30_000;
+
+    private final String baseUrl;
+    private final Workload workload;
+    private final int rate;
+    private final int connections;
+
+    private final Map<String, OperationStats> stats = new LinkedHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean recording;
+
+    LoadGenerator(String baseUrl, Workload workload, int rate, int connections) {
+        this.baseUrl = baseUrl;
+        this.workload = workload;
+        this.rate = rate;
+        this.connections = connections;
+        for (String name : workload.getNames()) {
+            stats.put(name, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int rate = Integer.parseInt(options.getOrDefault("rate", "50"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "60"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int connections = Integer.parseInt(options.getOrDefault("connections", "64"));
+        long maxP99Ms = Long.parseLong(options.getOrDefault("max-p99-ms", "0"));
+        double maxErrorPercent = Double.parseDouble(options.getOrDefault("max-error-percent", "1"));
+        Workload workload = new Workload(options.getOrDefault("mix", Workload.DEFAULT_MIX));
+        File resultFile = new File(options.getOrDefault("result", "target/loadtest/result.json"));
+
+        // HttpURLConnection 默认每个目标只保留 5 个空闲长连接
+        System.setProperty("http.maxConnections", String.valueOf(connections));
+
+        AppLauncher launcher = null;
+        String target = options.get("target");
+        if (target == null) {
+            System.out.println("Starting application in a separate JVM...");
+            launcher = AppLauncher.start(options.getOrDefault("jvm-options", "-Xmx512m"),
+                    options.getOrDefault("app-args", ""), new File(resultFile.getParentFile(), "app.log"));
+            target = launcher.getBaseUrl();
+        }
+
+        LatencyHistogram overall;
+        long errors;
+        long total;
+        try {
+            System.out.printf("Target %s, %d req/s, warmup %ds, duration %ds, %d connections%n",
+                    target, rate, warmup, duration, connections);
+            LoadGenerator generator = new LoadGenerator(target, workload, rate, connections);
+            generator.run(warmup, duration);
+            generator.printReport(duration);
+            generator.writeJson(resultFile, duration);
+            System.out.println("Result written to " + resultFile.getPath());
+
+            overall = generator.overall();
+            errors = 0;
+            total = 0;
+            for (OperationStats s : generator.stats.values()) {
+                errors += s.errors.sum();
+                total += s.responseTime.getTotalCount();
+            }
+        } finally {
+            if (launcher != null) {
+                launcher.close();
+            }
+        }
+
+        boolean failed = false;
+        long p99Ms = overall.valueAtQuantile(0.99) / 1000;
+        if (maxP99Ms > 0 && p99Ms > maxP99Ms) {
+            System.out.printf("FAIL: p99 %dms exceeds limit %dms%n", p99Ms, maxP99Ms);
+            failed = true;
+        }
+        double errorPercent = total == 0 ? 0 : errors * 100.0 / total;
+        if (errorPercent > maxErrorPercent) {
+            System.out.printf("FAIL: error rate %.2f%% exceeds limit %.2f%%%n", errorPercent, maxErrorPercent);
+            failed = true;
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * 按固定速率调度请求：先预热 warmupSeconds，再统计 durationSeconds
+     */
+    void run(int warmupSeconds, int durationSeconds) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(connections, runnable -> {
+            Thread thread = new Thread(runnable, "load-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+        for (long i = 0; ; i++) {
+            long intendedStart = start + i * intervalNanos;
+            if (intendedStart >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = intendedStart - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!recording && intendedStart >= recordFrom) {
+                recording = true;
+                System.out.println("Warmup finished, recording...");
+            }
+            String operation = workload.next();
+            boolean record = recording;
+            // 排队等待的请求也按计划时间计时，调度线程不会因为服务端变慢而少发请求
+            pool.execute(() -> execute(operation, intendedStart, record));
+        }
+
+        pool.shutdown();
+        if (!pool.awaitTermination(TIMEOUT_MS * 2L, TimeUnit.MILLISECONDS)) {
+            System.out.println("WARN: " + inFlight.get() + " requests still in flight after shutdown timeout");
+            pool.shutdownNow();
+        }
+    }
+
+    private void execute(String operation, long intendedStart, boolean record) {
+        inFlight.incrementAndGet();
+        Workload.Request request = Workload.request(operation);
+        long actualStart = System.nanoTime();
+        int status;
+        try {
+            status = send(request);
+        } catch (IOException e) {
+            status = -1;
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        long finish = System.nanoTime();
+        if (record) {
+            stats.get(operation).record(status, (finish - intendedStart) / 1000, (finish - actualStart) / 1000);
+        }
+    }
+
+    private int send(Workload.Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + request.path).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setRequestMethod(request.method);
+        if (request.body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request.body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        // 读完响应体，连接才能放回 keep-alive 池复用
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        if (in != null) {
+            try (InputStream body = in) {
+                byte[] buffer = new byte[8192];
+                while (body.read(buffer) != -1) {
+                    // 丢弃
+                }
+            }
+        }
+        return status;
+    }
+
+    private LatencyHistogram overall() {
+        LatencyHistogram overall = new LatencyHistogram();
+        for (OperationStats s : stats.values()) {
+            overall.add(s.responseTime);
+        }
+        return overall;
+    }
+
+    private void printReport(int durationSeconds) {
+        System.out.println();
+        System.out.println("Response time (from intended start, ms) / service time p99 (ms)");
+        System.out.printf("%-16s %8s %8s %7s %8s %8s %8s %8s %9s %9s%n",
+                "operation", "count", "errors", "shed", "p50", "p90", "p99", "p99.9", "max", "svc p99");
+        for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            printRow(entry.getKey(), entry.getValue().responseTime, entry.getValue().errors.sum(),
+                    entry.getValue().shed.sum(), entry.getValue().serviceTime);
+        }
+        long errors = 0;
+        long shed = 0;
+        LatencyHistogram service = new LatencyHistogram();
+        for (OperationStats s : stats.values()) {
+            errors += s.errors.sum();
+            shed += s.shed.sum();
+            service.add(s.serviceTime);
+        }
+        LatencyHistogram overall = overall();
+        printRow("ALL", overall, errors, shed, service);
+        System.out.printf("Achieved throughput: %.1f req/s (target %d)%n",
+                overall.getTotalCount() / (double) durationSeconds, rate);
+    }
+
+    private static void printRow(String name, LatencyHistogram h, long errors, long shed, LatencyHistogram service) {
+        System.out.printf(Locale.ROOT, "%-16s %8d %8d %7d %8.1f %8.1f %8.1f %8.1f %9.1f %9.1f%n",
+                name, h.getTotalCount(), errors, shed,
+                ms(h.valueAtQuantile(0.5)), ms(h.valueAtQuantile(0.9)), ms(h.valueAtQuantile(0.99)),
+                ms(h.valueAtQuantile(0.999)), ms(h.getMaxValue()), ms(service.valueAtQuantile(0.99)));
+    }
+
+    private void writeJson(File file, int durationSeconds) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<String, OperationStats> entry : stats.entrySet()) {
+            entries.add(jsonEntry(entry.getKey(), entry.getValue()));
+        }
+        OperationStats all = new OperationStats();
+        for (OperationStats s : stats.values()) {
+            all.responseTime.add(s.responseTime);
+            all.serviceTime.add(s.serviceTime);
+            all.errors.add(s.errors.sum());
+            all.shed.add(s.shed.sum());
+        }
+        entries.add(jsonEntry("ALL", all));
+
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write(String.format(Locale.ROOT, "{\n  \"rate\": %d,\n  \"durationSeconds\": %d,\n  \"operations\": [\n",
+                    rate, durationSeconds));
+            out.write(String.join(",\n", entries));
+            out.write("\n  ]\n}\n");
+        }
+    }
+
+    private static String jsonEntry(String name, OperationStats s) {
+        LatencyHistogram h = s.responseTime;
+        return String.format(Locale.ROOT,
+                "    {\"operation\": \"%s\", \"count\": %d, \"errors\": %d, \"shed\": %d, "
+                        + "\"p50Ms\": %.3f, \"p90Ms\": %.3f, \"p99Ms\": %.3f, \"p999Ms\": %.3f, \"maxMs\": %.3f, "
+                        + "\"serviceP99Ms\": %.3f}",
+                name, h.getTotalCount(), s.errors.sum(), s.shed.sum(),
+                ms(h.valueAtQuantile(0.5)), ms(h.valueAtQuantile(0.9)), ms(h.valueAtQuantile(0.99)),
+                ms(h.valueAtQuantile(0.999)), ms(h.getMaxValue()), ms(s.serviceTime.valueAtQuantile(0.99)));
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    /**
+     * 单个接口的统计：429/503 视为限流（admission control 主动拒绝），其余 4xx/5xx 和连接失败视为错误
+     */
+    private static class OperationStats {
+        final LatencyHistogram responseTime = new LatencyHistogram();
+        final LatencyHistogram serviceTime = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder shed = new LongAdder();
+
+        void record(int status, long responseMicros, long serviceMicros) {
+            responseTime.record(responseMicros);
+            serviceTime.record(serviceMicros);
+            if (status == 429 || status == 503) {
+                shed.increment();
+            } else if (status < 200 || status >= 400) {
+                errors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.helloworld.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 两节点复制测试：在本机启动两个互为对端的实例，验证变更能复制过去并最终一致
+ *
+ * 场景：A 上创建 → B 可读；B 上修改 → A 可读；两边同时修改同一任务 → 两边收敛到同一版本；
+ * A 上删除 → B 上消失；两边各自批量创建 → 任务数一致。每个场景记录从写入到对端可见的时间，
+ * 最后读取两边 /metrics 中的 replication_lag_seconds。
+ *
+ * 用法（参数均为 --key=value）：
+ *   --bulk=200                      批量场景中每个节点创建的任务数
+ *   --converge-timeout-ms=10000     单个场景等待收敛的上限
+ *   --jvm-options=-Xmx256m          启动应用时的 JVM 参数
+ *   --result=target/loadtest/replication.json
+ *
+ * Maven 调用示例：
+ *   mvn -P loadtest test-compile exec:exec -Dloadtest.main=com.helloworld.loadtest.ReplicationTest \
+ *       -Dloadtest.args="--bulk=200"
+ */
+public class ReplicationTest {
+
+    private static final int TIMEOUT_MS = 5000;
+    private static final String TOKEN = "replication-test";
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final Pattern TITLE = Pattern.compile("\"title\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern TOTAL = Pattern.compile("\"total\"\\s*:\\s*(\\d+)");
+
+    private final long convergeTimeoutMs;
+    private final Map<String, Long> convergeMillis = new LinkedHashMap<>();
+    private final List<String> failures = new ArrayList<>();
+
+    ReplicationTest(long convergeTimeoutMs) {
+        this.convergeTimeoutMs = convergeTimeoutMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int bulk = Integer.parseInt(options.getOrDefault("bulk", "200"));
+        long convergeTimeoutMs = Long.parseLong(options.getOrDefault("converge-timeout-ms", "10000"));
+        String jvmOptions = options.getOrDefault("jvm-options", "-Xmx256m");
+        File resultFile = new File(options.getOrDefault("result", "target/loadtest/replication.json"));
+        File logDir = resultFile.getAbsoluteFile().getParentFile();
+
+        int portA = AppLauncher.freePort();
+        int portB = AppLauncher.freePort();
+        System.out.printf("Starting node 1 on port %d and node 2 on port %d...%n", portA, portB);
+
+        ReplicationTest test = new ReplicationTest(convergeTimeoutMs);
+        String lagA;
+        String lagB;
+        try (AppLauncher a = AppLauncher.start(portA, jvmOptions, nodeArgs(1, portB), new File(logDir, "node1.log"));
+             AppLauncher b = AppLauncher.start(portB, jvmOptions, nodeArgs(2, portA), new File(logDir, "node2.log"))) {
+            test.run(a.getBaseUrl(), b.getBaseUrl(), bulk);
+            lagA = lagSummary(get(a.getBaseUrl() + "/metrics").body);
+            lagB = lagSummary(get(b.getBaseUrl() + "/metrics").body);
+        }
+
+        System.out.println();
+        System.out.println("Time from write to visible on the other node (ms)");
+        for (Map.Entry<String, Long> entry : test.convergeMillis.entrySet()) {
+            System.out.printf("  %-24s %6d%n", entry.getKey(), entry.getValue());
+        }
+        System.out.println("replication_lag_seconds on node 1: " + lagA);
+        System.out.println("replication_lag_seconds on node 2: " + lagB);
+        test.writeJson(resultFile, lagA, lagB);
+        System.out.println("Result written to " + resultFile.getPath());
+
+        for (String failure : test.failures) {
+            System.out.println("FAIL: " + failure);
+        }
+        System.exit(test.failures.isEmpty() ? 0 : 1);
+    }
+
+    private static String nodeArgs(int nodeId, int peerPort) {
+        return "--replication.enabled=true,--replication.node-id=" + nodeId
+                + ",--replication.peers=http://localhost:" + peerPort
+                + ",--replication.token=" + TOKEN
+                + ",--replication.bootstrap-timeout-ms=5000";
+    }
+
+    void run(String a, String b, int bulk) throws Exception {
+        // A 上创建，B 上可读
+        long start = System.currentTimeMillis();
+        Response created = send("POST", a + "/api/tasks", taskJson("created-on-a"));
+        long id = extractLong(ID, created.body);
+        await("create a->b", start, () -> "created-on-a".equals(title(b, id)));
+
+        // B 上修改，A 上可读
+        start = System.currentTimeMillis();
+        send("PUT", b + "/api/tasks/" + id, taskJson("updated-on-b"));
+        await("update b->a", start, () -> "updated-on-b".equals(title(a, id)));
+
+        // 两边同时修改：结果取决于版本号，但两边必须一致
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            start = System.currentTimeMillis();
+            Future<Response> onA = pool.submit(() -> send("PUT", a + "/api/tasks/" + id, taskJson("conflict-a")));
+            Future<Response> onB = pool.submit(() -> send("PUT", b + "/api/tasks/" + id, taskJson("conflict-b")));
+            onA.get();
+            onB.get();
+            await("concurrent update", start, () -> {
+                String titleA = title(a, id);
+                return titleA != null && titleA.startsWith("conflict-") && titleA.equals(title(b, id));
+            });
+
+            // 两边各自批量创建，任务总数一致
+            start = System.currentTimeMillis();
+            Future<?> bulkA = pool.submit(() -> createMany(a, "bulk-a", bulk));
+            Future<?> bulkB = pool.submit(() -> createMany(b, "bulk-b", bulk));
+            bulkA.get();
+            bulkB.get();
+            await("bulk create", start, () -> {
+                long countA = extractLong(TOTAL, get(a + "/api/tasks").body);
+                return countA == extractLong(TOTAL, get(b + "/api/tasks").body);
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // A 上删除（LOW 优先级、未完成的任务会直接删除），B 上消失
+        start = System.currentTimeMillis();
+        Response deleted = send("DELETE", a + "/api/tasks/" + id, null);
+        if (deleted.status != 200) {
+            failures.add("delete on node 1 returned " + deleted.status);
+        }
+        await("delete a->b", start, () -> get(b + "/api/tasks/" + id).status == 404);
+    }
+
+    private Void createMany(String baseUrl, String prefix, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            send("POST", baseUrl + "/api/tasks", taskJson(prefix + "-" + i));
+        }
+        return null;
+    }
+
+    /**
+     * 轮询直到条件成立，记录耗时；超时记为失败
+     */
+    private void await(String scenario, long start, Callable<Boolean> condition) throws Exception {
+        long deadline = start + convergeTimeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.call()) {
+                convergeMillis.put(scenario, System.currentTimeMillis() - start);
+                return;
+            }
+            Thread.sleep(10);
+        }
+        convergeMillis.put(scenario, -1L);
+        failures.add(scenario + " did not converge within " + convergeTimeoutMs + "ms");
+    }
+
+    private static String title(String baseUrl, long id) throws IOException {
+        Response response = get(baseUrl + "/api/tasks/" + id);
+        if (response.status != 200) {
+            return null;
+        }
+        Matcher matcher = TITLE.matcher(response.body);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String taskJson(String title) {
+        return "{\"title\":\"" + title + "\",\"priority\":\"LOW\",\"status\":\"PENDING\"}";
+    }
+
+    /**
+     * 从 Prometheus 文本中取出 replication_lag_seconds 的样本行
+     */
+    private static String lagSummary(String metrics) {
+        List<String> samples = new ArrayList<>();
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith("replication_lag_seconds")) {
+                samples.add(line);
+            }
+        }
+        return samples.isEmpty() ? "no samples" : String.join("; ", samples);
+    }
+
+    private static long extractLong(Pattern pattern, String body) {
+        Matcher matcher = pattern.matcher(body);
+        if (!matcher.find()) {
+            throw new IllegalStateException("Unexpected response: " + body);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static Response get(String url) throws IOException {
+        return send("GET", url, null);
+    }
+
+    private static Response send(String method, String url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = stream.read(buffer)) != -1) {
+                    content.write(buffer, 0, n);
+                }
+            }
+        }
+        return new Response(status, new String(content.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private void writeJson(File file, String lagA, String lagB) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : convergeMillis.entrySet()) {
+            entries.add(String.format(Locale.ROOT, "    {\"scenario\": \"%s\", \"convergeMs\": %d}",
+                    entry.getKey(), entry.getValue()));
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("{\n  \"passed\": " + failures.isEmpty() + ",\n  \"scenarios\": [\n");
+            out.write(String.join(",\n", entries));
+            out.write("\n  ],\n  \"lagNode1\": \"" + lagA.replace("\"", "\\\"") + "\",\n");
+            out.write("  \"lagNode2\": \"" + lagB.replace("\"", "\\\"") + "\"\n}\n");
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.helloworld.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 分片报表缓存测试：在本机启动多个实例组成哈希环，验证整组只缓存一份报表且任一节点都能读到
+ *
+ * 报表生成请求轮流发给各节点；之后从每个节点读取每份报表的详情，并下载一份比对字节数；
+ * 最后汇总各节点 /api/reports/stats 中的 cachedReports，总数应等于生成的报表数。
+ *
+ * 用法（参数均为 --key=value）：
+ *   --nodes=3                       实例数
+ *   --reports=30                    生成的摘要报表数（每份 5MB）
+ *   --jvm-options=-Xmx512m          启动应用时的 JVM 参数
+ *   --result=target/loadtest/report-cache.json
+ *
+ * Maven 调用示例：
+ *   mvn -P loadtest test-compile exec:exec -Dloadtest.main=com.helloworld.loadtest.ReportCacheTest \
+ *       -Dloadtest.args="--nodes=3"
+ */
+public class ReportCacheTest {
+
+    private static final int TIMEOUT_MS = 120_000;
+    private static final String TOKEN = "report-cache-test";
+    private static final Pattern REPORT_ID = Pattern.compile("\"reportId\"\\s*:\\s*\"([^\"]+)\"");
+    private static final Pattern SIZE_BYTES = Pattern.compile("\"sizeBytes\"\\s*:\\s*(\\d+)");
+    private static final Pattern CACHED_REPORTS = Pattern.compile("\"cachedReports\"\\s*:\\s*(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int nodeCount = Integer.parseInt(options.getOrDefault("nodes", "3"));
+        int reportCount = Integer.parseInt(options.getOrDefault("reports", "30"));
+        String jvmOptions = options.getOrDefault("jvm-options", "-Xmx512m");
+        File resultFile = new File(options.getOrDefault("result", "target/loadtest/report-cache.json"));
+        File logDir = resultFile.getAbsoluteFile().getParentFile();
+
+        List<String> urls = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            int port = AppLauncher.freePort();
+            ports.add(port);
+            urls.add("http://localhost:" + port);
+        }
+
+        List<AppLauncher> launchers = new ArrayList<>();
+        List<String> failures = new ArrayList<>();
+        Map<String, Integer> cachedByNode = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                System.out.printf("Starting node %d on port %d...%n", i + 1, ports.get(i));
+                List<String> appArgs = new ArrayList<>();
+                appArgs.add("--report-cache.nodes=" + String.join(",", urls));
+                appArgs.add("--report-cache.self=" + urls.get(i));
+                appArgs.add("--report-cache.token=" + TOKEN);
+                launchers.add(AppLauncher.start(ports.get(i), jvmOptions, appArgs,
+                        new File(logDir, "report-node" + (i + 1) + ".log")));
+            }
+
+            List<String> reportIds = new ArrayList<>();
+            for (int i = 0; i < reportCount; i++) {
+                String node = urls.get(i % nodeCount);
+                Response response = send("POST", node + "/api/reports/generate", "{\"type\":\"summary\"}");
+                Matcher matcher = REPORT_ID.matcher(response.body);
+                if (response.status != 200 || !matcher.find()) {
+                    failures.add("generate on " + node + " returned " + response.status + ": " + response.body);
+                    continue;
+                }
+                reportIds.add(matcher.group(1));
+            }
+
+            for (String reportId : reportIds) {
+                Long expectedSize = null;
+                for (String node : urls) {
+                    Response response = send("GET", node + "/api/reports/" + reportId, null);
+                    Matcher matcher = SIZE_BYTES.matcher(response.body);
+                    if (!matcher.find()) {
+                        failures.add(reportId + " not readable from " + node + ": " + response.body);
+                        continue;
+                    }
+                    long size = Long.parseLong(matcher.group(1));
+                    if (expectedSize != null && size != expectedSize) {
+                        failures.add(reportId + " size differs on " + node);
+                    }
+                    expectedSize = size;
+                }
+            }
+            if (!reportIds.isEmpty()) {
+                String reportId = reportIds.get(0);
+                for (String node : urls) {
+                    Response download = send("GET", node + "/api/reports/" + reportId + "/download", null);
+                    if (download.status != 200 || download.length != 5 * 1024 * 1024) {
+                        failures.add("download of " + reportId + " from " + node + " returned "
+                                + download.status + " with " + download.length + " bytes");
+                    }
+                }
+            }
+
+            int totalCached = 0;
+            for (String node : urls) {
+                Matcher matcher = CACHED_REPORTS.matcher(send("GET", node + "/api/reports/stats", null).body);
+                int cached = matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+                cachedByNode.put(node, cached);
+                totalCached += cached;
+            }
+            if (totalCached != reportIds.size()) {
+                failures.add("fleet caches " + totalCached + " reports for " + reportIds.size() + " generated");
+            }
+        } finally {
+            for (AppLauncher launcher : launchers) {
+                launcher.close();
+            }
+        }
+
+        System.out.println();
+        System.out.println("Reports cached per node:");
+        for (Map.Entry<String, Integer> entry : cachedByNode.entrySet()) {
+            System.out.printf("  %-28s %4d%n", entry.getKey(), entry.getValue());
+        }
+        writeJson(resultFile, reportCount, cachedByNode, failures.isEmpty());
+        System.out.println("Result written to " + resultFile.getPath());
+        for (String failure : failures) {
+            System.out.println("FAIL: " + failure);
+        }
+        System.exit(failures.isEmpty() ? 0 : 1);
+    }
+
+    private static Response send(String method, String url, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Accept", "application/json");
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        long length = 0;
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = stream.read(buffer)) != -1) {
+                    length += n;
+                    // 下载的报表只计字节数，不保留内容
+                    if (content.size() < 64 * 1024) {
+                        content.write(buffer, 0, n);
+                    }
+                }
+            }
+        }
+        return new Response(status, new String(content.toByteArray(), StandardCharsets.UTF_8), length);
+    }
+
+    private static void writeJson(File file, int reports, Map<String, Integer> cachedByNode, boolean passed)
+            throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : cachedByNode.entrySet()) {
+            entries.add("    {\"node\": \"" + entry.getKey() + "\", \"cachedReports\": " + entry.getValue() + "}");
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("{\n  \"passed\": " + passed + ",\n  \"reports\": " + reports + ",\n  \"nodes\": [\n");
+            out.write(String.join(",\n", entries));
+            out.write("\n  ]\n}\n");
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+        final long length;
+
+        Response(int status, String body, long length) {
+            this.status = status;
+            this.body = body;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.helloworld.loadtest;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 压测请求组合：各接口按权重随机抽取
+ *
+ * 权重格式：tasks-list:30,search:15,...（未列出的接口不参与）
+ */
+class Workload {
+
+    static final String DEFAULT_MIX = "tasks-list:30,tasks-get:20,tasks-create:5,tasks-stats:10,"
+            + "search:15,suggest:5,export-tasks:5,export-reports:5,reports-stats:5";
+
+    private static final String[] QUERIES = {"优化", "配置", "AWS", "测试", "安全", "部署", "监控", "kubernetes"};
+
+    /**
+     * 一次请求：方法、路径（相对 baseUrl）和可选的 JSON 请求体
+     */
+    static class Request {
+        final String method;
+        final String path;
+        final String body;
+
+        Request(String method, String path, String body) {
+            this.method = method;
+            this.path = path;
+            this.body = body;
+        }
+    }
+
+    private final List<String> names = new ArrayList<>();
+    private final int[] cumulativeWeights;
+    private final int totalWeight;
+
+    Workload(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            String name = parts[0];
+            request(name); // 校验接口名
+            weights.put(name, parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+        }
+        cumulativeWeights = new int[weights.size()];
+        int total = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+            total += entry.getValue();
+            names.add(entry.getKey());
+            cumulativeWeights[i++] = total;
+        }
+        totalWeight = total;
+    }
+
+    List<String> getNames() {
+        return names;
+    }
+
+    String next() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return names.get(i);
+            }
+        }
+        return names.get(names.size() - 1);
+    }
+
+    static Request request(String name) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (name) {
+            case "tasks-list":
+                return new Request("GET", "/api/tasks", null);
+            case "tasks-get":
+                return new Request("GET", "/api/tasks/" + (1 + random.nextInt(4)), null);
+            case "tasks-create":
+                return new Request("POST", "/api/tasks",
+                        "{\"title\":\"load-test " + random.nextInt(1000000) + "\",\"priority\":\"LOW\"}");
+            case "tasks-stats":
+                return new Request("GET", "/api/tasks/stats", null);
+            case "search":
+                return new Request("GET", "/api/search?query=" + encode(QUERIES[random.nextInt(QUERIES.length)]), null);
+            case "suggest":
+                return new Request("GET", "/api/search/suggest?prefix=" + encode(QUERIES[random.nextInt(QUERIES.length)]), null);
+            case "export-tasks":
+                return new Request("GET", "/api/export/tasks?records=1000", null);
+            case "export-reports":
+                return new Request("GET", "/api/export/reports?dateRange=last_week", null);
+            case "reports-stats":
+                return new Request("GET", "/api/reports/stats", null);
+            case "reports-generate":
+                // 报表会常驻缓存（泄漏场景），默认组合中不包含
+                return new Request("POST", "/api/reports/generate", "{\"type\":\"summary\",\"dateRange\":\"last_week\"}");
+            default:
+                throw new IllegalArgumentException("Unknown operation in mix: " + name);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.helloworld;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据目录的独占锁（目录下的 LOCK 文件），持有到 close 或进程退出
+ *
+ * 跨进程靠 FileChannel.tryLock。同一进程内另外记录已锁住的目录并先检查它：
+ * 文件锁按进程持有，本进程再打开同一个 LOCK 文件、加锁失败后关闭，会把已经持有的锁一起释放。
+ */
+public final class DirectoryLock implements AutoCloseable {
+
+    private static final String LOCK_FILE = "LOCK";
+    private static final Set<Path> HELD = ConcurrentHashMap.newKeySet();
+
+    private final Path dir;
+    private final FileChannel channel;
+
+    private DirectoryLock(Path dir, FileChannel channel) {
+        this.dir = dir;
+        this.channel = channel;
+    }
+
+    /**
+     * 创建目录（如不存在）并加锁
+     *
+     * @param property 指定该目录的配置项，只用于错误信息
+     * @throws IllegalStateException 目录已被本进程或其他进程锁住
+     */
+    public static DirectoryLock acquire(Path dir, String property) throws IOException {
+        Files.createDirectories(dir);
+        Path key = dir.toRealPath();
+        if (!HELD.add(key)) {
+            throw inUse(dir, property);
+        }
+        FileChannel channel = null;
+        boolean locked = false;
+        try {
+            channel = FileChannel.open(key.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            locked = channel.tryLock() != null;
+        } finally {
+            if (!locked) {
+                if (channel != null) {
+                    channel.close();
+                }
+                HELD.remove(key);
+            }
+        }
+        if (!locked) {
+            throw inUse(dir, property);
+        }
+        return new DirectoryLock(key, channel);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            channel.close();
+        } finally {
+            HELD.remove(dir);
+        }
+    }
+
+    private static IllegalStateException inUse(Path dir, String property) {
+        return new IllegalStateException(dir + " is in use by another instance; give each instance its own "
+                + property);
+    }
+}
@@ -1,5 +1,6 @@
 package com.helloworld;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
@@ -12,12 +13,19 @@ import java.io.InputStream;
  * 如果存在则抛出异常终止启动（用于测试 CodeDeploy/ALB/CloudWatch 告警）。
  *
  * 触发方法：在项目中添加空文件 `src/main/resources/fail_deploy.flag`，重新构建并部署。
+ * 本地压测等场景可通过 failure-injection.enabled=false 关闭检查。
  */
 @Component
 public class FailureInjector implements ApplicationRunner {
 
+    @Value("${failure-injection.enabled:true}")
+    private boolean enabled;
+
     @Override
     public void run(ApplicationArguments args) throws Exception {
+        if (!enabled) {
+            return;
+        }
         InputStream flagStream = getClass().getResourceAsStream("/fail_deploy.flag");
         if (flagStream != null) {
             // 发现触发文件，主动终止应用启动以模拟部署失败
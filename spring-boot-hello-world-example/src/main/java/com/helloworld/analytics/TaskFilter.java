@@ -0,0 +1,53 @@
+package com.helloworld.analytics;
+
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+
+/**
+ * 列存聚合的过滤条件，不可变；未设置的条件不过滤
+ *
+ * 状态和优先级编译成按序号的位掩码，扫描时每行只做移位和比较，没有分支嵌套。
+ */
+public final class TaskFilter {
+
+    public static final TaskFilter ALL = new TaskFilter(-1, -1, Long.MIN_VALUE, Long.MAX_VALUE, null);
+
+    final int statusMask;
+    final int priorityMask;
+    final long createdFrom;
+    final long createdBefore;
+    final String title;
+
+    private TaskFilter(int statusMask, int priorityMask, long createdFrom, long createdBefore, String title) {
+        this.statusMask = statusMask;
+        this.priorityMask = priorityMask;
+        this.createdFrom = createdFrom;
+        this.createdBefore = createdBefore;
+        this.title = title;
+    }
+
+    public TaskFilter status(TaskStatus status) {
+        return status == null ? this
+                : new TaskFilter(1 << status.ordinal(), priorityMask, createdFrom, createdBefore, title);
+    }
+
+    public TaskFilter priority(TaskPriority priority) {
+        return priority == null ? this
+                : new TaskFilter(statusMask, 1 << priority.ordinal(), createdFrom, createdBefore, title);
+    }
+
+    /**
+     * 创建时间在 [from, before) 内，单位毫秒；null 表示该端不限
+     */
+    public TaskFilter createdBetween(Long from, Long before) {
+        return new TaskFilter(statusMask, priorityMask,
+                from != null ? from : createdFrom, before != null ? before : createdBefore, title);
+    }
+
+    /**
+     * 标题完全相等；按字典查到编码后只比较 int
+     */
+    public TaskFilter title(String title) {
+        return title == null ? this : new TaskFilter(statusMask, priorityMask, createdFrom, createdBefore, title);
+    }
+}
@@ -0,0 +1,129 @@
+package com.helloworld.cluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一致性哈希环
+ *
+ * 每个节点在环上放 virtualNodes 个虚拟点，key 归属于顺时针方向遇到的第一个点所属的节点。
+ * 节点增减时只有相邻区间的 key 换主，其余 key 的归属不变。
+ * 环在构造后不再变化，查询只做一次哈希和一次二分查找，不加锁。
+ */
+public class HashRing {
+
+    private static final double RING_SIZE = Math.pow(2, 64);
+
+    private final List<String> nodes;
+    private final long[] points;
+    private final int[] owners;
+
+    public HashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("hash ring needs at least one node");
+        }
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        int size = nodes.size() * virtualNodes;
+        long[] hashes = new long[size];
+        int[] indexes = new int[size];
+        int i = 0;
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[i] = hash(nodes.get(node) + "#" + v);
+                indexes[i] = node;
+                i++;
+            }
+        }
+        // 按哈希值排序，owner 下标跟着一起移动
+        Integer[] order = new Integer[size];
+        for (int k = 0; k < size; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[size];
+        this.owners = new int[size];
+        for (int k = 0; k < size; k++) {
+            points[k] = hashes[order[k]];
+            owners[k] = indexes[order[k]];
+        }
+    }
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * key 的属主节点
+     */
+    public String ownerOf(String key) {
+        return nodes.get(owners[firstPoint(hash(key))]);
+    }
+
+    /**
+     * 从属主开始顺时针排列的不重复节点，属主不可用时依次顺延
+     */
+    public List<String> preferenceList(String key) {
+        List<String> result = new ArrayList<>(nodes.size());
+        boolean[] seen = new boolean[nodes.size()];
+        int start = firstPoint(hash(key));
+        for (int k = 0; k < points.length && result.size() < nodes.size(); k++) {
+            int owner = owners[(start + k) % points.length];
+            if (!seen[owner]) {
+                seen[owner] = true;
+                result.add(nodes.get(owner));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 各节点负责的哈希空间占比，用于确认虚拟节点数是否足以摊平负载
+     */
+    public Map<String, Double> shares() {
+        double[] owned = new double[nodes.size()];
+        for (int k = 0; k < points.length; k++) {
+            long previous = points[k == 0 ? points.length - 1 : k - 1];
+            // long 相减自然回绕，按无符号理解即该点负责的区间长度（首个点的区间跨过环的起点）；
+            // 只有一个点时差值为 0，即整个环
+            double span = points[k] - previous;
+            if (span <= 0) {
+                span += RING_SIZE;
+            }
+            owned[owners[k]] += span;
+        }
+        Map<String, Double> shares = new LinkedHashMap<>();
+        for (int node = 0; node < nodes.size(); node++) {
+            shares.put(nodes.get(node), owned[node] / RING_SIZE);
+        }
+        return shares;
+    }
+
+    private int firstPoint(long hash) {
+        int index = Arrays.binarySearch(points, hash);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == points.length ? 0 : index;
+    }
+
+    /**
+     * 按字符做 FNV-1a，再接 MurmurHash3 的 fmix64 打散，分布足够均匀且不分配对象
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a4ed5f5a3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,270 @@
+package com.helloworld.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 报表缓存的节点归属
+ *
+ * 报表 id 按一致性哈希分配给一个属主节点，报表只在属主上生成和缓存，整组节点只保留一份。
+ * 其他节点收到生成、查询、下载请求时转发给属主；属主不可达时按环上顺序顺延到下一个节点。
+ * 读取时某个节点没有该报表也继续顺延，因此属主故障期间生成在顺延节点上的报表，属主恢复后仍能被读到。
+ * 转发的请求带 X-Report-Forwarded 头，接收方一律在本地处理，不会再次转发；
+ * 配置了 token 时转发请求还要带 X-Report-Token，否则外部客户端可以伪造转发头绕过路由、覆盖任意报表 id。
+ *
+ * 配置（均可选，nodes 为空时不分片，各节点各自缓存）：
+ *   report-cache.nodes=http://10.0.1.11:8080/SpringBootHelloWorldExampleApplication,http://10.0.1.12:8080/...
+ *                                       所有节点写同样的列表（含本节点）
+ *   report-cache.self=http://10.0.1.11:8080/SpringBootHelloWorldExampleApplication
+ *   report-cache.virtual-nodes=160
+ *   report-cache.connect-timeout-ms=1000
+ *   report-cache.read-timeout-ms=120000  转发的生成请求要等属主生成完，与舱壁超时一致
+ *   report-cache.token=                  非空时校验转发请求的 X-Report-Token，所有节点写同样的值
+ */
+@Component
+public class ReportCacheCluster {
+
+    public static final String FORWARDED_HEADER = "X-Report-Forwarded";
+    public static final String REPORT_ID_HEADER = "X-Report-Id";
+    public static final String TOKEN_HEADER = "X-Report-Token";
+    /**
+     * 本地处理的读取请求没有找到报表时带上，转发方据此顺延到下一个节点
+     */
+    public static final String MISSING_HEADER = "X-Report-Missing";
+
+    private static final Logger log = LoggerFactory.getLogger(ReportCacheCluster.class);
+
+    private final HashRing ring;
+    private final Map<String, Double> ringShares;
+    private final String self;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final byte[] token;
+
+    private final LongAdder servedLocally = new LongAdder();
+    private final Map<String, NodeStats> nodeStats = new LinkedHashMap<>();
+
+    @Autowired
+    public ReportCacheCluster(Environment environment) {
+        List<String> nodes = new ArrayList<>();
+        for (String url : environment.getProperty("report-cache.nodes", "").split(",")) {
+            if (!url.trim().isEmpty()) {
+                nodes.add(normalize(url));
+            }
+        }
+        this.self = normalize(environment.getProperty("report-cache.self", ""));
+        if (!nodes.isEmpty() && !nodes.contains(self)) {
+            throw new IllegalStateException("report-cache.self (" + self + ") must be one of report-cache.nodes");
+        }
+        this.ring = nodes.isEmpty() ? null
+                : new HashRing(nodes, environment.getProperty("report-cache.virtual-nodes", Integer.class, 160));
+        this.ringShares = ring != null ? ring.shares() : Collections.emptyMap();
+        this.connectTimeoutMs = environment.getProperty("report-cache.connect-timeout-ms", Integer.class, 1000);
+        this.readTimeoutMs = environment.getProperty("report-cache.read-timeout-ms", Integer.class, 120_000);
+        this.token = environment.getProperty("report-cache.token", "").getBytes(StandardCharsets.UTF_8);
+        if (ring != null && token.length == 0) {
+            log.warn("report-cache.token is not set; forwarded report requests are not authenticated");
+        }
+        for (String node : nodes) {
+            if (!node.equals(self)) {
+                nodeStats.put(node, new NodeStats());
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * 带转发头的请求是否可信：未分片时不会有合法的转发；配置了令牌时校验令牌，未配置时不校验
+     */
+    public boolean isTrustedForward(String presented) {
+        if (ring == null) {
+            return false;
+        }
+        if (token.length == 0) {
+            return true;
+        }
+        return presented != null && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public boolean isSelf(String node) {
+        return self.equals(node);
+    }
+
+    /**
+     * 报表 id 的候选节点，属主在前；未分片时只有本节点
+     */
+    public List<String> candidates(String reportId) {
+        return ring != null ? ring.preferenceList(reportId) : Collections.singletonList(self);
+    }
+
+    public void recordLocal() {
+        servedLocally.increment();
+    }
+
+    /**
+     * 把请求转发给指定节点
+     *
+     * @param pathAndQuery 相对应用根路径，例如 /api/reports/RPT-1234abcd
+     * @param headers      需要带上的请求头，转发标记会自动加上
+     * @throws IOException 节点不可达或超时，调用方应顺延到下一个候选节点
+     */
+    public Forwarded forward(String node, String method, String pathAndQuery, Map<String, String> headers,
+                             byte[] body) throws IOException {
+        NodeStats stats = nodeStats.get(node);
+        HttpURLConnection connection = (HttpURLConnection) new URL(node + pathAndQuery).openConnection();
+        try {
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestMethod(method);
+            connection.setRequestProperty(FORWARDED_HEADER, self);
+            if (token.length > 0) {
+                connection.setRequestProperty(TOKEN_HEADER, new String(token, StandardCharsets.UTF_8));
+            }
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+            }
+            int status = connection.getResponseCode();
+            stats.forwarded.increment();
+            return new Forwarded(connection, status);
+        } catch (IOException e) {
+            stats.failures.increment();
+            connection.disconnect();
+            log.warn("Report request to {} failed, trying next node: {}", node, e.getMessage());
+            throw e;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", isEnabled());
+        stats.put("self", self);
+        stats.put("servedLocally", servedLocally.sum());
+        stats.put("ringShares", ringShares);
+        Map<String, Object> peers = new LinkedHashMap<>();
+        for (Map.Entry<String, NodeStats> entry : nodeStats.entrySet()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("forwarded", entry.getValue().forwarded.sum());
+            item.put("failures", entry.getValue().failures.sum());
+            peers.put(entry.getKey(), item);
+        }
+        stats.put("peers", peers);
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        if (ring == null) {
+            return;
+        }
+        out.append("# HELP report_cache_requests_total Report requests by where they were served\n");
+        out.append("# TYPE report_cache_requests_total counter\n");
+        out.append("report_cache_requests_total{node=\"local\"} ").append(servedLocally.sum()).append('\n');
+        for (Map.Entry<String, NodeStats> entry : nodeStats.entrySet()) {
+            out.append("report_cache_requests_total{node=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().forwarded.sum()).append('\n');
+        }
+        out.append("# HELP report_cache_forward_failures_total Forwarded report requests that could not reach the node\n");
+        out.append("# TYPE report_cache_forward_failures_total counter\n");
+        for (Map.Entry<String, NodeStats> entry : nodeStats.entrySet()) {
+            out.append("report_cache_forward_failures_total{node=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue().failures.sum()).append('\n');
+        }
+        out.append("# HELP report_cache_ring_share Fraction of the report id space owned by each node\n");
+        out.append("# TYPE report_cache_ring_share gauge\n");
+        for (Map.Entry<String, Double> entry : ringShares.entrySet()) {
+            out.append("report_cache_ring_share{node=\"").append(entry.getKey()).append("\"} ")
+                    .append(entry.getValue()).append('\n');
+        }
+    }
+
+    private static String normalize(String url) {
+        String trimmed = url.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    /**
+     * 转发得到的响应；body 由 close() 读完并关闭，调用方不要自行关闭
+     */
+    public static final class Forwarded implements AutoCloseable {
+        private final HttpURLConnection connection;
+        private final int status;
+        private InputStream body;
+
+        Forwarded(HttpURLConnection connection, int status) {
+            this.connection = connection;
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getHeader(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        public long getContentLength() {
+            return connection.getContentLengthLong();
+        }
+
+        public String getContentType() {
+            return connection.getHeaderField(HttpHeaders.CONTENT_TYPE);
+        }
+
+        public InputStream getBody() throws IOException {
+            if (body == null) {
+                InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+                body = in != null ? in : new ByteArrayInputStream(new byte[0]);
+            }
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // 读完剩余内容，连接才能回到 keep-alive 池复用
+            try (InputStream in = getBody()) {
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) != -1) {
+                    // 丢弃
+                }
+            }
+        }
+    }
+
+    private static final class NodeStats {
+        final LongAdder forwarded = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+}
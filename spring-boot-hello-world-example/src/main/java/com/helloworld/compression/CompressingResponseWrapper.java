@@ -0,0 +1,429 @@
+package com.helloworld.compression;
+
+import com.helloworld.compression.CompressionMetrics.Outcome;
+import com.helloworld.compression.ResponseCompression.GzipStream;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+/**
+ * 边写边决定是否压缩的响应包装
+ *
+ * 响应体的前 min-response-size 个字节先暂存；超过阈值（或 Content-Length 声明已超过）时才做决定：
+ * 类型可压缩、客户端接受 gzip、没有自带 Content-Encoding 或 Range 语义时切换到 gzip 流，
+ * 否则原样透传。响应结束时仍未超过阈值的，按原样写出并补上 Content-Length。
+ * 切换到 gzip 后后续写入直接进入压缩流，不会缓存整个响应。
+ */
+class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+    private enum State { UNDECIDED, IDENTITY, GZIP }
+
+    private final ResponseCompression compression;
+    private final CompressionMetrics metrics;
+    private final boolean gzipAccepted;
+    private final int threshold;
+
+    private State state = State.UNDECIDED;
+    private long declaredLength = -1;
+    private boolean encodedByApplication;
+    private boolean precompressed;
+    private boolean rangeSupported;
+
+    private byte[] pending;
+    private int pendingCount;
+
+    private CompressedOutput stream;
+    private PrintWriter writer;
+
+    private ServletOutputStream target;
+    private CountingOutputStream counter;
+    private GzipStream gzip;
+    private long inputBytes;
+    private long cpuNanos;
+
+    CompressingResponseWrapper(HttpServletResponse response, ResponseCompression compression, boolean gzipAccepted) {
+        super(response);
+        this.compression = compression;
+        this.metrics = compression.getMetrics();
+        this.gzipAccepted = gzipAccepted;
+        this.threshold = compression.getMinResponseSize();
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() {
+        if (stream == null) {
+            stream = new CompressedOutput();
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            String charset = getCharacterEncoding();
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), charset != null ? charset : "ISO-8859-1"));
+        }
+        return writer;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+        setContentLengthLong(length);
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+        if (state == State.UNDECIDED) {
+            declaredLength = length;
+        } else if (state == State.IDENTITY) {
+            super.setContentLengthLong(length);
+        }
+        // 压缩后长度未知，丢弃声明的原始长度，交给分块传输
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!interceptHeader(name, value)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!interceptHeader(name, value)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (!interceptHeader(name, Integer.toString(value))) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (!interceptHeader(name, Integer.toString(value))) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /**
+     * Content-Length 走 setContentLengthLong；Content-Encoding、Accept-Ranges、Content-Range
+     * 说明响应体已经编码或要按字节寻址，记下后照常写头
+     */
+    private boolean interceptHeader(String name, String value) {
+        if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            try {
+                setContentLengthLong(Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return true;
+        }
+        if (HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)) {
+            encodedByApplication = true;
+        } else if (HttpHeaders.ACCEPT_RANGES.equalsIgnoreCase(name) || HttpHeaders.CONTENT_RANGE.equalsIgnoreCase(name)) {
+            rangeSupported = true;
+        }
+        return false;
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+        super.sendError(status);
+        discardPending();
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+        super.sendError(status, message);
+        discardPending();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (flushStream()) {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        releaseGzip();
+        state = State.UNDECIDED;
+        declaredLength = -1;
+        encodedByApplication = false;
+        precompressed = false;
+        rangeSupported = false;
+        pendingCount = 0;
+        writer = null;
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        pendingCount = 0;
+        if (state == State.GZIP) {
+            // 已经发出 Content-Encoding: gzip 头但尚未提交，重新开始一个 gzip 流
+            releaseGzip();
+            startGzip();
+        }
+    }
+
+    /**
+     * 响应体由 ResponseCompression.write 写出的预压缩载荷，已自行选择编码并计数
+     */
+    void markPrecompressed() {
+        precompressed = true;
+    }
+
+    /**
+     * 请求处理结束时调用：暂存的小响应按原样写出，gzip 流写出尾部并记录指标
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (state == State.UNDECIDED) {
+            if (pendingCount == 0) {
+                // 没有响应体（重定向、304、HEAD 等），不计入压缩统计
+                state = State.IDENTITY;
+                if (declaredLength >= 0) {
+                    super.setContentLengthLong(declaredLength);
+                }
+                return;
+            }
+            if (!isCommitted()) {
+                declaredLength = pendingCount;
+            }
+            decide(false);
+        }
+        if (state == State.GZIP) {
+            long cpuStart = metrics.cpuNanos();
+            GzipStream finished = gzip;
+            gzip = null;
+            finished.finishAndRelease();
+            cpuNanos += metrics.cpuNanos() - cpuStart;
+            metrics.recordStreaming(inputBytes, counter.count, cpuNanos);
+        }
+    }
+
+    /**
+     * 处理过程抛出异常时调用：释放 Deflater，响应交给容器的错误处理
+     */
+    void abandon() {
+        releaseGzip();
+        pendingCount = 0;
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        if (state == State.UNDECIDED) {
+            if (declaredLength < threshold && pendingCount + length < threshold) {
+                if (pending == null) {
+                    pending = new byte[threshold];
+                }
+                System.arraycopy(bytes, offset, pending, pendingCount, length);
+                pendingCount += length;
+                return;
+            }
+            decide(true);
+        }
+        if (state == State.GZIP) {
+            long cpuStart = metrics.cpuNanos();
+            gzip.write(bytes, offset, length);
+            cpuNanos += metrics.cpuNanos() - cpuStart;
+            inputBytes += length;
+        } else {
+            target().write(bytes, offset, length);
+        }
+    }
+
+    /**
+     * @return 是否需要继续把 flush 传给容器
+     */
+    private boolean flushStream() throws IOException {
+        if (state == State.UNDECIDED) {
+            if (isEligible()) {
+                // 可压缩类型在阈值以内先不提交，等更多数据或请求结束再决定
+                return false;
+            }
+            decide(false);
+        }
+        if (state == State.GZIP) {
+            long cpuStart = metrics.cpuNanos();
+            gzip.flush();
+            cpuNanos += metrics.cpuNanos() - cpuStart;
+        } else {
+            target().flush();
+        }
+        return true;
+    }
+
+    /**
+     * @param large 响应体是否已达到压缩阈值
+     */
+    private void decide(boolean large) throws IOException {
+        Outcome outcome;
+        if (!large) {
+            outcome = Outcome.BELOW_THRESHOLD;
+        } else if (!isEligible()) {
+            outcome = Outcome.SKIPPED;
+        } else if (!gzipAccepted) {
+            outcome = Outcome.NOT_ACCEPTED;
+        } else {
+            outcome = Outcome.COMPRESSED;
+        }
+
+        if (outcome == Outcome.COMPRESSED) {
+            super.setHeader(HttpHeaders.CONTENT_ENCODING, ResponseCompression.GZIP);
+            super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            startGzip();
+        } else {
+            if (outcome == Outcome.NOT_ACCEPTED) {
+                super.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+            if (!precompressed) {
+                metrics.recordOutcome(outcome);
+            }
+            state = State.IDENTITY;
+            if (declaredLength >= 0) {
+                super.setContentLengthLong(declaredLength);
+            }
+        }
+        if (pendingCount > 0) {
+            int count = pendingCount;
+            pendingCount = 0;
+            write(pending, 0, count);
+        }
+    }
+
+    private boolean isEligible() {
+        int status = getStatus();
+        return !precompressed && !encodedByApplication && !rangeSupported
+                && status != SC_NO_CONTENT && status != SC_PARTIAL_CONTENT && status != SC_NOT_MODIFIED
+                && compression.isCompressible(getContentType());
+    }
+
+    private void startGzip() {
+        try {
+            counter = new CountingOutputStream(target());
+            long cpuStart = metrics.cpuNanos();
+            gzip = compression.streamingGzip(counter);
+            cpuNanos += metrics.cpuNanos() - cpuStart;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to start gzip stream", e);
+        }
+        state = State.GZIP;
+        inputBytes = 0;
+    }
+
+    private void releaseGzip() {
+        if (gzip != null) {
+            gzip.release();
+            gzip = null;
+        }
+    }
+
+    /**
+     * 错误页由容器接管，暂存的内容作废，之后的写入按原样透传
+     */
+    private void discardPending() {
+        pendingCount = 0;
+        releaseGzip();
+        state = State.IDENTITY;
+    }
+
+    /**
+     * 只在真正要写数据时才取容器的输出流，出错转发时容器仍可改用 getWriter
+     */
+    private ServletOutputStream target() throws IOException {
+        if (target == null) {
+            target = super.getOutputStream();
+        }
+        return target;
+    }
+
+    private class CompressedOutput extends ServletOutputStream {
+
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            CompressingResponseWrapper.this.write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            CompressingResponseWrapper.this.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            flushStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            // 由 CompressionFilter 在请求结束时统一收尾
+            flush();
+        }
+
+        @Override
+        public boolean isReady() {
+            try {
+                return target().isReady();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            try {
+                target().setWriteListener(listener);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
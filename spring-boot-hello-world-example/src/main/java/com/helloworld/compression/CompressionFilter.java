@@ -0,0 +1,63 @@
+package com.helloworld.compression;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 流式响应压缩
+ *
+ * 排在 RequestMetricsFilter 之内，计时包含压缩耗时。
+ * 异步请求（DeferredResult、StreamingResponseBody）的响应体在异步分派时才写出，
+ * 所以异步分派也要经过这里，复用第一次分派时创建的包装，在最后一次分派结束时收尾。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class CompressionFilter extends OncePerRequestFilter {
+
+    private final ResponseCompression compression;
+
+    @Autowired
+    public CompressionFilter(ResponseCompression compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !compression.isEnabled();
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        CompressingResponseWrapper wrapper = WebUtils.getNativeResponse(response, CompressingResponseWrapper.class);
+        HttpServletResponse target = response;
+        if (wrapper == null) {
+            wrapper = new CompressingResponseWrapper(response, compression, compression.acceptsGzip(request));
+            target = wrapper;
+        }
+        try {
+            chain.doFilter(request, target);
+        } catch (IOException | ServletException | RuntimeException e) {
+            wrapper.abandon();
+            throw e;
+        }
+        if (!isAsyncStarted(request)) {
+            wrapper.finish();
+        }
+    }
+}
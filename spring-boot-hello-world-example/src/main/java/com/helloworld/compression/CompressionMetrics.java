@@ -0,0 +1,153 @@
+package com.helloworld.compression;
+
+import com.helloworld.metrics.JvmTelemetry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 响应压缩的成本与收益
+ *
+ * 按响应结果计数，并分两种模式累计压缩前后字节数和压缩耗费的 CPU 时间：
+ * - streaming：CompressionFilter 在写响应时边写边压，每个响应都要付一次 CPU
+ * - precompressed：缓存的载荷只在生成时压缩一次（CPU 记在生成那一刻），之后每次命中都只统计省下的字节
+ * 两者对照即可看出每省 1KB 传输付出了多少 CPU，以及预压缩摊薄了多少成本。
+ */
+@Component
+public class CompressionMetrics {
+
+    /**
+     * 响应的压缩结果
+     */
+    public enum Outcome {
+        COMPRESSED("compressed"),
+        PRECOMPRESSED("precompressed"),
+        BELOW_THRESHOLD("below_threshold"),
+        NOT_ACCEPTED("not_accepted"),
+        SKIPPED("skipped");
+
+        private final String label;
+
+        Outcome(String label) {
+            this.label = label;
+        }
+    }
+
+    private final JvmTelemetry jvmTelemetry;
+
+    private final LongAdder[] outcomes = new LongAdder[Outcome.values().length];
+    private final Mode streaming = new Mode();
+    private final Mode precompressed = new Mode();
+
+    @Autowired
+    public CompressionMetrics(JvmTelemetry jvmTelemetry) {
+        this.jvmTelemetry = jvmTelemetry;
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 计时起点：优先取线程 CPU 时间，不支持时退回墙钟时间
+     */
+    long cpuNanos() {
+        long cpu = jvmTelemetry.currentThreadCpuNanos();
+        return cpu >= 0 ? cpu : System.nanoTime();
+    }
+
+    void recordOutcome(Outcome outcome) {
+        outcomes[outcome.ordinal()].increment();
+    }
+
+    /**
+     * 一个流式压缩的响应结束
+     */
+    void recordStreaming(long inputBytes, long outputBytes, long cpuNanos) {
+        recordOutcome(Outcome.COMPRESSED);
+        streaming.inputBytes.add(inputBytes);
+        streaming.outputBytes.add(outputBytes);
+        streaming.cpuNanos.add(cpuNanos);
+    }
+
+    /**
+     * 生成一份预压缩载荷（只记 CPU，字节数在每次命中时累计）
+     */
+    void recordPrecompression(long cpuNanos) {
+        precompressed.cpuNanos.add(cpuNanos);
+    }
+
+    /**
+     * 一次预压缩载荷命中
+     */
+    void recordPrecompressedHit(long inputBytes, long outputBytes) {
+        recordOutcome(Outcome.PRECOMPRESSED);
+        precompressed.inputBytes.add(inputBytes);
+        precompressed.outputBytes.add(outputBytes);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> responses = new HashMap<>();
+        for (Outcome outcome : Outcome.values()) {
+            responses.put(outcome.label, outcomes[outcome.ordinal()].sum());
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("responses", responses);
+        stats.put("streaming", streaming.summary());
+        stats.put("precompressed", precompressed.summary());
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP http_compression_responses_total Responses by compression outcome\n");
+        out.append("# TYPE http_compression_responses_total counter\n");
+        for (Outcome outcome : Outcome.values()) {
+            out.append("http_compression_responses_total{outcome=\"").append(outcome.label).append("\"} ")
+                    .append(outcomes[outcome.ordinal()].sum()).append('\n');
+        }
+        out.append("# HELP http_compression_input_bytes_total Bytes before compression\n");
+        out.append("# TYPE http_compression_input_bytes_total counter\n");
+        sample(out, "http_compression_input_bytes_total", "streaming").append(streaming.inputBytes.sum()).append('\n');
+        sample(out, "http_compression_input_bytes_total", "precompressed").append(precompressed.inputBytes.sum()).append('\n');
+        out.append("# HELP http_compression_output_bytes_total Bytes sent after compression\n");
+        out.append("# TYPE http_compression_output_bytes_total counter\n");
+        sample(out, "http_compression_output_bytes_total", "streaming").append(streaming.outputBytes.sum()).append('\n');
+        sample(out, "http_compression_output_bytes_total", "precompressed").append(precompressed.outputBytes.sum()).append('\n');
+        out.append("# HELP http_compression_cpu_seconds_total CPU time spent compressing\n");
+        out.append("# TYPE http_compression_cpu_seconds_total counter\n");
+        sample(out, "http_compression_cpu_seconds_total", "streaming")
+                .append(streaming.cpuNanos.sum() / 1_000_000_000.0).append('\n');
+        sample(out, "http_compression_cpu_seconds_total", "precompressed")
+                .append(precompressed.cpuNanos.sum() / 1_000_000_000.0).append('\n');
+    }
+
+    private static StringBuilder sample(StringBuilder out, String metric, String mode) {
+        return out.append(metric).append("{mode=\"").append(mode).append("\"} ");
+    }
+
+    private static class Mode {
+        final LongAdder inputBytes = new LongAdder();
+        final LongAdder outputBytes = new LongAdder();
+        final LongAdder cpuNanos = new LongAdder();
+
+        Map<String, Object> summary() {
+            long input = inputBytes.sum();
+            long output = outputBytes.sum();
+            long saved = input - output;
+            long cpu = cpuNanos.sum();
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("inputBytes", input);
+            summary.put("outputBytes", output);
+            summary.put("savedBytes", saved);
+            summary.put("ratio", input > 0 ? (double) output / input : 1.0);
+            summary.put("cpuMs", cpu / 1_000_000.0);
+            summary.put("cpuMicrosPerSavedKB", saved > 0 ? cpu / 1000.0 / (saved / 1024.0) : 0.0);
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.helloworld.compression;
+
+/**
+ * 预先压缩好的响应体
+ *
+ * 同时持有原始字节和 gzip 字节，由 ResponseCompression.precompress 创建、write 写出。
+ * 低于压缩阈值或压缩后不变小时 gzip 为 null，总是按原样发送。
+ */
+public final class PrecompressedBody {
+
+    private final String contentType;
+    private final byte[] identity;
+    private final byte[] gzip;
+
+    PrecompressedBody(String contentType, byte[] identity, byte[] gzip) {
+        this.contentType = contentType;
+        this.identity = identity;
+        this.gzip = gzip;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public byte[] getIdentity() {
+        return identity;
+    }
+
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    public boolean hasGzip() {
+        return gzip != null;
+    }
+
+    /**
+     * 两份字节合计占用的堆大小
+     */
+    public long sizeBytes() {
+        return identity.length + (gzip != null ? gzip.length : 0);
+    }
+}
@@ -0,0 +1,240 @@
+package com.helloworld.compression;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 响应压缩策略
+ *
+ * 应用以 WAR 部署在外部 Tomcat 上，server.compression.* 只对内嵌容器生效，所以压缩在应用内完成：
+ * - 动态响应由 CompressionFilter 边写边压（gzip + 同步刷新），不在内存里攒完整响应
+ * - 可缓存的载荷（首页、报表下载）用 precompress 以最高压缩级别压一次，之后每次请求直接写出缓存的字节
+ * 只有响应不小于 min-response-size、客户端 Accept-Encoding 接受 gzip、类型在 mime-types 中才压缩。
+ *
+ * 配置（均可选）：
+ *   compression.enabled=true
+ *   compression.min-response-size=1024
+ *   compression.level=1                    (流式压缩级别，1 最省 CPU，9 压得最小)
+ *   compression.mime-types=text/html,text/plain,text/css,text/csv,application/json,application/x-ndjson,application/javascript,application/xml
+ */
+@Component
+public class ResponseCompression {
+
+    public static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final boolean enabled;
+    private final int minResponseSize;
+    private final int level;
+    private final String[] mimeTypes;
+    private final CompressionMetrics metrics;
+
+    @Autowired
+    public ResponseCompression(
+            @Value("${compression.enabled:true}") boolean enabled,
+            @Value("${compression.min-response-size:1024}") int minResponseSize,
+            @Value("${compression.level:1}") int level,
+            @Value("${compression.mime-types:text/html,text/plain,text/css,text/csv,application/json,application/x-ndjson,application/javascript,application/xml}") String[] mimeTypes,
+            CompressionMetrics metrics) {
+        this.enabled = enabled;
+        this.minResponseSize = minResponseSize;
+        this.level = level;
+        this.mimeTypes = mimeTypes;
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMinResponseSize() {
+        return minResponseSize;
+    }
+
+    CompressionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * 客户端是否接受 gzip：显式的 gzip 优先于 *，q=0 表示拒绝
+     */
+    public boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String token : acceptEncoding.split(",")) {
+            int semicolon = token.indexOf(';');
+            String coding = (semicolon < 0 ? token : token.substring(0, semicolon)).trim();
+            boolean allowed = semicolon < 0 || quality(token.substring(semicolon + 1)) > 0;
+            if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+                return allowed;
+            }
+            if (coding.equals("*")) {
+                wildcard = allowed;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * 内容类型是否值得压缩（忽略 charset 等参数，+json / +xml 结构化后缀也算）
+     */
+    public boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String mimeType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim()
+                .toLowerCase(Locale.ROOT);
+        if (mimeType.endsWith("+json") || mimeType.endsWith("+xml")) {
+            return true;
+        }
+        for (String candidate : mimeTypes) {
+            if (candidate.trim().equals(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 以最高压缩级别压缩一份会被反复发送的载荷，CPU 只在这里付一次
+     */
+    public PrecompressedBody precompress(byte[] body, String contentType) {
+        if (!enabled || body.length < minResponseSize) {
+            return new PrecompressedBody(contentType, body, null);
+        }
+        long cpuStart = metrics.cpuNanos();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+        try (GzipStream gzip = new GzipStream(buffer, Deflater.BEST_COMPRESSION)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] compressed = buffer.toByteArray();
+        metrics.recordPrecompression(metrics.cpuNanos() - cpuStart);
+        return new PrecompressedBody(contentType, body, compressed.length < body.length ? compressed : null);
+    }
+
+    /**
+     * 按 Accept-Encoding 写出预压缩载荷，带准确的 Content-Length
+     */
+    public void write(PrecompressedBody body, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        CompressingResponseWrapper wrapper = WebUtils.getNativeResponse(response, CompressingResponseWrapper.class);
+        if (wrapper != null) {
+            wrapper.markPrecompressed();
+        }
+        byte[] bytes = body.getIdentity();
+        response.setContentType(body.getContentType());
+        if (body.hasGzip()) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (acceptsGzip(request)) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+                bytes = body.getGzip();
+                metrics.recordPrecompressedHit(body.getIdentity().length, bytes.length);
+            } else {
+                metrics.recordOutcome(CompressionMetrics.Outcome.NOT_ACCEPTED);
+            }
+        }
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+    }
+
+    /**
+     * 原样写出其他节点已按本请求的 Accept-Encoding 编码好的响应体，不在本节点重复压缩
+     *
+     * @param contentEncoding 上游的 Content-Encoding，未编码时为 null
+     * @param contentLength   上游的 Content-Length，未知时为 -1
+     */
+    public void relay(InputStream body, String contentType, String contentEncoding, long contentLength,
+                      HttpServletResponse response) throws IOException {
+        CompressingResponseWrapper wrapper = WebUtils.getNativeResponse(response, CompressingResponseWrapper.class);
+        if (wrapper != null) {
+            wrapper.markPrecompressed();
+        }
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        if (contentEncoding != null) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+        }
+        if (contentLength >= 0) {
+            response.setContentLengthLong(contentLength);
+        }
+        OutputStream out = response.getOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = body.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /**
+     * 流式压缩用的 gzip 流：按配置级别压缩，flush 时同步刷新，已写出的数据能立即到达客户端
+     */
+    GzipStream streamingGzip(OutputStream out) throws IOException {
+        return new GzipStream(out, level);
+    }
+
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 可设置压缩级别、可在不关闭下游流的情况下释放 Deflater 的 GZIPOutputStream
+     */
+    static class GzipStream extends GZIPOutputStream {
+
+        GzipStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE, true);
+            def.setLevel(level);
+        }
+
+        /**
+         * 写出 gzip 尾部并释放本地内存；下游的 Servlet 输出流交给容器关闭
+         */
+        void finishAndRelease() throws IOException {
+            try {
+                finish();
+            } finally {
+                def.end();
+            }
+        }
+
+        /**
+         * 丢弃未写出的压缩状态（响应被重置时）
+         */
+        void release() {
+            def.end();
+        }
+    }
+}
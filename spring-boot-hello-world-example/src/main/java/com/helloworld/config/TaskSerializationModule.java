@@ -0,0 +1,178 @@
+package com.helloworld.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.helloworld.controller.TaskController.TaskStats;
+import com.helloworld.model.ApiResponse;
+import com.helloworld.model.Task;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Task、ApiResponse、TaskStats 的手写序列化器
+ *
+ * 默认的 BeanSerializer 每个对象都要经过属性反射访问和 Date 的格式化；
+ * 这里直接按固定顺序写字段，字段名和枚举值使用预先编码的 SerializedString，
+ * 日期统一写成 epoch 毫秒。字段名和顺序与原来的 JSON 一致，但日期原来是 Spring 默认的
+ * ISO-8601 字符串，JSON 客户端看到的格式变了。值为 null 的字段照样写出 null，
+ * 与 static/schema/task-api.cddl 一致。
+ *
+ * 作为 Module Bean 由 Spring Boot 注册到 Jackson2ObjectMapperBuilder，
+ * JSON、CBOR、Smile 三种格式都生效。
+ */
+@Component
+public class TaskSerializationModule extends SimpleModule {
+
+    public TaskSerializationModule() {
+        super("TaskSerializationModule");
+        addSerializer(Task.class, new TaskSerializer());
+        addSerializer(ApiResponse.class, new ApiResponseSerializer());
+        addSerializer(TaskStats.class, new TaskStatsSerializer());
+    }
+
+    static final class TaskSerializer extends StdSerializer<Task> {
+
+        private static final SerializedString ID = new SerializedString("id");
+        private static final SerializedString TITLE = new SerializedString("title");
+        private static final SerializedString DESCRIPTION = new SerializedString("description");
+        private static final SerializedString STATUS = new SerializedString("status");
+        private static final SerializedString PRIORITY = new SerializedString("priority");
+        private static final SerializedString CREATED_AT = new SerializedString("createdAt");
+        private static final SerializedString UPDATED_AT = new SerializedString("updatedAt");
+
+        private static final SerializedString[] STATUS_NAMES = enumNames(Task.TaskStatus.values());
+        private static final SerializedString[] PRIORITY_NAMES = enumNames(Task.TaskPriority.values());
+
+        TaskSerializer() {
+            super(Task.class);
+        }
+
+        @Override
+        public void serialize(Task task, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName(ID);
+            if (task.getId() != null) {
+                gen.writeNumber(task.getId());
+            } else {
+                gen.writeNull();
+            }
+            gen.writeFieldName(TITLE);
+            writeString(gen, task.getTitle());
+            gen.writeFieldName(DESCRIPTION);
+            writeString(gen, task.getDescription());
+            gen.writeFieldName(STATUS);
+            writeEnum(gen, task.getStatus(), STATUS_NAMES);
+            gen.writeFieldName(PRIORITY);
+            writeEnum(gen, task.getPriority(), PRIORITY_NAMES);
+            gen.writeFieldName(CREATED_AT);
+            writeDate(gen, task.getCreatedAt());
+            gen.writeFieldName(UPDATED_AT);
+            writeDate(gen, task.getUpdatedAt());
+            gen.writeEndObject();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static final class ApiResponseSerializer extends StdSerializer<ApiResponse> {
+
+        private static final SerializedString SUCCESS = new SerializedString("success");
+        private static final SerializedString MESSAGE = new SerializedString("message");
+        private static final SerializedString DATA = new SerializedString("data");
+        private static final SerializedString TOTAL = new SerializedString("total");
+
+        ApiResponseSerializer() {
+            super(ApiResponse.class);
+        }
+
+        @Override
+        public void serialize(ApiResponse response, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName(SUCCESS);
+            gen.writeBoolean(response.isSuccess());
+            gen.writeFieldName(MESSAGE);
+            writeString(gen, response.getMessage());
+            gen.writeFieldName(DATA);
+            // data 的类型各接口不同，交给 provider 按运行时类型查找（已缓存的）序列化器
+            provider.defaultSerializeValue(response.getData(), gen);
+            gen.writeFieldName(TOTAL);
+            if (response.getTotal() != null) {
+                gen.writeNumber(response.getTotal());
+            } else {
+                gen.writeNull();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    static final class TaskStatsSerializer extends StdSerializer<TaskStats> {
+
+        private static final SerializedString TOTAL = new SerializedString("total");
+        private static final SerializedString PENDING = new SerializedString("pending");
+        private static final SerializedString IN_PROGRESS = new SerializedString("inProgress");
+        private static final SerializedString COMPLETED = new SerializedString("completed");
+        private static final SerializedString HIGH_PRIORITY = new SerializedString("highPriority");
+        private static final SerializedString MEDIUM_PRIORITY = new SerializedString("mediumPriority");
+        private static final SerializedString LOW_PRIORITY = new SerializedString("lowPriority");
+
+        TaskStatsSerializer() {
+            super(TaskStats.class);
+        }
+
+        @Override
+        public void serialize(TaskStats stats, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject();
+            gen.writeFieldName(TOTAL);
+            gen.writeNumber(stats.total);
+            gen.writeFieldName(PENDING);
+            gen.writeNumber(stats.pending);
+            gen.writeFieldName(IN_PROGRESS);
+            gen.writeNumber(stats.inProgress);
+            gen.writeFieldName(COMPLETED);
+            gen.writeNumber(stats.completed);
+            gen.writeFieldName(HIGH_PRIORITY);
+            gen.writeNumber(stats.highPriority);
+            gen.writeFieldName(MEDIUM_PRIORITY);
+            gen.writeNumber(stats.mediumPriority);
+            gen.writeFieldName(LOW_PRIORITY);
+            gen.writeNumber(stats.lowPriority);
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeString(JsonGenerator gen, String value) throws IOException {
+        if (value != null) {
+            gen.writeString(value);
+        } else {
+            gen.writeNull();
+        }
+    }
+
+    private static void writeEnum(JsonGenerator gen, Enum<?> value, SerializedString[] names) throws IOException {
+        if (value != null) {
+            gen.writeString(names[value.ordinal()]);
+        } else {
+            gen.writeNull();
+        }
+    }
+
+    private static void writeDate(JsonGenerator gen, Date value) throws IOException {
+        if (value != null) {
+            gen.writeNumber(value.getTime());
+        } else {
+            gen.writeNull();
+        }
+    }
+
+    private static SerializedString[] enumNames(Enum<?>[] values) {
+        SerializedString[] names = new SerializedString[values.length];
+        for (Enum<?> value : values) {
+            names[value.ordinal()] = new SerializedString(value.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,37 @@
+package com.helloworld.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * 二进制响应格式
+ *
+ * 除 JSON 外，所有返回 ApiResponse 的接口都按 Accept 头协商输出：
+ * - application/cbor（RFC 8949）
+ * - application/x-jackson-smile
+ * 请求体同样按 Content-Type 解析。字段与 JSON 完全一致，结构见 /schema/task-api.cddl。
+ *
+ * 两个转换器都用 Spring Boot 的 Jackson2ObjectMapperBuilder（每次注入一个新实例）构建，
+ * spring.jackson.* 配置和注册的 Module 对三种格式同样生效。
+ */
+@Configuration
+public class WireFormatConfig {
+
+    public static final String CBOR_VALUE = "application/cbor";
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
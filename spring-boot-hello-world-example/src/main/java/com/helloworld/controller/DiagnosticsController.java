@@ -0,0 +1,157 @@
+package com.helloworld.controller;
+
+import com.helloworld.compression.CompressionMetrics;
+import com.helloworld.exception.ErrorReporter;
+import com.helloworld.metrics.AllocationProfile;
+import com.helloworld.metrics.JvmTelemetry;
+import com.helloworld.model.ApiResponse;
+import com.helloworld.replication.ReplicationService;
+import com.helloworld.service.BulkheadService;
+import com.helloworld.service.TaskArchiveService;
+import com.helloworld.service.TaskChangeFeed;
+import com.helloworld.service.WarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 诊断接口，供事故排查使用
+ */
+@RestController
+@RequestMapping("/api/diagnostics")
+public class DiagnosticsController {
+
+    private final JvmTelemetry jvmTelemetry;
+    private final AllocationProfile allocationProfile;
+    private final BulkheadService bulkheadService;
+    private final CompressionMetrics compressionMetrics;
+    private final ErrorReporter errorReporter;
+    private final ReplicationService replicationService;
+    private final TaskChangeFeed taskChangeFeed;
+    private final WarmupService warmupService;
+    private final TaskArchiveService taskArchiveService;
+
+    @Autowired
+    public DiagnosticsController(JvmTelemetry jvmTelemetry, AllocationProfile allocationProfile,
+                                 BulkheadService bulkheadService, CompressionMetrics compressionMetrics,
+                                 ErrorReporter errorReporter, ReplicationService replicationService,
+                                 TaskChangeFeed taskChangeFeed, WarmupService warmupService,
+                                 TaskArchiveService taskArchiveService) {
+        this.jvmTelemetry = jvmTelemetry;
+        this.allocationProfile = allocationProfile;
+        this.bulkheadService = bulkheadService;
+        this.compressionMetrics = compressionMetrics;
+        this.errorReporter = errorReporter;
+        this.replicationService = replicationService;
+        this.taskChangeFeed = taskChangeFeed;
+        this.warmupService = warmupService;
+        this.taskArchiveService = taskArchiveService;
+    }
+
+    /**
+     * GC 停顿分布、堆内存池、最近 GC 事件、老年代占用趋势、分配速率
+     * GET /api/diagnostics/jvm
+     */
+    @GetMapping("/jvm")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> jvm() {
+        return ResponseEntity.ok(ApiResponse.success(jvmTelemetry.snapshot()));
+    }
+
+    /**
+     * 分配大户排行
+     * GET /api/diagnostics/allocations?top=10&sort=total
+     * 
+     * @param sort total（总分配量）/ avg（单请求平均）/ max（单请求最大）
+     */
+    @GetMapping("/allocations")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> allocations(
+            @RequestParam(defaultValue = "10") int top,
+            @RequestParam(defaultValue = "total") String sort) {
+        
+        List<Map<String, Object>> heavyHitters = allocationProfile.topN(top, sort);
+        
+        Map<String, Object> result = new HashMap<>();
+        result.put("since", new Date(allocationProfile.getResetAt()));
+        result.put("allocationRateMBPerSec", jvmTelemetry.getAllocationRateBytesPerSec() / (1024 * 1024));
+        result.put("heavyHitters", heavyHitters);
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    /**
+     * 清空分配统计，从现在开始重新累计
+     * DELETE /api/diagnostics/allocations
+     */
+    @DeleteMapping("/allocations")
+    public ResponseEntity<ApiResponse<Void>> resetAllocations() {
+        allocationProfile.reset();
+        return ResponseEntity.ok(ApiResponse.success(null, "Allocation profile reset"));
+    }
+
+    /**
+     * 各舱壁的线程、队列、饱和度和拒绝数
+     * GET /api/diagnostics/bulkheads
+     */
+    @GetMapping("/bulkheads")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> bulkheads() {
+        return ResponseEntity.ok(ApiResponse.success(bulkheadService.getStats()));
+    }
+
+    /**
+     * 响应压缩结果分布、压缩前后字节数、CPU 耗时和每省 1KB 的 CPU 成本
+     * GET /api/diagnostics/compression
+     */
+    @GetMapping("/compression")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> compression() {
+        return ResponseEntity.ok(ApiResponse.success(compressionMetrics.getStats()));
+    }
+
+    /**
+     * 各类错误的次数和被限流省略的日志条数
+     * GET /api/diagnostics/errors
+     */
+    @GetMapping("/errors")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> errors() {
+        return ResponseEntity.ok(ApiResponse.success(errorReporter.getStats()));
+    }
+
+    /**
+     * 复制状态：各对端积压、最老未确认变更、发送失败数，按源节点统计的复制延迟
+     * GET /api/diagnostics/replication
+     */
+    @GetMapping("/replication")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> replication() {
+        return ResponseEntity.ok(ApiResponse.success(replicationService.getStats()));
+    }
+
+    /**
+     * 变更推送：订阅数、日志头序号、合并掉的变更数、因卡住或断点过期被断开的订阅数
+     * GET /api/diagnostics/changes
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> changes() {
+        return ResponseEntity.ok(ApiResponse.success(taskChangeFeed.getStats()));
+    }
+
+    /**
+     * 启动预热：冷启动耗时、预热耗时和轮次、每轮合成请求平均耗时的变化曲线
+     * GET /api/diagnostics/warmup
+     */
+    @GetMapping("/warmup")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> warmup() {
+        return ResponseEntity.ok(ApiResponse.success(warmupService.getStats()));
+    }
+
+    /**
+     * 任务归档：归档轮次和移出的任务数，段文件数、压缩后字节数、回落到归档的查找次数
+     * GET /api/diagnostics/archive
+     */
+    @GetMapping("/archive")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> archive() {
+        return ResponseEntity.ok(ApiResponse.success(taskArchiveService.getStats()));
+    }
+}
@@ -0,0 +1,94 @@
+package com.helloworld.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.exception.ErrorReporter;
+import com.helloworld.exception.ErrorReporter.ErrorType;
+import com.helloworld.model.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.servlet.error.ErrorController;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * 容器错误页（/error）
+ *
+ * 没有匹配到任何接口的请求（扫描器探测 /wp-admin、/.env 之类）由静态资源处理器 sendError(404)，
+ * 再经容器转发到这里。替换 Spring Boot 默认的 BasicErrorController：后者每次都要收集时间戳、
+ * 异常、消息等错误属性并序列化。这里按状态码直接写出启动时序列化好的 JSON 字节，
+ * 不做内容协商，不回显请求路径。
+ */
+@RestController
+public class ErrorPageController implements ErrorController {
+
+    private static final String ERROR_PATH = "/error";
+
+    private final ObjectMapper objectMapper;
+    private final ErrorReporter errorReporter;
+
+    private byte[] badRequest;
+    private byte[] notFound;
+    private byte[] methodNotAllowed;
+    private byte[] internalError;
+    private byte[] requestFailed;
+
+    @Autowired
+    public ErrorPageController(ObjectMapper objectMapper, ErrorReporter errorReporter) {
+        this.objectMapper = objectMapper;
+        this.errorReporter = errorReporter;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        badRequest = serialize("Bad request");
+        notFound = serialize("Endpoint not found");
+        methodNotAllowed = serialize("Method is not supported for this endpoint");
+        internalError = serialize("Internal server error");
+        requestFailed = serialize("Request failed");
+    }
+
+    @RequestMapping(ERROR_PATH)
+    public ResponseEntity<byte[]> error(HttpServletRequest request) {
+        Object code = request.getAttribute(RequestDispatcher.ERROR_STATUS_CODE);
+        int status = code instanceof Integer ? (Integer) code : 500;
+
+        ErrorType type;
+        byte[] body;
+        if (status == 404) {
+            type = ErrorType.NOT_FOUND;
+            body = notFound;
+        } else if (status == 405) {
+            type = ErrorType.METHOD_NOT_ALLOWED;
+            body = methodNotAllowed;
+        } else if (status == 400) {
+            type = ErrorType.OTHER;
+            body = badRequest;
+        } else if (status >= 500) {
+            type = ErrorType.INTERNAL;
+            body = internalError;
+        } else {
+            type = ErrorType.OTHER;
+            body = requestFailed;
+        }
+        errorReporter.report(type, status, request, (Throwable) request.getAttribute(RequestDispatcher.ERROR_EXCEPTION));
+
+        return ResponseEntity.status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    @Override
+    public String getErrorPath() {
+        return ERROR_PATH;
+    }
+
+    private byte[] serialize(String message) throws IOException {
+        return objectMapper.writeValueAsBytes(ApiResponse.error(message));
+    }
+}
@@ -1,10 +1,30 @@
 package com.helloworld.controller;
 
+import com.helloworld.exception.InvalidRequestException;
+import com.helloworld.metrics.JvmTelemetry;
 import com.helloworld.model.ApiResponse;
+import com.helloworld.model.ExportJob;
+import com.helloworld.service.AdmissionControlService;
+import com.helloworld.service.AdmissionControlService.Permit;
+import com.helloworld.service.ExportJobService;
+import com.helloworld.service.BulkheadService;
+import com.helloworld.service.TaskRollupService;
+import com.helloworld.service.TaskRollupService.RollupReport;
+import com.helloworld.service.TaskRollupService.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 导出控制器
@@ -25,6 +45,41 @@ import java.util.*;
 @RequestMapping("/api/export")
 public class ExportController {
 
+    private static final String TENANT_HEADER = "X-Tenant-Id";
+
+    private static final InvalidRequestException INVALID_JOB_FIELD = new InvalidRequestException(
+            "Invalid export job. type, format and dateRange must be strings");
+    private static final InvalidRequestException INVALID_RECORDS = new InvalidRequestException(
+            "Invalid export job. records must be a number");
+    private static final InvalidRequestException INVALID_TYPE = new InvalidRequestException(
+            "Invalid export job. type must be tasks or reports");
+    private static final InvalidRequestException INVALID_FORMAT = new InvalidRequestException(
+            "Invalid export job. format must be csv, json or cbor, and cbor is only available for tasks");
+    private static final InvalidRequestException INVALID_DATE_RANGE = new InvalidRequestException(
+            "Invalid export job. dateRange must be last_week, last_month, last_quarter or last_year");
+
+    /**
+     * 批量导出每种类型单独分配缓冲区（10~19MB），同一时刻只持有一个
+     */
+    private static final int BATCH_BUFFER_MAX_MB = 20;
+
+    private final ExportJobService exportJobService;
+    private final AdmissionControlService admissionControl;
+    private final JvmTelemetry jvmTelemetry;
+    private final BulkheadService bulkheadService;
+    private final TaskRollupService taskRollupService;
+
+    @Autowired
+    public ExportController(ExportJobService exportJobService, AdmissionControlService admissionControl,
+                            JvmTelemetry jvmTelemetry, BulkheadService bulkheadService,
+                            TaskRollupService taskRollupService) {
+        this.exportJobService = exportJobService;
+        this.admissionControl = admissionControl;
+        this.jvmTelemetry = jvmTelemetry;
+        this.bulkheadService = bulkheadService;
+        this.taskRollupService = taskRollupService;
+    }
+
     /**
      * 导出任务数据
      * 
@@ -32,82 +87,72 @@ public class ExportController {
      * @param records 导出记录数
      */
     @GetMapping("/tasks")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> exportTasks(
+    public DeferredResult<ResponseEntity<ApiResponse<Map<String, Object>>>> exportTasks(
             @RequestParam(defaultValue = "csv") String format,
             @RequestParam(defaultValue = "10000") int records) {
+        return bulkheadService.submit(BulkheadService.EXPORT, () -> {
+            long startTime = System.currentTimeMillis();
         
-        long startTime = System.currentTimeMillis();
-        
-        // 根据记录数计算需要的内存
-        // 假设每条记录约 1KB，加上格式化开销
-        int dataSizeMB = Math.max(1, records / 1000);
+            // 根据记录数计算需要的内存
+            // 假设每条记录约 1KB，加上格式化开销
+            int dataSizeMB = Math.max(1, records / 1000);
         
-        // 分配临时内存用于数据组装
-        // 这些对象在方法结束后可以被 GC 回收
-        byte[] exportBuffer = allocateExportBuffer(dataSizeMB);
-        
-        // 模拟数据处理（CPU 时间）
-        processExportData(exportBuffer);
+            try (Permit permit = admissionControl.acquire("export-tasks", dataSizeMB)) {
+                // 分配临时内存用于数据组装
+                // 这些对象在方法结束后可以被 GC 回收
+                byte[] exportBuffer = allocateExportBuffer(dataSizeMB);
+            
+                // 模拟数据处理（CPU 时间）
+                processExportData(exportBuffer);
+            }
         
-        long elapsed = System.currentTimeMillis() - startTime;
+            long elapsed = System.currentTimeMillis() - startTime;
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("format", format);
-        result.put("records", records);
-        result.put("dataSizeMB", dataSizeMB);
-        result.put("processingTimeMs", elapsed);
-        result.put("exportId", "EXP-" + UUID.randomUUID().toString().substring(0, 8));
-        result.put("status", "completed");
+            Map<String, Object> result = new HashMap<>();
+            result.put("format", format);
+            result.put("records", records);
+            result.put("dataSizeMB", dataSizeMB);
+            result.put("processingTimeMs", elapsed);
+            result.put("exportId", "EXP-" + UUID.randomUUID().toString().substring(0, 8));
+            result.put("status", "completed");
         
-        // exportBuffer 在这里离开作用域，可以被 GC 回收
-        return ResponseEntity.ok(ApiResponse.success(result, "Export completed"));
+            // exportBuffer 在这里离开作用域，可以被 GC 回收
+            return ResponseEntity.ok(ApiResponse.success(result, "Export completed"));
+        });
     }
 
     /**
-     * 导出报表数据（更大的数据量）
+     * 导出报表数据：按日期范围读取汇总桶，last_week 按小时，其余按天
      * 
      * @param dateRange 日期范围 (last_week/last_month/last_quarter/last_year)
      */
     @GetMapping("/reports")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> exportReports(
+    public DeferredResult<ResponseEntity<ApiResponse<Map<String, Object>>>> exportReports(
             @RequestParam(defaultValue = "json") String format,
             @RequestParam(defaultValue = "last_month") String dateRange) {
+        return bulkheadService.submit(BulkheadService.EXPORT, () -> {
+            long startTime = System.currentTimeMillis();
         
-        long startTime = System.currentTimeMillis();
-        
-        // 根据日期范围决定数据量
-        int dataSizeMB;
-        switch (dateRange) {
-            case "last_year":
-                dataSizeMB = 50;
-                break;
-            case "last_quarter":
-                dataSizeMB = 30;
-                break;
-            case "last_month":
-                dataSizeMB = 15;
-                break;
-            case "last_week":
-            default:
-                dataSizeMB = 5;
-        }
-        
-        // 分配临时内存
-        byte[] exportBuffer = allocateExportBuffer(dataSizeMB);
-        
-        // 模拟数据处理
-        processExportData(exportBuffer);
+            // 汇总桶随每次变更增量维护，这里只读取范围内的桶（last_year 为 365 个），不扫描任务
+            RollupReport report = taskRollupService.report(dateRange);
+            List<Map<String, Object>> rows = new ArrayList<>(report.getRows().size());
+            for (Row row : report.getRows()) {
+                rows.add(row.toMap());
+            }
         
-        long elapsed = System.currentTimeMillis() - startTime;
+            long elapsed = System.currentTimeMillis() - startTime;
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("format", format);
-        result.put("dateRange", dateRange);
-        result.put("dataSizeMB", dataSizeMB);
-        result.put("processingTimeMs", elapsed);
-        result.put("status", "completed");
+            Map<String, Object> result = new HashMap<>();
+            result.put("format", format);
+            result.put("dateRange", report.getDateRange());
+            result.put("granularity", report.getGranularity());
+            result.put("summary", report.summary());
+            result.put("rows", rows);
+            result.put("processingTimeMs", elapsed);
+            result.put("status", "completed");
         
-        return ResponseEntity.ok(ApiResponse.success(result));
+            return ResponseEntity.ok(ApiResponse.success(result));
+        });
     }
 
     /**
@@ -116,43 +161,46 @@ public class ExportController {
      * 这个接口会分配更多内存，更容易触发 GC
      */
     @PostMapping("/batch")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> batchExport(
+    public DeferredResult<ResponseEntity<ApiResponse<Map<String, Object>>>> batchExport(
             @RequestBody Map<String, Object> request) {
+        return bulkheadService.submit(BulkheadService.EXPORT, () -> {
+            long startTime = System.currentTimeMillis();
         
-        long startTime = System.currentTimeMillis();
+            Object typesObj = request.getOrDefault("types", Arrays.asList("tasks", "reports"));
+            @SuppressWarnings("unchecked")
+            List<String> types = (List<String>) typesObj;
         
-        Object typesObj = request.getOrDefault("types", Arrays.asList("tasks", "reports"));
-        @SuppressWarnings("unchecked")
-        List<String> types = (List<String>) typesObj;
+            int totalSizeMB = 0;
+            List<Map<String, Object>> exportResults = new ArrayList<>();
         
-        int totalSizeMB = 0;
-        List<Map<String, Object>> exportResults = new ArrayList<>();
+            try (Permit permit = admissionControl.acquire("export-batch", BATCH_BUFFER_MAX_MB)) {
+                for (String type : types) {
+                    // 每种类型分配独立的缓冲区
+                    int sizeMB = 10 + new Random().nextInt(10);
+                    byte[] buffer = allocateExportBuffer(sizeMB);
+                    processExportData(buffer);
+                    totalSizeMB += sizeMB;
+                
+                    Map<String, Object> typeResult = new HashMap<>();
+                    typeResult.put("type", type);
+                    typeResult.put("sizeMB", sizeMB);
+                    typeResult.put("exportId", "BATCH-" + type.toUpperCase() + "-" + System.currentTimeMillis());
+                    exportResults.add(typeResult);
+                
+                    // buffer 在每次循环结束后可以被 GC
+                }
+            }
         
-        for (String type : types) {
-            // 每种类型分配独立的缓冲区
-            int sizeMB = 10 + new Random().nextInt(10);
-            byte[] buffer = allocateExportBuffer(sizeMB);
-            processExportData(buffer);
-            totalSizeMB += sizeMB;
-            
-            Map<String, Object> typeResult = new HashMap<>();
-            typeResult.put("type", type);
-            typeResult.put("sizeMB", sizeMB);
-            typeResult.put("exportId", "BATCH-" + type.toUpperCase() + "-" + System.currentTimeMillis());
-            exportResults.add(typeResult);
-            
-            // buffer 在每次循环结束后可以被 GC
-        }
-        
-        long elapsed = System.currentTimeMillis() - startTime;
+            long elapsed = System.currentTimeMillis() - startTime;
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("exports", exportResults);
-        result.put("totalSizeMB", totalSizeMB);
-        result.put("processingTimeMs", elapsed);
-        result.put("status", "completed");
+            Map<String, Object> result = new HashMap<>();
+            result.put("exports", exportResults);
+            result.put("totalSizeMB", totalSizeMB);
+            result.put("processingTimeMs", elapsed);
+            result.put("status", "completed");
         
-        return ResponseEntity.ok(ApiResponse.success(result, "Batch export completed"));
+            return ResponseEntity.ok(ApiResponse.success(result, "Batch export completed"));
+        });
     }
 
     /**
@@ -162,35 +210,200 @@ public class ExportController {
      * @param iterations 分配次数
      */
     @GetMapping("/stress")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> stressTest(
+    public DeferredResult<ResponseEntity<ApiResponse<Map<String, Object>>>> stressTest(
             @RequestParam(defaultValue = "10") int sizeMB,
             @RequestParam(defaultValue = "5") int iterations) {
+        return bulkheadService.submit(BulkheadService.EXPORT, () -> {
+            long startTime = System.currentTimeMillis();
+            long gcCountBefore = jvmTelemetry.getTotalGcCount();
+            long gcTimeBefore = jvmTelemetry.getTotalGcTimeMs();
+            int totalAllocated = 0;
+        
+            // 同一时刻只持有一个 sizeMB 的缓冲区，按单次分配量申请许可
+            try (Permit permit = admissionControl.acquire("export-stress", sizeMB)) {
+                for (int i = 0; i < iterations; i++) {
+                    // 分配临时内存
+                    byte[] buffer = allocateExportBuffer(sizeMB);
+                    processExportData(buffer);
+                    totalAllocated += sizeMB;
+                    // buffer 可以被 GC，但如果分配太快，GC 来不及回收
+                }
+            }
+        
+            long elapsed = System.currentTimeMillis() - startTime;
+        
+            // 获取 GC 信息
+            Runtime runtime = Runtime.getRuntime();
+            long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        
+            Map<String, Object> result = new HashMap<>();
+            result.put("sizeMB", sizeMB);
+            result.put("iterations", iterations);
+            result.put("totalAllocatedMB", totalAllocated);
+            result.put("processingTimeMs", elapsed);
+            result.put("currentHeapUsedMB", heapUsed / (1024 * 1024));
+            result.put("gcCountDuringTest", jvmTelemetry.getTotalGcCount() - gcCountBefore);
+            result.put("gcTimeDuringTestMs", jvmTelemetry.getTotalGcTimeMs() - gcTimeBefore);
+        
+            return ResponseEntity.ok(ApiResponse.success(result));
+        });
+    }
+
+    /**
+     * 提交异步导出任务，立即返回 exportId
+     * 
+     * POST /api/export/jobs
+     * {"type": "reports", "format": "csv", "dateRange": "last_year"}
+     * {"type": "tasks", "format": "json", "records": 10000}
+     * {"type": "tasks", "format": "cbor", "records": 10000}   (CBOR 序列，每个任务一个 map)
+     * 
+     * 同一租户（X-Tenant-Id 请求头）排队任务过多时返回 429
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<ApiResponse<ExportJob>> submitJob(
+            @RequestHeader(value = TENANT_HEADER, defaultValue = "default") String tenant,
+            @RequestBody Map<String, Object> request) {
         
-        long startTime = System.currentTimeMillis();
-        int totalAllocated = 0;
+        Object type = request.getOrDefault("type", "reports");
+        Object format = request.getOrDefault("format", "csv");
+        Object dateRange = request.getOrDefault("dateRange", "last_month");
+        Object records = request.getOrDefault("records", 10000);
+        if (!(type instanceof String) || !(format instanceof String) || !(dateRange instanceof String)) {
+            throw INVALID_JOB_FIELD;
+        }
+        if (!(records instanceof Number)) {
+            throw INVALID_RECORDS;
+        }
+        if (!ExportJobService.isKnownType((String) type)) {
+            throw INVALID_TYPE;
+        }
+        if (!ExportJobService.supports((String) type, (String) format)) {
+            throw INVALID_FORMAT;
+        }
+        if (!TaskRollupService.isKnownRange((String) dateRange)) {
+            throw INVALID_DATE_RANGE;
+        }
         
-        for (int i = 0; i < iterations; i++) {
-            // 分配临时内存
-            byte[] buffer = allocateExportBuffer(sizeMB);
-            processExportData(buffer);
-            totalAllocated += sizeMB;
-            // buffer 可以被 GC，但如果分配太快，GC 来不及回收
+        try {
+            ExportJob job = exportJobService.submit(tenant, (String) type, (String) format, (String) dateRange,
+                    ((Number) records).intValue());
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                    .body(ApiResponse.success(job, "Export job submitted"));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, "30")
+                    .body(ApiResponse.error(e.getMessage()));
         }
+    }
+
+    /**
+     * 当前租户的导出任务列表
+     */
+    @GetMapping("/jobs")
+    public ResponseEntity<ApiResponse<List<ExportJob>>> listJobs(
+            @RequestHeader(value = TENANT_HEADER, defaultValue = "default") String tenant) {
+        List<ExportJob> jobs = exportJobService.getJobs(tenant);
+        return ResponseEntity.ok(ApiResponse.success(jobs, jobs.size()));
+    }
+
+    /**
+     * 查询导出任务状态（已封存分片数、已写字节数）
+     */
+    @GetMapping("/jobs/{exportId}")
+    public ResponseEntity<ApiResponse<ExportJob>> getJob(
+            @RequestHeader(value = TENANT_HEADER, defaultValue = "default") String tenant,
+            @PathVariable String exportId) {
+        return exportJobService.getJob(tenant, exportId)
+                .map(job -> ResponseEntity.ok(ApiResponse.success(job)))
+                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Export job not found: " + exportId)));
+    }
+
+    /**
+     * 下载单个已封存的分片，任务仍在运行时也可以边写边取
+     */
+    @GetMapping("/jobs/{exportId}/chunks/{index}")
+    public ResponseEntity<StreamingResponseBody> downloadChunk(
+            @RequestHeader(value = TENANT_HEADER, defaultValue = "default") String tenant,
+            @PathVariable String exportId,
+            @PathVariable int index) throws IOException {
         
-        long elapsed = System.currentTimeMillis() - startTime;
+        ExportJob job = exportJobService.getJob(tenant, exportId).orElse(null);
+        Path chunk = job == null ? null : exportJobService.getChunk(job, index).orElse(null);
+        if (chunk == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(Files.size(chunk))
+                .body(out -> Files.copy(chunk, out));
+    }
+
+    /**
+     * 下载完整导出结果，支持 Range: bytes=start- / bytes=start-end 断点续传
+     */
+    @GetMapping("/jobs/{exportId}/download")
+    public ResponseEntity<StreamingResponseBody> download(
+            @RequestHeader(value = TENANT_HEADER, defaultValue = "default") String tenant,
+            @PathVariable String exportId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
         
-        // 获取 GC 信息
-        Runtime runtime = Runtime.getRuntime();
-        long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        ExportJob job = exportJobService.getJob(tenant, exportId).orElse(null);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (job.getStatus() != ExportJob.JobStatus.COMPLETED) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
         
-        Map<String, Object> result = new HashMap<>();
-        result.put("sizeMB", sizeMB);
-        result.put("iterations", iterations);
-        result.put("totalAllocatedMB", totalAllocated);
-        result.put("processingTimeMs", elapsed);
-        result.put("currentHeapUsedMB", heapUsed / (1024 * 1024));
+        long total = job.getTotalBytes();
+        long start = 0;
+        long end = total - 1;
+        boolean partial = false;
+        if (range != null && range.startsWith("bytes=") && range.indexOf(',') < 0) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            if (bounds.length != 2) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + total)
+                        .build();
+            }
+            try {
+                if (bounds[0].isEmpty()) {
+                    // bytes=-N 表示最后 N 个字节
+                    start = Math.max(0, total - Long.parseLong(bounds[1]));
+                } else {
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) {
+                        end = Math.min(end, Long.parseLong(bounds[1]));
+                    }
+                }
+                partial = true;
+            } catch (NumberFormatException e) {
+                // 非法 Range 按规范忽略，返回完整内容
+                start = 0;
+                end = total - 1;
+            }
+            if (partial && (start > end || start >= total)) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + total)
+                        .build();
+            }
+        }
         
-        return ResponseEntity.ok(ApiResponse.success(result));
+        final long from = start;
+        final long to = end;
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(partial ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK);
+        if (partial) {
+            builder.header(HttpHeaders.CONTENT_RANGE, "bytes " + from + "-" + to + "/" + total);
+        }
+        return builder.header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                // 提交时格式已限定为 csv/json/cbor，exportId 由服务端生成，文件名里不会有引号或分号
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + job.getExportId() + "." + job.getFormat() + "\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(to - from + 1)
+                .body(out -> exportJobService.writeRange(job, from, to, out));
     }
 
     /**
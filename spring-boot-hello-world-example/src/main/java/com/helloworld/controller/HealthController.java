@@ -1,21 +1,50 @@
 package com.helloworld.controller;
 
+import com.helloworld.health.ReadinessService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * 健康检查
+ *
+ * GET /health、/health/live：存活探针，进程能处理请求即返回固定字节，不做任何检查
+ * GET /health/ready：就绪探针，返回 ReadinessService 后台评估并缓存的结果，不就绪时 503
+ */
 @RestController
 public class HealthController {
 
-    @GetMapping("/health")
-    public Map<String, Object> health() {
-        Map<String, Object> response = new HashMap<>();
-        response.put("status", "UP");
-        response.put("timestamp", new Date());
-        return response;
+    private static final String CONTENT_TYPE = MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8";
+    private static final byte[] LIVE_BODY = "{\"status\":\"UP\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final ReadinessService readinessService;
+
+    @Autowired
+    public HealthController(ReadinessService readinessService) {
+        this.readinessService = readinessService;
+    }
+
+    @GetMapping({"/health", "/health/live"})
+    public void health(HttpServletResponse response) throws IOException {
+        write(response, HttpStatus.OK, LIVE_BODY);
     }
-}
 
+    @GetMapping("/health/ready")
+    public void ready(HttpServletResponse response) throws IOException {
+        ReadinessService.Snapshot snapshot = readinessService.getSnapshot();
+        write(response, snapshot.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE, snapshot.getBody());
+    }
+
+    private static void write(HttpServletResponse response, HttpStatus status, byte[] body) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
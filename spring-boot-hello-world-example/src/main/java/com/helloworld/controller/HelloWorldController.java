@@ -1,74 +1,139 @@
-package com.helloworld.controller;
-
-import com.helloworld.service.TaskService;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RestController;
-
-@RestController
-public class HelloWorldController {
-
-    @Autowired
-    private TaskService taskService;
-
-    @GetMapping("/")
-    public String hello() {
-        long taskCount = taskService.getTaskCount();
-        
-        StringBuilder html = new StringBuilder();
-        html.append("<!DOCTYPE html>");
-        html.append("<html><head>");
-        html.append("<meta charset='UTF-8'>");
-        html.append("<title>Task Manager API</title>");
-        html.append("<style>");
-        html.append("body { font-family: 'Segoe UI', Arial, sans-serif; max-width: 800px; margin: 50px auto; padding: 20px; background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); min-height: 100vh; }");
-        html.append(".container { background: white; padding: 40px; border-radius: 16px; box-shadow: 0 20px 60px rgba(0,0,0,0.3); }");
-        html.append("h1 { color: #667eea; margin-bottom: 10px; }");
-        html.append(".success { color: #28a745; font-size: 18px; margin-bottom: 30px; }");
-        html.append(".stats { background: #f8f9fa; padding: 20px; border-radius: 8px; margin: 20px 0; }");
-        html.append(".stats h3 { margin-top: 0; color: #495057; }");
-        html.append(".api-section { margin-top: 30px; }");
-        html.append(".api-section h3 { color: #495057; border-bottom: 2px solid #667eea; padding-bottom: 10px; }");
-        html.append(".endpoint { background: #f1f3f4; padding: 12px 15px; margin: 10px 0; border-radius: 6px; font-family: 'Consolas', monospace; }");
-        html.append(".method { display: inline-block; padding: 3px 8px; border-radius: 4px; color: white; font-size: 12px; font-weight: bold; margin-right: 10px; }");
-        html.append(".get { background: #28a745; }");
-        html.append(".post { background: #007bff; }");
-        html.append(".put { background: #ffc107; color: #333; }");
-        html.append(".delete { background: #dc3545; }");
-        html.append("</style>");
-        html.append("</head><body>");
-        html.append("<div class='container'>");
-        html.append("<h1>🚀 Task Manager API</h1>");
-        html.append("<p class='success'>✅ Congratulations! You have successfully deployed the Spring Boot Application.</p>");
-        
-        // 统计信息
-        html.append("<div class='stats'>");
-        html.append("<h3>📊 Current Status</h3>");
-        html.append("<p><strong>Total Tasks:</strong> ").append(taskCount).append("</p>");
-        html.append("<p><strong>Server Status:</strong> <span style='color: #28a745;'>● Running</span></p>");
-        html.append("</div>");
-        
-        // API 文档
-        html.append("<div class='api-section'>");
-        html.append("<h3>📖 Available API Endpoints</h3>");
-        
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/health - Health check</div>");
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/info - Application info</div>");
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks - Get all tasks</div>");
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks/{id} - Get task by ID</div>");
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks/stats - Get task statistics</div>");
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks?status=PENDING - Filter by status</div>");
-        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks?priority=HIGH - Filter by priority</div>");
-        html.append("<div class='endpoint'><span class='method post'>POST</span>/api/tasks - Create new task</div>");
-        html.append("<div class='endpoint'><span class='method put'>PUT</span>/api/tasks/{id} - Update task</div>");
-        html.append("<div class='endpoint'><span class='method delete'>DELETE</span>/api/tasks/{id} - Delete task</div>");
-        
-        html.append("</div>");
-        
-        html.append("<p style='margin-top: 30px; color: #6c757d; font-size: 14px;'>Deployed via GitHub Actions + AWS CodeDeploy</p>");
-        html.append("</div>");
-        html.append("</body></html>");
-        
-        return html.toString();
-    }
-}
+package com.helloworld.controller;
+
+import com.helloworld.compression.PrecompressedBody;
+import com.helloworld.compression.ResponseCompression;
+import com.helloworld.service.TaskService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 首页
+ *
+ * 页面只有任务数是动态的：启动时把模板渲染一次，按任务数占位符切成前后两段字节，
+ * 拼好的页面连同 gzip 版本按任务数缓存，任务数不变时直接写出缓存的字节，并带上准确的 Content-Length。
+ * ALB 健康检查和用户访问都会频繁命中这里，不再每次拼接、压缩约 4KB 的 HTML。
+ */
+@RestController
+public class HelloWorldController {
+
+    private static final String TASK_COUNT_PLACEHOLDER = "{{taskCount}}";
+    private static final String CONTENT_TYPE = MediaType.TEXT_HTML_VALUE + ";charset=UTF-8";
+
+    private static final byte[] PAGE_HEAD;
+    private static final byte[] PAGE_TAIL;
+
+    static {
+        String page = renderTemplate();
+        int split = page.indexOf(TASK_COUNT_PLACEHOLDER);
+        PAGE_HEAD = page.substring(0, split).getBytes(StandardCharsets.UTF_8);
+        PAGE_TAIL = page.substring(split + TASK_COUNT_PLACEHOLDER.length()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Autowired
+    private TaskService taskService;
+
+    @Autowired
+    private ResponseCompression responseCompression;
+
+    /**
+     * 最近一次渲染的页面，任务数变化时重新拼接并压缩
+     */
+    private volatile CachedPage cachedPage;
+
+    @GetMapping("/")
+    public void hello(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long taskCount = taskService.getTaskCount();
+        CachedPage page = cachedPage;
+        if (page == null || page.taskCount != taskCount) {
+            page = new CachedPage(taskCount, responseCompression.precompress(renderPage(taskCount), CONTENT_TYPE));
+            cachedPage = page;
+        }
+        responseCompression.write(page.body, request, response);
+    }
+
+    private static byte[] renderPage(long taskCount) {
+        byte[] count = Long.toString(taskCount).getBytes(StandardCharsets.US_ASCII);
+        byte[] page = new byte[PAGE_HEAD.length + count.length + PAGE_TAIL.length];
+        System.arraycopy(PAGE_HEAD, 0, page, 0, PAGE_HEAD.length);
+        System.arraycopy(count, 0, page, PAGE_HEAD.length, count.length);
+        System.arraycopy(PAGE_TAIL, 0, page, PAGE_HEAD.length + count.length, PAGE_TAIL.length);
+        return page;
+    }
+
+    private static final class CachedPage {
+        final long taskCount;
+        final PrecompressedBody body;
+
+        CachedPage(long taskCount, PrecompressedBody body) {
+            this.taskCount = taskCount;
+            this.body = body;
+        }
+    }
+
+    private static String renderTemplate() {
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>");
+        html.append("<html><head>");
+        html.append("<meta charset='UTF-8'>");
+        html.append("<title>Task Manager API</title>");
+        html.append("<style>");
+        html.append("body { font-family: 'Segoe UI', Arial, sans-serif; max-width: 800px; margin: 50px auto; padding: 20px; background: linear-gradient(135deg, #667eea 0%, #764ba2 100%); min-height: 100vh; }");
+        html.append(".container { background: white; padding: 40px; border-radius: 16px; box-shadow: 0 20px 60px rgba(0,0,0,0.3); }");
+        html.append("h1 { color: #667eea; margin-bottom: 10px; }");
+        html.append(".success { color: #28a745; font-size: 18px; margin-bottom: 30px; }");
+        html.append(".stats { background: #f8f9fa; padding: 20px; border-radius: 8px; margin: 20px 0; }");
+        html.append(".stats h3 { margin-top: 0; color: #495057; }");
+        html.append(".api-section { margin-top: 30px; }");
+        html.append(".api-section h3 { color: #495057; border-bottom: 2px solid #667eea; padding-bottom: 10px; }");
+        html.append(".endpoint { background: #f1f3f4; padding: 12px 15px; margin: 10px 0; border-radius: 6px; font-family: 'Consolas', monospace; }");
+        html.append(".method { display: inline-block; padding: 3px 8px; border-radius: 4px; color: white; font-size: 12px; font-weight: bold; margin-right: 10px; }");
+        html.append(".get { background: #28a745; }");
+        html.append(".post { background: #007bff; }");
+        html.append(".put { background: #ffc107; color: #333; }");
+        html.append(".delete { background: #dc3545; }");
+        html.append("</style>");
+        html.append("</head><body>");
+        html.append("<div class='container'>");
+        html.append("<h1>🚀 Task Manager API</h1>");
+        html.append("<p class='success'>✅ Congratulations! You have successfully deployed the Spring Boot Application.</p>");
+        
+        // 统计信息
+        html.append("<div class='stats'>");
+        html.append("<h3>📊 Current Status</h3>");
+        html.append("<p><strong>Total Tasks:</strong> ").append(TASK_COUNT_PLACEHOLDER).append("</p>");
+        html.append("<p><strong>Server Status:</strong> <span style='color: #28a745;'>● Running</span></p>");
+        html.append("</div>");
+        
+        // API 文档
+        html.append("<div class='api-section'>");
+        html.append("<h3>📖 Available API Endpoints</h3>");
+        
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/health - Health check</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/health/ready - Readiness check</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/info - Application info</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/metrics - Prometheus metrics</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks - Get all tasks</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks/{id} - Get task by ID</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks/stats - Get task statistics</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks?status=PENDING - Filter by status</div>");
+        html.append("<div class='endpoint'><span class='method get'>GET</span>/api/tasks?priority=HIGH - Filter by priority</div>");
+        html.append("<div class='endpoint'><span class='method post'>POST</span>/api/tasks - Create new task</div>");
+        html.append("<div class='endpoint'><span class='method put'>PUT</span>/api/tasks/{id} - Update task</div>");
+        html.append("<div class='endpoint'><span class='method delete'>DELETE</span>/api/tasks/{id} - Delete task</div>");
+        
+        html.append("</div>");
+        
+        html.append("<p style='margin-top: 30px; color: #6c757d; font-size: 14px;'>Deployed via GitHub Actions + AWS CodeDeploy</p>");
+        html.append("</div>");
+        html.append("</body></html>");
+        
+        return html.toString();
+    }
+}
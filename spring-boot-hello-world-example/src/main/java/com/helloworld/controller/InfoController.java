@@ -1,33 +1,70 @@
 package com.helloworld.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.metrics.JvmTelemetry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+/**
+ * 应用信息
+ *
+ * 应用名、版本、Java 版本等静态字段在启动时序列化一次，缓存为 JSON 对象的前半段字节；
+ * 每次请求只序列化运行时、内存和 GC 这些动态字段，拼接后直接写出。
+ */
 @RestController
 public class InfoController {
 
+    private static final String CONTENT_TYPE = MediaType.APPLICATION_JSON_VALUE + ";charset=UTF-8";
+
     @Value("${spring.application.name:SpringBootHelloWorldExampleApplication}")
     private String applicationName;
 
+    @Autowired
+    private JvmTelemetry jvmTelemetry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 静态字段序列化结果去掉结尾的 '}' 并补上 ','，即 {"application":...,
+     */
+    private byte[] staticFields;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("application", applicationName);
+        fields.put("version", "1.0.0");
+        fields.put("description", "Spring Boot Hello World Example with Task Management API");
+        fields.put("javaVersion", System.getProperty("java.version"));
+        fields.put("osName", System.getProperty("os.name"));
+
+        byte[] json = objectMapper.writeValueAsBytes(fields);
+        json[json.length - 1] = ',';
+        staticFields = json;
+    }
+
     @GetMapping("/info")
-    public Map<String, Object> info() {
-        Map<String, Object> response = new HashMap<>();
-        response.put("application", applicationName);
-        response.put("version", "1.0.0");
-        response.put("description", "Spring Boot Hello World Example with Task Management API");
-        response.put("javaVersion", System.getProperty("java.version"));
-        response.put("osName", System.getProperty("os.name"));
-        response.put("serverTime", new Date());
+    public void info(HttpServletResponse response) throws IOException {
+        Map<String, Object> dynamicFields = new HashMap<>();
+        dynamicFields.put("serverTime", new Date());
         
         // 运行时信息
         long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
-        response.put("uptimeSeconds", uptimeMillis / 1000);
+        dynamicFields.put("uptimeSeconds", uptimeMillis / 1000);
         
         // 内存信息
         Runtime runtime = Runtime.getRuntime();
@@ -36,9 +73,17 @@ public class InfoController {
         memory.put("freeMB", runtime.freeMemory() / (1024 * 1024));
         memory.put("usedMB", (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
         memory.put("maxMB", runtime.maxMemory() / (1024 * 1024));
-        response.put("memory", memory);
+        dynamicFields.put("memory", memory);
         
-        return response;
+        // GC 与分配速率
+        dynamicFields.put("gc", jvmTelemetry.summary());
+
+        // 动态字段以 '{' 开头，跳过它接在静态字段之后
+        byte[] dynamic = objectMapper.writeValueAsBytes(dynamicFields);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(staticFields.length + dynamic.length - 1);
+        ServletOutputStream out = response.getOutputStream();
+        out.write(staticFields);
+        out.write(dynamic, 1, dynamic.length - 1);
     }
 }
-
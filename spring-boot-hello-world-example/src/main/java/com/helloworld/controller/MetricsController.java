@@ -0,0 +1,76 @@
+package com.helloworld.controller;
+
+import com.helloworld.cluster.ReportCacheCluster;
+import com.helloworld.compression.CompressionMetrics;
+import com.helloworld.exception.ErrorReporter;
+import com.helloworld.metrics.JvmTelemetry;
+import com.helloworld.metrics.RequestMetrics;
+import com.helloworld.replication.ReplicationService;
+import com.helloworld.repository.TaskRepository;
+import com.helloworld.service.BulkheadService;
+import com.helloworld.service.SearchService;
+import com.helloworld.service.TaskChangeFeed;
+import com.helloworld.service.WarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Prometheus 抓取端点
+ * GET /metrics
+ */
+@RestController
+public class MetricsController {
+
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final RequestMetrics requestMetrics;
+    private final JvmTelemetry jvmTelemetry;
+    private final BulkheadService bulkheadService;
+    private final CompressionMetrics compressionMetrics;
+    private final ErrorReporter errorReporter;
+    private final ReplicationService replicationService;
+    private final ReportCacheCluster reportCacheCluster;
+    private final SearchService searchService;
+    private final TaskChangeFeed taskChangeFeed;
+    private final TaskRepository taskRepository;
+    private final WarmupService warmupService;
+
+    @Autowired
+    public MetricsController(RequestMetrics requestMetrics, JvmTelemetry jvmTelemetry,
+                             BulkheadService bulkheadService, CompressionMetrics compressionMetrics,
+                             ErrorReporter errorReporter, ReplicationService replicationService,
+                             ReportCacheCluster reportCacheCluster, SearchService searchService,
+                             TaskChangeFeed taskChangeFeed, TaskRepository taskRepository,
+                             WarmupService warmupService) {
+        this.requestMetrics = requestMetrics;
+        this.jvmTelemetry = jvmTelemetry;
+        this.bulkheadService = bulkheadService;
+        this.compressionMetrics = compressionMetrics;
+        this.errorReporter = errorReporter;
+        this.replicationService = replicationService;
+        this.reportCacheCluster = reportCacheCluster;
+        this.searchService = searchService;
+        this.taskChangeFeed = taskChangeFeed;
+        this.taskRepository = taskRepository;
+        this.warmupService = warmupService;
+    }
+
+    @GetMapping(value = "/metrics", produces = PROMETHEUS_CONTENT_TYPE)
+    public ResponseEntity<String> metrics() {
+        StringBuilder out = new StringBuilder(8 * 1024);
+        requestMetrics.writePrometheus(out);
+        jvmTelemetry.writePrometheus(out);
+        bulkheadService.writePrometheus(out);
+        compressionMetrics.writePrometheus(out);
+        errorReporter.writePrometheus(out);
+        replicationService.writePrometheus(out);
+        reportCacheCluster.writePrometheus(out);
+        searchService.writePrometheus(out);
+        taskChangeFeed.writePrometheus(out);
+        taskRepository.writePrometheus(out);
+        warmupService.writePrometheus(out);
+        return ResponseEntity.ok(out.toString());
+    }
+}
@@ -0,0 +1,67 @@
+package com.helloworld.controller;
+
+import com.helloworld.model.ApiResponse;
+import com.helloworld.replication.ReplicationBatch;
+import com.helloworld.replication.ReplicationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 节点间复制接口，只供同组节点调用
+ *
+ * 未开启复制时返回 404；开启时必须配置 replication.token，请求要带 X-Replication-Token。
+ * ALB 不应把 /internal/** 转发给外部客户端。
+ */
+@RestController
+@RequestMapping(ReplicationService.BASE_PATH)
+public class ReplicationController {
+
+    private final ReplicationService replicationService;
+
+    @Autowired
+    public ReplicationController(ReplicationService replicationService) {
+        this.replicationService = replicationService;
+    }
+
+    /**
+     * 接收对端的一批变更
+     * POST /internal/replication/deltas
+     */
+    @PostMapping("/deltas")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> receive(
+            @RequestHeader(value = ReplicationService.TOKEN_HEADER, required = false) String token,
+            @RequestBody ReplicationBatch batch) {
+        if (!replicationService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error("Replication is disabled"));
+        }
+        if (!replicationService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("Invalid replication token"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(replicationService.apply(batch)));
+    }
+
+    /**
+     * 本节点的全量快照（任务和墓碑），新节点启动时拉取
+     * GET /internal/replication/snapshot
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<ReplicationBatch> snapshot(
+            @RequestHeader(value = ReplicationService.TOKEN_HEADER, required = false) String token) {
+        if (!replicationService.isEnabled()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (!replicationService.isAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        return ResponseEntity.ok(replicationService.snapshot());
+    }
+}
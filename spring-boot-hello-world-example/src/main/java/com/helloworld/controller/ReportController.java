@@ -1,11 +1,41 @@
 package com.helloworld.controller;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.analytics.TaskColumnStore;
+import com.helloworld.analytics.TaskColumnStore.Distribution;
+import com.helloworld.analytics.TaskColumnStore.GroupCounts;
+import com.helloworld.analytics.TaskFilter;
+import com.helloworld.cluster.ReportCacheCluster;
+import com.helloworld.cluster.ReportCacheCluster.Forwarded;
+import com.helloworld.compression.PrecompressedBody;
+import com.helloworld.compression.ResponseCompression;
+import com.helloworld.exception.InvalidRequestException;
+import com.helloworld.metrics.JvmTelemetry;
 import com.helloworld.model.ApiResponse;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.service.AdmissionControlService;
+import com.helloworld.service.AdmissionControlService.Permit;
+import com.helloworld.service.BulkheadService;
+import com.helloworld.service.TaskRollupService;
+import com.helloworld.service.TaskRollupService.RollupReport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
  * 报表控制器
@@ -20,6 +50,9 @@ import java.util.concurrent.ConcurrentHashMap;
  * - 每次生成报表都往静态 Map 里添加数据
  * - 数据永远不会被 GC 回收
  * - 最终导致 OOM
+ *
+ * 多节点部署时报表 id 按一致性哈希归属到一个节点（ReportCacheCluster），
+ * 生成、查询、下载都转发到属主处理，整组节点只缓存一份。
  */
 @RestController
 @RequestMapping("/api/reports")
@@ -28,28 +61,101 @@ public class ReportController {
     /**
      * 报表缓存 - 常驻内存，不会被 GC
      * 问题：没有过期机制，没有容量限制
+     * 生成时顺带压缩一份 gzip，下载时直接写出，不必每次重新压缩
      */
-    private static final Map<String, byte[]> reportCache = new ConcurrentHashMap<>();
+    private static final Map<String, PrecompressedBody> reportCache = new ConcurrentHashMap<>();
     
     /**
      * 报表元数据
      */
     private static final Map<String, Map<String, Object>> reportMetadata = new ConcurrentHashMap<>();
 
+    private static final TypeReference<ApiResponse<Map<String, Object>>> REPORT_RESPONSE =
+            new TypeReference<ApiResponse<Map<String, Object>>>() {};
+
+    private static final InvalidRequestException INVALID_STATUS = new InvalidRequestException(
+            "Invalid status. Expected one of: PENDING, IN_PROGRESS, COMPLETED");
+    private static final InvalidRequestException INVALID_PRIORITY = new InvalidRequestException(
+            "Invalid priority. Expected one of: LOW, MEDIUM, HIGH");
+    private static final InvalidRequestException INVALID_TIMESTAMP = new InvalidRequestException(
+            "Invalid timestamp. Expected epoch milliseconds");
+    private static final InvalidRequestException INVALID_REPORT_ID = new InvalidRequestException(
+            "Invalid report id. Expected RPT- followed by 8 hex digits");
+
+    /**
+     * generateReport 分配的 id 格式；id 会拼进转发给属主节点的路径，其他字符（/、?、..）一律拒绝
+     */
+    private static final Pattern REPORT_ID = Pattern.compile("RPT-[0-9a-f]{8}");
+
+    /**
+     * 完成耗时分布的区间上界
+     */
+    private static final long HOUR_MILLIS = 3_600_000L;
+    private static final long[] COMPLETION_BOUNDS = {
+            HOUR_MILLIS, 4 * HOUR_MILLIS, 24 * HOUR_MILLIS, 3 * 24 * HOUR_MILLIS, 7 * 24 * HOUR_MILLIS,
+            30 * 24 * HOUR_MILLIS};
+    private static final String[] COMPLETION_LABELS = {"1h", "4h", "1d", "3d", "7d", "30d", "+Inf"};
+
+    private final AdmissionControlService admissionControl;
+    private final JvmTelemetry jvmTelemetry;
+    private final BulkheadService bulkheadService;
+    private final ResponseCompression responseCompression;
+    private final ReportCacheCluster reportCacheCluster;
+    private final ObjectMapper objectMapper;
+    private final TaskRollupService taskRollupService;
+    private final TaskColumnStore taskColumnStore;
+
+    @Autowired
+    public ReportController(AdmissionControlService admissionControl, JvmTelemetry jvmTelemetry,
+                            BulkheadService bulkheadService, ResponseCompression responseCompression,
+                            ReportCacheCluster reportCacheCluster, ObjectMapper objectMapper,
+                            TaskRollupService taskRollupService, TaskColumnStore taskColumnStore) {
+        this.admissionControl = admissionControl;
+        this.jvmTelemetry = jvmTelemetry;
+        this.bulkheadService = bulkheadService;
+        this.responseCompression = responseCompression;
+        this.reportCacheCluster = reportCacheCluster;
+        this.objectMapper = objectMapper;
+        this.taskRollupService = taskRollupService;
+        this.taskColumnStore = taskColumnStore;
+    }
+
     /**
      * 生成报表
      * 
      * @param request 包含 type (summary/detailed/full) 和 dateRange
      */
     @PostMapping("/generate")
-    public ResponseEntity<ApiResponse<Map<String, Object>>> generateReport(
-            @RequestBody Map<String, Object> request) {
-        
+    public DeferredResult<ResponseEntity<ApiResponse<Map<String, Object>>>> generateReport(
+            @RequestBody Map<String, Object> request,
+            @RequestHeader(value = ReportCacheCluster.FORWARDED_HEADER, required = false) String forwardedBy,
+            @RequestHeader(value = ReportCacheCluster.REPORT_ID_HEADER, required = false) String forwardedId,
+            @RequestHeader(value = ReportCacheCluster.TOKEN_HEADER, required = false) String token) {
+        if (forwardedBy != null && !reportCacheCluster.isTrustedForward(token)) {
+            DeferredResult<ResponseEntity<ApiResponse<Map<String, Object>>>> rejected = new DeferredResult<>();
+            rejected.setResult(forbidden());
+            return rejected;
+        }
+        // 其他节点转发来的请求沿用对方分配的 id，否则报表会落到 id 的属主之外
+        String reportId = forwardedBy != null && forwardedId != null
+                ? checkReportId(forwardedId)
+                : "RPT-" + UUID.randomUUID().toString().substring(0, 8);
+        return bulkheadService.submit(BulkheadService.REPORTS, () -> {
+            Map<String, String> headers = new HashMap<>();
+            headers.put(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+            headers.put(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+            headers.put(ReportCacheCluster.REPORT_ID_HEADER, reportId);
+            ResponseEntity<ApiResponse<Map<String, Object>>> forwarded = forwardToOwner(reportId, forwardedBy, false,
+                    "POST", "/api/reports/generate", headers, request, this::toResponseEntity);
+            return forwarded != null ? forwarded : generateLocally(reportId, request);
+        });
+    }
+
+    private ResponseEntity<ApiResponse<Map<String, Object>>> generateLocally(String reportId,
+                                                                             Map<String, Object> request) {
         String reportType = (String) request.getOrDefault("type", "summary");
         String dateRange = (String) request.getOrDefault("dateRange", "last_week");
-        
-        String reportId = "RPT-" + UUID.randomUUID().toString().substring(0, 8);
-        
+    
         // 根据报表类型决定数据大小（模拟真实业务场景）
         int dataSizeMB;
         switch (reportType) {
@@ -63,47 +169,57 @@ public class ReportController {
             default:
                 dataSizeMB = 5;   // 摘要报表 5MB
         }
+    
+        // 报表内容来自按小时/按天的汇总桶，last_year 只读 365 个桶
+        RollupReport rollup = taskRollupService.report(dateRange);
+        Map<String, Object> summary = rollup.summary();
+
+        try (Permit permit = admissionControl.acquire("reports-generate", dataSizeMB)) {
+            // 生成报表数据
+            byte[] reportData = generateReportData(dataSizeMB, rollup.toCsv().getBytes(StandardCharsets.UTF_8));
         
-        // 生成报表数据
-        byte[] reportData = generateReportData(dataSizeMB);
-        
-        // 缓存报表数据 - 问题点：永不过期，永不清理
-        reportCache.put(reportId, reportData);
-        
+            // 缓存报表数据 - 问题点：永不过期，永不清理
+            reportCache.put(reportId,
+                    responseCompression.precompress(reportData, MediaType.APPLICATION_OCTET_STREAM_VALUE));
+        }
+    
         // 保存元数据
         Map<String, Object> metadata = new HashMap<>();
         metadata.put("type", reportType);
         metadata.put("dateRange", dateRange);
         metadata.put("sizeMB", dataSizeMB);
+        metadata.put("summary", summary);
         metadata.put("createdAt", new Date());
         reportMetadata.put(reportId, metadata);
-        
+    
         // 返回结果
         Map<String, Object> result = new HashMap<>();
         result.put("reportId", reportId);
         result.put("type", reportType);
         result.put("dateRange", dateRange);
         result.put("sizeMB", dataSizeMB);
+        result.put("summary", summary);
         result.put("status", "completed");
-        
+    
         return ResponseEntity.ok(ApiResponse.success(result, "Report generated successfully"));
     }
 
     /**
-     * 生成报表数据（模拟复杂计算）
+     * 生成报表数据：开头是汇总表（CSV），其后按报表类型补足到固定体量（模拟附带的明细数据）
      */
-    private byte[] generateReportData(int sizeMB) {
+    private byte[] generateReportData(int sizeMB, byte[] rollupCsv) {
         byte[] data = new byte[sizeMB * 1024 * 1024];
-        // 填充数据，模拟真实报表内容
+        int length = Math.min(rollupCsv.length, data.length);
+        System.arraycopy(rollupCsv, 0, data, 0, length);
         Random random = new Random();
-        for (int i = 0; i < data.length; i += 1024) {
+        for (int i = length; i < data.length; i += 1024) {
             data[i] = (byte) random.nextInt(256);
         }
         return data;
     }
 
     /**
-     * 获取报表列表
+     * 获取报表列表（只含本节点缓存的报表）
      */
     @GetMapping
     public ResponseEntity<ApiResponse<List<Map<String, Object>>>> listReports() {
@@ -123,31 +239,158 @@ public class ReportController {
      */
     @GetMapping("/{reportId}")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getReport(
-            @PathVariable String reportId) {
+            @PathVariable String reportId,
+            @RequestHeader(value = ReportCacheCluster.FORWARDED_HEADER, required = false) String forwardedBy,
+            @RequestHeader(value = ReportCacheCluster.TOKEN_HEADER, required = false) String token) {
+        if (forwardedBy != null && !reportCacheCluster.isTrustedForward(token)) {
+            return forbidden();
+        }
+        checkReportId(reportId);
+        ResponseEntity<ApiResponse<Map<String, Object>>> forwarded = forwardToOwner(reportId, forwardedBy, true,
+                "GET", "/api/reports/" + reportId,
+                Collections.singletonMap(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE), null,
+                this::toResponseEntity);
+        if (forwarded != null) {
+            return forwarded;
+        }
         
-        byte[] data = reportCache.get(reportId);
+        PrecompressedBody data = reportCache.get(reportId);
         Map<String, Object> metadata = reportMetadata.get(reportId);
         
         if (data == null || metadata == null) {
-            return ResponseEntity.ok(ApiResponse.error("Report not found: " + reportId));
+            return ResponseEntity.ok()
+                    .header(ReportCacheCluster.MISSING_HEADER, "true")
+                    .body(ApiResponse.error("Report not found: " + reportId));
         }
         
         Map<String, Object> result = new HashMap<>(metadata);
         result.put("reportId", reportId);
-        result.put("sizeBytes", data.length);
+        result.put("sizeBytes", data.getIdentity().length);
+        result.put("gzipSizeBytes", data.hasGzip() ? data.getGzip().length : data.getIdentity().length);
         
         return ResponseEntity.ok(ApiResponse.success(result));
     }
 
+    /**
+     * 下载报表数据，客户端接受 gzip 时直接写出生成时压好的字节
+     *
+     * 报表在其他节点时按客户端的 Accept-Encoding 向属主取字节并原样写出，本节点不缓存副本。
+     */
+    @GetMapping("/{reportId}/download")
+    public void downloadReport(@PathVariable String reportId,
+                               @RequestHeader(value = ReportCacheCluster.FORWARDED_HEADER, required = false)
+                                       String forwardedBy,
+                               @RequestHeader(value = ReportCacheCluster.TOKEN_HEADER, required = false) String token,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (forwardedBy != null && !reportCacheCluster.isTrustedForward(token)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        checkReportId(reportId);
+        Map<String, String> headers = new HashMap<>();
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null) {
+            headers.put(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        Boolean relayed = forwardToOwner(reportId, forwardedBy, true, "GET", "/api/reports/" + reportId + "/download",
+                headers, null, upstream -> {
+                    response.setStatus(upstream.getStatus());
+                    String disposition = upstream.getHeader(HttpHeaders.CONTENT_DISPOSITION);
+                    if (disposition != null) {
+                        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, disposition);
+                    }
+                    responseCompression.relay(upstream.getBody(), upstream.getContentType(),
+                            upstream.getHeader(HttpHeaders.CONTENT_ENCODING), upstream.getContentLength(), response);
+                    return Boolean.TRUE;
+                });
+        if (relayed != null) {
+            return;
+        }
+
+        PrecompressedBody data = reportCache.get(reportId);
+        if (data == null) {
+            response.setHeader(ReportCacheCluster.MISSING_HEADER, "true");
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + reportId + ".bin\"");
+        responseCompression.write(data, request, response);
+    }
+
+    /**
+     * 临时聚合：按条件过滤后的 状态 × 优先级 分组计数，在列存上扫描（TaskColumnStore）
+     * GET /api/reports/aggregate?status=COMPLETED&priority=HIGH&title=...&createdFrom=...&createdBefore=...
+     *
+     * 条件均可选，createdFrom / createdBefore 为毫秒时间戳，区间左闭右开。
+     */
+    @GetMapping("/aggregate")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> aggregate(
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String createdFrom,
+            @RequestParam(required = false) String createdBefore) {
+        long startTime = System.nanoTime();
+        GroupCounts counts = taskColumnStore.countByStatusAndPriority(
+                parseFilter(status, priority, title, createdFrom, createdBefore));
+
+        Map<String, Object> byStatus = new LinkedHashMap<>();
+        Map<String, Object> matrix = new LinkedHashMap<>();
+        for (TaskStatus s : TaskStatus.values()) {
+            byStatus.put(s.name(), counts.byStatus(s));
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (TaskPriority p : TaskPriority.values()) {
+                row.put(p.name(), counts.count(s, p));
+            }
+            matrix.put(s.name(), row);
+        }
+        Map<String, Object> byPriority = new LinkedHashMap<>();
+        for (TaskPriority p : TaskPriority.values()) {
+            byPriority.put(p.name(), counts.byPriority(p));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", counts.total());
+        result.put("byStatus", byStatus);
+        result.put("byPriority", byPriority);
+        result.put("byStatusAndPriority", matrix);
+        result.put("scanMicros", (System.nanoTime() - startTime) / 1000);
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
+    /**
+     * 已完成任务的完成耗时分布（updatedAt - createdAt），条件同 /aggregate（status 除外）
+     * GET /api/reports/completion-times?priority=HIGH
+     */
+    @GetMapping("/completion-times")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> completionTimes(
+            @RequestParam(required = false) String priority,
+            @RequestParam(required = false) String title,
+            @RequestParam(required = false) String createdFrom,
+            @RequestParam(required = false) String createdBefore) {
+        long startTime = System.nanoTime();
+        Distribution distribution = taskColumnStore.completionTimes(
+                parseFilter(null, priority, title, createdFrom, createdBefore), COMPLETION_BOUNDS);
+
+        Map<String, Object> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < COMPLETION_LABELS.length; i++) {
+            buckets.put(COMPLETION_LABELS[i], distribution.bucketCount(i));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", distribution.count());
+        result.put("meanMillis", Math.round(distribution.meanMillis()));
+        result.put("buckets", buckets);
+        result.put("scanMicros", (System.nanoTime() - startTime) / 1000);
+        return ResponseEntity.ok(ApiResponse.success(result));
+    }
+
     /**
      * 获取缓存和内存统计
      */
     @GetMapping("/stats")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getStats() {
         // 计算缓存总大小
-        long totalCacheSize = reportCache.values().stream()
-                .mapToLong(arr -> arr.length)
-                .sum();
+        long totalCacheSize = getCacheSizeBytes();
         
         // 获取 JVM 内存信息
         Runtime runtime = Runtime.getRuntime();
@@ -160,10 +403,129 @@ public class ReportController {
         stats.put("heapUsedMB", heapUsed / (1024 * 1024));
         stats.put("heapMaxMB", heapMax / (1024 * 1024));
         stats.put("heapUsagePercent", (int) (heapUsed * 100 / heapMax));
+        stats.put("admission", admissionControl.getStats());
+        stats.put("bulkheads", bulkheadService.getStats());
+        stats.put("gc", jvmTelemetry.summary());
+        stats.put("cluster", reportCacheCluster.getStats());
+        stats.put("rollups", taskRollupService.getStats());
+        stats.put("columns", taskColumnStore.getStats());
         
         return ResponseEntity.ok(ApiResponse.success(stats));
     }
 
+    private static TaskFilter parseFilter(String status, String priority, String title,
+                                          String createdFrom, String createdBefore) {
+        return TaskFilter.ALL
+                .status(parseEnum(status, TaskStatus.values(), INVALID_STATUS))
+                .priority(parseEnum(priority, TaskPriority.values(), INVALID_PRIORITY))
+                .title(title)
+                .createdBetween(parseTimestamp(createdFrom), parseTimestamp(createdBefore));
+    }
+
+    private static <E extends Enum<E>> E parseEnum(String raw, E[] values, InvalidRequestException invalid) {
+        if (raw == null || raw.trim().isEmpty()) {
+            return null;
+        }
+        for (E value : values) {
+            if (value.name().equals(raw.trim())) {
+                return value;
+            }
+        }
+        throw invalid;
+    }
+
+    private static Long parseTimestamp(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return null;
+        }
+        if (raw.length() > 18) {
+            throw INVALID_TIMESTAMP;
+        }
+        long value = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c < '0' || c > '9') {
+                throw INVALID_TIMESTAMP;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String checkReportId(String reportId) {
+        if (!REPORT_ID.matcher(reportId).matches()) {
+            throw INVALID_REPORT_ID;
+        }
+        return reportId;
+    }
+
+    /**
+     * 依次把请求转发给报表 id 的属主和顺延节点，返回第一个可达节点的响应经 handler 处理的结果
+     *
+     * 生成时轮到本节点就返回 null，由调用方在本地生成。读取（lookup）时走完整个候选列表：
+     * 对方回复没有该报表（MISSING_HEADER）或本节点没有缓存时继续顺延，
+     * 属主故障期间生成在顺延节点上的报表，属主恢复后也能读到。
+     * 未分片、请求本身就是转发来的、或所有节点都没有该报表时返回 null，由调用方在本地处理。
+     *
+     * @param body 请求体对象，转发时才序列化为 JSON；没有请求体时为 null
+     */
+    private <T> T forwardToOwner(String reportId, String forwardedBy, boolean lookup, String method, String path,
+                                 Map<String, String> headers, Object body, ResponseHandler<T> handler) {
+        if (forwardedBy == null) {
+            for (String node : reportCacheCluster.candidates(reportId)) {
+                if (reportCacheCluster.isSelf(node)) {
+                    if (!lookup || reportCache.containsKey(reportId)) {
+                        break;
+                    }
+                    continue;
+                }
+                Forwarded response;
+                try {
+                    byte[] bytes = body != null ? objectMapper.writeValueAsBytes(body) : null;
+                    response = reportCacheCluster.forward(node, method, path, headers, bytes);
+                } catch (IOException e) {
+                    // 节点不可达，顺延到下一个（ReportCacheCluster 已计数并记录日志）
+                    continue;
+                }
+                try (Forwarded ignored = response) {
+                    if (lookup && response.getHeader(ReportCacheCluster.MISSING_HEADER) != null) {
+                        continue;
+                    }
+                    return handler.handle(response);
+                } catch (IOException e) {
+                    // 节点已经响应：生成请求已在对方执行，下载可能已写出部分内容，不能再顺延
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        reportCacheCluster.recordLocal();
+        return null;
+    }
+
+    private static ResponseEntity<ApiResponse<Map<String, Object>>> forbidden() {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("Invalid report forwarding token"));
+    }
+
+    private ResponseEntity<ApiResponse<Map<String, Object>>> toResponseEntity(Forwarded response)
+            throws IOException {
+        return ResponseEntity.status(response.getStatus())
+                .body(objectMapper.readValue(response.getBody(), REPORT_RESPONSE));
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(Forwarded response) throws IOException;
+    }
+
+    /**
+     * 报表缓存占用的总字节数（就绪检查据此判断缓存是否已挤占堆）
+     */
+    public static long getCacheSizeBytes() {
+        return reportCache.values().stream()
+                .mapToLong(PrecompressedBody::sizeBytes)
+                .sum();
+    }
+
     /**
      * 清理缓存（用于测试重置）
      */
@@ -1,6 +1,10 @@
 package com.helloworld.controller;
 
+import com.helloworld.exception.InvalidRequestException;
 import com.helloworld.model.ApiResponse;
+import com.helloworld.service.SearchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -16,37 +20,13 @@ import java.util.*;
 @RequestMapping("/api/search")
 public class SearchController {
 
-    // 模拟搜索数据
-    private static final List<Map<String, Object>> MOCK_DATA = new ArrayList<>();
-    
-    static {
-        // 初始化模拟数据
-        String[] titles = {
-                "完成 CI/CD 配置",
-                "学习 AWS CloudFormation",
-                "编写单元测试",
-                "优化数据库查询",
-                "部署生产环境",
-                "代码审查",
-                "性能优化",
-                "安全加固",
-                "监控告警配置",
-                "日志采集设置"
-        };
-        
-        String[] categories = {"开发", "运维", "测试", "安全"};
-        String[] priorities = {"HIGH", "MEDIUM", "LOW"};
-        
-        Random random = new Random(42);
-        for (int i = 0; i < titles.length; i++) {
-            Map<String, Object> item = new HashMap<>();
-            item.put("id", i + 1);
-            item.put("title", titles[i]);
-            item.put("category", categories[random.nextInt(categories.length)]);
-            item.put("priority", priorities[random.nextInt(priorities.length)]);
-            item.put("score", random.nextDouble());
-            MOCK_DATA.add(item);
-        }
+    private static final InvalidRequestException TITLE_REQUIRED = new InvalidRequestException("Document title is required");
+
+    private final SearchService searchService;
+
+    @Autowired
+    public SearchController(SearchService searchService) {
+        this.searchService = searchService;
     }
 
     /**
@@ -61,20 +41,7 @@ public class SearchController {
         long startTime = System.currentTimeMillis();
         
         // 执行搜索
-        List<Map<String, Object>> results = new ArrayList<>();
-        String queryLower = query.toLowerCase();
-        
-        for (Map<String, Object> item : MOCK_DATA) {
-            String title = ((String) item.get("title")).toLowerCase();
-            if (title.contains(queryLower)) {
-                results.add(item);
-            }
-        }
-        
-        // 如果没有匹配结果，返回所有数据
-        if (results.isEmpty()) {
-            results.addAll(MOCK_DATA);
-        }
+        List<Map<String, Object>> results = searchService.search(query);
         
         // 分页
         int start = (page - 1) * size;
@@ -104,27 +71,42 @@ public class SearchController {
     public ResponseEntity<ApiResponse<List<String>>> suggest(
             @RequestParam String prefix) {
         
-        List<String> suggestions = new ArrayList<>();
-        String prefixLower = prefix.toLowerCase();
-        
-        for (Map<String, Object> item : MOCK_DATA) {
-            String title = (String) item.get("title");
-            if (title.toLowerCase().contains(prefixLower)) {
-                suggestions.add(title);
-            }
-        }
+        List<String> suggestions = searchService.suggest(prefix);
         
         return ResponseEntity.ok(ApiResponse.success(suggestions));
     }
 
+    /**
+     * 加入文档，立即可查
+     *
+     * 配置了 search.write-token 时要带 X-Search-Token；索引文档数到上限后返回 507
+     */
+    @PostMapping("/documents")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> addDocument(
+            @RequestHeader(value = SearchService.WRITE_TOKEN_HEADER, required = false) String token,
+            @RequestBody Map<String, Object> document) {
+        if (!searchService.isWriteAuthorized(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(ApiResponse.error("Invalid search write token"));
+        }
+        Object title = document.get("title");
+        if (!(title instanceof String) || ((String) title).trim().isEmpty()) {
+            throw TITLE_REQUIRED;
+        }
+        if (!searchService.addDocument(document)) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(ApiResponse.error("Search index is full"));
+        }
+        return ResponseEntity.ok(ApiResponse.success(document));
+    }
+
     /**
      * 获取搜索统计
      */
     @GetMapping("/stats")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getStats() {
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalDocuments", MOCK_DATA.size());
-        stats.put("categories", Arrays.asList("开发", "运维", "测试", "安全"));
+        stats.put("totalDocuments", searchService.getDocumentCount());
+        stats.put("categories", SearchService.CATEGORIES);
+        stats.put("index", searchService.getIndexStats());
         
         return ResponseEntity.ok(ApiResponse.success(stats));
     }
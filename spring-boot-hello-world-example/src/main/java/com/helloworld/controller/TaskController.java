@@ -1,26 +1,66 @@
 package com.helloworld.controller;
 
+import com.helloworld.analytics.TaskColumnStore;
+import com.helloworld.analytics.TaskColumnStore.GroupCounts;
+import com.helloworld.analytics.TaskFilter;
+import com.helloworld.exception.InvalidRequestException;
 import com.helloworld.model.ApiResponse;
 import com.helloworld.model.Task;
 import com.helloworld.model.Task.TaskPriority;
 import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.service.TaskChangeFeed;
 import com.helloworld.service.TaskService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/tasks")
 public class TaskController {
 
+    /*
+     * 可预期的校验失败：无堆栈的异常常量，由 GlobalExceptionHandler 直接写出预建好的响应体。
+     * id 和枚举参数自己解析而不交给 Spring 转换，转换失败时 Spring 会创建带完整堆栈的
+     * MethodArgumentTypeMismatchException，而 Long.parseLong / Enum.valueOf 本身也会抛带堆栈的异常。
+     */
+    private static final InvalidRequestException INVALID_ID = new InvalidRequestException("Invalid task id");
+    private static final InvalidRequestException INVALID_STATUS = new InvalidRequestException(
+            "Invalid status. Expected one of: PENDING, IN_PROGRESS, COMPLETED");
+    private static final InvalidRequestException INVALID_PRIORITY = new InvalidRequestException(
+            "Invalid priority. Expected one of: LOW, MEDIUM, HIGH");
+    private static final InvalidRequestException INVALID_SEQUENCE = new InvalidRequestException("Invalid change sequence");
+    private static final InvalidRequestException TITLE_REQUIRED = new InvalidRequestException("Task title is required");
+
+    private static final ApiResponse<?> TASK_NOT_FOUND = ApiResponse.constantError("Task not found");
+
+    private static final Map<String, TaskStatus> STATUSES = new HashMap<>();
+    private static final Map<String, TaskPriority> PRIORITIES = new HashMap<>();
+
+    static {
+        for (TaskStatus status : TaskStatus.values()) {
+            STATUSES.put(status.name(), status);
+        }
+        for (TaskPriority priority : TaskPriority.values()) {
+            PRIORITIES.put(priority.name(), priority);
+        }
+    }
+
     private final TaskService taskService;
+    private final TaskChangeFeed taskChangeFeed;
+    private final TaskColumnStore taskColumnStore;
 
     @Autowired
-    public TaskController(TaskService taskService) {
+    public TaskController(TaskService taskService, TaskChangeFeed taskChangeFeed, TaskColumnStore taskColumnStore) {
         this.taskService = taskService;
+        this.taskChangeFeed = taskChangeFeed;
+        this.taskColumnStore = taskColumnStore;
     }
 
     /**
@@ -31,9 +71,11 @@ public class TaskController {
      */
     @GetMapping
     public ResponseEntity<ApiResponse<List<Task>>> getAllTasks(
-            @RequestParam(required = false) TaskStatus status,
-            @RequestParam(required = false) TaskPriority priority) {
+            @RequestParam(name = "status", required = false) String statusParam,
+            @RequestParam(name = "priority", required = false) String priorityParam) {
         
+        TaskStatus status = parseEnum(statusParam, STATUSES, INVALID_STATUS);
+        TaskPriority priority = parseEnum(priorityParam, PRIORITIES, INVALID_PRIORITY);
         List<Task> tasks;
         if (status != null) {
             tasks = taskService.getTasksByStatus(status);
@@ -51,11 +93,11 @@ public class TaskController {
      * GET /api/tasks/{id}
      */
     @GetMapping("/{id}")
-    public ResponseEntity<ApiResponse<Task>> getTaskById(@PathVariable Long id) {
+    public ResponseEntity<ApiResponse<Task>> getTaskById(@PathVariable("id") String idParam) {
+        long id = parseId(idParam);
         return taskService.getTaskById(id)
                 .map(task -> ResponseEntity.ok(ApiResponse.success(task)))
-                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(ApiResponse.error("Task not found with id: " + id)));
+                .orElseGet(TaskController::taskNotFound);
     }
 
     /**
@@ -65,8 +107,7 @@ public class TaskController {
     @PostMapping
     public ResponseEntity<ApiResponse<Task>> createTask(@RequestBody Task task) {
         if (task.getTitle() == null || task.getTitle().trim().isEmpty()) {
-            return ResponseEntity.badRequest()
-                    .body(ApiResponse.error("Task title is required"));
+            throw TITLE_REQUIRED;
         }
         
         Task createdTask = taskService.createTask(task);
@@ -80,13 +121,13 @@ public class TaskController {
      */
     @PutMapping("/{id}")
     public ResponseEntity<ApiResponse<Task>> updateTask(
-            @PathVariable Long id,
+            @PathVariable("id") String idParam,
             @RequestBody Task taskDetails) {
         
+        long id = parseId(idParam);
         return taskService.updateTask(id, taskDetails)
                 .map(task -> ResponseEntity.ok(ApiResponse.success(task, "Task updated successfully")))
-                .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body(ApiResponse.error("Task not found with id: " + id)));
+                .orElseGet(TaskController::taskNotFound);
     }
 
     /**
@@ -94,12 +135,12 @@ public class TaskController {
      * DELETE /api/tasks/{id}
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<ApiResponse<Void>> deleteTask(@PathVariable Long id) {
+    public ResponseEntity<ApiResponse<Void>> deleteTask(@PathVariable("id") String idParam) {
+        long id = parseId(idParam);
         // 获取任务信息用于业务规则校验
         Task task = taskService.getTaskById(id).orElse(null);
         if (task == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                    .body(ApiResponse.error("Task not found with id: " + id));
+            return taskNotFound();
         }
         
         // 高优先级任务需要管理员审批，普通用户只能提交删除申请
@@ -129,24 +170,85 @@ public class TaskController {
                 .body(ApiResponse.error("Failed to delete task"));
     }
 
+    /**
+     * 订阅任务变更（Server-Sent Events），代替轮询 GET /api/tasks
+     * GET /api/tasks/changes
+     * GET /api/tasks/changes?since=1234
+     *
+     * 事件 change 的 id 为变更序号，数据为 {"seq","type":"upsert|delete","id","task"}；
+     * 断线重连时 EventSource 会自动带上 Last-Event-ID，since 参数优先。
+     * 收到 reset 事件说明断点已过期，应重新拉取全量后从其中的 seq 订阅。
+     */
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeChanges(
+            @RequestParam(name = "since", required = false) String sinceParam,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        String raw = sinceParam != null ? sinceParam : lastEventId;
+        Long since = raw == null || raw.isEmpty() ? null : parseNumber(raw, INVALID_SEQUENCE);
+        return taskChangeFeed.subscribe(since);
+    }
+
     /**
      * 获取任务统计
      * GET /api/tasks/stats
      */
     @GetMapping("/stats")
     public ResponseEntity<ApiResponse<TaskStats>> getTaskStats() {
+        // 列存上一次扫描得到 状态 × 优先级 分组计数，扫描在读锁内进行，各项计数彼此一致
+        GroupCounts counts = taskColumnStore.countByStatusAndPriority(TaskFilter.ALL);
         TaskStats stats = new TaskStats();
-        stats.total = taskService.getTaskCount();
-        stats.pending = taskService.getTasksByStatus(TaskStatus.PENDING).size();
-        stats.inProgress = taskService.getTasksByStatus(TaskStatus.IN_PROGRESS).size();
-        stats.completed = taskService.getTasksByStatus(TaskStatus.COMPLETED).size();
-        stats.highPriority = taskService.getTasksByPriority(TaskPriority.HIGH).size();
-        stats.mediumPriority = taskService.getTasksByPriority(TaskPriority.MEDIUM).size();
-        stats.lowPriority = taskService.getTasksByPriority(TaskPriority.LOW).size();
-        
+        stats.total = counts.total();
+        stats.pending = (int) counts.byStatus(TaskStatus.PENDING);
+        stats.inProgress = (int) counts.byStatus(TaskStatus.IN_PROGRESS);
+        stats.completed = (int) counts.byStatus(TaskStatus.COMPLETED);
+        stats.highPriority = (int) counts.byPriority(TaskPriority.HIGH);
+        stats.mediumPriority = (int) counts.byPriority(TaskPriority.MEDIUM);
+        stats.lowPriority = (int) counts.byPriority(TaskPriority.LOW);
         return ResponseEntity.ok(ApiResponse.success(stats));
     }
 
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<ApiResponse<T>> taskNotFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body((ApiResponse<T>) TASK_NOT_FOUND);
+    }
+
+    /**
+     * 解析任务 id：只接受 1 到 18 位数字，不会溢出，也不经过会抛异常的 Long.parseLong 失败路径
+     */
+    private static long parseId(String raw) {
+        return parseNumber(raw, INVALID_ID);
+    }
+
+    private static long parseNumber(String raw, InvalidRequestException invalid) {
+        int length = raw.length();
+        if (length == 0 || length > 18) {
+            throw invalid;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = raw.charAt(i);
+            if (c < '0' || c > '9') {
+                throw invalid;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * 与 Spring 的枚举转换一致：空值视为未传，名称区分大小写
+     */
+    private static <E> E parseEnum(String raw, Map<String, E> values, InvalidRequestException invalid) {
+        if (raw == null || raw.trim().isEmpty()) {
+            return null;
+        }
+        E value = values.get(raw.trim());
+        if (value == null) {
+            throw invalid;
+        }
+        return value;
+    }
+
     // 内部类用于统计信息
     public static class TaskStats {
         public long total;
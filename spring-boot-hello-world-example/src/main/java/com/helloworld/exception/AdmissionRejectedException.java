@@ -0,0 +1,33 @@
+package com.helloworld.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * 准入控制拒绝请求
+ *
+ * - 429：该接口的在途内存预算已占满，稍后重试
+ * - 503：堆剩余空间不足，继续接收会把 JVM 推进 GC 抖动
+ * - 413：单个请求的预估内存超过该接口的全部预算，重试也不会成功
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final int retryAfterSeconds;
+
+    public AdmissionRejectedException(HttpStatus status, int retryAfterSeconds, String message) {
+        super(message, null, false, false);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * 建议的重试等待秒数，小于等于 0 表示不应重试
+     */
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,148 @@
+package com.helloworld.exception;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 错误计数与限流日志
+ *
+ * 每类错误一个计数器，计数路径只有一次 LongAdder 自增，不分配对象。
+ * 日志按类别限流：每个时间窗口内最多写 burst 条，超出的只计数，下一条日志带上被省略的条数。
+ * 可预期的错误（校验失败、404、限流拒绝等）只记一行，不带堆栈；只有未预期的服务端错误带堆栈。
+ * 坏请求洪峰因此既打不满磁盘，也不占用正常请求的 CPU。
+ *
+ * 配置（均可选）：
+ *   errors.log.interval-seconds=10
+ *   errors.log.burst=5
+ */
+@Component
+public class ErrorReporter {
+
+    /**
+     * 错误类别，同时作为指标标签，取值固定
+     */
+    public enum ErrorType {
+        INVALID_BODY("invalid_body"),
+        TYPE_MISMATCH("type_mismatch"),
+        VALIDATION("validation"),
+        NOT_FOUND("not_found"),
+        METHOD_NOT_ALLOWED("method_not_allowed"),
+        REJECTED("rejected"),
+        INTERNAL("internal"),
+        OTHER("other");
+
+        private final String label;
+
+        ErrorType(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(ErrorReporter.class);
+
+    private final long intervalMillis;
+    private final int burst;
+    private final Slot[] slots = new Slot[ErrorType.values().length];
+
+    @Autowired
+    public ErrorReporter(@Value("${errors.log.interval-seconds:10}") long intervalSeconds,
+                         @Value("${errors.log.burst:5}") int burst) {
+        this.intervalMillis = intervalSeconds * 1000;
+        this.burst = burst;
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    /**
+     * 记一次错误；cause 只在 INTERNAL 类错误时随日志输出堆栈
+     */
+    public void report(ErrorType type, int status, HttpServletRequest request, Throwable cause) {
+        Slot slot = slots[type.ordinal()];
+        slot.count.increment();
+        if (!tryAcquireLog(slot)) {
+            slot.suppressed.increment();
+            slot.suppressedSinceLog.incrementAndGet();
+            return;
+        }
+        long suppressed = slot.suppressedSinceLog.getAndSet(0);
+        String path = errorPath(request);
+        if (type == ErrorType.INTERNAL) {
+            log.error("{} {} {} -> {} ({} similar suppressed)", type.label, request.getMethod(), path, status,
+                    suppressed, cause);
+        } else {
+            log.warn("{} {} {} -> {} ({} similar suppressed)", type.label, request.getMethod(), path, status,
+                    suppressed);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        for (ErrorType type : ErrorType.values()) {
+            Slot slot = slots[type.ordinal()];
+            Map<String, Object> item = new HashMap<>();
+            item.put("count", slot.count.sum());
+            item.put("logsSuppressed", slot.suppressed.sum());
+            stats.put(type.label, item);
+        }
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP http_errors_total Error responses by type\n");
+        out.append("# TYPE http_errors_total counter\n");
+        for (ErrorType type : ErrorType.values()) {
+            out.append("http_errors_total{type=\"").append(type.label).append("\"} ")
+                    .append(slots[type.ordinal()].count.sum()).append('\n');
+        }
+        out.append("# HELP http_error_logs_suppressed_total Error log lines dropped by rate limiting\n");
+        out.append("# TYPE http_error_logs_suppressed_total counter\n");
+        for (ErrorType type : ErrorType.values()) {
+            out.append("http_error_logs_suppressed_total{type=\"").append(type.label).append("\"} ")
+                    .append(slots[type.ordinal()].suppressed.sum()).append('\n');
+        }
+    }
+
+    private boolean tryAcquireLog(Slot slot) {
+        long now = System.currentTimeMillis();
+        long windowStart = slot.windowStart.get();
+        if (now - windowStart >= intervalMillis && slot.windowStart.compareAndSet(windowStart, now)) {
+            slot.loggedInWindow.set(0);
+        }
+        return slot.loggedInWindow.incrementAndGet() <= burst;
+    }
+
+    /**
+     * 错误转发（/error）时取原始请求路径
+     */
+    private static String errorPath(HttpServletRequest request) {
+        Object original = request.getAttribute(RequestDispatcher.ERROR_REQUEST_URI);
+        return original != null ? original.toString() : request.getRequestURI();
+    }
+
+    private static class Slot {
+        final LongAdder count = new LongAdder();
+        final LongAdder suppressed = new LongAdder();
+        final AtomicLong suppressedSinceLog = new AtomicLong();
+        final AtomicLong windowStart = new AtomicLong();
+        final AtomicInteger loggedInWindow = new AtomicInteger();
+    }
+}
@@ -1,6 +1,9 @@
 package com.helloworld.exception;
 
+import com.helloworld.exception.ErrorReporter.ErrorType;
 import com.helloworld.model.ApiResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -10,54 +13,110 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import org.springframework.web.servlet.NoHandlerFoundException;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统一异常处理
+ *
+ * 错误路径要足够便宜，扫描器和坏客户端的洪峰才不会拖慢正常请求：
+ * - 常见错误的响应体是预先建好的常量，不拼接、不格式化，也不回显客户端传来的值
+ * - 参数类型不匹配的响应体按参数名缓存（参数名来自接口定义，数量有限）
+ * - 每类错误计数，日志经 ErrorReporter 限流
+ */
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
+    private static final ApiResponse<Void> INVALID_BODY = ApiResponse.constantError("Invalid request body");
+    private static final ApiResponse<Void> METHOD_NOT_ALLOWED = ApiResponse.constantError("Method is not supported for this endpoint");
+    private static final ApiResponse<Void> NOT_FOUND = ApiResponse.constantError("Endpoint not found");
+    private static final ApiResponse<Void> INTERNAL_ERROR = ApiResponse.constantError("Internal server error");
+
+    private final ErrorReporter errorReporter;
+    private final Map<String, ApiResponse<Void>> typeMismatchBodies = new ConcurrentHashMap<>();
+
+    @Autowired
+    public GlobalExceptionHandler(ErrorReporter errorReporter) {
+        this.errorReporter = errorReporter;
+    }
+
     /**
      * 处理请求体解析错误
      */
     @ExceptionHandler(HttpMessageNotReadableException.class)
-    public ResponseEntity<ApiResponse<Void>> handleHttpMessageNotReadable(HttpMessageNotReadableException ex) {
-        return ResponseEntity.badRequest()
-                .body(ApiResponse.error("Invalid request body: " + ex.getMostSpecificCause().getMessage()));
+    public ResponseEntity<ApiResponse<Void>> handleHttpMessageNotReadable(HttpMessageNotReadableException ex,
+                                                                          HttpServletRequest request) {
+        errorReporter.report(ErrorType.INVALID_BODY, 400, request, ex);
+        return ResponseEntity.badRequest().body(INVALID_BODY);
     }
 
     /**
      * 处理参数类型不匹配
      */
     @ExceptionHandler(MethodArgumentTypeMismatchException.class)
-    public ResponseEntity<ApiResponse<Void>> handleMethodArgumentTypeMismatch(MethodArgumentTypeMismatchException ex) {
-        String message = String.format("Invalid value '%s' for parameter '%s'. Expected type: %s",
-                ex.getValue(), ex.getName(), ex.getRequiredType().getSimpleName());
-        return ResponseEntity.badRequest()
-                .body(ApiResponse.error(message));
+    public ResponseEntity<ApiResponse<Void>> handleMethodArgumentTypeMismatch(MethodArgumentTypeMismatchException ex,
+                                                                              HttpServletRequest request) {
+        errorReporter.report(ErrorType.TYPE_MISMATCH, 400, request, ex);
+        ApiResponse<Void> body = typeMismatchBodies.get(ex.getName());
+        if (body == null) {
+            body = ApiResponse.constantError("Invalid value for parameter '" + ex.getName() + "'. Expected type: "
+                    + (ex.getRequiredType() != null ? ex.getRequiredType().getSimpleName() : "unknown"));
+            typeMismatchBodies.putIfAbsent(ex.getName(), body);
+        }
+        return ResponseEntity.badRequest().body(body);
+    }
+
+    /**
+     * 处理可预期的校验失败（无堆栈、响应体随异常常量一起建好）
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<ApiResponse<Void>> handleInvalidRequest(InvalidRequestException ex,
+                                                                  HttpServletRequest request) {
+        errorReporter.report(ErrorType.VALIDATION, 400, request, ex);
+        return ResponseEntity.badRequest().body(ex.getBody());
     }
 
     /**
      * 处理不支持的 HTTP 方法
      */
     @ExceptionHandler(HttpRequestMethodNotSupportedException.class)
-    public ResponseEntity<ApiResponse<Void>> handleMethodNotSupported(HttpRequestMethodNotSupportedException ex) {
-        return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED)
-                .body(ApiResponse.error("Method " + ex.getMethod() + " is not supported for this endpoint"));
+    public ResponseEntity<ApiResponse<Void>> handleMethodNotSupported(HttpRequestMethodNotSupportedException ex,
+                                                                      HttpServletRequest request) {
+        errorReporter.report(ErrorType.METHOD_NOT_ALLOWED, 405, request, ex);
+        return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).body(METHOD_NOT_ALLOWED);
     }
 
     /**
      * 处理 404 错误
      */
     @ExceptionHandler(NoHandlerFoundException.class)
-    public ResponseEntity<ApiResponse<Void>> handleNoHandlerFound(NoHandlerFoundException ex) {
-        return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                .body(ApiResponse.error("Endpoint not found: " + ex.getRequestURL()));
+    public ResponseEntity<ApiResponse<Void>> handleNoHandlerFound(NoHandlerFoundException ex,
+                                                                  HttpServletRequest request) {
+        errorReporter.report(ErrorType.NOT_FOUND, 404, request, ex);
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(NOT_FOUND);
     }
 
     /**
-     * 处理所有其他未捕获的异常
+     * 处理准入控制拒绝（429/503 带 Retry-After）
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<ApiResponse<Void>> handleAdmissionRejected(AdmissionRejectedException ex,
+                                                                     HttpServletRequest request) {
+        errorReporter.report(ErrorType.REJECTED, ex.getStatus().value(), request, ex);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(ex.getStatus());
+        if (ex.getRetryAfterSeconds() > 0) {
+            builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        }
+        return builder.body(ApiResponse.error(ex.getMessage()));
+    }
+
+    /**
+     * 处理所有其他未捕获的异常：细节只进（限流的）日志，不返回给客户端
      */
     @ExceptionHandler(Exception.class)
-    public ResponseEntity<ApiResponse<Void>> handleAllUncaughtException(Exception ex) {
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(ApiResponse.error("Internal server error: " + ex.getMessage()));
+    public ResponseEntity<ApiResponse<Void>> handleAllUncaughtException(Exception ex, HttpServletRequest request) {
+        errorReporter.report(ErrorType.INTERNAL, 500, request, ex);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(INTERNAL_ERROR);
     }
 }
-
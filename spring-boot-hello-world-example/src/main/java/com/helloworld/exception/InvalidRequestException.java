@@ -0,0 +1,23 @@
+package com.helloworld.exception;
+
+import com.helloworld.model.ApiResponse;
+
+/**
+ * 可预期的请求校验失败（400）
+ *
+ * 和 AdmissionRejectedException 一样不抓取堆栈；消息固定，响应体在构造时建好，
+ * 所以可以声明成常量反复抛出，扫描器和坏客户端的流量不再为每个请求付堆栈和格式化的开销。
+ */
+public class InvalidRequestException extends RuntimeException {
+
+    private final ApiResponse<Void> body;
+
+    public InvalidRequestException(String message) {
+        super(message, null, false, false);
+        this.body = ApiResponse.constantError(message);
+    }
+
+    public ApiResponse<Void> getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,35 @@
+package com.helloworld.health;
+
+import com.helloworld.service.ExportJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 执行器饱和度：导出任务排队数达到 max-queued 时，新任务只会继续排队或被拒绝，判定不就绪
+ */
+@Component
+public class ExportExecutorCheck implements HealthCheck {
+
+    private final ExportJobService exportJobService;
+    private final int maxQueued;
+
+    @Autowired
+    public ExportExecutorCheck(ExportJobService exportJobService,
+                               @Value("${health.export-executor.max-queued:50}") int maxQueued) {
+        this.exportJobService = exportJobService;
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    public String getName() {
+        return "exportExecutor";
+    }
+
+    @Override
+    public Result check() {
+        int queued = exportJobService.getQueuedCount();
+        String detail = exportJobService.getActiveCount() + " running, " + queued + " queued";
+        return queued < maxQueued ? Result.up(detail) : Result.down(detail);
+    }
+}
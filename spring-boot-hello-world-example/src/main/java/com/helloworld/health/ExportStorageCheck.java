@@ -0,0 +1,47 @@
+package com.helloworld.health;
+
+import com.helloworld.service.ExportJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 持久化状态：应用唯一落盘的数据是导出分片，目录不可写或磁盘空间不足时导出任务必然失败
+ */
+@Component
+public class ExportStorageCheck implements HealthCheck {
+
+    private final ExportJobService exportJobService;
+    private final long minFreeBytes;
+
+    @Autowired
+    public ExportStorageCheck(ExportJobService exportJobService,
+                              @Value("${health.export-storage.min-free-mb:100}") long minFreeMB) {
+        this.exportJobService = exportJobService;
+        this.minFreeBytes = minFreeMB * 1024 * 1024;
+    }
+
+    @Override
+    public String getName() {
+        return "exportStorage";
+    }
+
+    @Override
+    public Result check() {
+        Path dir = exportJobService.getBaseDir();
+        if (!Files.isDirectory(dir) || !Files.isWritable(dir)) {
+            return Result.down(dir + " is not a writable directory");
+        }
+        try {
+            long usable = Files.getFileStore(dir).getUsableSpace();
+            String detail = usable / (1024 * 1024) + "MB free in " + dir;
+            return usable >= minFreeBytes ? Result.up(detail) : Result.down(detail);
+        } catch (IOException e) {
+            return Result.down("Cannot stat " + dir + ": " + e.getMessage());
+        }
+    }
+}
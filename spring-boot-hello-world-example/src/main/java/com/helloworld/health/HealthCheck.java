@@ -0,0 +1,54 @@
+package com.helloworld.health;
+
+/**
+ * 就绪检查项
+ *
+ * 由 ReadinessService 在后台线程周期执行，探针请求只读取缓存的结果，
+ * 因此实现可以做文件系统、MXBean 等相对昂贵的查询，但不应阻塞太久。
+ */
+public interface HealthCheck {
+
+    /**
+     * 检查项名称，出现在 /health/ready 的响应中
+     */
+    String getName();
+
+    Result check();
+
+    /**
+     * 不健康时是否判定整体不就绪；自己恢复不了的状态（如不过期的缓存占满）不应参与，
+     * 否则 ALB 会把节点永久摘掉，只在响应里报告
+     */
+    default boolean gatesReadiness() {
+        return true;
+    }
+
+    /**
+     * 检查结果：是否健康及一行说明
+     */
+    final class Result {
+        private final boolean healthy;
+        private final String detail;
+
+        private Result(boolean healthy, String detail) {
+            this.healthy = healthy;
+            this.detail = detail;
+        }
+
+        public static Result up(String detail) {
+            return new Result(true, detail);
+        }
+
+        public static Result down(String detail) {
+            return new Result(false, detail);
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+    }
+}
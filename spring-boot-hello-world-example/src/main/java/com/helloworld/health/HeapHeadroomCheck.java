@@ -0,0 +1,39 @@
+package com.helloworld.health;
+
+import com.helloworld.metrics.JvmTelemetry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 堆余量：存活数据（老年代上次 GC 后占用）距堆上限不足 min-free-percent 时不再接流量，
+ * 让 ALB 在节点 OOM 之前把请求转到其他节点
+ */
+@Component
+public class HeapHeadroomCheck implements HealthCheck {
+
+    private final JvmTelemetry jvmTelemetry;
+    private final int minFreePercent;
+
+    @Autowired
+    public HeapHeadroomCheck(JvmTelemetry jvmTelemetry,
+                             @Value("${health.heap.min-free-percent:10}") int minFreePercent) {
+        this.jvmTelemetry = jvmTelemetry;
+        this.minFreePercent = minFreePercent;
+    }
+
+    @Override
+    public String getName() {
+        return "heap";
+    }
+
+    @Override
+    public Result check() {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long live = jvmTelemetry.getLiveHeapBytes();
+        int freePercent = (int) ((maxHeap - live) * 100 / maxHeap);
+        String detail = "live " + live / (1024 * 1024) + "MB of " + maxHeap / (1024 * 1024) + "MB, "
+                + freePercent + "% free";
+        return freePercent >= minFreePercent ? Result.up(detail) : Result.down(detail);
+    }
+}
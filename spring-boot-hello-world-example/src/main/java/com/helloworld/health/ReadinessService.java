@@ -0,0 +1,132 @@
+package com.helloworld.health;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 就绪状态
+ *
+ * 所有 HealthCheck 在后台线程上按固定间隔执行，结果连同响应体一起预先编码成字节；
+ * /health/ready 探针只读取一个 volatile 引用并写出缓存的字节，不分配对象、不经过 Jackson。
+ * 任一参与判定的检查项不健康即判定整体不就绪，返回 503，ALB 据此停止向该节点转发流量；
+ * 不参与判定的检查项（gatesReadiness 为 false）不健康时只在响应中标为 WARN。
+ *
+ * 配置（均可选）：
+ *   health.readiness.interval-ms=2000
+ *   health.heap.min-free-percent=10
+ *   health.report-cache.max-heap-percent=50
+ *   health.export-storage.min-free-mb=100
+ *   health.export-executor.max-queued=50
+ */
+@Service
+public class ReadinessService {
+
+    private final List<HealthCheck> checks;
+    private final ObjectMapper objectMapper;
+    private final long intervalMs;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Snapshot snapshot = new Snapshot(false,
+            "{\"status\":\"DOWN\",\"reason\":\"starting\"}".getBytes(StandardCharsets.UTF_8));
+    private volatile Date lastTransition = new Date();
+
+    @Autowired
+    public ReadinessService(List<HealthCheck> checks, ObjectMapper objectMapper,
+                            @Value("${health.readiness.interval-ms:2000}") long intervalMs) {
+        this.checks = checks;
+        this.objectMapper = objectMapper;
+        this.intervalMs = intervalMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "readiness");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::evaluate, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 最近一次评估的结果，探针直接使用
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    private void evaluate() {
+        boolean ready = true;
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (HealthCheck check : checks) {
+            HealthCheck.Result result;
+            try {
+                result = check.check();
+            } catch (RuntimeException e) {
+                result = HealthCheck.Result.down(e.toString());
+            }
+            boolean gates = check.gatesReadiness();
+            if (gates) {
+                ready &= result.isHealthy();
+            }
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("status", result.isHealthy() ? "UP" : gates ? "DOWN" : "WARN");
+            item.put("detail", result.getDetail());
+            results.put(check.getName(), item);
+        }
+        if (ready != snapshot.ready) {
+            lastTransition = new Date();
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("status", ready ? "UP" : "DOWN");
+        body.put("since", lastTransition);
+        body.put("checkedAt", new Date());
+        body.put("checks", results);
+        try {
+            snapshot = new Snapshot(ready, objectMapper.writeValueAsBytes(body));
+        } catch (JsonProcessingException e) {
+            snapshot = new Snapshot(ready, snapshot.body);
+        }
+    }
+
+    /**
+     * 就绪状态与预编码的 JSON 响应体
+     */
+    public static final class Snapshot {
+        private final boolean ready;
+        private final byte[] body;
+
+        Snapshot(boolean ready, byte[] body) {
+            this.ready = ready;
+            this.body = body;
+        }
+
+        public boolean isReady() {
+            return ready;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
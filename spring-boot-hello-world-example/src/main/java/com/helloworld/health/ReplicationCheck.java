@@ -0,0 +1,30 @@
+package com.helloworld.health;
+
+import com.helloworld.replication.ReplicationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 复制追平：新节点从对端拉到全量快照之前不接流量，否则会读到缺失的任务
+ */
+@Component
+public class ReplicationCheck implements HealthCheck {
+
+    private final ReplicationService replicationService;
+
+    @Autowired
+    public ReplicationCheck(ReplicationService replicationService) {
+        this.replicationService = replicationService;
+    }
+
+    @Override
+    public String getName() {
+        return "replication";
+    }
+
+    @Override
+    public Result check() {
+        String detail = replicationService.getBootstrapDetail();
+        return replicationService.isBootstrapped() ? Result.up(detail) : Result.down(detail);
+    }
+}
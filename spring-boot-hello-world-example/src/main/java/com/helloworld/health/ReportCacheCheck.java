@@ -0,0 +1,41 @@
+package com.helloworld.health;
+
+import com.helloworld.controller.ReportController;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 报表缓存压力：缓存常驻且不过期，占到堆上限的 max-heap-percent 以上时报告 WARN
+ *
+ * 缓存不会自己变小，节点摘掉以后也恢复不了，所以不参与就绪判定
+ */
+@Component
+public class ReportCacheCheck implements HealthCheck {
+
+    private final int maxHeapPercent;
+
+    @Autowired
+    public ReportCacheCheck(@Value("${health.report-cache.max-heap-percent:50}") int maxHeapPercent) {
+        this.maxHeapPercent = maxHeapPercent;
+    }
+
+    @Override
+    public String getName() {
+        return "reportCache";
+    }
+
+    @Override
+    public Result check() {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long cacheBytes = ReportController.getCacheSizeBytes();
+        int heapPercent = (int) (cacheBytes * 100 / maxHeap);
+        String detail = cacheBytes / (1024 * 1024) + "MB cached, " + heapPercent + "% of max heap";
+        return heapPercent < maxHeapPercent ? Result.up(detail) : Result.down(detail);
+    }
+
+    @Override
+    public boolean gatesReadiness() {
+        return false;
+    }
+}
@@ -0,0 +1,30 @@
+package com.helloworld.health;
+
+import com.helloworld.service.WarmupService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 预热完成：JIT 编译稳定之前不接流量，否则部署后的前几分钟 p99 会明显升高
+ */
+@Component
+public class WarmupCheck implements HealthCheck {
+
+    private final WarmupService warmupService;
+
+    @Autowired
+    public WarmupCheck(WarmupService warmupService) {
+        this.warmupService = warmupService;
+    }
+
+    @Override
+    public String getName() {
+        return "warmup";
+    }
+
+    @Override
+    public Result check() {
+        String detail = warmupService.getDetail();
+        return warmupService.isComplete() ? Result.up(detail) : Result.down(detail);
+    }
+}
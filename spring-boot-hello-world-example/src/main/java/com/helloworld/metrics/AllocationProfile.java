@@ -0,0 +1,126 @@
+package com.helloworld.metrics;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按路由汇总的请求分配量（分配大户排行）
+ *
+ * 由 RequestMetricsFilter 在每个同步请求结束时写入处理线程分配的字节数，
+ * 每个路由一行：请求数、总分配量、单请求最大值、单请求分配量直方图，
+ * 以及首次出现时记录的处理方法（如 ExportController#stressTest），
+ * 出事故时不用抓堆转储就能直接定位是哪个接口在大量分配。
+ */
+@Component
+public class AllocationProfile {
+
+    private final ConcurrentHashMap<String, RouteAllocation> routes = new ConcurrentHashMap<>();
+    private volatile long resetAt = System.currentTimeMillis();
+
+    /**
+     * 记录一次请求的分配量
+     *
+     * @param handler Spring 匹配到的处理器，只在路由首次出现时用来生成描述
+     */
+    public void record(String route, Object handler, long allocatedBytes) {
+        RouteAllocation allocation = routes.get(route);
+        if (allocation == null) {
+            allocation = routes.computeIfAbsent(route, key -> new RouteAllocation(key, describe(handler)));
+        }
+        allocation.requests.increment();
+        allocation.totalBytes.add(allocatedBytes);
+        allocation.perRequest.record(allocatedBytes);
+        long max;
+        while (allocatedBytes > (max = allocation.maxBytes.get())
+                && !allocation.maxBytes.compareAndSet(max, allocatedBytes)) {
+            // 重试
+        }
+    }
+
+    /**
+     * 分配量最大的前 N 个路由
+     *
+     * @param sortBy total（总量，默认）/ avg（单请求平均）/ max（单请求最大）
+     */
+    public List<Map<String, Object>> topN(int n, String sortBy) {
+        List<RouteAllocation> all = new ArrayList<>(routes.values());
+        Comparator<RouteAllocation> order;
+        switch (sortBy) {
+            case "avg":
+                order = Comparator.comparingLong(RouteAllocation::averageBytes);
+                break;
+            case "max":
+                order = Comparator.comparingLong(a -> a.maxBytes.get());
+                break;
+            case "total":
+            default:
+                order = Comparator.comparingLong(a -> a.totalBytes.sum());
+        }
+        all.sort(order.reversed());
+
+        long grandTotal = 0;
+        for (RouteAllocation allocation : all) {
+            grandTotal += allocation.totalBytes.sum();
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (RouteAllocation allocation : all.subList(0, Math.max(0, Math.min(n, all.size())))) {
+            long total = allocation.totalBytes.sum();
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("route", allocation.route);
+            row.put("handler", allocation.handler);
+            row.put("requests", allocation.requests.sum());
+            row.put("totalMB", total / (1024 * 1024));
+            row.put("sharePercent", grandTotal == 0 ? 0 : (int) (total * 100 / grandTotal));
+            row.put("avgKBPerRequest", allocation.averageBytes() / 1024);
+            row.put("p99KBPerRequest", allocation.perRequest.valueAtQuantile(0.99) / 1024);
+            row.put("maxKBPerRequest", allocation.maxBytes.get() / 1024);
+            result.add(row);
+        }
+        return result;
+    }
+
+    public long getResetAt() {
+        return resetAt;
+    }
+
+    /**
+     * 清空统计，从现在开始重新累计（便于观察事故期间的分配情况）
+     */
+    public void reset() {
+        routes.clear();
+        resetAt = System.currentTimeMillis();
+    }
+
+    private static String describe(Object handler) {
+        if (handler instanceof HandlerMethod) {
+            HandlerMethod method = (HandlerMethod) handler;
+            return method.getBeanType().getSimpleName() + "#" + method.getMethod().getName();
+        }
+        return handler != null ? handler.getClass().getSimpleName() : null;
+    }
+
+    private static class RouteAllocation {
+        final String route;
+        final String handler;
+        final LongAdder requests = new LongAdder();
+        final LongAdder totalBytes = new LongAdder();
+        final AtomicLong maxBytes = new AtomicLong();
+        final LatencyHistogram perRequest = new LatencyHistogram();
+
+        RouteAllocation(String route, String handler) {
+            this.route = route;
+            this.handler = handler;
+        }
+
+        long averageBytes() {
+            long count = requests.sum();
+            return count == 0 ? 0 : totalBytes.sum() / count;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package com.helloworld.metrics;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JVM GC 与分配遥测
+ *
+ * 补充 Runtime.totalMemory/freeMemory 看不到的信息，供事故排查使用：
+ * - GC 通知：每次 GC 结束时记录停顿时长（按收集器分直方图）、原因和前后堆占用
+ * - 内存池采样：定时采样老年代当前占用和上次 GC 后占用，保留最近一段趋势
+ * - 分配速率：定时汇总所有线程的累计分配字节数，按差值计算进程级分配速率
+ */
+@Component
+public class JvmTelemetry {
+
+    private static final int MAX_GC_EVENTS = 100;
+    private static final int MAX_TREND_SAMPLES = 120;
+
+    private final long sampleIntervalSeconds;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final ThreadMXBean cpuTimeBean;
+    private final MemoryPoolMXBean oldGenPool;
+    private final ScheduledExecutorService sampler;
+
+    private final Map<String, LatencyHistogram> pauseHistograms = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> recentGcEvents = new ArrayDeque<>();
+    private final Deque<long[]> oldGenTrend = new ArrayDeque<>();
+    private final List<NotificationEmitter> registeredEmitters = new ArrayList<>();
+    private final NotificationListener gcListener = this::onGcNotification;
+
+    // 分配速率采样状态，只由采样线程访问
+    private final Map<Long, Long> lastThreadAllocated = new HashMap<>();
+    private final AtomicLong totalAllocatedBytes = new AtomicLong();
+    private volatile long allocationRateBytesPerSec;
+
+    @Autowired
+    public JvmTelemetry(@Value("${telemetry.sample-interval-seconds:5}") long sampleIntervalSeconds) {
+        this.sampleIntervalSeconds = sampleIntervalSeconds;
+        this.threadBean = allocationCapableThreadBean();
+        this.cpuTimeBean = cpuTimeCapableThreadBean();
+        this.oldGenPool = findOldGenPool();
+        this.sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jvm-telemetry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(gcListener, null, null);
+                registeredEmitters.add(emitter);
+            }
+        }
+        sampler.scheduleAtFixedRate(this::sample, 0, sampleIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sampler.shutdownNow();
+        for (NotificationEmitter emitter : registeredEmitters) {
+            try {
+                emitter.removeNotificationListener(gcListener);
+            } catch (Exception e) {
+                // 已经移除或 MBean 不可用，忽略
+            }
+        }
+    }
+
+    /**
+     * 当前线程累计分配的字节数，不支持时返回 -1
+     */
+    public long currentThreadAllocatedBytes() {
+        return threadBean != null ? threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * 当前线程累计消耗的 CPU 纳秒数，不支持时返回 -1
+     */
+    public long currentThreadCpuNanos() {
+        return cpuTimeBean != null ? cpuTimeBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    public long getTotalGcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    public long getTotalGcTimeMs() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    public long getAllocationRateBytesPerSec() {
+        return allocationRateBytesPerSec;
+    }
+
+    /**
+     * 老年代上次 GC 后的存活量，不可用时返回 -1
+     */
+    public long getOldGenUsedAfterGc() {
+        if (oldGenPool == null || oldGenPool.getCollectionUsage() == null) {
+            return -1;
+        }
+        return oldGenPool.getCollectionUsage().getUsed();
+    }
+
+    /**
+     * 堆中的存活数据量估计
+     *
+     * 当前已用堆包含尚未回收的垃圾，直接拿来判断会在 GC 前误判堆压力；
+     * 优先使用老年代上次 GC 后的占用，取不到时退回到当前已用堆。
+     */
+    public long getLiveHeapBytes() {
+        long oldGenAfterGc = getOldGenUsedAfterGc();
+        if (oldGenAfterGc > 0) {
+            return oldGenAfterGc;
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * 简要 GC 信息，供 /info、报表统计等接口附带输出
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("gcCount", getTotalGcCount());
+        summary.put("gcTimeMs", getTotalGcTimeMs());
+        summary.put("allocationRateMBPerSec", allocationRateBytesPerSec / (1024 * 1024));
+        long oldGenAfterGc = getOldGenUsedAfterGc();
+        if (oldGenAfterGc >= 0) {
+            summary.put("oldGenAfterGcMB", oldGenAfterGc / (1024 * 1024));
+        }
+        return summary;
+    }
+
+    /**
+     * 完整遥测快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new HashMap<>(summary());
+
+        Map<String, Object> pauses = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : pauseHistograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("count", histogram.getTotalCount());
+            item.put("totalMs", histogram.getTotalSum() / 1000);
+            item.put("p50Ms", histogram.valueAtQuantile(0.5) / 1000.0);
+            item.put("p99Ms", histogram.valueAtQuantile(0.99) / 1000.0);
+            item.put("maxMs", histogram.getMaxValue() / 1000.0);
+            pauses.put(entry.getKey(), item);
+        }
+        snapshot.put("gcPauses", pauses);
+
+        List<Map<String, Object>> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            Map<String, Object> item = new HashMap<>();
+            item.put("name", pool.getName());
+            item.put("usedMB", pool.getUsage().getUsed() / (1024 * 1024));
+            item.put("maxMB", pool.getUsage().getMax() / (1024 * 1024));
+            if (pool.getCollectionUsage() != null) {
+                item.put("usedAfterGcMB", pool.getCollectionUsage().getUsed() / (1024 * 1024));
+            }
+            pools.add(item);
+        }
+        snapshot.put("heapPools", pools);
+
+        synchronized (recentGcEvents) {
+            snapshot.put("recentGcEvents", new ArrayList<>(recentGcEvents));
+        }
+
+        List<Map<String, Object>> trend = new ArrayList<>();
+        synchronized (oldGenTrend) {
+            for (long[] sample : oldGenTrend) {
+                Map<String, Object> point = new HashMap<>();
+                point.put("timestamp", sample[0]);
+                point.put("usedMB", sample[1] / (1024 * 1024));
+                point.put("usedAfterGcMB", sample[2] / (1024 * 1024));
+                trend.add(point);
+            }
+        }
+        snapshot.put("oldGenTrend", trend);
+        return snapshot;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP jvm_gc_pause_seconds GC duration by collector\n");
+        out.append("# TYPE jvm_gc_pause_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(pauseHistograms).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            String gc = entry.getKey();
+            out.append("jvm_gc_pause_seconds{gc=\"").append(gc).append("\",quantile=\"0.5\"} ")
+                    .append(histogram.valueAtQuantile(0.5) / 1_000_000.0).append('\n');
+            out.append("jvm_gc_pause_seconds{gc=\"").append(gc).append("\",quantile=\"0.99\"} ")
+                    .append(histogram.valueAtQuantile(0.99) / 1_000_000.0).append('\n');
+            out.append("jvm_gc_pause_seconds_sum{gc=\"").append(gc).append("\"} ")
+                    .append(histogram.getTotalSum() / 1_000_000.0).append('\n');
+            out.append("jvm_gc_pause_seconds_count{gc=\"").append(gc).append("\"} ")
+                    .append(histogram.getTotalCount()).append('\n');
+        }
+
+        out.append("# HELP jvm_memory_pool_used_bytes Heap pool occupancy\n");
+        out.append("# TYPE jvm_memory_pool_used_bytes gauge\n");
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                out.append("jvm_memory_pool_used_bytes{pool=\"").append(pool.getName()).append("\"} ")
+                        .append(pool.getUsage().getUsed()).append('\n');
+            }
+        }
+        out.append("# HELP jvm_memory_pool_used_after_gc_bytes Heap pool occupancy after the last collection\n");
+        out.append("# TYPE jvm_memory_pool_used_after_gc_bytes gauge\n");
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                out.append("jvm_memory_pool_used_after_gc_bytes{pool=\"").append(pool.getName()).append("\"} ")
+                        .append(pool.getCollectionUsage().getUsed()).append('\n');
+            }
+        }
+
+        out.append("# HELP jvm_allocated_bytes_total Bytes allocated by live threads since startup\n");
+        out.append("# TYPE jvm_allocated_bytes_total counter\n");
+        out.append("jvm_allocated_bytes_total ").append(totalAllocatedBytes.get()).append('\n');
+    }
+
+    private void onGcNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+
+        pauseHistograms.computeIfAbsent(info.getGcName(), name -> new LatencyHistogram())
+                .record(gcInfo.getDuration() * 1000);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("gc", info.getGcName());
+        event.put("action", info.getGcAction());
+        event.put("cause", info.getGcCause());
+        event.put("durationMs", gcInfo.getDuration());
+        event.put("timestamp", System.currentTimeMillis());
+        event.put("heapBeforeMB", heapUsed(gcInfo.getMemoryUsageBeforeGc()) / (1024 * 1024));
+        event.put("heapAfterMB", heapUsed(gcInfo.getMemoryUsageAfterGc()) / (1024 * 1024));
+        synchronized (recentGcEvents) {
+            if (recentGcEvents.size() >= MAX_GC_EVENTS) {
+                recentGcEvents.removeFirst();
+            }
+            recentGcEvents.addLast(event);
+        }
+    }
+
+    private void sample() {
+        try {
+            sampleAllocation();
+            sampleOldGen();
+        } catch (RuntimeException e) {
+            // 采样失败不能让定时任务停掉
+        }
+    }
+
+    /**
+     * 按线程累计分配量的差值估算分配速率；线程退出后其分配量不再计入
+     */
+    private void sampleAllocation() {
+        if (threadBean == null) {
+            return;
+        }
+        long[] ids = threadBean.getAllThreadIds();
+        long[] allocated = threadBean.getThreadAllocatedBytes(ids);
+        long delta = 0;
+        Map<Long, Long> current = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) {
+            if (allocated[i] < 0) {
+                continue;
+            }
+            Long previous = lastThreadAllocated.get(ids[i]);
+            delta += previous == null ? allocated[i] : Math.max(0, allocated[i] - previous);
+            current.put(ids[i], allocated[i]);
+        }
+        boolean firstSample = lastThreadAllocated.isEmpty();
+        lastThreadAllocated.clear();
+        lastThreadAllocated.putAll(current);
+        totalAllocatedBytes.addAndGet(delta);
+        if (!firstSample) {
+            allocationRateBytesPerSec = delta / Math.max(1, sampleIntervalSeconds);
+        }
+    }
+
+    private void sampleOldGen() {
+        if (oldGenPool == null) {
+            return;
+        }
+        MemoryUsage afterGc = oldGenPool.getCollectionUsage();
+        long[] sample = {
+                System.currentTimeMillis(),
+                oldGenPool.getUsage().getUsed(),
+                afterGc != null ? afterGc.getUsed() : -1
+        };
+        synchronized (oldGenTrend) {
+            if (oldGenTrend.size() >= MAX_TREND_SAMPLES) {
+                oldGenTrend.removeFirst();
+            }
+            oldGenTrend.addLast(sample);
+        }
+    }
+
+    private static long heapUsed(Map<String, MemoryUsage> usageByPool) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = usageByPool.get(pool.getName());
+            if (usage != null && pool.getType() == MemoryType.HEAP) {
+                used += usage.getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCapableThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                }
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    private static ThreadMXBean cpuTimeCapableThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!bean.isCurrentThreadCpuTimeSupported()) {
+            return null;
+        }
+        if (!bean.isThreadCpuTimeEnabled()) {
+            bean.setThreadCpuTimeEnabled(true);
+        }
+        return bean;
+    }
+
+    private static MemoryPoolMXBean findOldGenPool() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = pool.getName();
+            if (pool.getType() == MemoryType.HEAP && (name.contains("Old") || name.contains("Tenured"))) {
+                return pool;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.helloworld.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁的双缓冲直方图记录器（思路同 HdrHistogram 的 Recorder / WriterReaderPhaser）
+ *
+ * 写线程只往 active 直方图里记录，进出临界区各一次原子操作，不加锁、不分配对象；
+ * 读线程把 active 与 inactive 对调，再等待所有仍在旧直方图上写入的线程退出，
+ * 之后旧直方图就只属于读线程，可以安全地汇总和清零。
+ */
+public class LatencyRecorder {
+
+    private final AtomicLong startEpoch = new AtomicLong(0);
+    private final AtomicLong evenEndEpoch = new AtomicLong(0);
+    private final AtomicLong oddEndEpoch = new AtomicLong(Long.MIN_VALUE);
+
+    private volatile LatencyHistogram active = new LatencyHistogram();
+    private LatencyHistogram inactive = new LatencyHistogram();
+
+    public void record(long value) {
+        long epoch = startEpoch.getAndIncrement();
+        try {
+            active.record(value);
+        } finally {
+            if (epoch < 0) {
+                oddEndEpoch.getAndIncrement();
+            } else {
+                evenEndEpoch.getAndIncrement();
+            }
+        }
+    }
+
+    /**
+     * 取出自上次调用以来的区间直方图并累加到 target
+     *
+     * 读线程之间互斥；写线程不会被阻塞。
+     */
+    public synchronized void drainInto(LatencyHistogram target) {
+        inactive.reset();
+        LatencyHistogram interval = active;
+        active = inactive;
+        inactive = interval;
+        flipPhase();
+        target.add(interval);
+    }
+
+    /**
+     * 切换奇偶阶段，并等待上一阶段进入的写线程全部退出
+     */
+    private void flipPhase() {
+        boolean nextPhaseIsEven = startEpoch.get() < 0;
+        long initialStartValue = nextPhaseIsEven ? 0 : Long.MIN_VALUE;
+        if (nextPhaseIsEven) {
+            evenEndEpoch.set(initialStartValue);
+        } else {
+            oddEndEpoch.set(initialStartValue);
+        }
+        long startValueAtFlip = startEpoch.getAndSet(initialStartValue);
+        AtomicLong previousEnd = nextPhaseIsEven ? oddEndEpoch : evenEndEpoch;
+        while (previousEnd.get() != startValueAtFlip) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.helloworld.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按路由（Spring 匹配到的 URL 模板）和 HTTP 方法汇总的请求指标
+ *
+ * 写入路径（record）在路由首次出现后不再分配对象：
+ * 路由查找是一次 ConcurrentHashMap.get，方法映射到固定下标，
+ * 延迟写入 LatencyRecorder，计数和分配字节数使用 LongAdder。
+ * 读取路径（writePrometheus）把各记录器的区间直方图并入累计直方图后输出。
+ */
+@Component
+public class RequestMetrics {
+
+    /**
+     * 未匹配到任何处理器的请求（404、静态资源等）统一归到这个路由，避免按原始 URI 无限膨胀
+     */
+    public static final String UNMATCHED_ROUTE = "UNMATCHED";
+
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "OTHER"};
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+
+    private final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一次请求
+     *
+     * @param route  URL 模板，如 /api/tasks/{id}
+     * @param method HTTP 方法
+     * @param status 响应状态码
+     * @param micros 耗时（微秒）
+     * @param allocatedBytes 处理线程在请求期间分配的字节数，未知时传 -1
+     */
+    public void record(String route, String method, int status, long micros, long allocatedBytes) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            metrics = routes.computeIfAbsent(route, RouteMetrics::new);
+        }
+        MethodMetrics m = metrics.byMethod[methodIndex(method)];
+        m.recorder.record(micros);
+        m.requests.increment();
+        if (allocatedBytes >= 0) {
+            m.allocatedBytes.add(allocatedBytes);
+        }
+        if (status >= 500) {
+            m.serverErrors.increment();
+        } else if (status >= 400) {
+            m.clientErrors.increment();
+        }
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     *
+     * 分位数基于进程启动以来的累计直方图，与 _sum/_count 口径一致。
+     */
+    public synchronized void writePrometheus(StringBuilder out) {
+        Map<String, RouteMetrics> sorted = new TreeMap<>(routes);
+
+        out.append("# HELP http_server_request_duration_seconds Request latency by route\n");
+        out.append("# TYPE http_server_request_duration_seconds summary\n");
+        for (RouteMetrics route : sorted.values()) {
+            for (int i = 0; i < METHODS.length; i++) {
+                MethodMetrics m = route.byMethod[i];
+                m.recorder.drainInto(m.cumulative);
+                if (m.cumulative.getTotalCount() == 0) {
+                    continue;
+                }
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    out.append("http_server_request_duration_seconds{");
+                    labels(out, route.route, METHODS[i]);
+                    out.append(",quantile=\"").append(QUANTILE_LABELS[q]).append("\"} ");
+                    seconds(out, m.cumulative.valueAtQuantile(QUANTILES[q])).append('\n');
+                }
+                out.append("http_server_request_duration_seconds_sum{");
+                labels(out, route.route, METHODS[i]);
+                out.append("} ");
+                seconds(out, m.cumulative.getTotalSum()).append('\n');
+                out.append("http_server_request_duration_seconds_count{");
+                labels(out, route.route, METHODS[i]);
+                out.append("} ").append(m.cumulative.getTotalCount()).append('\n');
+            }
+        }
+
+        out.append("# HELP http_server_request_duration_seconds_max Max request latency by route\n");
+        out.append("# TYPE http_server_request_duration_seconds_max gauge\n");
+        forEachActive(sorted, (route, method, m) -> {
+            out.append("http_server_request_duration_seconds_max{");
+            labels(out, route, method);
+            out.append("} ");
+            seconds(out, m.cumulative.getMaxValue()).append('\n');
+        });
+
+        out.append("# HELP http_server_requests_total Requests by route\n");
+        out.append("# TYPE http_server_requests_total counter\n");
+        forEachActive(sorted, (route, method, m) -> {
+            out.append("http_server_requests_total{");
+            labels(out, route, method);
+            out.append("} ").append(m.requests.sum()).append('\n');
+        });
+
+        out.append("# HELP http_server_allocated_bytes_total Heap bytes allocated while handling requests, by route\n");
+        out.append("# TYPE http_server_allocated_bytes_total counter\n");
+        forEachActive(sorted, (route, method, m) -> {
+            out.append("http_server_allocated_bytes_total{");
+            labels(out, route, method);
+            out.append("} ").append(m.allocatedBytes.sum()).append('\n');
+        });
+
+        out.append("# HELP http_server_errors_total Error responses by route and status class\n");
+        out.append("# TYPE http_server_errors_total counter\n");
+        forEachActive(sorted, (route, method, m) -> {
+            out.append("http_server_errors_total{");
+            labels(out, route, method);
+            out.append(",status=\"4xx\"} ").append(m.clientErrors.sum()).append('\n');
+            out.append("http_server_errors_total{");
+            labels(out, route, method);
+            out.append(",status=\"5xx\"} ").append(m.serverErrors.sum()).append('\n');
+        });
+    }
+
+    private interface MethodVisitor {
+        void visit(String route, String method, MethodMetrics metrics);
+    }
+
+    private static void forEachActive(Map<String, RouteMetrics> routes, MethodVisitor visitor) {
+        for (RouteMetrics route : routes.values()) {
+            for (int i = 0; i < METHODS.length; i++) {
+                MethodMetrics m = route.byMethod[i];
+                if (m.requests.sum() > 0) {
+                    visitor.visit(route.route, METHODS[i], m);
+                }
+            }
+        }
+    }
+
+    private static void labels(StringBuilder out, String route, String method) {
+        out.append("method=\"").append(method).append("\",route=\"");
+        for (int i = 0; i < route.length(); i++) {
+            char c = route.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\');
+            }
+            if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static StringBuilder seconds(StringBuilder out, long micros) {
+        return out.append(micros / 1_000_000.0);
+    }
+
+    private static int methodIndex(String method) {
+        switch (method) {
+            case "GET":
+                return 0;
+            case "POST":
+                return 1;
+            case "PUT":
+                return 2;
+            case "DELETE":
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    private static class RouteMetrics {
+        final String route;
+        final MethodMetrics[] byMethod = new MethodMetrics[METHODS.length];
+
+        RouteMetrics(String route) {
+            this.route = route;
+            for (int i = 0; i < byMethod.length; i++) {
+                byMethod[i] = new MethodMetrics();
+            }
+        }
+    }
+
+    private static class MethodMetrics {
+        final LatencyRecorder recorder = new LatencyRecorder();
+        final LatencyHistogram cumulative = new LatencyHistogram();
+        final LongAdder requests = new LongAdder();
+        final LongAdder clientErrors = new LongAdder();
+        final LongAdder serverErrors = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+    }
+}
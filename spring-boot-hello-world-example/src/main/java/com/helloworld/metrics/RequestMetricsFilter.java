@@ -0,0 +1,113 @@
+package com.helloworld.metrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 记录每个请求的延迟、吞吐和错误数
+ *
+ * 放在过滤器链最外层，计时覆盖整个 Spring MVC 处理过程；
+ * 路由取 Spring 匹配到的 URL 模板（请求处理完成后才可用），而不是原始 URI。
+ * 同步请求的记录路径不分配对象；异步请求（如流式下载）在异步完成时记录。
+ *
+ * 同时记录处理线程在请求期间分配的堆字节数（ThreadMXBean），用于按接口统计分配速率
+ * 和分配大户排行（AllocationProfile）；异步请求的工作在其他线程上完成，由执行方把分配量
+ * 写入请求属性 ASYNC_ALLOCATED_BYTES_ATTRIBUTE，没有写入时不计分配量。
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    /**
+     * 异步请求在工作线程上分配的字节数（Long）
+     */
+    public static final String ASYNC_ALLOCATED_BYTES_ATTRIBUTE = RequestMetricsFilter.class.getName() + ".asyncAllocatedBytes";
+
+    private final RequestMetrics requestMetrics;
+    private final JvmTelemetry jvmTelemetry;
+    private final AllocationProfile allocationProfile;
+
+    @Autowired
+    public RequestMetricsFilter(RequestMetrics requestMetrics, JvmTelemetry jvmTelemetry,
+                                AllocationProfile allocationProfile) {
+        this.requestMetrics = requestMetrics;
+        this.jvmTelemetry = jvmTelemetry;
+        this.allocationProfile = allocationProfile;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        long allocatedAtStart = jvmTelemetry.currentThreadAllocatedBytes();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncCompletionListener(start));
+            } else {
+                long allocated = allocatedAtStart < 0 ? -1 : jvmTelemetry.currentThreadAllocatedBytes() - allocatedAtStart;
+                record(request, failed ? 500 : response.getStatus(), start, allocated);
+            }
+        }
+    }
+
+    private void record(HttpServletRequest request, int status, long startNanos, long allocatedBytes) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = pattern != null ? pattern.toString() : RequestMetrics.UNMATCHED_ROUTE;
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        requestMetrics.record(route, request.getMethod(), status, micros, allocatedBytes);
+        if (allocatedBytes >= 0) {
+            allocationProfile.record(route, request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE),
+                    allocatedBytes);
+        }
+    }
+
+    private class AsyncCompletionListener implements AsyncListener {
+        private final long startNanos;
+        private boolean failed;
+
+        AsyncCompletionListener(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            HttpServletRequest request = (HttpServletRequest) event.getAsyncContext().getRequest();
+            HttpServletResponse response = (HttpServletResponse) event.getAsyncContext().getResponse();
+            Object allocated = request.getAttribute(ASYNC_ALLOCATED_BYTES_ATTRIBUTE);
+            record(request, failed ? 500 : response.getStatus(), startNanos,
+                    allocated instanceof Long ? (Long) allocated : -1);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            failed = true;
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // 重新开始异步时监听器会被移除，这里重新注册
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -33,6 +33,13 @@ public class ApiResponse<T> {
         return new ApiResponse<>(false, message, null);
     }
 
+    /**
+     * 不可修改的错误响应，可以声明成常量在请求之间共用；调用 setter 抛出 UnsupportedOperationException
+     */
+    public static <T> ApiResponse<T> constantError(String message) {
+        return new Constant<>(message);
+    }
+
     // Getters and Setters
     public boolean isSuccess() {
         return success;
@@ -65,5 +72,36 @@ public class ApiResponse<T> {
     public void setTotal(Integer total) {
         this.total = total;
     }
+
+    private static final class Constant<T> extends ApiResponse<T> {
+
+        Constant(String message) {
+            super(false, message, null);
+        }
+
+        @Override
+        public void setSuccess(boolean success) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void setMessage(String message) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void setData(T data) {
+            throw unmodifiable();
+        }
+
+        @Override
+        public void setTotal(Integer total) {
+            throw unmodifiable();
+        }
+
+        private static UnsupportedOperationException unmodifiable() {
+            return new UnsupportedOperationException("Shared error response cannot be modified");
+        }
+    }
 }
 
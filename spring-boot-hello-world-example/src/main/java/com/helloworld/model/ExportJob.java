@@ -0,0 +1,116 @@
+package com.helloworld.model;
+
+import java.util.Date;
+
+/**
+ * 异步导出任务
+ *
+ * 导出结果按顺序写入若干分片文件（chunk），分片写完即封存，可单独下载；
+ * 全部分片写完后任务进入 COMPLETED，可整体按字节区间断点续传下载。
+ */
+public class ExportJob {
+
+    public enum JobStatus {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String exportId;
+    private final String tenant;
+    private final String type;
+    private final String format;
+    private final String dateRange;
+    private final int records;
+    private final Date createdAt;
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile int chunkCount;
+    private volatile long totalBytes;
+    private volatile Date completedAt;
+    private volatile String error;
+
+    public ExportJob(String exportId, String tenant, String type, String format, String dateRange, int records) {
+        this.exportId = exportId;
+        this.tenant = tenant;
+        this.type = type;
+        this.format = format;
+        this.dateRange = dateRange;
+        this.records = records;
+        this.createdAt = new Date();
+    }
+
+    /**
+     * 封存一个分片，由导出线程在分片文件写完后调用
+     */
+    public void chunkSealed(long chunkBytes) {
+        totalBytes += chunkBytes;
+        chunkCount++;
+    }
+
+    public void markRunning() {
+        status = JobStatus.RUNNING;
+    }
+
+    public void markCompleted() {
+        completedAt = new Date();
+        status = JobStatus.COMPLETED;
+    }
+
+    public void markFailed(String error) {
+        this.error = error;
+        completedAt = new Date();
+        status = JobStatus.FAILED;
+    }
+
+    public boolean isFinished() {
+        return status == JobStatus.COMPLETED || status == JobStatus.FAILED;
+    }
+
+    // Getters
+    public String getExportId() {
+        return exportId;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public String getDateRange() {
+        return dateRange;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -33,6 +33,18 @@ public class Task {
         this.description = description;
     }
 
+    /**
+     * 字段级副本。仓库中保存的任务是各读视图共享的只读版本，修改前要先复制
+     */
+    public Task copy() {
+        Task copy = new Task(id, title, description);
+        copy.status = status;
+        copy.priority = priority;
+        copy.createdAt = createdAt;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -0,0 +1,35 @@
+package com.helloworld.replication;
+
+import com.helloworld.model.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 节点间传输的一批变更（JSON）
+ */
+public class ReplicationBatch {
+
+    /**
+     * 发送方节点号
+     */
+    public int origin;
+
+    /**
+     * 是否是全量快照（新节点追平或积压溢出后的重新同步）
+     */
+    public boolean snapshot;
+
+    public List<Delta> deltas = new ArrayList<>();
+
+    public static class Delta {
+        public long id;
+        public long version;
+        public boolean deleted;
+        public Task task;
+        /**
+         * 源节点提交时间（毫秒），用于计算复制延迟；快照条目为 0
+         */
+        public long committedAt;
+    }
+}
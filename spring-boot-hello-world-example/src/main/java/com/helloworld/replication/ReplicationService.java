@@ -0,0 +1,563 @@
+package com.helloworld.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.metrics.LatencyHistogram;
+import com.helloworld.repository.TaskChange;
+import com.helloworld.repository.TaskChangeListener;
+import com.helloworld.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务数据的节点间复制
+ *
+ * ASG 里每个节点都持有全量任务数据，读请求只查本地内存；写请求在本地提交后，
+ * 由监听器把变更放进每个对端的发送队列，后台线程按 flush-interval-ms 攒批，
+ * 通过 HTTP 发到对端的 /internal/replication/deltas。复制是异步的，写请求不等待对端确认。
+ *
+ * 冲突按版本号解决（last-writer-wins，见 TaskRepository）：同一任务在两个节点并发修改时，
+ * 各节点收到对方的变更后比较版本号，最终都保留同一个版本。删除以墓碑形式保留 tombstone-ttl-seconds，
+ * 防止迟到的旧修改把已删除的任务复活。
+ *
+ * - 发送失败时整批保留，按指数退避重试，不丢也不乱序
+ * - 某个对端的积压超过 max-pending 时丢弃队列，改为向它推送一次全量快照
+ * - 启动时从任一对端拉取全量快照追平，追平前（或超过 bootstrap-timeout-ms 前）就绪检查不通过
+ *
+ * 配置（均可选，默认关闭）：
+ *   replication.enabled=false
+ *   replication.node-id=0                      各节点唯一，取值 [0, max-nodes)
+ *   replication.max-nodes=16                   新任务 id 按节点号交错分配，步长即 max-nodes
+ *   replication.peers=http://10.0.1.12:8080/SpringBootHelloWorldExampleApplication,...
+ *   replication.token=                         开启复制时必填，对端请求要带请求头 X-Replication-Token；
+ *                                              未配置时启动失败，否则任何能访问到节点的客户端都能改写、删除任意任务
+ *   replication.batch-size=500
+ *   replication.flush-interval-ms=50
+ *   replication.max-pending=100000
+ *   replication.timeout-ms=2000
+ *   replication.tombstone-ttl-seconds=600
+ *   replication.bootstrap-timeout-ms=10000
+ */
+@Service
+public class ReplicationService implements TaskChangeListener {
+
+    public static final String BASE_PATH = "/internal/replication";
+    public static final String TOKEN_HEADER = "X-Replication-Token";
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationService.class);
+
+    private static final double[] QUANTILES = {0.5, 0.99};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99"};
+    private static final long MAX_BACKOFF_MS = 5000;
+    private static final int MAX_BATCHES_PER_FLUSH = 20;
+
+    private final TaskRepository taskRepository;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int nodeId;
+    private final int maxNodes;
+    private final byte[] token;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final int maxPending;
+    private final int timeoutMs;
+    private final long tombstoneTtlMs;
+    private final long bootstrapTimeoutMs;
+    private final List<Peer> peers = new ArrayList<>();
+
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final Map<Integer, LatencyHistogram> lagByOrigin = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService sender;
+    private volatile boolean bootstrapped;
+    private volatile String bootstrapDetail = "not started";
+    private long bootstrapDeadline;
+
+    @Autowired
+    public ReplicationService(TaskRepository taskRepository, ObjectMapper objectMapper, Environment environment) {
+        this.taskRepository = taskRepository;
+        this.objectMapper = objectMapper;
+        this.enabled = environment.getProperty("replication.enabled", Boolean.class, false);
+        this.nodeId = environment.getProperty("replication.node-id", Integer.class, 0);
+        this.maxNodes = environment.getProperty("replication.max-nodes", Integer.class, 16);
+        this.token = environment.getProperty("replication.token", "").getBytes(StandardCharsets.UTF_8);
+        if (enabled && token.length == 0) {
+            throw new IllegalStateException("replication.enabled=true requires replication.token; "
+                    + "without it anyone who can reach " + BASE_PATH + " can overwrite or delete any task");
+        }
+        this.batchSize = environment.getProperty("replication.batch-size", Integer.class, 500);
+        this.flushIntervalMs = environment.getProperty("replication.flush-interval-ms", Long.class, 50L);
+        this.maxPending = environment.getProperty("replication.max-pending", Integer.class, 100_000);
+        this.timeoutMs = environment.getProperty("replication.timeout-ms", Integer.class, 2000);
+        this.tombstoneTtlMs = environment.getProperty("replication.tombstone-ttl-seconds", Long.class, 600L) * 1000;
+        this.bootstrapTimeoutMs = environment.getProperty("replication.bootstrap-timeout-ms", Long.class, 10_000L);
+        for (String url : environment.getProperty("replication.peers", "").split(",")) {
+            String trimmed = url.trim();
+            if (!trimmed.isEmpty()) {
+                peers.add(new Peer(trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed));
+            }
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            bootstrapped = true;
+            bootstrapDetail = "replication disabled";
+            return;
+        }
+        taskRepository.configureReplication(nodeId, maxNodes);
+        taskRepository.addChangeListener(this);
+        if (peers.isEmpty()) {
+            bootstrapped = true;
+            bootstrapDetail = "no peers configured";
+            return;
+        }
+        sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replication-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bootstrapDeadline = System.currentTimeMillis() + bootstrapTimeoutMs;
+        sender.execute(this::bootstrap);
+        sender.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        long purgeIntervalMs = Math.max(1000, tombstoneTtlMs / 10);
+        sender.scheduleWithFixedDelay(this::purgeTombstones, purgeIntervalMs, purgeIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Replication enabled: node {} with peers {}", nodeId, peers);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        taskRepository.removeChangeListener(this);
+        if (sender != null) {
+            sender.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isBootstrapped() {
+        return bootstrapped;
+    }
+
+    public String getBootstrapDetail() {
+        return bootstrapDetail;
+    }
+
+    /**
+     * 校验对端请求携带的令牌；未配置令牌（只可能是没开启复制）时一律拒绝
+     */
+    public boolean isAuthorized(String presented) {
+        return token.length > 0 && presented != null
+                && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 本地提交的变更入队，其他节点复制过来的变更不再转发
+     */
+    @Override
+    public void onChange(TaskChange change) {
+        if (change.getOrigin() != nodeId || change.getCommittedAt() == 0) {
+            return;
+        }
+        ReplicationBatch.Delta delta = toDelta(change);
+        for (Peer peer : peers) {
+            if (peer.resyncRequired) {
+                continue;
+            }
+            if (peer.pending.incrementAndGet() > maxPending) {
+                // 对端长时间不可达：不再无限堆积，恢复后改发全量快照
+                peer.resyncRequired = true;
+                peer.queue.clear();
+                peer.pending.set(0);
+                log.warn("Replication backlog to {} exceeded {}, switching to full resync", peer.url, maxPending);
+                continue;
+            }
+            peer.queue.offer(delta);
+        }
+    }
+
+    /**
+     * 应用对端发来的一批变更
+     *
+     * @return applied（生效条数）和 stale（本地已有更新版本而忽略的条数）
+     */
+    public Map<String, Object> apply(ReplicationBatch batch) {
+        long now = System.currentTimeMillis();
+        int appliedCount = 0;
+        LatencyHistogram lag = null;
+        for (ReplicationBatch.Delta delta : batch.deltas) {
+            if (taskRepository.applyRemote(delta.id, delta.version, delta.deleted ? null : delta.task,
+                    delta.committedAt)) {
+                appliedCount++;
+            }
+            if (delta.committedAt > 0) {
+                if (lag == null) {
+                    lag = lagByOrigin.computeIfAbsent(batch.origin, origin -> new LatencyHistogram());
+                }
+                lag.record((now - delta.committedAt) * 1000);
+            }
+        }
+        int staleCount = batch.deltas.size() - appliedCount;
+        applied.add(appliedCount);
+        stale.add(staleCount);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("applied", appliedCount);
+        result.put("stale", staleCount);
+        return result;
+    }
+
+    /**
+     * 本节点的全量快照，供新节点追平
+     */
+    public ReplicationBatch snapshot() {
+        ReplicationBatch batch = new ReplicationBatch();
+        batch.origin = nodeId;
+        batch.snapshot = true;
+        for (TaskChange change : taskRepository.snapshot()) {
+            batch.deltas.add(toDelta(change));
+        }
+        return batch;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("nodeId", nodeId);
+        stats.put("bootstrapped", bootstrapped);
+        stats.put("bootstrapDetail", bootstrapDetail);
+        stats.put("applied", applied.sum());
+        stats.put("stale", stale.sum());
+        stats.put("tombstones", taskRepository.getTombstoneCount());
+
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> peerStats = new ArrayList<>();
+        for (Peer peer : peers) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("url", peer.url);
+            item.put("pending", peer.pendingCount());
+            item.put("oldestPendingMs", peer.oldestPendingMillis(now));
+            item.put("shipped", peer.shipped.sum());
+            item.put("failures", peer.failures.sum());
+            item.put("resyncRequired", peer.resyncRequired);
+            item.put("lastSuccessAgoMs", peer.lastSuccessAt > 0 ? now - peer.lastSuccessAt : null);
+            peerStats.add(item);
+        }
+        stats.put("peers", peerStats);
+
+        Map<String, Object> lag = new TreeMap<>();
+        for (Map.Entry<Integer, LatencyHistogram> entry : lagByOrigin.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("count", histogram.getTotalCount());
+            item.put("p50Ms", histogram.valueAtQuantile(0.5) / 1000.0);
+            item.put("p99Ms", histogram.valueAtQuantile(0.99) / 1000.0);
+            item.put("maxMs", histogram.getMaxValue() / 1000.0);
+            lag.put(String.valueOf(entry.getKey()), item);
+        }
+        stats.put("lagByOrigin", lag);
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        if (!enabled) {
+            return;
+        }
+        out.append("# HELP replication_lag_seconds Delay from commit on the origin node to apply on this node\n");
+        out.append("# TYPE replication_lag_seconds summary\n");
+        for (Map.Entry<Integer, LatencyHistogram> entry : new TreeMap<>(lagByOrigin).entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            for (int q = 0; q < QUANTILES.length; q++) {
+                out.append("replication_lag_seconds{origin=\"").append(entry.getKey())
+                        .append("\",quantile=\"").append(QUANTILE_LABELS[q]).append("\"} ")
+                        .append(histogram.valueAtQuantile(QUANTILES[q]) / 1_000_000.0).append('\n');
+            }
+            out.append("replication_lag_seconds_sum{origin=\"").append(entry.getKey()).append("\"} ")
+                    .append(histogram.getTotalSum() / 1_000_000.0).append('\n');
+            out.append("replication_lag_seconds_count{origin=\"").append(entry.getKey()).append("\"} ")
+                    .append(histogram.getTotalCount()).append('\n');
+        }
+
+        long now = System.currentTimeMillis();
+        out.append("# HELP replication_pending_deltas Local changes not yet acknowledged by the peer\n");
+        out.append("# TYPE replication_pending_deltas gauge\n");
+        for (Peer peer : peers) {
+            out.append("replication_pending_deltas{peer=\"").append(peer.url).append("\"} ")
+                    .append(peer.pendingCount()).append('\n');
+        }
+        out.append("# HELP replication_oldest_pending_seconds Age of the oldest unacknowledged change\n");
+        out.append("# TYPE replication_oldest_pending_seconds gauge\n");
+        for (Peer peer : peers) {
+            out.append("replication_oldest_pending_seconds{peer=\"").append(peer.url).append("\"} ")
+                    .append(peer.oldestPendingMillis(now) / 1000.0).append('\n');
+        }
+        out.append("# HELP replication_shipped_total Changes acknowledged by the peer\n");
+        out.append("# TYPE replication_shipped_total counter\n");
+        for (Peer peer : peers) {
+            out.append("replication_shipped_total{peer=\"").append(peer.url).append("\"} ")
+                    .append(peer.shipped.sum()).append('\n');
+        }
+        out.append("# HELP replication_send_failures_total Failed batch deliveries\n");
+        out.append("# TYPE replication_send_failures_total counter\n");
+        for (Peer peer : peers) {
+            out.append("replication_send_failures_total{peer=\"").append(peer.url).append("\"} ")
+                    .append(peer.failures.sum()).append('\n');
+        }
+        out.append("# HELP replication_applied_total Remote changes received, by result\n");
+        out.append("# TYPE replication_applied_total counter\n");
+        out.append("replication_applied_total{result=\"applied\"} ").append(applied.sum()).append('\n');
+        out.append("replication_applied_total{result=\"stale\"} ").append(stale.sum()).append('\n');
+        out.append("# HELP replication_tombstones Deleted task ids retained for conflict resolution\n");
+        out.append("# TYPE replication_tombstones gauge\n");
+        out.append("replication_tombstones ").append(taskRepository.getTombstoneCount()).append('\n');
+    }
+
+    /**
+     * 依次向各对端拉取快照，任一成功即视为追平；全部失败则一秒后重试，直到超时放行
+     */
+    private void bootstrap() {
+        StringBuilder failures = new StringBuilder();
+        for (Peer peer : peers) {
+            try {
+                ReplicationBatch batch = fetchSnapshot(peer);
+                Map<String, Object> result = apply(batch);
+                bootstrapDetail = "synced " + batch.deltas.size() + " entries from " + peer.url
+                        + " (" + result.get("applied") + " applied)";
+                bootstrapped = true;
+                log.info("Replication bootstrap: {}", bootstrapDetail);
+                return;
+            } catch (IOException | RuntimeException e) {
+                failures.append(failures.length() == 0 ? "" : ", ").append(peer.url).append(": ").append(e.getMessage());
+            }
+        }
+        if (System.currentTimeMillis() >= bootstrapDeadline) {
+            // 所有对端都不可达（例如整组冷启动），以本地数据开始服务，对端恢复后会推送变更
+            bootstrapDetail = "no peer reachable within " + bootstrapTimeoutMs + "ms, starting with local data";
+            bootstrapped = true;
+            log.warn("Replication bootstrap: {} ({})", bootstrapDetail, failures);
+            return;
+        }
+        bootstrapDetail = "waiting for peers: " + failures;
+        sender.schedule(this::bootstrap, 1, TimeUnit.SECONDS);
+    }
+
+    private void flushAll() {
+        for (Peer peer : peers) {
+            try {
+                for (int i = 0; i < MAX_BATCHES_PER_FLUSH && flush(peer); i++) {
+                    // 积压较多时连续发送，直到队列清空或发送失败
+                }
+            } catch (RuntimeException e) {
+                // 定时任务抛出异常会被取消，这里只记录
+                log.warn("Replication flush to {} failed", peer.url, e);
+            }
+        }
+    }
+
+    /**
+     * 向对端发送一批变更
+     *
+     * @return 发送成功且队列中还有待发送的变更
+     */
+    private boolean flush(Peer peer) {
+        long now = System.currentTimeMillis();
+        if (now < peer.nextAttemptAt) {
+            return false;
+        }
+        ReplicationBatch batch;
+        boolean resync = peer.resyncRequired;
+        if (resync) {
+            // 标记为 true 期间 onChange 不再入队，先清空队列，再清除标记让新变更重新入队，最后取快照：
+            // 清除标记之前提交的变更都在快照里，之后的都在队列里，两边都有的由对端按版本号忽略
+            peer.queue.clear();
+            peer.pending.set(0);
+            peer.inFlight = Collections.emptyList();
+            peer.resyncRequired = false;
+            batch = snapshot();
+        } else {
+            if (peer.inFlight.isEmpty()) {
+                List<ReplicationBatch.Delta> drained = new ArrayList<>(Math.min(batchSize, peer.pending.get()));
+                ReplicationBatch.Delta delta;
+                while (drained.size() < batchSize && (delta = peer.queue.poll()) != null) {
+                    drained.add(delta);
+                }
+                peer.pending.addAndGet(-drained.size());
+                peer.inFlight = drained;
+            }
+            if (peer.inFlight.isEmpty()) {
+                return false;
+            }
+            batch = new ReplicationBatch();
+            batch.origin = nodeId;
+            batch.deltas = peer.inFlight;
+        }
+
+        if (!post(peer, batch)) {
+            if (resync) {
+                // 快照没送到，下次重发一份新的；这期间入队的变更会在那时随队列一起清掉
+                peer.resyncRequired = true;
+            }
+            peer.failures.increment();
+            peer.backoffMs = Math.min(MAX_BACKOFF_MS, Math.max(100, peer.backoffMs * 2));
+            peer.nextAttemptAt = now + peer.backoffMs;
+            return false;
+        }
+        if (resync) {
+            log.info("Replication resync to {} completed with {} entries", peer.url, batch.deltas.size());
+        }
+        peer.shipped.add(batch.deltas.size());
+        peer.inFlight = Collections.emptyList();
+        peer.backoffMs = 0;
+        peer.lastSuccessAt = System.currentTimeMillis();
+        return peer.pending.get() > 0;
+    }
+
+    private boolean post(Peer peer, ReplicationBatch batch) {
+        HttpURLConnection connection = null;
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(batch);
+            connection = open(peer.url + BASE_PATH + "/deltas");
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+            int status = connection.getResponseCode();
+            drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            if (status / 100 != 2) {
+                log.debug("Replication batch to {} rejected with status {}", peer.url, status);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            log.debug("Replication batch to {} failed: {}", peer.url, e.getMessage());
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return false;
+        }
+    }
+
+    private ReplicationBatch fetchSnapshot(Peer peer) throws IOException {
+        HttpURLConnection connection = open(peer.url + BASE_PATH + "/snapshot");
+        int status = connection.getResponseCode();
+        if (status != 200) {
+            drain(connection.getErrorStream());
+            throw new IOException("status " + status);
+        }
+        try (InputStream in = connection.getInputStream()) {
+            return objectMapper.readValue(in, ReplicationBatch.class);
+        }
+    }
+
+    private HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(timeoutMs);
+        connection.setReadTimeout(timeoutMs);
+        connection.setRequestProperty("Accept", "application/json");
+        if (token.length > 0) {
+            connection.setRequestProperty(TOKEN_HEADER, new String(token, StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    /**
+     * 读完响应体，连接才能回到 keep-alive 池复用
+     */
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        try (InputStream stream = in) {
+            byte[] buffer = new byte[1024];
+            while (stream.read(buffer) != -1) {
+                // 丢弃
+            }
+        }
+    }
+
+    private void purgeTombstones() {
+        int purged = taskRepository.purgeTombstones(System.currentTimeMillis() - tombstoneTtlMs);
+        if (purged > 0) {
+            log.debug("Purged {} replication tombstones", purged);
+        }
+    }
+
+    private static ReplicationBatch.Delta toDelta(TaskChange change) {
+        ReplicationBatch.Delta delta = new ReplicationBatch.Delta();
+        delta.id = change.getId();
+        delta.version = change.getVersion();
+        delta.deleted = change.getType() == TaskChange.Type.DELETE;
+        delta.task = change.getTask();
+        delta.committedAt = change.getCommittedAt();
+        return delta;
+    }
+
+    private static final class Peer {
+        final String url;
+        final Queue<ReplicationBatch.Delta> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger pending = new AtomicInteger();
+        final LongAdder shipped = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        volatile boolean resyncRequired;
+        volatile long lastSuccessAt;
+        // 以下字段只由发送线程读写（统计读取 inFlight 时容忍旧值）
+        volatile List<ReplicationBatch.Delta> inFlight = Collections.emptyList();
+        long backoffMs;
+        long nextAttemptAt;
+
+        Peer(String url) {
+            this.url = url;
+        }
+
+        int pendingCount() {
+            return pending.get() + inFlight.size();
+        }
+
+        long oldestPendingMillis(long now) {
+            List<ReplicationBatch.Delta> current = inFlight;
+            ReplicationBatch.Delta oldest = !current.isEmpty() ? current.get(0) : queue.peek();
+            return oldest != null ? Math.max(0, now - oldest.committedAt) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
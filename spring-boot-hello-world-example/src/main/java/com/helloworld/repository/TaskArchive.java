@@ -0,0 +1,764 @@
+package com.helloworld.repository;
+
+import com.helloworld.DirectoryLock;
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 已归档任务的段文件，由 TaskRepository 管理
+ *
+ * 每次归档写一个不可变的段文件：任务按 id 排序，每 BLOCK_TASKS 个一块，块单独 Deflate 压缩；
+ * 文件末尾是稀疏索引（每块的首 id、偏移、长度）和定长尾部，段文件本身是自描述的。
+ * 内存中只保留每段的稀疏索引和 id 范围，按 id 查找时二分定位到块，读一块解压后顺序查找。
+ *
+ * 归档后又被修改、删除或被复制覆盖的任务，段里的旧副本由遮蔽表（masks）屏蔽：
+ * 从遮蔽的提交序号起，早于遮蔽时段序号的副本不再可见。同一任务可能被多次遮蔽，
+ * 较早的遮蔽要保留到比下一次遮蔽更早打开的视图都关闭，所以每个 id 是一条从新到旧的遮蔽链。
+ * 任一时刻，同一任务在各段中至多有一个未被遮蔽的副本。
+ *
+ * 整理（compact）把几个段中仍可见的副本按 id 归并写成一个新段，从发布时的提交序号起替换它们；
+ * 更早的视图继续读旧段。最老的视图也晚于替换时，旧段移出，只遮蔽旧段的遮蔽随之丢弃；
+ * 旧段的文件再等一轮整理才关闭和删除，移出前取到段列表、按最新版本读取的调用那时早已结束。
+ * 段序号只增不减，与段在列表中的位置无关。
+ *
+ * 存储只在内存中，重启后由种子数据或复制追平重建，所以打开时清空目录，和导出分片一样。
+ * 清空之前先对目录加独占锁（DirectoryLock），另一个实例正在用这个目录时打开失败，不会清掉它的段。
+ */
+final class TaskArchive {
+
+    private static final int BLOCK_TASKS = 64;
+    private static final int MAGIC = 0x54534547; // "TSEG"
+    private static final int FORMAT_VERSION = 1;
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    private final Path dir;
+    private final DirectoryLock lock;
+    private final Object publishLock = new Object();
+    // 按段序号升序；写段和发布由调用方串行执行
+    private volatile Segment[] segments = new Segment[0];
+    // 下一个段序号，由 publishLock 保护
+    private int nextSeq;
+    // 已移出 segments、下一轮整理时关闭的段，只由整理线程访问
+    private List<Segment> removed = new ArrayList<>();
+    private final Map<Long, Mask> masks = new ConcurrentHashMap<>();
+    private final AtomicLong liveCount = new AtomicLong();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder blockReads = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+
+    /**
+     * @throws IllegalStateException 目录已被另一个实例锁住
+     */
+    TaskArchive(Path dir) throws IOException {
+        this.dir = dir;
+        this.lock = DirectoryLock.acquire(dir, "archive.dir");
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 已归档且未被遮蔽的任务
+     */
+    long count() {
+        return liveCount.get();
+    }
+
+    /**
+     * 写出段文件，返回的段尚未发布，查找不到
+     *
+     * @param entries 按 id 升序，不能为空
+     */
+    Segment write(List<Entry> entries) throws IOException {
+        return writeSegment(reserveSeq(), entries.iterator());
+    }
+
+    /**
+     * 把按 id 升序的副本写成序号为 seq 的段文件，边读边写；没有副本时不写文件，返回 null
+     */
+    private Segment writeSegment(int seq, Iterator<Entry> entries) throws IOException {
+        long[] firstIds = new long[16];
+        long[] offsets = new long[16];
+        int[] lengths = new int[16];
+        int[] rawLengths = new int[16];
+        int blocks = 0;
+        int count = 0;
+        long maxId = Long.MIN_VALUE;
+        int statusMask = 0;
+        int priorityMask = 0;
+
+        Path tmp = dir.resolve(SEGMENT_PREFIX + seq + ".tmp");
+        Path file = dir.resolve(String.format("%s%06d.seg", SEGMENT_PREFIX, seq));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_TASKS * 256);
+            DataOutputStream data = new DataOutputStream(raw);
+            byte[] compressed = new byte[BLOCK_TASKS * 256];
+            long offset = 0;
+            while (entries.hasNext()) {
+                raw.reset();
+                long firstId = 0;
+                for (int i = 0; i < BLOCK_TASKS && entries.hasNext(); i++) {
+                    Entry entry = entries.next();
+                    Task task = entry.task;
+                    if (i == 0) {
+                        firstId = task.getId();
+                    }
+                    writeTask(data, task, entry.version);
+                    maxId = task.getId();
+                    count++;
+                    statusMask |= task.getStatus() != null ? 1 << task.getStatus().ordinal() : 0;
+                    priorityMask |= task.getPriority() != null ? 1 << task.getPriority().ordinal() : 0;
+                }
+                data.flush();
+                byte[] block = raw.toByteArray();
+                deflater.reset();
+                deflater.setInput(block);
+                deflater.finish();
+                int length = 0;
+                while (!deflater.finished()) {
+                    if (length == compressed.length) {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    length += deflater.deflate(compressed, length, compressed.length - length);
+                }
+                writeFully(out, ByteBuffer.wrap(compressed, 0, length));
+                if (blocks == firstIds.length) {
+                    firstIds = Arrays.copyOf(firstIds, blocks * 2);
+                    offsets = Arrays.copyOf(offsets, blocks * 2);
+                    lengths = Arrays.copyOf(lengths, blocks * 2);
+                    rawLengths = Arrays.copyOf(rawLengths, blocks * 2);
+                }
+                firstIds[blocks] = firstId;
+                offsets[blocks] = offset;
+                lengths[blocks] = length;
+                rawLengths[blocks] = block.length;
+                blocks++;
+                offset += length;
+            }
+
+            ByteBuffer index = ByteBuffer.allocate(blocks * 24 + 24);
+            for (int b = 0; b < blocks; b++) {
+                index.putLong(firstIds[b]).putLong(offsets[b]).putInt(lengths[b]).putInt(rawLengths[b]);
+            }
+            index.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(blocks).putInt(count).putLong(offset);
+            index.flip();
+            writeFully(out, index);
+            out.force(true);
+        } finally {
+            deflater.end();
+        }
+        if (count == 0) {
+            Files.delete(tmp);
+            return null;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+
+        return new Segment(seq, file, FileChannel.open(file, StandardOpenOption.READ), count,
+                Arrays.copyOf(firstIds, blocks), Arrays.copyOf(offsets, blocks), Arrays.copyOf(lengths, blocks),
+                Arrays.copyOf(rawLengths, blocks), maxId, statusMask, priorityMask);
+    }
+
+    /**
+     * 发布段：stamp 不晚于随后挂上的归档标记，任何视图都不会既看不到存储里的版本也看不到段里的副本
+     */
+    void publish(Segment segment, long stamp) {
+        segment.stamp = stamp;
+        synchronized (publishLock) {
+            Segment[] next = Arrays.copyOf(segments, segments.length + 1);
+            next[next.length - 1] = segment;
+            segments = next;
+        }
+        liveCount.addAndGet(segment.count);
+    }
+
+    /**
+     * 屏蔽 id 在当前各段中的可见副本，从提交序号 stamp 起生效；调用方持有该 id 的锁
+     *
+     * @param oldestOpen 最老的打开中视图的序号，更早的遮蔽不再需要
+     */
+    void mask(long id, long stamp, long oldestOpen) {
+        synchronized (publishLock) {
+            // 覆盖到已预留的序号：正在整理写出的段里如果有它的副本，发布后同样被屏蔽
+            addMask(id, stamp, nextSeq, oldestOpen);
+        }
+        liveCount.decrementAndGet();
+    }
+
+    /**
+     * 归档时存储中的版本已被修改或删除、没有挂上归档标记的任务：从段发布起屏蔽它在 segment 中的副本。
+     * 此后存储里要么有它的版本，要么它已被删除，段里的副本都不该再被看到
+     */
+    void discard(long id, Segment segment, long oldestOpen) {
+        if (masked(masks.get(id), segment, Long.MAX_VALUE)) {
+            // 段发布后任务被删除又重建，重建时已经屏蔽了段里的副本，不能再减一次
+            return;
+        }
+        addMask(id, segment.stamp, segment.seq + 1, oldestOpen);
+        liveCount.decrementAndGet();
+    }
+
+    /**
+     * 在 stamp 时刻可见的归档副本，不存在时返回 null
+     */
+    Entry find(long id, long stamp) {
+        Segment[] current = segments;
+        if (current.length == 0) {
+            return null;
+        }
+        lookups.increment();
+        Mask mask = masks.get(id);
+        for (int s = current.length - 1; s >= 0; s--) {
+            Segment segment = current[s];
+            if (!segment.visibleAt(stamp) || id < segment.firstIds[0] || id > segment.maxId) {
+                continue;
+            }
+            if (masked(mask, segment, stamp)) {
+                // 同一 id 只有更早的段里还可能有副本，它们同样被屏蔽
+                return null;
+            }
+            int block = Arrays.binarySearch(segment.firstIds, id);
+            block = block >= 0 ? block : -block - 2;
+            DataInputStream in = readBlock(segment, block);
+            try {
+                int end = Math.min(segment.count, (block + 1) * BLOCK_TASKS);
+                for (int i = block * BLOCK_TASKS; i < end; i++) {
+                    Entry entry = readTask(in);
+                    if (entry.task.getId() == id) {
+                        return entry;
+                    }
+                    if (entry.task.getId() > id) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 逐个返回 stamp 时刻可见（未被屏蔽）的归档副本，按段从旧到新、段内按 id 升序
+     *
+     * @param status   非 null 时跳过不含该状态的段
+     * @param priority 非 null 时跳过不含该优先级的段
+     */
+    Iterator<Entry> iterator(long stamp, TaskStatus status, TaskPriority priority) {
+        Segment[] current = segments;
+        return new Iterator<Entry>() {
+            private int segment = -1;
+            private Iterator<Entry> entries = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!entries.hasNext()) {
+                    if (++segment >= current.length) {
+                        return false;
+                    }
+                    Segment seg = current[segment];
+                    if (seg.visibleAt(stamp)
+                            && (status == null || (seg.statusMask & 1 << status.ordinal()) != 0)
+                            && (priority == null || (seg.priorityMask & 1 << priority.ordinal()) != 0)) {
+                        entries = entries(seg, stamp);
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return entries.next();
+            }
+        };
+    }
+
+    /**
+     * 回收、整理段，调用方串行调用，且不与 write / publish 并发
+     *
+     * 先移出最老的视图也用不到的旧段，丢弃只遮蔽它们的遮蔽，关闭上一轮移出的段。
+     * 再整理仍在用的段：半数以上副本已被屏蔽时全部重写成一个段；
+     * 否则段数超过 maxSegments 时，反复把副本数之和最小的相邻两段合成一段。
+     *
+     * @param oldestOpen 最老的打开中视图的序号
+     * @param stamps     当前提交序号，整理出的段从发布时的序号起替换旧段
+     * @return 整理次数
+     */
+    int compact(int maxSegments, long oldestOpen, LongSupplier stamps) throws IOException {
+        reclaim(oldestOpen);
+        int compacted = 0;
+        boolean rewritten = false;
+        while (true) {
+            List<Segment> live = new ArrayList<>();
+            long total = 0;
+            for (Segment segment : segments) {
+                if (!segment.retired()) {
+                    live.add(segment);
+                    total += segment.count;
+                }
+            }
+            List<Segment> group;
+            if (!rewritten && (total - liveCount.get()) * 2 > total) {
+                group = live;
+                rewritten = true;
+            } else if (live.size() > Math.max(1, maxSegments)) {
+                int pick = 0;
+                long smallest = Long.MAX_VALUE;
+                for (int i = 0; i + 1 < live.size(); i++) {
+                    long size = (long) live.get(i).count + live.get(i + 1).count;
+                    if (size < smallest) {
+                        smallest = size;
+                        pick = i;
+                    }
+                }
+                group = live.subList(pick, pick + 2);
+            } else {
+                return compacted;
+            }
+            replace(group, stamps);
+            compacted++;
+        }
+    }
+
+    void close() {
+        for (Segment segment : segments) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                // 关闭时忽略
+            }
+        }
+        for (Segment segment : removed) {
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                // 关闭时忽略
+            }
+        }
+        try {
+            lock.close();
+        } catch (IOException e) {
+            // 关闭时忽略
+        }
+    }
+
+    void writePrometheus(StringBuilder out) {
+        Segment[] current = segments;
+        long bytes = 0;
+        for (Segment segment : current) {
+            bytes += segment.bytes;
+        }
+        out.append("# HELP task_archive_segments Immutable archive segment files\n");
+        out.append("# TYPE task_archive_segments gauge\n");
+        out.append("task_archive_segments ").append(current.length).append('\n');
+        out.append("# HELP task_archive_tasks Archived tasks served from segment files\n");
+        out.append("# TYPE task_archive_tasks gauge\n");
+        out.append("task_archive_tasks ").append(liveCount.get()).append('\n');
+        out.append("# HELP task_archive_bytes Compressed size of all archive segments\n");
+        out.append("# TYPE task_archive_bytes gauge\n");
+        out.append("task_archive_bytes ").append(bytes).append('\n');
+        out.append("# HELP task_archive_masked_tasks Archived copies hidden because the task changed again\n");
+        out.append("# TYPE task_archive_masked_tasks gauge\n");
+        out.append("task_archive_masked_tasks ").append(masks.size()).append('\n');
+        out.append("# HELP task_archive_lookups_total Point lookups that fell through to the archive\n");
+        out.append("# TYPE task_archive_lookups_total counter\n");
+        out.append("task_archive_lookups_total ").append(lookups.sum()).append('\n');
+        out.append("# HELP task_archive_block_reads_total Compressed blocks read from segment files\n");
+        out.append("# TYPE task_archive_block_reads_total counter\n");
+        out.append("task_archive_block_reads_total ").append(blockReads.sum()).append('\n');
+        out.append("# HELP task_archive_compactions_total Archive segments rewritten to drop masked copies or merge segments\n");
+        out.append("# TYPE task_archive_compactions_total counter\n");
+        out.append("task_archive_compactions_total ").append(compactions.sum()).append('\n');
+    }
+
+    Map<String, Object> getStats() {
+        Segment[] current = segments;
+        long bytes = 0;
+        for (Segment segment : current) {
+            bytes += segment.bytes;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dir", dir.toString());
+        stats.put("segments", current.length);
+        stats.put("tasks", liveCount.get());
+        stats.put("bytes", bytes);
+        stats.put("maskedTasks", masks.size());
+        stats.put("lookups", lookups.sum());
+        stats.put("blockReads", blockReads.sum());
+        stats.put("compactions", compactions.sum());
+        return stats;
+    }
+
+    private void addMask(long id, long stamp, int beforeSeq, long oldestOpen) {
+        Mask older = masks.get(id);
+        // 新遮蔽覆盖的段不少于旧的；所有视图都晚于新遮蔽时，旧的可以丢掉
+        masks.put(id, new Mask(stamp, beforeSeq, stamp <= oldestOpen ? null : older));
+    }
+
+    private static boolean masked(Mask mask, Segment segment, long stamp) {
+        for (Mask m = mask; m != null; m = m.older) {
+            if (m.stamp <= stamp) {
+                return segment.seq < m.beforeSeq;
+            }
+        }
+        return false;
+    }
+
+    private int reserveSeq() {
+        synchronized (publishLock) {
+            return nextSeq++;
+        }
+    }
+
+    /**
+     * 把 group 中仍可见的副本写成一个新段，从发布时的提交序号起替换 group
+     */
+    private void replace(List<Segment> group, LongSupplier stamps) throws IOException {
+        // 预留序号之后加的遮蔽都覆盖新段；之前加的遮蔽，归并时已经读到，屏蔽的副本不会写进新段
+        int seq = reserveSeq();
+        List<Iterator<Entry>> sources = new ArrayList<>(group.size());
+        for (Segment segment : group) {
+            sources.add(entries(segment, Long.MAX_VALUE));
+        }
+        Segment merged = writeSegment(seq, mergeById(sources));
+        synchronized (publishLock) {
+            long stamp = stamps.getAsLong();
+            List<Segment> next = new ArrayList<>(segments.length + 1);
+            for (Segment segment : segments) {
+                next.add(group.contains(segment) ? segment.retire(stamp) : segment);
+            }
+            if (merged != null) {
+                merged.stamp = stamp;
+                next.add(merged);
+            }
+            segments = next.toArray(new Segment[0]);
+        }
+        compactions.increment();
+    }
+
+    /**
+     * 关闭上一轮移出的段并删除文件，再移出 oldestOpen 时已被替换的段，丢弃不再遮蔽任何段的遮蔽
+     */
+    private void reclaim(long oldestOpen) throws IOException {
+        for (Segment segment : removed) {
+            segment.channel.close();
+            Files.deleteIfExists(segment.file);
+        }
+        removed = new ArrayList<>();
+        int minSeq;
+        synchronized (publishLock) {
+            List<Segment> kept = new ArrayList<>(segments.length);
+            for (Segment segment : segments) {
+                if (segment.retired() && segment.retiredAt <= oldestOpen) {
+                    removed.add(segment);
+                } else {
+                    kept.add(segment);
+                }
+            }
+            if (removed.isEmpty()) {
+                return;
+            }
+            segments = kept.toArray(new Segment[0]);
+            minSeq = kept.isEmpty() ? nextSeq : kept.get(0).seq;
+        }
+        // 链头覆盖的段最多，链头都只覆盖已移出的段时整条链没用了；条件删除，不会误删并发加上的新链
+        masks.values().removeIf(mask -> mask.beforeSeq <= minSeq);
+    }
+
+    /**
+     * 逐个返回 segment 中在 stamp 时刻未被屏蔽的副本，按 id 升序
+     */
+    private Iterator<Entry> entries(Segment segment, long stamp) {
+        return new Iterator<Entry>() {
+            private int index;
+            private DataInputStream block;
+            private Entry next;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (next == null) {
+                        if (index >= segment.count) {
+                            return false;
+                        }
+                        if (index % BLOCK_TASKS == 0) {
+                            block = readBlock(segment, index / BLOCK_TASKS);
+                        }
+                        Entry entry = readTask(block);
+                        index++;
+                        if (!masked(masks.get(entry.task.getId()), segment, stamp)) {
+                            next = entry;
+                        }
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = next;
+                next = null;
+                return entry;
+            }
+        };
+    }
+
+    /**
+     * 按 id 归并几个各自有序的来源；同一任务至多有一个可见副本，不会重复
+     */
+    private static Iterator<Entry> mergeById(List<Iterator<Entry>> sources) {
+        Entry[] heads = new Entry[sources.size()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = sources.get(i).hasNext() ? sources.get(i).next() : null;
+        }
+        return new Iterator<Entry>() {
+            @Override
+            public boolean hasNext() {
+                for (Entry head : heads) {
+                    if (head != null) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public Entry next() {
+                int pick = -1;
+                for (int i = 0; i < heads.length; i++) {
+                    if (heads[i] != null && (pick < 0 || heads[i].task.getId() < heads[pick].task.getId())) {
+                        pick = i;
+                    }
+                }
+                if (pick < 0) {
+                    throw new NoSuchElementException();
+                }
+                Entry entry = heads[pick];
+                heads[pick] = sources.get(pick).hasNext() ? sources.get(pick).next() : null;
+                return entry;
+            }
+        };
+    }
+
+    private DataInputStream readBlock(Segment segment, int block) {
+        blockReads.increment();
+        ByteBuffer buffer = ByteBuffer.allocate(segment.lengths[block]);
+        try {
+            long position = segment.offsets[block];
+            while (buffer.hasRemaining()) {
+                if (segment.channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Archive segment truncated: " + segment.file);
+                }
+            }
+            byte[] raw = new byte[segment.rawLengths[block]];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(buffer.array());
+                int length = 0;
+                while (length < raw.length) {
+                    int n = inflater.inflate(raw, length, raw.length - length);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IOException("Archive block corrupt: " + segment.file + " block " + block);
+                    }
+                    length += n;
+                }
+            } finally {
+                inflater.end();
+            }
+            return new DataInputStream(new ByteArrayInputStream(raw));
+        } catch (IOException | DataFormatException e) {
+            throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    private static void writeTask(DataOutputStream out, Task task, long version) throws IOException {
+        out.writeLong(task.getId());
+        out.writeLong(version);
+        writeString(out, task.getTitle());
+        writeString(out, task.getDescription());
+        out.writeByte(task.getStatus() != null ? task.getStatus().ordinal() : -1);
+        out.writeByte(task.getPriority() != null ? task.getPriority().ordinal() : -1);
+        out.writeLong(task.getCreatedAt() != null ? task.getCreatedAt().getTime() : Long.MIN_VALUE);
+        out.writeLong(task.getUpdatedAt() != null ? task.getUpdatedAt().getTime() : Long.MIN_VALUE);
+    }
+
+    private static Entry readTask(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        long version = in.readLong();
+        Task task = new Task(id, readString(in), readString(in));
+        int status = in.readByte();
+        int priority = in.readByte();
+        long createdAt = in.readLong();
+        long updatedAt = in.readLong();
+        task.setStatus(status >= 0 ? STATUSES[status] : null);
+        task.setPriority(priority >= 0 ? PRIORITIES[priority] : null);
+        task.setCreatedAt(createdAt != Long.MIN_VALUE ? new Date(createdAt) : null);
+        task.setUpdatedAt(updatedAt != Long.MIN_VALUE ? new Date(updatedAt) : null);
+        return new Entry(task, version);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        // 不用 writeUTF：描述可能超过它 64KB 的上限
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * 归档副本及其复制版本号；task 是解码出的新对象，调用方可以直接持有
+     */
+    static final class Entry {
+        final Task task;
+        final long version;
+
+        Entry(Task task, long version) {
+            this.task = task;
+            this.version = version;
+        }
+    }
+
+    /**
+     * 一个段：内存中只有稀疏索引和概要信息
+     */
+    static final class Segment {
+        final int seq;
+        final Path file;
+        final FileChannel channel;
+        final int count;
+        final long[] firstIds;
+        final long[] offsets;
+        final int[] lengths;
+        final int[] rawLengths;
+        final long maxId;
+        final int statusMask;
+        final int priorityMask;
+        final long bytes;
+        // 从这个提交序号起被整理出的段替换；段列表里替换的是一个新的 Segment 对象，
+        // 已取到旧列表的读取不受影响
+        final long retiredAt;
+        volatile long stamp = Long.MAX_VALUE;
+
+        Segment(int seq, Path file, FileChannel channel, int count, long[] firstIds, long[] offsets,
+                int[] lengths, int[] rawLengths, long maxId, int statusMask, int priorityMask) throws IOException {
+            this(seq, file, channel, count, firstIds, offsets, lengths, rawLengths, maxId, statusMask, priorityMask,
+                    channel.size(), Long.MAX_VALUE);
+        }
+
+        private Segment(int seq, Path file, FileChannel channel, int count, long[] firstIds, long[] offsets,
+                        int[] lengths, int[] rawLengths, long maxId, int statusMask, int priorityMask, long bytes,
+                        long retiredAt) {
+            this.seq = seq;
+            this.file = file;
+            this.channel = channel;
+            this.count = count;
+            this.firstIds = firstIds;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.rawLengths = rawLengths;
+            this.maxId = maxId;
+            this.statusMask = statusMask;
+            this.priorityMask = priorityMask;
+            this.bytes = bytes;
+            this.retiredAt = retiredAt;
+        }
+
+        boolean retired() {
+            return retiredAt != Long.MAX_VALUE;
+        }
+
+        boolean visibleAt(long stamp) {
+            return this.stamp <= stamp && (!retired() || stamp < retiredAt);
+        }
+
+        Segment retire(long stamp) {
+            Segment retired = new Segment(seq, file, channel, count, firstIds, offsets, lengths, rawLengths, maxId,
+                    statusMask, priorityMask, bytes, stamp);
+            retired.stamp = this.stamp;
+            return retired;
+        }
+    }
+
+    /**
+     * 从提交序号 stamp 起，序号小于 beforeSeq 的段中该 id 的副本不可见；older 是更早的一次遮蔽
+     */
+    private static final class Mask {
+        final long stamp;
+        final int beforeSeq;
+        final Mask older;
+
+        Mask(long stamp, int beforeSeq, Mask older) {
+            this.stamp = stamp;
+            this.beforeSeq = beforeSeq;
+            this.older = older;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.helloworld.repository;
+
+import com.helloworld.model.Task;
+
+/**
+ * 一次任务变更（新增/修改或删除）
+ *
+ * version 是 Lamport 时钟与节点号拼成的全局版本号（见 TaskRepository），
+ * 数值越大越新，相同逻辑时间按节点号决胜，因此各节点对同一组变更总能得出相同的结果。
+ */
+public final class TaskChange {
+
+    public enum Type { UPSERT, DELETE }
+
+    private final Type type;
+    private final long id;
+    private final long version;
+    private final Task task;
+    private final Task previous;
+    private final long committedAt;
+
+    TaskChange(Type type, long id, long version, Task task, long committedAt) {
+        this(type, id, version, task, null, committedAt);
+    }
+
+    TaskChange(Type type, long id, long version, Task task, Task previous, long committedAt) {
+        this.type = type;
+        this.id = id;
+        this.version = version;
+        this.task = task;
+        this.previous = previous;
+        this.committedAt = committedAt;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 产生这次变更的节点
+     */
+    public int getOrigin() {
+        return TaskRepository.originOf(version);
+    }
+
+    /**
+     * 变更后的任务（只读），删除时为 null
+     */
+    public Task getTask() {
+        return task;
+    }
+
+    /**
+     * 变更前的任务（只读），新建时以及快照中的条目为 null
+     */
+    public Task getPrevious() {
+        return previous;
+    }
+
+    /**
+     * 变更在源节点提交的时间（毫秒），快照中的条目为 0
+     */
+    public long getCommittedAt() {
+        return committedAt;
+    }
+}
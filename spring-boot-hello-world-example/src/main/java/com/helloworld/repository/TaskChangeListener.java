@@ -0,0 +1,12 @@
+package com.helloworld.repository;
+
+/**
+ * 任务变更监听
+ *
+ * 在执行变更的线程上、持有该任务所在分片的提交锁时同步回调，同一任务的变更按提交顺序到达。
+ * 实现只应做入队之类的轻量操作，不能回调 TaskRepository 的写操作或 openSnapshot。
+ */
+public interface TaskChangeListener {
+
+    void onChange(TaskChange change);
+}
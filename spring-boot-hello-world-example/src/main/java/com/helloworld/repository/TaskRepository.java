@@ -3,19 +3,109 @@ package com.helloworld.repository;
 import com.helloworld.model.Task;
 import com.helloworld.model.Task.TaskPriority;
 import com.helloworld.model.Task.TaskStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+/**
+ * 任务存储
+ *
+ * 每次变更分配一个全局版本号：高位是 Lamport 时钟，低 8 位是节点号。
+ * 本地变更取 时钟+1，收到其他节点的变更时把时钟推进到对方的值，
+ * 所以同一任务上后发生的变更版本号总是更大，并发的变更按节点号决胜（last-writer-wins）。
+ * 开启节点间复制时（ReplicationService），删除会留下墓碑，防止迟到的旧修改把任务"复活"；
+ * 新任务 id 按 序号 * id-stride + 节点号 分配，各节点的 id 互不冲突。
+ *
+ * 每个任务保存一条从新到旧的版本链，每个版本带提交序号，保存的任务对象提交后不再修改。
+ * openSnapshot() 记下当前提交序号得到时间点视图（TaskSnapshot），统计、导出等长时间的读取
+ * 在视图上进行：不阻塞写入，不复制存储，读到的各项数据彼此一致。
+ * 旧版本只保留到比它更早打开的视图全部关闭，之后在下次写入该任务或最老的视图关闭时清理。
+ *
+ * 存储按 id 哈希分成 2 的幂个分片，每个分片有自己的 Map、提交锁、存活计数和保留集合。
+ * 提交只锁所在分片：在分片锁内取全局递增的提交序号并挂上新版本；打开视图时依次锁住全部分片，
+ * 此刻没有提交做到一半，读到的序号之前的提交都已可见。写入远多于打开视图，批量写入的线程
+ * 落在不同分片上互不等待。
+ * 无索引的扫描（findAll、findByStatus、findByPriority、全量同步）在专用 ForkJoinPool 上
+ * 按分片并行，各分片结果按分片顺序合并；任务数较少时直接在调用线程上顺序扫描。
+ *
+ * 开启归档后（TaskArchiveService），完成已久的任务从内存移到压缩段文件（TaskArchive）：
+ * 存储里只挂一个归档标记版本，没有变更事件，没有墓碑，标记在没有视图需要时和整个条目一起清掉。
+ * 按 id 查找、各查询和视图在存储里找不到（或只找到归档标记）时透明地回落到归档；
+ * 归档过的任务再被修改、删除时从归档读出原值作为 previous，并屏蔽段里的旧副本。
+ *
+ * 配置（均可选）：
+ *   tasks.shards=16（向上取 2 的幂）
+ *   tasks.scan-parallelism=CPU 核数
+ */
 @Repository
 public class TaskRepository {
 
-    private final Map<Long, Task> taskStore = new ConcurrentHashMap<>();
+    private static final int NODE_BITS = 8;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+    private static final int DEFAULT_SHARDS = 16;
+    // 少于这么多任务时分派到线程池的开销比扫描本身还大
+    private static final int PARALLEL_SCAN_MIN_TASKS = 4096;
+
+    private final Shard[] shards;
+    private final int shardMask;
+    private final ForkJoinPool scanPool;
     private final AtomicLong idGenerator = new AtomicLong(0);
 
+    private final Map<Long, Tombstone> tombstones = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final List<TaskChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // 提交序号在分片锁内递增，见 commit 和 openSnapshot
+    private final AtomicLong lastStamp = new AtomicLong();
+    // 打开中的视图序号由 snapshotLock 保护，最老的序号另存一份供提交时无锁读取
+    private final Object snapshotLock = new Object();
+    private final TreeMap<Long, Integer> openStamps = new TreeMap<>();
+    private volatile long oldestOpenStamp = Long.MAX_VALUE;
+    private final Set<TaskSnapshot> openSnapshots = ConcurrentHashMap.newKeySet();
+
+    private volatile int nodeId;
+    private volatile int idStride = 1;
+    private volatile boolean keepTombstones;
+    private volatile TaskArchive archive;
+
+    public TaskRepository() {
+        this(0, 0);
+    }
+
+    @Autowired
+    public TaskRepository(@Value("${tasks.shards:0}") int shardCount,
+                          @Value("${tasks.scan-parallelism:0}") int scanParallelism) {
+        int count = Integer.highestOneBit(Math.max(1, shardCount > 0 ? shardCount : DEFAULT_SHARDS) * 2 - 1);
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard();
+        }
+        this.shardMask = count - 1;
+        this.scanPool = new ForkJoinPool(
+                scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("task-scan-" + thread.getPoolIndex());
+                    return thread;
+                }, null, false);
+    }
+
     @PostConstruct
     public void initData() {
         // 初始化示例数据
@@ -25,7 +115,7 @@ public class TaskRepository {
         task1.setDescription("配置 GitHub Actions 和 AWS CodeDeploy 实现自动化部署");
         task1.setStatus(TaskStatus.COMPLETED);
         task1.setPriority(TaskPriority.HIGH);
-        taskStore.put(task1.getId(), task1);
+        seed(task1);
 
         Task task2 = new Task();
         task2.setId(idGenerator.incrementAndGet());
@@ -33,7 +123,7 @@ public class TaskRepository {
         task2.setDescription("深入理解 Infrastructure as Code 概念和 CloudFormation 模板编写");
         task2.setStatus(TaskStatus.IN_PROGRESS);
         task2.setPriority(TaskPriority.HIGH);
-        taskStore.put(task2.getId(), task2);
+        seed(task2);
 
         Task task3 = new Task();
         task3.setId(idGenerator.incrementAndGet());
@@ -41,7 +131,7 @@ public class TaskRepository {
         task3.setDescription("为 TaskService 添加完整的单元测试覆盖");
         task3.setStatus(TaskStatus.PENDING);
         task3.setPriority(TaskPriority.MEDIUM);
-        taskStore.put(task3.getId(), task3);
+        seed(task3);
 
         Task task4 = new Task();
         task4.setId(idGenerator.incrementAndGet());
@@ -49,57 +139,755 @@ public class TaskRepository {
         task4.setDescription("分析慢查询日志，优化 SQL 性能");
         task4.setStatus(TaskStatus.PENDING);
         task4.setPriority(TaskPriority.LOW);
-        taskStore.put(task4.getId(), task4);
+        seed(task4);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        scanPool.shutdown();
+        TaskArchive archive = this.archive;
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
+    /**
+     * 以下查询读取各任务的最新版本；返回的任务对象是共享的只读版本，修改前先 copy()。
+     * 查询不在视图上进行，是弱一致的：与并发的归档交错时，同一任务可能出现两次
+     */
     public List<Task> findAll() {
-        return new ArrayList<>(taskStore.values());
+        return withArchived(null, null, scanShards(shard -> {
+            List<Task> result = new ArrayList<>(shard.store.size());
+            for (Revisions revisions : shard.store.values()) {
+                Task task = revisions.head.task;
+                if (task != null) {
+                    result.add(task);
+                }
+            }
+            return result;
+        }));
     }
 
     public Optional<Task> findById(Long id) {
-        return Optional.ofNullable(taskStore.get(id));
+        Revisions revisions = shardOf(id).store.get(id);
+        Revision head = revisions != null ? revisions.head : null;
+        if (head != null && !head.archived) {
+            return Optional.ofNullable(head.task);
+        }
+        TaskArchive.Entry archived = archivedUnder(head, id);
+        return Optional.ofNullable(archived != null ? archived.task : null);
     }
 
+    /**
+     * 保存任务的副本作为新版本，返回保存的版本（新建时带上分配的 id）
+     */
     public Task save(Task task) {
-        if (task.getId() == null) {
-            task.setId(idGenerator.incrementAndGet());
-            task.setCreatedAt(new Date());
+        Task stored = task.copy();
+        if (stored.getId() == null) {
+            stored.setId(idGenerator.incrementAndGet() * idStride + nodeId);
+            stored.setCreatedAt(new Date());
         }
-        task.setUpdatedAt(new Date());
-        taskStore.put(task.getId(), task);
-        return task;
+        stored.setUpdatedAt(new Date());
+        long[] version = new long[1];
+        Task[] previous = new Task[1];
+        Shard shard = shardOf(stored.getId());
+        update(shard, stored.getId(), (key, current) -> {
+            Revision head = current != null ? current.head : null;
+            TaskArchive.Entry archived = archivedUnder(head, key);
+            previous[0] = archived != null ? archived.task : head != null ? head.task : null;
+            tombstones.remove(key);
+            // 在锁内分配版本号，同一任务的版本号与提交顺序一致
+            version[0] = nextVersion();
+            return commit(shard, key, current, version[0], stored, false, archived != null);
+        }, () -> publish(TaskChange.Type.UPSERT, stored.getId(), version[0], stored, previous[0],
+                System.currentTimeMillis()));
+        return stored;
     }
 
     public boolean deleteById(Long id) {
-        return taskStore.remove(id) != null;
+        long now = System.currentTimeMillis();
+        long[] deleted = new long[1];
+        Task[] previous = new Task[1];
+        Shard shard = shardOf(id);
+        update(shard, id, (key, current) -> {
+            Revision head = current != null ? current.head : null;
+            TaskArchive.Entry archived = archivedUnder(head, key);
+            Task live = archived != null ? archived.task : head != null ? head.task : null;
+            if (live == null) {
+                return current;
+            }
+            long version = nextVersion();
+            if (keepTombstones) {
+                tombstones.put(key, new Tombstone(version, now));
+            }
+            deleted[0] = version;
+            previous[0] = live;
+            return commit(shard, key, current, version, null, false, archived != null);
+        }, () -> {
+            if (deleted[0] != 0) {
+                publish(TaskChange.Type.DELETE, id, deleted[0], null, previous[0], now);
+            }
+        });
+        return deleted[0] != 0;
     }
 
     public boolean existsById(Long id) {
-        return taskStore.containsKey(id);
+        return findById(id).isPresent();
     }
 
     public long count() {
-        return taskStore.size();
+        TaskArchive archive = this.archive;
+        return storedCount() + (archive != null ? archive.count() : 0);
     }
 
     public List<Task> findByStatus(TaskStatus status) {
-        List<Task> result = new ArrayList<>();
-        for (Task task : taskStore.values()) {
-            if (task.getStatus() == status) {
-                result.add(task);
+        return withArchived(status, null, scanShards(shard -> {
+            List<Task> result = new ArrayList<>();
+            for (Revisions revisions : shard.store.values()) {
+                Task task = revisions.head.task;
+                if (task != null && task.getStatus() == status) {
+                    result.add(task);
+                }
             }
-        }
-        return result;
+            return result;
+        }));
     }
 
     public List<Task> findByPriority(TaskPriority priority) {
-        List<Task> result = new ArrayList<>();
-        for (Task task : taskStore.values()) {
-            if (task.getPriority() == priority) {
+        return withArchived(null, priority, scanShards(shard -> {
+            List<Task> result = new ArrayList<>();
+            for (Revisions revisions : shard.store.values()) {
+                Task task = revisions.head.task;
+                if (task != null && task.getPriority() == priority) {
+                    result.add(task);
+                }
+            }
+            return result;
+        }));
+    }
+
+    /**
+     * 打开当前时间点的只读视图，用完必须关闭
+     */
+    public TaskSnapshot openSnapshot() {
+        long stamp;
+        // 锁住全部分片后没有进行中的提交，lastStamp 之前的版本都已挂上
+        for (Shard shard : shards) {
+            shard.commitLock.lock();
+        }
+        try {
+            stamp = lastStamp.get();
+            synchronized (snapshotLock) {
+                openStamps.merge(stamp, 1, Integer::sum);
+                oldestOpenStamp = openStamps.firstKey();
+            }
+        } finally {
+            for (Shard shard : shards) {
+                shard.commitLock.unlock();
+            }
+        }
+        TaskSnapshot snapshot = new TaskSnapshot(this, stamp);
+        openSnapshots.add(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 开启复制：设置本节点号和 id 步长，并开始保留删除墓碑
+     */
+    public void configureReplication(int nodeId, int idStride) {
+        if (nodeId < 0 || nodeId >= idStride || nodeId > NODE_MASK) {
+            throw new IllegalArgumentException("node id must be in [0, " + Math.min(idStride - 1, NODE_MASK) + "]");
+        }
+        this.nodeId = nodeId;
+        this.idStride = idStride;
+        this.keepTombstones = true;
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 开启归档，dir 下遗留的段文件会被清掉
+     *
+     * @throws IllegalStateException dir 已被另一个实例锁住
+     */
+    public void enableArchive(Path dir) throws IOException {
+        if (archive != null) {
+            throw new IllegalStateException("Task archive already enabled");
+        }
+        archive = new TaskArchive(dir);
+    }
+
+    /**
+     * 把 updatedAt 早于 cutoffMillis 的已完成任务移到一个新的段文件，一次最多 maxTasks 个（最早完成的优先）
+     *
+     * 先写出并发布段，再逐个在存储里挂归档标记；期间被修改或删除的任务不挂标记，屏蔽它在新段里的副本。
+     *
+     * @return 移出内存的任务数
+     */
+    public synchronized int archiveCompleted(long cutoffMillis, int maxTasks) throws IOException {
+        TaskArchive archive = this.archive;
+        if (archive == null) {
+            return 0;
+        }
+        List<Revision> candidates = concat(scanShards(shard -> {
+            List<Revision> result = new ArrayList<>();
+            for (Revisions revisions : shard.store.values()) {
+                Revision head = revisions.head;
+                Task task = head.task;
+                if (task != null && task.getStatus() == TaskStatus.COMPLETED && task.getUpdatedAt() != null
+                        && task.getUpdatedAt().getTime() < cutoffMillis) {
+                    result.add(head);
+                }
+            }
+            return result;
+        }));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        if (candidates.size() > maxTasks) {
+            candidates.sort(Comparator.comparingLong(revision -> revision.task.getUpdatedAt().getTime()));
+            candidates = new ArrayList<>(candidates.subList(0, maxTasks));
+        }
+        candidates.sort(Comparator.comparingLong(revision -> revision.task.getId()));
+
+        List<TaskArchive.Entry> entries = new ArrayList<>(candidates.size());
+        for (Revision candidate : candidates) {
+            entries.add(new TaskArchive.Entry(candidate.task, candidate.version));
+        }
+        TaskArchive.Segment segment = archive.write(entries);
+        archive.publish(segment, lastStamp.get());
+
+        int moved = 0;
+        for (Revision candidate : candidates) {
+            Long id = candidate.task.getId();
+            Shard shard = shardOf(id);
+            boolean[] marked = new boolean[1];
+            update(shard, id, (key, current) -> {
+                if (current == null || current.head != candidate) {
+                    archive.discard(key, segment, oldestOpenStamp);
+                    return current;
+                }
+                marked[0] = true;
+                return commit(shard, key, current, candidate.version, null, true, false);
+            }, null);
+            if (marked[0]) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 整理归档段，见 TaskArchive.compact；未开启归档时什么也不做
+     *
+     * @return 整理次数
+     */
+    public synchronized int compactArchive(int maxSegments) throws IOException {
+        TaskArchive archive = this.archive;
+        return archive != null ? archive.compact(maxSegments, oldestOpenStamp, lastStamp::get) : 0;
+    }
+
+    /**
+     * 归档的段数、任务数、字节数和查找次数；未开启归档时为空
+     */
+    public Map<String, Object> getArchiveStats() {
+        TaskArchive archive = this.archive;
+        return archive != null ? archive.getStats() : Collections.emptyMap();
+    }
+
+    public void addChangeListener(TaskChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(TaskChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 应用其他节点的变更：只有版本号比本地（含墓碑）新时才生效
+     *
+     * @param task 变更后的任务，删除时为 null
+     * @return 是否生效；false 表示本地已有更新的版本
+     */
+    public boolean applyRemote(long id, long version, Task task, long committedAt) {
+        clock.accumulateAndGet(version >>> NODE_BITS, Math::max);
+        if (id % idStride == nodeId) {
+            // 本节点重启后从其他节点取回自己分配过的 id，序号要越过它们
+            idGenerator.accumulateAndGet(id / idStride, Math::max);
+        }
+        long now = System.currentTimeMillis();
+        boolean[] applied = new boolean[1];
+        Task[] previous = new Task[1];
+        Shard shard = shardOf(id);
+        update(shard, id, (key, current) -> {
+            Revision head = current != null ? current.head : null;
+            boolean live = head != null && head.task != null;
+            TaskArchive.Entry archived = live ? null : archivedUnder(head, key);
+            long currentVersion = live ? head.version
+                    : Math.max(archived != null ? archived.version : 0L, tombstoneVersion(key));
+            if (version <= currentVersion) {
+                return current;
+            }
+            applied[0] = true;
+            previous[0] = live ? head.task : archived != null ? archived.task : null;
+            if (task == null) {
+                if (keepTombstones) {
+                    tombstones.put(key, new Tombstone(version, now));
+                }
+                return live || archived != null ? commit(shard, key, current, version, null, false, archived != null)
+                        : current;
+            }
+            tombstones.remove(key);
+            return commit(shard, key, current, version, task, false, archived != null);
+        }, () -> {
+            if (applied[0]) {
+                publish(task == null ? TaskChange.Type.DELETE : TaskChange.Type.UPSERT, id, version, task,
+                        previous[0], committedAt);
+            }
+        });
+        return applied[0];
+    }
+
+    /**
+     * 当前全部任务和墓碑（带版本号），用于新节点追平或复制积压后的全量同步
+     */
+    public List<TaskChange> snapshot() {
+        List<TaskChange> changes = concat(scanShards(shard -> {
+            List<TaskChange> result = new ArrayList<>(shard.store.size());
+            for (Map.Entry<Long, Revisions> entry : shard.store.entrySet()) {
+                // 任务和版本号在同一个版本对象里，一次读取即保持一致
+                Revision head = entry.getValue().head;
+                if (head.task != null) {
+                    result.add(new TaskChange(TaskChange.Type.UPSERT, entry.getKey(), head.version, head.task, 0));
+                }
+            }
+            return result;
+        }));
+        TaskArchive archive = this.archive;
+        if (archive != null) {
+            for (Iterator<TaskArchive.Entry> it = archive.iterator(Long.MAX_VALUE, null, null); it.hasNext(); ) {
+                TaskArchive.Entry entry = it.next();
+                if (fallsThrough(entry.task.getId(), Long.MAX_VALUE)) {
+                    changes.add(new TaskChange(TaskChange.Type.UPSERT, entry.task.getId(), entry.version, entry.task, 0));
+                }
+            }
+        }
+        for (Map.Entry<Long, Tombstone> entry : tombstones.entrySet()) {
+            changes.add(new TaskChange(TaskChange.Type.DELETE, entry.getKey(), entry.getValue().version, null, 0));
+        }
+        return changes;
+    }
+
+    /**
+     * 清理早于 cutoffMillis 的墓碑，返回清理数量
+     */
+    public int purgeTombstones(long cutoffMillis) {
+        int purged = 0;
+        for (Iterator<Tombstone> it = tombstones.values().iterator(); it.hasNext(); ) {
+            if (it.next().deletedAt < cutoffMillis) {
+                it.remove();
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    public int getTombstoneCount() {
+        return tombstones.size();
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        long now = System.currentTimeMillis();
+        long oldestOpenedAt = now;
+        for (TaskSnapshot snapshot : openSnapshots) {
+            oldestOpenedAt = Math.min(oldestOpenedAt, snapshot.getOpenedAt());
+        }
+        out.append("# HELP task_snapshots_open Open point-in-time read views of the task store\n");
+        out.append("# TYPE task_snapshots_open gauge\n");
+        out.append("task_snapshots_open ").append(openSnapshots.size()).append('\n');
+        out.append("# HELP task_snapshot_oldest_age_seconds Age of the oldest open read view; old revisions are kept until it closes\n");
+        out.append("# TYPE task_snapshot_oldest_age_seconds gauge\n");
+        out.append("task_snapshot_oldest_age_seconds ").append((now - oldestOpenedAt) / 1000.0).append('\n');
+        out.append("# HELP task_revisions_retained_tasks Tasks keeping older revisions for open read views\n");
+        out.append("# TYPE task_revisions_retained_tasks gauge\n");
+        long retained = 0;
+        for (Shard shard : shards) {
+            retained += shard.retained.size();
+        }
+        out.append("task_revisions_retained_tasks ").append(retained).append('\n');
+        out.append("# HELP task_shard_tasks Live tasks per store shard\n");
+        out.append("# TYPE task_shard_tasks gauge\n");
+        for (int i = 0; i < shards.length; i++) {
+            out.append("task_shard_tasks{shard=\"").append(i).append("\"} ").append(shards[i].live.get()).append('\n');
+        }
+        out.append("# HELP task_shard_commits_total Committed writes per store shard\n");
+        out.append("# TYPE task_shard_commits_total counter\n");
+        for (int i = 0; i < shards.length; i++) {
+            out.append("task_shard_commits_total{shard=\"").append(i).append("\"} ").append(shards[i].commits.sum()).append('\n');
+        }
+        out.append("# HELP task_shard_lock_contended_total Commits that had to wait for the shard commit lock\n");
+        out.append("# TYPE task_shard_lock_contended_total counter\n");
+        for (int i = 0; i < shards.length; i++) {
+            out.append("task_shard_lock_contended_total{shard=\"").append(i).append("\"} ").append(shards[i].contended.sum()).append('\n');
+        }
+        TaskArchive archive = this.archive;
+        if (archive != null) {
+            archive.writePrometheus(out);
+        }
+    }
+
+    /**
+     * 关闭视图；最老的视图关闭后，清理只为它保留的旧版本
+     */
+    void release(TaskSnapshot snapshot) {
+        openSnapshots.remove(snapshot);
+        boolean oldestClosed;
+        synchronized (snapshotLock) {
+            long oldest = openStamps.firstKey();
+            openStamps.computeIfPresent(snapshot.getStamp(), (stamp, count) -> count == 1 ? null : count - 1);
+            oldestClosed = openStamps.isEmpty() || openStamps.firstKey() != oldest;
+            oldestOpenStamp = openStamps.isEmpty() ? Long.MAX_VALUE : openStamps.firstKey();
+        }
+        if (oldestClosed) {
+            for (Shard shard : shards) {
+                for (Long id : shard.retained) {
+                    shard.store.computeIfPresent(id, (key, revisions) -> prune(shard, key, revisions, oldestOpenStamp));
+                }
+            }
+        }
+    }
+
+    Task visibleAt(Long id, long stamp) {
+        Revisions revisions = shardOf(id).store.get(id);
+        Revision revision = revisions != null ? revisions.revisionAt(stamp) : null;
+        if (revision != null && !revision.archived) {
+            return revision.task;
+        }
+        TaskArchive archive = this.archive;
+        TaskArchive.Entry archived = archive != null ? archive.find(id, stamp) : null;
+        return archived != null ? archived.task : null;
+    }
+
+    /**
+     * 逐个返回在 stamp 时刻存在的任务。
+     * 视图打开期间不会有对它可见的任务被移出存储（见 prune），
+     * 所以逐个分片的弱一致迭代器能看到全部可见任务；之后新增的任务按序号过滤掉。
+     * 存储之后是归档中在该时刻可见、且存储里没有对应版本的任务。
+     */
+    Iterator<Task> iteratorAt(long stamp) {
+        TaskArchive archive = this.archive;
+        return new Iterator<Task>() {
+            private int shard;
+            private Iterator<Revisions> chains = shards[0].store.values().iterator();
+            private Iterator<TaskArchive.Entry> archived;
+            private Task next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (chains.hasNext()) {
+                        Revision revision = chains.next().revisionAt(stamp);
+                        next = revision != null && !revision.archived ? revision.task : null;
+                    } else if (++shard < shards.length) {
+                        chains = shards[shard].store.values().iterator();
+                    } else if (archive == null) {
+                        return false;
+                    } else {
+                        if (archived == null) {
+                            archived = archive.iterator(stamp, null, null);
+                        }
+                        if (!archived.hasNext()) {
+                            return false;
+                        }
+                        Task task = archived.next().task;
+                        next = fallsThrough(task.getId(), stamp) ? task : null;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public Task next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Task task = next;
+                next = null;
+                return task;
+            }
+        };
+    }
+
+    static int originOf(long version) {
+        return (int) (version & NODE_MASK);
+    }
+
+    private long nextVersion() {
+        return (clock.incrementAndGet() << NODE_BITS) | nodeId;
+    }
+
+    private Shard shardOf(Long id) {
+        // 乘法散列取高位：按步长分配的 id 也能均匀落到各分片
+        return shards[(int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & shardMask];
+    }
+
+    /**
+     * 在各分片上执行 perShard，结果按分片顺序返回；任务较多时在 scanPool 上并行
+     */
+    private <R> List<R> scanShards(Function<Shard, R> perShard) {
+        Object[] results = new Object[shards.length];
+        if (shards.length > 1 && storedCount() >= PARALLEL_SCAN_MIN_TASKS) {
+            scanPool.invoke(new ShardScan<>(shards, perShard, results, 0, shards.length));
+        } else {
+            for (int i = 0; i < shards.length; i++) {
+                results[i] = perShard.apply(shards[i]);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /**
+     * 合并各分片的结果，再追加归档中符合条件、且存储里没有当前版本的任务
+     */
+    private List<Task> withArchived(TaskStatus status, TaskPriority priority, List<List<Task>> parts) {
+        List<Task> result = concat(parts);
+        TaskArchive archive = this.archive;
+        if (archive == null) {
+            return result;
+        }
+        for (Iterator<TaskArchive.Entry> it = archive.iterator(Long.MAX_VALUE, status, priority); it.hasNext(); ) {
+            Task task = it.next().task;
+            if ((status == null || task.getStatus() == status) && (priority == null || task.getPriority() == priority)
+                    && fallsThrough(task.getId(), Long.MAX_VALUE)) {
                 result.add(task);
             }
         }
         return result;
     }
-}
 
+    /**
+     * 存储在 stamp 时刻没有该任务的版本（或只有归档标记），应当读归档
+     */
+    private boolean fallsThrough(Long id, long stamp) {
+        Revisions revisions = shardOf(id).store.get(id);
+        Revision revision = revisions != null ? revisions.revisionAt(stamp) : null;
+        return revision == null || revision.archived;
+    }
+
+    /**
+     * 链头为空或是归档标记时，归档中的当前副本；否则存储里的版本说了算，返回 null
+     */
+    private TaskArchive.Entry archivedUnder(Revision head, Long id) {
+        TaskArchive archive = this.archive;
+        return archive != null && (head == null || head.archived) ? archive.find(id, Long.MAX_VALUE) : null;
+    }
+
+    private long storedCount() {
+        long count = 0;
+        for (Shard shard : shards) {
+            count += shard.live.get();
+        }
+        return count;
+    }
+
+    private static <T> List<T> concat(List<List<T>> parts) {
+        int size = 0;
+        for (List<T> part : parts) {
+            size += part.size();
+        }
+        List<T> result = new ArrayList<>(size);
+        for (List<T> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+
+    private void seed(Task task) {
+        Shard shard = shardOf(task.getId());
+        update(shard, task.getId(), (key, current) -> commit(shard, key, current, 0L, task, false, false), null);
+    }
+
+    /**
+     * 持有分片锁执行 compute，再在同一把锁内执行 afterCommit（通知监听方）。
+     * 新 key 的节点要等 compute 返回才挂进 map，锁到那时 openSnapshot 才能读到它的序号，
+     * 否则视图的迭代器可能已经走过那个桶，漏掉对它可见的任务。
+     * 通知也放在锁内：同一任务的并发提交按提交顺序到达监听方，后提交的不会被先提交的覆盖。
+     *
+     * @param afterCommit 可以为 null
+     */
+    private Revisions update(Shard shard, Long id, BiFunction<Long, Revisions, Revisions> change,
+                             Runnable afterCommit) {
+        if (!shard.commitLock.tryLock()) {
+            shard.contended.increment();
+            shard.commitLock.lock();
+        }
+        try {
+            Revisions result = shard.store.compute(id, change);
+            if (afterCommit != null) {
+                afterCommit.run();
+            }
+            return result;
+        } finally {
+            shard.commitLock.unlock();
+        }
+    }
+
+    /**
+     * 在该 key 的锁和分片锁内（见 update）提交新版本，task 为 null 表示删除
+     *
+     * @param archived     task 为 null 时表示移入归档而不是删除
+     * @param masksArchive 任务原先在归档中，提交后屏蔽归档里的副本
+     * @return compute 的新值；已删除且没有视图需要旧版本时为 null，整个 key 移出存储
+     */
+    private Revisions commit(Shard shard, Long id, Revisions current, long version, Task task,
+                             boolean archived, boolean masksArchive) {
+        Revisions revisions = current != null ? current : new Revisions();
+        Revision previous = revisions.head;
+        boolean wasLive = previous != null && previous.task != null;
+        // 分配序号与挂上新版本在分片锁内完成，openSnapshot 不会看到半个提交
+        long stamp = lastStamp.incrementAndGet();
+        revisions.head = new Revision(stamp, version, task, archived, previous);
+        long oldest = oldestOpenStamp;
+        if (masksArchive) {
+            archive.mask(id, stamp, oldest);
+        }
+        shard.commits.increment();
+        if (task != null && !wasLive) {
+            shard.live.incrementAndGet();
+        } else if (task == null && wasLive) {
+            shard.live.decrementAndGet();
+        }
+        return prune(shard, id, revisions, oldest);
+    }
+
+    /**
+     * 从新到旧保留到第一个对最老视图可见的版本，更旧的版本任何视图都用不到了。
+     * 调用方持有该 key 的锁；oldest 之后打开的视图序号不小于链头，只需要链头。
+     */
+    private Revisions prune(Shard shard, Long id, Revisions revisions, long oldest) {
+        Revision head = revisions.head;
+        Revision keep = head;
+        while (keep.stamp > oldest && keep.older != null) {
+            keep = keep.older;
+        }
+        keep.older = null;
+        if (keep != head) {
+            shard.retained.add(id);
+            return revisions;
+        }
+        shard.retained.remove(id);
+        return head.task != null ? revisions : null;
+    }
+
+    private long tombstoneVersion(Long id) {
+        Tombstone tombstone = tombstones.get(id);
+        return tombstone != null ? tombstone.version : 0L;
+    }
+
+    private void publish(TaskChange.Type type, long id, long version, Task task, Task previous, long committedAt) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        // 保存的版本不再修改，监听方可以直接持有
+        TaskChange change = new TaskChange(type, id, version, task, previous, committedAt);
+        for (TaskChangeListener listener : listeners) {
+            listener.onChange(change);
+        }
+    }
+
+    /**
+     * 一个分片：任务、提交锁和分片级统计
+     */
+    private static final class Shard {
+        final Map<Long, Revisions> store = new ConcurrentHashMap<>();
+        final ReentrantLock commitLock = new ReentrantLock();
+        final AtomicLong live = new AtomicLong();
+        // 为打开中的视图保留了旧版本的任务 id，最老的视图关闭时清理
+        final Set<Long> retained = ConcurrentHashMap.newKeySet();
+        final LongAdder commits = new LongAdder();
+        final LongAdder contended = new LongAdder();
+    }
+
+    /**
+     * 对半拆分分片区间，叶子处理单个分片并把结果写入对应下标
+     */
+    private static final class ShardScan<R> extends RecursiveAction {
+        private final Shard[] shards;
+        private final Function<Shard, R> perShard;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        ShardScan(Shard[] shards, Function<Shard, R> perShard, Object[] results, int from, int to) {
+            this.shards = shards;
+            this.perShard = perShard;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = perShard.apply(shards[from]);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ShardScan<>(shards, perShard, results, from, mid),
+                    new ShardScan<>(shards, perShard, results, mid, to));
+        }
+    }
+
+    /**
+     * 一个任务的版本链，链头是最新版本
+     */
+    private static final class Revisions {
+        volatile Revision head;
+
+        Revision revisionAt(long stamp) {
+            for (Revision revision = head; revision != null; revision = revision.older) {
+                if (revision.stamp <= stamp) {
+                    return revision;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * stamp 是本地提交序号，决定视图可见性；version 是复制用的全局版本号。
+     * task 为 null 表示已删除，或 archived 时表示已移入归档
+     */
+    private static final class Revision {
+        final long stamp;
+        final long version;
+        final Task task;
+        final boolean archived;
+        volatile Revision older;
+
+        Revision(long stamp, long version, Task task, boolean archived, Revision older) {
+            this.stamp = stamp;
+            this.version = version;
+            this.task = task;
+            this.archived = archived;
+            this.older = older;
+        }
+    }
+
+    private static final class Tombstone {
+        final long version;
+        final long deletedAt;
+
+        Tombstone(long version, long deletedAt) {
+            this.version = version;
+            this.deletedAt = deletedAt;
+        }
+    }
+}
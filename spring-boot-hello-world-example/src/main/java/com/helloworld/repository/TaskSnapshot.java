@@ -0,0 +1,71 @@
+package com.helloworld.repository;
+
+import com.helloworld.model.Task;
+
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 任务存储的只读时间点视图
+ *
+ * 打开时记下当前提交序号，之后只看到不晚于它的版本：遍历期间的新增、修改、删除都不可见，
+ * 同一视图上的多次读取彼此一致。读取不加锁，也不复制存储。
+ * 视图打开期间被改掉的旧版本要一直保留，所以用完必须关闭（try-with-resources）。
+ */
+public final class TaskSnapshot implements Iterable<Task>, AutoCloseable {
+
+    private final TaskRepository repository;
+    private final long stamp;
+    private final long openedAt = System.currentTimeMillis();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    TaskSnapshot(TaskRepository repository, long stamp) {
+        this.repository = repository;
+        this.stamp = stamp;
+    }
+
+    public Optional<Task> findById(Long id) {
+        ensureOpen();
+        return Optional.ofNullable(repository.visibleAt(id, stamp));
+    }
+
+    /**
+     * 逐个返回视图中的任务，不生成列表；任务对象只读
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        ensureOpen();
+        return repository.iteratorAt(stamp);
+    }
+
+    public long count() {
+        long count = 0;
+        for (Iterator<Task> it = iterator(); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    long getStamp() {
+        return stamp;
+    }
+
+    long getOpenedAt() {
+        return openedAt;
+    }
+
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            repository.release(this);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed.get()) {
+            // 关闭后旧版本可能已被清理，继续读会得到不一致的结果
+            throw new IllegalStateException("Task snapshot is closed");
+        }
+    }
+}
@@ -0,0 +1,449 @@
+package com.helloworld.search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个不可变的索引段文件，打开时整个 mmap 进来，由 SearchIndex 管理
+ *
+ * 文件布局（大端）：
+ *   头部：MAGIC、FORMAT_VERSION、文档数、词条数和后面四节的起始偏移
+ *   词典：按 key 升序的定长条目（key、倒排表偏移、文档数），二分查找
+ *   倒排表：文档序号升序，相邻差值按 varint 编码
+ *   标题：偏移表（文档数 + 1 个）和原标题的 UTF-8 字节，供建议和校验用
+ *   文档：偏移表和逐字段编码的文档
+ * 词条是小写标题中长度 1 到 MAX_GRAM 的所有子串（按 UTF-16 字符），所以不超过 MAX_GRAM 的关键字
+ * 查一个词条就是精确结果；更长的关键字求各 MAX_GRAM 子串倒排表的交集，再用标题校验。
+ * 查询只用绝对位置读取，或在 duplicate() 上移动位置，多个线程可以同时读同一个段。
+ */
+final class IndexSegment {
+
+    static final int MAX_GRAM = 3;
+
+    private static final int MAGIC = 0x53494458; // "SIDX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int DICT_ENTRY_BYTES = 16;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+
+    final Path file;
+    final int docCount;
+    final long bytes;
+    private final MappedByteBuffer buffer;
+    private final int gramCount;
+    private final int dictOffset;
+    private final int titleOffsets;
+    private final int docOffsets;
+
+    private IndexSegment(Path file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        this.bytes = buffer.capacity();
+        if (bytes < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a search index segment: " + file);
+        }
+        this.docCount = buffer.getInt(8);
+        this.gramCount = buffer.getInt(12);
+        this.dictOffset = buffer.getInt(16);
+        this.titleOffsets = buffer.getInt(24);
+        this.docOffsets = buffer.getInt(28);
+        if (docCount < 0 || dictOffset + (long) gramCount * DICT_ENTRY_BYTES > bytes
+                || titleOffsets + (docCount + 1L) * 4 > bytes || docOffsets + (docCount + 1L) * 4 > bytes) {
+            throw new IOException("Search index segment truncated: " + file);
+        }
+    }
+
+    /**
+     * 映射已有的段文件；映射建立后通道即可关闭，段文件被删除后映射仍然有效
+     */
+    static IndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new IndexSegment(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * 为 documents 建索引，写到临时文件后原子改名为 file，再映射进来
+     */
+    static IndexSegment write(Path file, List<Map<String, Object>> documents) throws IOException {
+        Map<Long, Postings> postings = new HashMap<>();
+        ByteArrayOutputStream titles = new ByteArrayOutputStream();
+        ByteArrayOutputStream docs = new ByteArrayOutputStream();
+        DataOutputStream docData = new DataOutputStream(docs);
+        int[] titleEnds = new int[documents.size()];
+        int[] docEnds = new int[documents.size()];
+        for (int ord = 0; ord < documents.size(); ord++) {
+            Map<String, Object> document = documents.get(ord);
+            String title = titleOf(document);
+            String lower = title.toLowerCase();
+            for (int from = 0; from < lower.length(); from++) {
+                for (int length = 1; length <= MAX_GRAM && from + length <= lower.length(); length++) {
+                    postings.computeIfAbsent(gramKey(lower, from, length), key -> new Postings()).add(ord);
+                }
+            }
+            titles.write(title.getBytes(StandardCharsets.UTF_8));
+            titleEnds[ord] = titles.size();
+            writeDocument(docData, document);
+            docData.flush();
+            docEnds[ord] = docs.size();
+        }
+
+        long[] keys = new long[postings.size()];
+        int k = 0;
+        for (Long key : postings.keySet()) {
+            keys[k++] = key;
+        }
+        Arrays.sort(keys);
+        ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+        int[] postingStarts = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            postingStarts[i] = postingBytes.size();
+            postings.get(keys[i]).writeTo(postingBytes);
+        }
+
+        long dictOffset = HEADER_BYTES;
+        long postingsOffset = dictOffset + (long) keys.length * DICT_ENTRY_BYTES;
+        long titleOffsets = postingsOffset + postingBytes.size();
+        long docOffsets = titleOffsets + (documents.size() + 1L) * 4 + titles.size();
+        long size = docOffsets + (documents.size() + 1L) * 4 + docs.size();
+        if (size > Integer.MAX_VALUE) {
+            // MappedByteBuffer 最大 2GB，合并策略应当在此之前停下
+            throw new IOException("Search index segment too large: " + size + " bytes");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(documents.size()).putInt(keys.length)
+                .putInt((int) dictOffset).putInt((int) postingsOffset).putInt((int) titleOffsets).putInt((int) docOffsets);
+        ByteBuffer dict = ByteBuffer.allocate(keys.length * DICT_ENTRY_BYTES);
+        for (int i = 0; i < keys.length; i++) {
+            dict.putLong(keys[i]).putInt((int) postingsOffset + postingStarts[i]).putInt(postings.get(keys[i]).size);
+        }
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, (ByteBuffer) header.flip());
+            writeFully(out, (ByteBuffer) dict.flip());
+            writeFully(out, ByteBuffer.wrap(postingBytes.toByteArray()));
+            writeFully(out, offsetTable((int) titleOffsets + (documents.size() + 1) * 4, titleEnds));
+            writeFully(out, ByteBuffer.wrap(titles.toByteArray()));
+            writeFully(out, offsetTable((int) docOffsets + (documents.size() + 1) * 4, docEnds));
+            writeFully(out, ByteBuffer.wrap(docs.toByteArray()));
+            out.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    /**
+     * 小写标题包含 needle（已小写）的文档序号，升序
+     */
+    int[] match(String needle) {
+        if (needle.isEmpty()) {
+            int[] all = new int[docCount];
+            for (int i = 0; i < docCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        if (needle.length() <= MAX_GRAM) {
+            return postings(gramKey(needle, 0, needle.length()));
+        }
+        // 各子串的倒排表从短到长求交集，候选集先小下来
+        int grams = needle.length() - MAX_GRAM + 1;
+        int[][] lists = new int[grams][];
+        for (int from = 0; from < grams; from++) {
+            lists[from] = postings(gramKey(needle, from, MAX_GRAM));
+            if (lists[from].length == 0) {
+                return lists[from];
+            }
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] candidates = lists[0];
+        for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists[i]);
+        }
+        int matched = 0;
+        for (int ord : candidates) {
+            if (title(ord).toLowerCase().contains(needle)) {
+                candidates[matched++] = ord;
+            }
+        }
+        return Arrays.copyOf(candidates, matched);
+    }
+
+    String title(int ord) {
+        return string(buffer.getInt(titleOffsets + ord * 4), buffer.getInt(titleOffsets + ord * 4 + 4));
+    }
+
+    /**
+     * 解码第 ord 篇文档，每次返回新的 Map
+     */
+    Map<String, Object> document(int ord) {
+        ByteBuffer in = buffer.duplicate();
+        in.position(buffer.getInt(docOffsets + ord * 4));
+        int fields = in.getInt();
+        Map<String, Object> document = new LinkedHashMap<>(fields * 2);
+        for (int i = 0; i < fields; i++) {
+            String key = readString(in);
+            byte type = in.get();
+            switch (type) {
+                case STRING:
+                    document.put(key, readString(in));
+                    break;
+                case INT:
+                    document.put(key, in.getInt());
+                    break;
+                case LONG:
+                    document.put(key, in.getLong());
+                    break;
+                case DOUBLE:
+                    document.put(key, in.getDouble());
+                    break;
+                case BOOLEAN:
+                    document.put(key, in.get() != 0);
+                    break;
+                default:
+                    document.put(key, null);
+            }
+        }
+        return document;
+    }
+
+    static String titleOf(Map<String, Object> document) {
+        Object title = document.get("title");
+        return title != null ? title.toString() : "";
+    }
+
+    /**
+     * 词条的 key：长度放在最高位，每个字符 16 位，1 到 3 个字符不会冲突
+     */
+    private static long gramKey(String s, int from, int length) {
+        long key = length;
+        for (int i = from; i < from + length; i++) {
+            key = key << 16 | s.charAt(i);
+        }
+        return key;
+    }
+
+    private int[] postings(long key) {
+        int low = 0;
+        int high = gramCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(dictOffset + mid * DICT_ENTRY_BYTES);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                int position = buffer.getInt(dictOffset + mid * DICT_ENTRY_BYTES + 8);
+                int[] docs = new int[buffer.getInt(dictOffset + mid * DICT_ENTRY_BYTES + 12)];
+                int ord = 0;
+                for (int i = 0; i < docs.length; i++) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = buffer.get(position++);
+                        delta |= (b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    ord += delta;
+                    docs[i] = ord;
+                }
+                return docs;
+            }
+        }
+        return new int[0];
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private String string(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer in = buffer.duplicate();
+        in.position(start);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 文档按段格式编码后的字节数
+     *
+     * @throws IllegalArgumentException 有字段值不是 String、Integer、Long、Double、Boolean 或 null
+     */
+    static long encodedSize(Map<String, Object> document) {
+        long size = 4;
+        for (Map.Entry<String, Object> field : document.entrySet()) {
+            size += 4 + utf8Length(field.getKey()) + 1;
+            Object value = field.getValue();
+            if (value == null) {
+                continue;
+            } else if (value instanceof Integer) {
+                size += 4;
+            } else if (value instanceof Long || value instanceof Double) {
+                size += 8;
+            } else if (value instanceof Boolean) {
+                size += 1;
+            } else if (value instanceof String) {
+                size += 4 + utf8Length((String) value);
+            } else {
+                throw unsupported(field.getKey(), value);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 逐字段写文档；其他类型的值存不进段，读回来也还原不了，直接拒绝
+     */
+    private static void writeDocument(DataOutputStream out, Map<String, Object> document) throws IOException {
+        out.writeInt(document.size());
+        for (Map.Entry<String, Object> field : document.entrySet()) {
+            writeString(out, field.getKey());
+            Object value = field.getValue();
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Integer) {
+                out.writeByte(INT);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeByte((Boolean) value ? 1 : 0);
+            } else if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString(out, (String) value);
+            } else {
+                throw unsupported(field.getKey(), value);
+            }
+        }
+    }
+
+    private static IllegalArgumentException unsupported(String field, Object value) {
+        return new IllegalArgumentException("Unsupported value for document field " + field + ": "
+                + value.getClass().getName());
+    }
+
+    /**
+     * String 按 UTF-8 编码的字节数，不用真的编码一遍
+     */
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static ByteBuffer offsetTable(int base, int[] ends) {
+        ByteBuffer table = ByteBuffer.allocate((ends.length + 1) * 4);
+        table.putInt(base);
+        for (int end : ends) {
+            table.putInt(base + end);
+        }
+        table.flip();
+        return table;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * 建索引时一个词条的倒排表，文档按序号递增加入
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int ord) {
+            if (size > 0 && docs[size - 1] == ord) {
+                return;
+            }
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = ord;
+        }
+
+        void writeTo(ByteArrayOutputStream out) {
+            int previous = 0;
+            for (int i = 0; i < size; i++) {
+                int delta = docs[i] - previous;
+                previous = docs[i];
+                while ((delta & ~0x7F) != 0) {
+                    out.write((delta & 0x7F) | 0x80);
+                    delta >>>= 7;
+                }
+                out.write(delta);
+            }
+        }
+    }
+}
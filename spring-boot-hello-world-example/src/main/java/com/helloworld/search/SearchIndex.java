@@ -0,0 +1,424 @@
+package com.helloworld.search;
+
+import com.helloworld.DirectoryLock;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按标题子串检索的持久化索引
+ *
+ * 索引由若干不可变段文件（IndexSegment，mmap 打开，数据在堆外）和一个内存中的增量组成。
+ * 新文档先进增量，flush 把增量写成一个新段；段数超过上限时 merge 把相邻且最小的两段合成一段。
+ * MANIFEST 按顺序列出当前的段，写临时文件后原子改名；打开时只映射清单里的段，
+ * 不在清单里的文件（写到一半或合并后没删掉的）直接删除。所以重启后不用重建，打开只是映射几个文件。
+ *
+ * 文档只追加，结果按加入顺序返回。查询读一次 volatile 的 view，不加锁；
+ * 合并后旧段的映射在最后一个引用它的查询结束、被 GC 回收后才解除。
+ * 增量只在内存中，flush 之前进程退出会丢失。
+ *
+ * 打开时对目录下的 LOCK 文件加独占锁，直到 close：打开时会删掉不在自己清单里的段，
+ * 两个进程共用一个目录就会删掉或覆盖对方的段，所以第二个打开的直接失败。
+ */
+public final class SearchIndex {
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+
+    private final Path dir;
+    private final DirectoryLock lock;
+    private final Object maintenanceLock = new Object();
+    private volatile View view;
+    private long nextSeq;
+    private final long openMillis;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder merges = new LongAdder();
+
+    /**
+     * @throws IllegalStateException 目录已被另一个索引（本进程或其他进程）打开
+     */
+    public SearchIndex(Path dir) throws IOException {
+        long start = System.currentTimeMillis();
+        this.dir = dir;
+        this.lock = DirectoryLock.acquire(dir, "search.index-dir");
+        try {
+            List<IndexSegment> segments = new ArrayList<>();
+            Set<Path> live = new HashSet<>();
+            Path manifest = dir.resolve(MANIFEST);
+            if (Files.exists(manifest)) {
+                for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                    if (!name.trim().isEmpty()) {
+                        Path file = dir.resolve(name.trim());
+                        segments.add(IndexSegment.open(file));
+                        live.add(file);
+                        nextSeq = Math.max(nextSeq, seqOf(file) + 1);
+                    }
+                }
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*")) {
+                for (Path file : files) {
+                    if (!live.contains(file)) {
+                        Files.delete(file);
+                    }
+                }
+            }
+            this.view = new View(segments.toArray(new IndexSegment[0]), Collections.emptyList());
+        } catch (IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+        this.openMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * 删除 dir 中的清单和全部段文件，索引打不开时用来从头重建；同样要先拿到目录锁
+     */
+    public static void delete(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryLock ignored = DirectoryLock.acquire(dir, "search.index-dir")) {
+            Files.deleteIfExists(dir.resolve(MANIFEST));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*")) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放目录锁；增量不会自动落盘，需要的话先 flush。段的映射仍由 GC 解除
+     */
+    public void close() throws IOException {
+        lock.close();
+    }
+
+    /**
+     * 文档写进段后占的字节数
+     *
+     * @throws IllegalArgumentException 有字段值不是 String、Integer、Long、Double、Boolean 或 null
+     */
+    public static long documentBytes(Map<String, Object> document) {
+        return IndexSegment.encodedSize(document);
+    }
+
+    /**
+     * 加入增量，立即可查
+     *
+     * @throws IllegalArgumentException 同 addAll
+     */
+    public void add(Map<String, Object> document) {
+        addAll(Collections.singletonList(document));
+    }
+
+    /**
+     * 批量加入增量；增量是写时复制的，大批文档要用这个而不是逐个 add
+     *
+     * @throws IllegalArgumentException 有文档的字段值存不进段，整批都不加入；
+     *         否则它会留在增量里，之后每次 flush 都失败
+     */
+    public synchronized void addAll(List<Map<String, Object>> documents) {
+        for (Map<String, Object> document : documents) {
+            IndexSegment.encodedSize(document);
+        }
+        View current = view;
+        List<Map<String, Object>> pending = new ArrayList<>(current.pending.size() + documents.size());
+        pending.addAll(current.pending);
+        pending.addAll(documents);
+        view = new View(current.segments, pending);
+    }
+
+    /**
+     * 标题（小写）包含 needle（已小写）的文档，按加入顺序；列表按需从段中解码
+     */
+    public List<Map<String, Object>> search(String needle) {
+        queries.increment();
+        View current = view;
+        return new Results(current, match(current, needle));
+    }
+
+    /**
+     * 全部文档，按加入顺序；列表按需从段中解码
+     */
+    public List<Map<String, Object>> all() {
+        return new Results(view, null);
+    }
+
+    /**
+     * 标题（小写）包含 needle（已小写）的文档标题，按加入顺序
+     */
+    public List<String> titles(String needle) {
+        queries.increment();
+        View current = view;
+        int[] hits = match(current, needle);
+        List<String> titles = new ArrayList<>(hits.length);
+        for (int hit : hits) {
+            int s = current.segmentOf(hit);
+            titles.add(s < current.segments.length
+                    ? current.segments[s].title(hit - current.starts[s])
+                    : IndexSegment.titleOf(current.pending.get(hit - current.starts[s])));
+        }
+        return titles;
+    }
+
+    public int documentCount() {
+        return view.total;
+    }
+
+    public int pendingCount() {
+        return view.pending.size();
+    }
+
+    /**
+     * 把当前增量写成一个新段
+     *
+     * @return 增量为空时 false
+     */
+    public boolean flush() throws IOException {
+        synchronized (maintenanceLock) {
+            List<Map<String, Object>> pending = view.pending;
+            if (pending.isEmpty()) {
+                return false;
+            }
+            IndexSegment segment = IndexSegment.write(nextFile(), pending);
+            IndexSegment[] segments = Arrays.copyOf(view.segments, view.segments.length + 1);
+            segments[segments.length - 1] = segment;
+            writeManifest(segments);
+            synchronized (this) {
+                // flush 期间加入的文档留在增量里
+                List<Map<String, Object>> current = view.pending;
+                view = new View(segments, new ArrayList<>(current.subList(pending.size(), current.size())));
+            }
+            flushes.increment();
+            return true;
+        }
+    }
+
+    /**
+     * 段数超过 maxSegments 时，反复把文档数之和最小的相邻两段合成一段，保持文档顺序
+     *
+     * @return 合并次数
+     */
+    public int merge(int maxSegments) throws IOException {
+        int merged = 0;
+        synchronized (maintenanceLock) {
+            while (view.segments.length > Math.max(1, maxSegments)) {
+                IndexSegment[] segments = view.segments;
+                int pick = 0;
+                long smallest = Long.MAX_VALUE;
+                for (int i = 0; i + 1 < segments.length; i++) {
+                    long size = (long) segments[i].docCount + segments[i + 1].docCount;
+                    if (size < smallest) {
+                        smallest = size;
+                        pick = i;
+                    }
+                }
+                List<Map<String, Object>> documents = new ArrayList<>((int) smallest);
+                for (int s = pick; s <= pick + 1; s++) {
+                    for (int ord = 0; ord < segments[s].docCount; ord++) {
+                        documents.add(segments[s].document(ord));
+                    }
+                }
+                IndexSegment combined = IndexSegment.write(nextFile(), documents);
+                IndexSegment[] next = new IndexSegment[segments.length - 1];
+                System.arraycopy(segments, 0, next, 0, pick);
+                next[pick] = combined;
+                System.arraycopy(segments, pick + 2, next, pick + 1, segments.length - pick - 2);
+                writeManifest(next);
+                synchronized (this) {
+                    view = new View(next, view.pending);
+                }
+                for (int s = pick; s <= pick + 1; s++) {
+                    try {
+                        Files.deleteIfExists(segments[s].file);
+                    } catch (IOException e) {
+                        // 已不在清单里，下次打开时清理
+                    }
+                }
+                merges.increment();
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    public void writePrometheus(StringBuilder out) {
+        View current = view;
+        out.append("# HELP search_index_segments Memory-mapped search index segments\n");
+        out.append("# TYPE search_index_segments gauge\n");
+        out.append("search_index_segments ").append(current.segments.length).append('\n');
+        out.append("# HELP search_index_documents Documents in the search index, including the in-memory delta\n");
+        out.append("# TYPE search_index_documents gauge\n");
+        out.append("search_index_documents ").append(current.total).append('\n');
+        out.append("# HELP search_index_pending_documents Documents in the in-memory delta not yet flushed\n");
+        out.append("# TYPE search_index_pending_documents gauge\n");
+        out.append("search_index_pending_documents ").append(current.pending.size()).append('\n');
+        out.append("# HELP search_index_mapped_bytes Size of the mapped segment files\n");
+        out.append("# TYPE search_index_mapped_bytes gauge\n");
+        out.append("search_index_mapped_bytes ").append(current.bytes()).append('\n');
+        out.append("# HELP search_index_flushes_total Delta flushes written as new segments\n");
+        out.append("# TYPE search_index_flushes_total counter\n");
+        out.append("search_index_flushes_total ").append(flushes.sum()).append('\n');
+        out.append("# HELP search_index_merges_total Segment merges\n");
+        out.append("# TYPE search_index_merges_total counter\n");
+        out.append("search_index_merges_total ").append(merges.sum()).append('\n');
+    }
+
+    public Map<String, Object> getStats() {
+        View current = view;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("dir", dir.toString());
+        stats.put("openMillis", openMillis);
+        stats.put("segments", current.segments.length);
+        stats.put("documents", current.total);
+        stats.put("pendingDocuments", current.pending.size());
+        stats.put("mappedBytes", current.bytes());
+        stats.put("queries", queries.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("merges", merges.sum());
+        return stats;
+    }
+
+    /**
+     * 命中文档在 view 中的全局序号（段按顺序排，增量在最后），升序
+     */
+    private static int[] match(View view, String needle) {
+        int[] hits = new int[16];
+        int n = 0;
+        for (int s = 0; s < view.segments.length; s++) {
+            int[] matched = view.segments[s].match(needle);
+            if (n + matched.length > hits.length) {
+                hits = Arrays.copyOf(hits, Math.max(hits.length * 2, n + matched.length));
+            }
+            for (int ord : matched) {
+                hits[n++] = view.starts[s] + ord;
+            }
+        }
+        // 增量很小（见 SearchService 的 delta-max-documents），直接扫描
+        int base = view.starts[view.segments.length];
+        for (int i = 0; i < view.pending.size(); i++) {
+            if (IndexSegment.titleOf(view.pending.get(i)).toLowerCase().contains(needle)) {
+                if (n == hits.length) {
+                    hits = Arrays.copyOf(hits, hits.length * 2);
+                }
+                hits[n++] = base + i;
+            }
+        }
+        return Arrays.copyOf(hits, n);
+    }
+
+    private Path nextFile() {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, nextSeq++, SEGMENT_SUFFIX));
+    }
+
+    private void writeManifest(IndexSegment[] segments) throws IOException {
+        List<String> names = new ArrayList<>(segments.length);
+        for (IndexSegment segment : segments) {
+            names.add(segment.file.getFileName().toString());
+        }
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        Files.write(tmp, names, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long seqOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 某一时刻的段列表和增量，整体替换
+     */
+    private static final class View {
+        final IndexSegment[] segments;
+        final List<Map<String, Object>> pending;
+        // starts[s] 是第 s 段第一篇文档的全局序号，starts[segments.length] 是增量的起点
+        final int[] starts;
+        final int total;
+
+        View(IndexSegment[] segments, List<Map<String, Object>> pending) {
+            this.segments = segments;
+            this.pending = pending;
+            this.starts = new int[segments.length + 1];
+            for (int s = 0; s < segments.length; s++) {
+                starts[s + 1] = starts[s] + segments[s].docCount;
+            }
+            this.total = starts[segments.length] + pending.size();
+        }
+
+        /**
+         * 全局序号所在的段，增量返回 segments.length
+         */
+        int segmentOf(int doc) {
+            int s = Arrays.binarySearch(starts, doc);
+            s = s >= 0 ? s : -s - 2;
+            // 空段之后的起点相同，取最后一个
+            while (s < segments.length && starts[s + 1] <= doc) {
+                s++;
+            }
+            return s;
+        }
+
+        long bytes() {
+            long bytes = 0;
+            for (IndexSegment segment : segments) {
+                bytes += segment.bytes;
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * 查询结果：只持有命中序号，get 时才从段中解码，分页时只解码当前页
+     */
+    private static final class Results extends AbstractList<Map<String, Object>> implements RandomAccess {
+        private final View view;
+        private final int[] hits;
+
+        // hits 为 null 表示全部文档
+        Results(View view, int[] hits) {
+            this.view = view;
+            this.hits = hits;
+        }
+
+        @Override
+        public Map<String, Object> get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int doc = hits != null ? hits[index] : index;
+            int s = view.segmentOf(doc);
+            return s < view.segments.length
+                    ? view.segments[s].document(doc - view.starts[s])
+                    : view.pending.get(doc - view.starts[s]);
+        }
+
+        @Override
+        public int size() {
+            return hits != null ? hits.length : view.total;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.helloworld.service;
+
+import com.helloworld.exception.AdmissionRejectedException;
+import com.helloworld.metrics.JvmTelemetry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存感知的准入控制
+ *
+ * 重接口（导出、报表生成、压测）在执行前按预估内存申请许可：
+ * 1. 每个接口一个按 MB 加权的信号量，限制该接口同时在途的内存总量
+ * 2. 全局堆余量检查：上次 GC 后老年代存活量 + 所有在途预留 + 本次预估，
+ *    不能超过堆上限扣除保留余量后的部分
+ *
+ * 申请失败直接抛出 AdmissionRejectedException，由 GlobalExceptionHandler
+ * 转为 429/503 + Retry-After，而不是让请求进来把 JVM 推进 GC 抖动。
+ *
+ * 配置（均可选）：
+ *   admission.enabled=true
+ *   admission.heap-reserve-percent=15
+ *   admission.retry-after-seconds=5
+ *   admission.acquire-timeout-ms=0
+ *   admission.default-max-inflight-mb=256
+ *   admission.endpoints.export-stress.max-inflight-mb=100   (按接口覆盖)
+ */
+@Service
+public class AdmissionControlService {
+
+    private final Environment environment;
+    private final JvmTelemetry jvmTelemetry;
+    private final boolean enabled;
+    private final int heapReservePercent;
+    private final int retryAfterSeconds;
+    private final long acquireTimeoutMs;
+    private final int defaultMaxInflightMB;
+
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final AtomicLong reservedMB = new AtomicLong();
+
+    @Autowired
+    public AdmissionControlService(Environment environment, JvmTelemetry jvmTelemetry) {
+        this.environment = environment;
+        this.jvmTelemetry = jvmTelemetry;
+        this.enabled = environment.getProperty("admission.enabled", Boolean.class, true);
+        this.heapReservePercent = environment.getProperty("admission.heap-reserve-percent", Integer.class, 15);
+        this.retryAfterSeconds = environment.getProperty("admission.retry-after-seconds", Integer.class, 5);
+        this.acquireTimeoutMs = environment.getProperty("admission.acquire-timeout-ms", Long.class, 0L);
+        this.defaultMaxInflightMB = environment.getProperty("admission.default-max-inflight-mb", Integer.class, 256);
+    }
+
+    /**
+     * 许可，请求处理完毕后通过 try-with-resources 归还
+     */
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 为接口申请 estimatedMB 的内存许可
+     *
+     * @param endpoint 接口标识，如 export-stress、reports-generate
+     * @throws AdmissionRejectedException 预算占满（429）、堆余量不足（503）或单次请求超过预算（413）
+     */
+    public Permit acquire(String endpoint, int estimatedMB) {
+        if (!enabled) {
+            return () -> { };
+        }
+        int mb = Math.max(1, estimatedMB);
+        Budget budget = budgets.computeIfAbsent(endpoint, this::createBudget);
+        if (mb > budget.maxInflightMB) {
+            budget.rejected.incrementAndGet();
+            throw new AdmissionRejectedException(HttpStatus.PAYLOAD_TOO_LARGE, 0,
+                    "Request needs ~" + mb + "MB, limit for " + endpoint + " is " + budget.maxInflightMB + "MB");
+        }
+
+        if (!hasHeapHeadroom(mb)) {
+            budget.shed.incrementAndGet();
+            throw new AdmissionRejectedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Insufficient heap headroom for " + endpoint + ", retry later");
+        }
+
+        boolean acquired;
+        try {
+            acquired = budget.semaphore.tryAcquire(mb, acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            budget.rejected.incrementAndGet();
+            throw new AdmissionRejectedException(HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds,
+                    "Too many concurrent requests for " + endpoint + ", retry later");
+        }
+
+        reservedMB.addAndGet(mb);
+        budget.admitted.incrementAndGet();
+        return new Permit() {
+            private boolean released;
+
+            @Override
+            public void close() {
+                if (!released) {
+                    released = true;
+                    reservedMB.addAndGet(-mb);
+                    budget.semaphore.release(mb);
+                }
+            }
+        };
+    }
+
+    /**
+     * 各接口预算使用情况
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("reservedMB", reservedMB.get());
+        stats.put("heapReservePercent", heapReservePercent);
+        Map<String, Object> endpoints = new HashMap<>();
+        for (Map.Entry<String, Budget> entry : budgets.entrySet()) {
+            Budget budget = entry.getValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("maxInflightMB", budget.maxInflightMB);
+            item.put("inflightMB", budget.maxInflightMB - budget.semaphore.availablePermits());
+            item.put("admitted", budget.admitted.get());
+            item.put("rejected", budget.rejected.get());
+            item.put("shed", budget.shed.get());
+            endpoints.put(entry.getKey(), item);
+        }
+        stats.put("endpoints", endpoints);
+        return stats;
+    }
+
+    private boolean hasHeapHeadroom(int mb) {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long usable = maxHeap / 100 * (100 - heapReservePercent);
+        long projected = jvmTelemetry.getLiveHeapBytes() + (reservedMB.get() + mb) * 1024L * 1024L;
+        return projected <= usable;
+    }
+
+    private Budget createBudget(String endpoint) {
+        int maxInflightMB = environment.getProperty(
+                "admission.endpoints." + endpoint + ".max-inflight-mb", Integer.class, defaultMaxInflightMB);
+        return new Budget(maxInflightMB);
+    }
+
+    private static class Budget {
+        final int maxInflightMB;
+        final Semaphore semaphore;
+        final AtomicLong admitted = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong shed = new AtomicLong();
+
+        Budget(int maxInflightMB) {
+            this.maxInflightMB = maxInflightMB;
+            this.semaphore = new Semaphore(maxInflightMB);
+        }
+    }
+}
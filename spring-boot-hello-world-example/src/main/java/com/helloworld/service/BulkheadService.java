@@ -0,0 +1,267 @@
+package com.helloworld.service;
+
+import com.helloworld.exception.AdmissionRejectedException;
+import com.helloworld.metrics.JvmTelemetry;
+import com.helloworld.metrics.LatencyHistogram;
+import com.helloworld.metrics.RequestMetricsFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 请求舱壁（bulkhead）
+ *
+ * 导出、报表生成等重接口按类别划分舱壁，每个舱壁一个独立的有界线程池和有界队列。
+ * 接口返回 DeferredResult，Tomcat 请求线程提交后立即归还，所以：
+ * - 重接口再慢也占不住 Tomcat 线程，/api/tasks 等轻接口的延迟不受影响
+ * - 一类重接口打满只会让自己的舱壁排队、拒绝，不会拖累另一类重接口
+ * （项目运行在 Java 8 / Spring Boot 2.2 上，没有虚拟线程，用 Servlet 3 异步请求达到同样效果。）
+ *
+ * 线程池和队列都满时直接返回 429，超时返回 503，都带 Retry-After。
+ * bulkhead.enabled=false 时退回到在请求线程上同步执行，用于和舱壁模型做压测对比。
+ * 工作线程上的分配量写回请求属性，RequestMetricsFilter 照常按接口统计。
+ *
+ * 配置（均可选）：
+ *   bulkhead.enabled=true
+ *   bulkhead.timeout-ms=120000
+ *   bulkhead.retry-after-seconds=5
+ *   bulkhead.default-pool-size=4
+ *   bulkhead.default-queue-capacity=50
+ *   bulkhead.export.pool-size=8            (按舱壁覆盖)
+ *   bulkhead.export.queue-capacity=100
+ */
+@Service
+public class BulkheadService {
+
+    /**
+     * 同步导出接口：/api/export/tasks、reports、batch、stress
+     */
+    public static final String EXPORT = "export";
+
+    /**
+     * 报表生成：/api/reports/generate
+     */
+    public static final String REPORTS = "reports";
+
+    private static final double[] QUANTILES = {0.5, 0.99};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99"};
+
+    private final Environment environment;
+    private final JvmTelemetry jvmTelemetry;
+    private final boolean enabled;
+    private final long timeoutMs;
+    private final int retryAfterSeconds;
+    private final int defaultPoolSize;
+    private final int defaultQueueCapacity;
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BulkheadService(Environment environment, JvmTelemetry jvmTelemetry) {
+        this.environment = environment;
+        this.jvmTelemetry = jvmTelemetry;
+        this.enabled = environment.getProperty("bulkhead.enabled", Boolean.class, true);
+        this.timeoutMs = environment.getProperty("bulkhead.timeout-ms", Long.class, 120_000L);
+        this.retryAfterSeconds = environment.getProperty("bulkhead.retry-after-seconds", Integer.class, 5);
+        this.defaultPoolSize = environment.getProperty("bulkhead.default-pool-size", Integer.class, 4);
+        this.defaultQueueCapacity = environment.getProperty("bulkhead.default-queue-capacity", Integer.class, 50);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 在指定舱壁上执行 work，结果（或异常）写入返回的 DeferredResult
+     *
+     * 异常和同步执行时一样交给 GlobalExceptionHandler 处理。
+     *
+     * @throws AdmissionRejectedException 该舱壁的线程池和队列都已占满（429）
+     */
+    public <T> DeferredResult<T> submit(String name, Callable<T> work) {
+        DeferredResult<T> result = new DeferredResult<>(timeoutMs);
+        if (!enabled) {
+            complete(result, work, currentRequest());
+            return result;
+        }
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(name, this::createBulkhead);
+        result.onTimeout(() -> {
+            bulkhead.timedOut.incrementAndGet();
+            result.setErrorResult(new AdmissionRejectedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Request did not complete within " + timeoutMs + "ms"));
+        });
+        HttpServletRequest request = currentRequest();
+        long submittedAt = System.nanoTime();
+        try {
+            bulkhead.executor.execute(() -> {
+                bulkhead.queueWait.record((System.nanoTime() - submittedAt) / 1000);
+                complete(result, work, request);
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.rejected.incrementAndGet();
+            throw new AdmissionRejectedException(HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds,
+                    "Bulkhead " + name + " is saturated, retry later");
+        }
+        return result;
+    }
+
+    /**
+     * 各舱壁使用情况
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        Map<String, Object> items = new HashMap<>();
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            Bulkhead bulkhead = entry.getValue();
+            Map<String, Object> item = new HashMap<>();
+            item.put("poolSize", bulkhead.poolSize);
+            item.put("queueCapacity", bulkhead.queueCapacity);
+            item.put("active", bulkhead.executor.getActiveCount());
+            item.put("queued", bulkhead.executor.getQueue().size());
+            item.put("saturationPercent", (int) (bulkhead.saturation() * 100));
+            item.put("completed", bulkhead.executor.getCompletedTaskCount());
+            item.put("rejected", bulkhead.rejected.get());
+            item.put("timedOut", bulkhead.timedOut.get());
+            item.put("queueWaitP99Ms", bulkhead.queueWait.valueAtQuantile(0.99) / 1000.0);
+            items.put(entry.getKey(), item);
+        }
+        stats.put("bulkheads", items);
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        Map<String, Bulkhead> sorted = new TreeMap<>(bulkheads);
+
+        out.append("# HELP bulkhead_saturation Busy threads plus queued tasks over pool size plus queue capacity\n");
+        out.append("# TYPE bulkhead_saturation gauge\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            sample(out, "bulkhead_saturation", entry.getKey()).append(entry.getValue().saturation()).append('\n');
+        }
+        out.append("# HELP bulkhead_active_threads Threads currently running tasks\n");
+        out.append("# TYPE bulkhead_active_threads gauge\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            sample(out, "bulkhead_active_threads", entry.getKey())
+                    .append(entry.getValue().executor.getActiveCount()).append('\n');
+        }
+        out.append("# HELP bulkhead_queued_tasks Tasks waiting for a thread\n");
+        out.append("# TYPE bulkhead_queued_tasks gauge\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            sample(out, "bulkhead_queued_tasks", entry.getKey())
+                    .append(entry.getValue().executor.getQueue().size()).append('\n');
+        }
+        out.append("# HELP bulkhead_completed_total Tasks completed\n");
+        out.append("# TYPE bulkhead_completed_total counter\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            sample(out, "bulkhead_completed_total", entry.getKey())
+                    .append(entry.getValue().executor.getCompletedTaskCount()).append('\n');
+        }
+        out.append("# HELP bulkhead_rejected_total Requests rejected because the pool and queue were full\n");
+        out.append("# TYPE bulkhead_rejected_total counter\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            sample(out, "bulkhead_rejected_total", entry.getKey()).append(entry.getValue().rejected.get()).append('\n');
+        }
+        out.append("# HELP bulkhead_timeouts_total Requests that timed out before completing\n");
+        out.append("# TYPE bulkhead_timeouts_total counter\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            sample(out, "bulkhead_timeouts_total", entry.getKey()).append(entry.getValue().timedOut.get()).append('\n');
+        }
+        out.append("# HELP bulkhead_queue_wait_seconds Time spent queued before a thread picked the task up\n");
+        out.append("# TYPE bulkhead_queue_wait_seconds summary\n");
+        for (Map.Entry<String, Bulkhead> entry : sorted.entrySet()) {
+            LatencyHistogram queueWait = entry.getValue().queueWait;
+            for (int q = 0; q < QUANTILES.length; q++) {
+                out.append("bulkhead_queue_wait_seconds{bulkhead=\"").append(entry.getKey())
+                        .append("\",quantile=\"").append(QUANTILE_LABELS[q]).append("\"} ")
+                        .append(queueWait.valueAtQuantile(QUANTILES[q]) / 1_000_000.0).append('\n');
+            }
+            sample(out, "bulkhead_queue_wait_seconds_sum", entry.getKey())
+                    .append(queueWait.getTotalSum() / 1_000_000.0).append('\n');
+            sample(out, "bulkhead_queue_wait_seconds_count", entry.getKey())
+                    .append(queueWait.getTotalCount()).append('\n');
+        }
+    }
+
+    private static StringBuilder sample(StringBuilder out, String metric, String bulkhead) {
+        return out.append(metric).append("{bulkhead=\"").append(bulkhead).append("\"} ");
+    }
+
+    /**
+     * 执行 work 并写入结果；request 不为空时把本线程的分配量记到请求属性上
+     */
+    private <T> void complete(DeferredResult<T> result, Callable<T> work, HttpServletRequest request) {
+        long allocatedAtStart = request != null ? jvmTelemetry.currentThreadAllocatedBytes() : -1;
+        try {
+            T value = work.call();
+            recordAllocation(result, request, allocatedAtStart);
+            result.setResult(value);
+        } catch (Throwable t) {
+            recordAllocation(result, request, allocatedAtStart);
+            result.setErrorResult(t);
+        }
+    }
+
+    private void recordAllocation(DeferredResult<?> result, HttpServletRequest request, long allocatedAtStart) {
+        // 已超时的请求可能已经结束并被容器回收，不能再写属性
+        if (request != null && allocatedAtStart >= 0 && !result.isSetOrExpired()) {
+            request.setAttribute(RequestMetricsFilter.ASYNC_ALLOCATED_BYTES_ATTRIBUTE,
+                    jvmTelemetry.currentThreadAllocatedBytes() - allocatedAtStart);
+        }
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes ? ((ServletRequestAttributes) attributes).getRequest() : null;
+    }
+
+    private Bulkhead createBulkhead(String name) {
+        int poolSize = environment.getProperty("bulkhead." + name + ".pool-size", Integer.class, defaultPoolSize);
+        int queueCapacity = environment.getProperty(
+                "bulkhead." + name + ".queue-capacity", Integer.class, defaultQueueCapacity);
+        return new Bulkhead(name, poolSize, queueCapacity);
+    }
+
+    private static class Bulkhead {
+        final int poolSize;
+        final int queueCapacity;
+        final ThreadPoolExecutor executor;
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong timedOut = new AtomicLong();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+
+        Bulkhead(String name, int poolSize, int queueCapacity) {
+            this.poolSize = poolSize;
+            this.queueCapacity = queueCapacity;
+            this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), DaemonThreads.named("bulkhead-" + name));
+        }
+
+        double saturation() {
+            return (executor.getActiveCount() + executor.getQueue().size()) / (double) (poolSize + queueCapacity);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.helloworld.service;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务层后台线程池共用的线程工厂：守护线程，按 name-序号 命名，便于在线程转储里辨认
+ */
+final class DaemonThreads {
+
+    private DaemonThreads() {
+    }
+
+    static ThreadFactory named(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
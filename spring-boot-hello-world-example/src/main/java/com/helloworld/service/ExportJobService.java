@@ -0,0 +1,430 @@
+package com.helloworld.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.helloworld.model.ExportJob;
+import com.helloworld.model.Task;
+import com.helloworld.repository.TaskSnapshot;
+import com.helloworld.service.TaskRollupService.RollupReport;
+import com.helloworld.service.TaskRollupService.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步导出任务服务
+ *
+ * - 提交后立即返回 exportId，导出在有界线程池中按租户公平调度执行
+ * - 导出结果按 chunkSizeKB 顺序切分为分片文件，内存中只保留当前分片的写缓冲
+ * - 已封存的分片可单独下载；任务完成后可按字节区间断点续传下载全部内容
+ * - 任务结束超过 TTL 后，分片文件和任务记录由后台清理线程删除
+ *
+ * 任务导出支持 csv、json（每行一个对象）和 cbor（CBOR 序列，RFC 8742，每个任务一个 CBOR map，
+ * 字段与 json 相同）。行不会跨分片，所以每个分片本身也是完整的 CSV / JSON 行 / CBOR 序列。
+ * 报表导出读取按小时/按天的汇总桶（TaskRollupService），每个桶一行，支持 csv 和 json。
+ */
+@Service
+public class ExportJobService {
+
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    /**
+     * 导出类型及其支持的格式；报表没有 CBOR 编码
+     */
+    private static final Map<String, Set<String>> FORMATS = new HashMap<>();
+
+    static {
+        FORMATS.put("tasks", new HashSet<>(Arrays.asList("csv", "json", "cbor")));
+        FORMATS.put("reports", new HashSet<>(Arrays.asList("csv", "json")));
+    }
+
+    private final TaskService taskService;
+    private final TaskRollupService taskRollupService;
+    private final Path baseDir;
+    private final int chunkSizeBytes;
+    private final long ttlMillis;
+    private final TenantFairExecutor executor;
+    private final ScheduledExecutorService cleaner;
+
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private final CBORFactory cborFactory = new CBORFactory();
+
+    @Autowired
+    public ExportJobService(TaskService taskService, TaskRollupService taskRollupService,
+                            @Value("${export.jobs.dir:${java.io.tmpdir}/exports}") String baseDir,
+                            @Value("${export.jobs.pool-size:2}") int poolSize,
+                            @Value("${export.jobs.max-queued-per-tenant:10}") int maxQueuedPerTenant,
+                            @Value("${export.jobs.chunk-size-kb:1024}") int chunkSizeKB,
+                            @Value("${export.jobs.ttl-minutes:30}") long ttlMinutes) {
+        this.taskService = taskService;
+        this.taskRollupService = taskRollupService;
+        this.baseDir = Paths.get(baseDir);
+        this.chunkSizeBytes = chunkSizeKB * 1024;
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.executor = new TenantFairExecutor("export-job", poolSize, maxQueuedPerTenant);
+        this.cleaner = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("export-cleaner"));
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        // 任务记录只在内存中，上次运行遗留的分片文件已无法下载，直接清掉
+        if (Files.isDirectory(baseDir)) {
+            try (DirectoryStream<Path> dirs = Files.newDirectoryStream(baseDir)) {
+                for (Path dir : dirs) {
+                    deleteRecursively(dir);
+                }
+            }
+        }
+        Files.createDirectories(baseDir);
+        cleaner.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+        executor.shutdown();
+    }
+
+    public static boolean isKnownType(String type) {
+        return FORMATS.containsKey(type);
+    }
+
+    public static boolean supports(String type, String format) {
+        Set<String> formats = FORMATS.get(type);
+        return formats != null && formats.contains(format);
+    }
+
+    /**
+     * 提交导出任务
+     *
+     * @throws IllegalArgumentException 类型、格式或日期范围不支持；调用方应先用 supports 和
+     *         TaskRollupService.isKnownRange 校验
+     * @throws java.util.concurrent.RejectedExecutionException 租户排队任务数已达上限
+     */
+    public ExportJob submit(String tenant, String type, String format, String dateRange, int records) {
+        if (!supports(type, format) || !TaskRollupService.isKnownRange(dateRange)) {
+            throw new IllegalArgumentException("Unsupported export " + type + "/" + format + "/" + dateRange);
+        }
+        String exportId = "EXP-" + UUID.randomUUID().toString().substring(0, 8);
+        ExportJob job = new ExportJob(exportId, tenant, type, format, dateRange, records);
+        jobs.put(exportId, job);
+        try {
+            executor.submit(tenant, () -> run(job));
+        } catch (RuntimeException e) {
+            jobs.remove(exportId);
+            throw e;
+        }
+        return job;
+    }
+
+    /**
+     * 该租户的导出任务；其他租户的任务和不存在的一样返回 empty
+     */
+    public Optional<ExportJob> getJob(String tenant, String exportId) {
+        ExportJob job = jobs.get(exportId);
+        return job != null && job.getTenant().equals(tenant) ? Optional.of(job) : Optional.empty();
+    }
+
+    public List<ExportJob> getJobs(String tenant) {
+        List<ExportJob> result = new ArrayList<>();
+        for (ExportJob job : jobs.values()) {
+            if (job.getTenant().equals(tenant)) {
+                result.add(job);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 已封存分片的文件路径，分片尚未写完时返回 empty
+     */
+    public Optional<Path> getChunk(ExportJob job, int index) {
+        if (index < 0 || index >= job.getChunkCount()) {
+            return Optional.empty();
+        }
+        return Optional.of(chunkPath(job.getExportId(), index));
+    }
+
+    /**
+     * 把已完成任务的 [start, end] 字节区间（闭区间）依次从各分片写出
+     */
+    public void writeRange(ExportJob job, long start, long end, OutputStream out) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long chunkStart = 0;
+        for (int i = 0; i < job.getChunkCount() && chunkStart <= end; i++) {
+            Path chunk = chunkPath(job.getExportId(), i);
+            long chunkSize = Files.size(chunk);
+            long chunkEnd = chunkStart + chunkSize - 1;
+            if (chunkEnd >= start) {
+                long from = Math.max(start, chunkStart) - chunkStart;
+                long remaining = Math.min(end, chunkEnd) - chunkStart - from + 1;
+                try (InputStream in = Files.newInputStream(chunk)) {
+                    skipFully(in, from);
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new IOException("Chunk truncated: " + chunk);
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+            }
+            chunkStart += chunkSize;
+        }
+    }
+
+    /**
+     * 不登记任务、不落盘，按与正式导出相同的编码把内容直接写到 out；启动预热用
+     */
+    public void writeDirect(String type, String format, String dateRange, int records, OutputStream out)
+            throws IOException {
+        ExportJob job = new ExportJob("direct", "direct", type, format, dateRange, records);
+        RowWriter writer = new RowWriter() {
+            @Override
+            public void writeRow(byte[] bytes) throws IOException {
+                out.write(bytes);
+            }
+        };
+        if ("tasks".equals(type)) {
+            writeTasks(job, writer);
+        } else {
+            writeReport(job, writer);
+        }
+    }
+
+    public int getQueuedCount() {
+        return executor.queuedCount();
+    }
+
+    public int getActiveCount() {
+        return executor.activeCount();
+    }
+
+    public Path getBaseDir() {
+        return baseDir;
+    }
+
+    private void run(ExportJob job) {
+        job.markRunning();
+        try (ChunkWriter writer = new ChunkWriter(job)) {
+            if ("tasks".equals(job.getType())) {
+                writeTasks(job, writer);
+            } else {
+                writeReport(job, writer);
+            }
+            writer.finish();
+        } catch (IOException | RuntimeException e) {
+            job.markFailed(e.getMessage());
+            return;
+        } catch (Error e) {
+            // 例如写分片时 OOM：任务不标记结束就一直是 RUNNING，也永远不会被清理；
+            // 标记后照常抛出，由 TenantFairExecutor 换一个工作线程
+            job.markFailed(e.toString());
+            throw e;
+        }
+        job.markCompleted();
+    }
+
+    private void writeTasks(ExportJob job, RowWriter writer) throws IOException {
+        // 导出可能持续数分钟：在时间点视图上遍历，导出内容对应同一时刻，不阻塞写入，也不先复制出全量列表
+        try (TaskSnapshot snapshot = taskService.openSnapshot()) {
+            if ("cbor".equals(job.getFormat())) {
+                writeTasksCbor(job, snapshot, writer);
+                return;
+            }
+            boolean json = "json".equals(job.getFormat());
+            if (!json) {
+                writer.writeRow("id,title,status,priority,createdAt,updatedAt\n");
+            }
+            int written = 0;
+            for (Task task : snapshot) {
+                if (written++ >= job.getRecords()) {
+                    break;
+                }
+                if (json) {
+                    writer.writeRow("{\"id\":" + task.getId()
+                            + ",\"title\":" + (task.getTitle() != null ? "\"" + escapeJson(task.getTitle()) + "\"" : "null")
+                            + ",\"status\":\"" + task.getStatus()
+                            + "\",\"priority\":\"" + task.getPriority()
+                            + "\",\"createdAt\":" + task.getCreatedAt().getTime()
+                            + ",\"updatedAt\":" + task.getUpdatedAt().getTime() + "}\n");
+                } else {
+                    String title = task.getTitle() != null ? task.getTitle().replace("\"", "\"\"") : "";
+                    writer.writeRow(task.getId() + ",\"" + title + "\","
+                            + task.getStatus() + "," + task.getPriority() + ","
+                            + task.getCreatedAt().getTime() + "," + task.getUpdatedAt().getTime() + "\n");
+                }
+            }
+        }
+    }
+
+    private void writeTasksCbor(ExportJob job, TaskSnapshot snapshot, RowWriter writer) throws IOException {
+        ByteArrayOutputStream row = new ByteArrayOutputStream(256);
+        try (JsonGenerator generator = cborFactory.createGenerator(row)) {
+            int written = 0;
+            for (Task task : snapshot) {
+                if (written++ >= job.getRecords()) {
+                    break;
+                }
+                generator.writeStartObject();
+                generator.writeNumberField("id", task.getId());
+                generator.writeStringField("title", task.getTitle());
+                generator.writeStringField("status", task.getStatus().name());
+                generator.writeStringField("priority", task.getPriority().name());
+                generator.writeNumberField("createdAt", task.getCreatedAt().getTime());
+                generator.writeNumberField("updatedAt", task.getUpdatedAt().getTime());
+                generator.writeEndObject();
+                generator.flush();
+                writer.writeRow(row.toByteArray());
+                row.reset();
+            }
+        }
+    }
+
+    private void writeReport(ExportJob job, RowWriter writer) throws IOException {
+        // 按日期范围读取汇总桶，last_year 也只有 365 行，不扫描任务
+        RollupReport report = taskRollupService.report(job.getDateRange());
+        boolean json = "json".equals(job.getFormat());
+        if (!json) {
+            writer.writeRow(RollupReport.csvHeader());
+        }
+        for (Row row : report.getRows()) {
+            writer.writeRow(json ? row.toJson() : row.toCsv());
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        for (ExportJob job : jobs.values()) {
+            if (job.isFinished() && now - job.getCompletedAt().getTime() > ttlMillis) {
+                jobs.remove(job.getExportId());
+                try {
+                    deleteRecursively(baseDir.resolve(job.getExportId()));
+                } catch (IOException e) {
+                    // 记录已删除，残留文件在下次启动时统一清理
+                }
+            }
+        }
+    }
+
+    private Path chunkPath(String exportId, int index) {
+        return baseDir.resolve(exportId).resolve(String.format("%s%05d", CHUNK_PREFIX, index));
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                throw new IOException("Unexpected end of chunk");
+            }
+            n -= skipped;
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                for (Path child : children) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * JSON 字符串转义，包括换行和其他控制字符
+     */
+    private static String escapeJson(String value) {
+        return new String(JsonStringEncoder.getInstance().quoteAsString(value));
+    }
+
+    /**
+     * 导出内容的逐行输出
+     */
+    private interface RowWriter {
+        default void writeRow(String row) throws IOException {
+            writeRow(row.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeRow(byte[] bytes) throws IOException;
+    }
+
+    /**
+     * 顺序写分片：按行写入，当前分片达到 chunkSizeBytes 后封存并切换到下一个分片。
+     * 分片先写到 .tmp 文件，写完后原子改名，下载方只会看到完整分片。
+     */
+    private class ChunkWriter implements RowWriter, AutoCloseable {
+        private final ExportJob job;
+        private final Path dir;
+        private OutputStream current;
+        private Path currentTmp;
+        private long currentBytes;
+
+        ChunkWriter(ExportJob job) throws IOException {
+            this.job = job;
+            this.dir = Files.createDirectories(baseDir.resolve(job.getExportId()));
+        }
+
+        @Override
+        public void writeRow(byte[] bytes) throws IOException {
+            if (current == null) {
+                currentTmp = dir.resolve(CHUNK_PREFIX + job.getChunkCount() + ".tmp");
+                current = new BufferedOutputStream(Files.newOutputStream(currentTmp), 64 * 1024);
+                currentBytes = 0;
+            }
+            current.write(bytes);
+            currentBytes += bytes.length;
+            if (currentBytes >= chunkSizeBytes) {
+                seal();
+            }
+        }
+
+        private void seal() throws IOException {
+            current.close();
+            current = null;
+            Files.move(currentTmp, chunkPath(job.getExportId(), job.getChunkCount()), StandardCopyOption.ATOMIC_MOVE);
+            job.chunkSealed(currentBytes);
+        }
+
+        /**
+         * 封存最后一个未写满的分片
+         */
+        void finish() throws IOException {
+            if (current != null) {
+                seal();
+            }
+        }
+
+        /**
+         * 失败时只关闭文件句柄，未封存的 .tmp 分片随任务目录一起被清理
+         */
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.helloworld.service;
+
+import com.helloworld.exception.InvalidRequestException;
+import com.helloworld.search.SearchIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 搜索服务
+ *
+ * 文档集合和匹配逻辑从 SearchController 中拆出，便于单独压测不同规模的语料。
+ * 文档存在持久化的 SearchIndex 里：启动时映射上次留下的段文件，不用从全部语料重建，
+ * 索引目录为空（首次部署）时才写入内置文档。新文档先进内存增量，后台每隔 flush-seconds
+ * 写成新段并合并多余的段；增量达到 delta-max-documents 时提前写。
+ *
+ * 外部加入的文档只接受字符串、整数、浮点数、布尔和 null 字段，字段数、编码后大小和索引的文档总数都有上限：
+ * 文档只追加、不删除，不设上限的话一个客户端就能把索引目录和内存撑满。
+ *
+ * 配置（均可选）：
+ *   search.index-dir=${java.io.tmpdir}/search-index  同一台机器上的每个实例要配置各自的目录，
+ *                                                  目录被占用时启动失败
+ *   search.flush-seconds=5
+ *   search.max-segments=8
+ *   search.delta-max-documents=1000
+ *   search.write-token=                              非空时加入文档要带请求头 X-Search-Token
+ *   search.max-documents=100000                      索引的文档总数，到了之后拒绝加入
+ *   search.max-document-fields=32
+ *   search.max-document-bytes=16384                  按段格式编码后的大小
+ */
+@Service
+public class SearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchService.class);
+
+    public static final List<String> CATEGORIES = Collections.unmodifiableList(Arrays.asList("开发", "运维", "测试", "安全"));
+
+    public static final String WRITE_TOKEN_HEADER = "X-Search-Token";
+
+    private static final String[] PRIORITIES = {"HIGH", "MEDIUM", "LOW"};
+
+    private static final InvalidRequestException UNSUPPORTED_VALUE = new InvalidRequestException(
+            "Document field values must be strings, integers, floating-point numbers, booleans or null");
+    private static final InvalidRequestException TOO_MANY_FIELDS = new InvalidRequestException("Document has too many fields");
+    private static final InvalidRequestException TOO_LARGE = new InvalidRequestException("Document is too large");
+
+    private final SearchIndex index;
+    private final long flushSeconds;
+    private final int maxSegments;
+    private final int deltaMaxDocuments;
+    private final byte[] writeToken;
+    private final int maxDocuments;
+    private final int maxDocumentFields;
+    private final long maxDocumentBytes;
+    private final Object addLock = new Object();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final AtomicLong maintenanceFailures = new AtomicLong();
+
+    @Autowired
+    public SearchService(@Value("${search.index-dir:${java.io.tmpdir}/search-index}") String dir,
+                         @Value("${search.flush-seconds:5}") long flushSeconds,
+                         @Value("${search.max-segments:8}") int maxSegments,
+                         @Value("${search.delta-max-documents:1000}") int deltaMaxDocuments,
+                         @Value("${search.write-token:}") String writeToken,
+                         @Value("${search.max-documents:100000}") int maxDocuments,
+                         @Value("${search.max-document-fields:32}") int maxDocumentFields,
+                         @Value("${search.max-document-bytes:16384}") long maxDocumentBytes) throws IOException {
+        this(openIndex(Paths.get(dir)), flushSeconds, maxSegments, deltaMaxDocuments, writeToken,
+                maxDocuments, maxDocumentFields, maxDocumentBytes);
+        if (writeToken.isEmpty()) {
+            log.warn("search.write-token is not set; adding search documents is not authenticated");
+        }
+    }
+
+    /**
+     * 在临时目录里为 documents 建索引，供压测使用
+     */
+    public SearchService(List<Map<String, Object>> documents) {
+        this(seededIndex(documents), 5, 8, 1000, "", Integer.MAX_VALUE, 32, 16384);
+    }
+
+    private SearchService(SearchIndex index, long flushSeconds, int maxSegments, int deltaMaxDocuments,
+                          String writeToken, int maxDocuments, int maxDocumentFields, long maxDocumentBytes) {
+        this.index = index;
+        this.flushSeconds = flushSeconds;
+        this.maxSegments = maxSegments;
+        this.deltaMaxDocuments = deltaMaxDocuments;
+        this.writeToken = writeToken.getBytes(StandardCharsets.UTF_8);
+        this.maxDocuments = maxDocuments;
+        this.maxDocumentFields = maxDocumentFields;
+        this.maxDocumentBytes = maxDocumentBytes;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("search-index"));
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::maintain, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        maintain();
+        try {
+            index.close();
+        } catch (IOException e) {
+            log.warn("Failed to release search index directory", e);
+        }
+    }
+
+    /**
+     * 标题包含关键字（忽略大小写）的文档；没有匹配时返回全部文档
+     */
+    public List<Map<String, Object>> search(String query) {
+        List<Map<String, Object>> results = index.search(query.toLowerCase());
+
+        // 如果没有匹配结果，返回所有数据
+        if (results.isEmpty()) {
+            results = index.all();
+        }
+        return results;
+    }
+
+    /**
+     * 标题包含前缀（忽略大小写）的文档标题
+     */
+    public List<String> suggest(String prefix) {
+        return index.titles(prefix.toLowerCase());
+    }
+
+    /**
+     * 校验加入文档的请求携带的令牌；未配置令牌时不校验
+     */
+    public boolean isWriteAuthorized(String presented) {
+        if (writeToken.length == 0) {
+            return true;
+        }
+        return presented != null && MessageDigest.isEqual(writeToken, presented.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 加入一篇文档，立即可查；随后的 flush 才落盘
+     *
+     * @return 索引已有 max-documents 篇文档时不加入，返回 false
+     * @throws InvalidRequestException 字段值不是标量，或字段数、大小超过上限
+     */
+    public boolean addDocument(Map<String, Object> document) {
+        if (document.size() > maxDocumentFields) {
+            throw TOO_MANY_FIELDS;
+        }
+        long bytes;
+        try {
+            bytes = SearchIndex.documentBytes(document);
+        } catch (IllegalArgumentException e) {
+            throw UNSUPPORTED_VALUE;
+        }
+        if (bytes > maxDocumentBytes) {
+            throw TOO_LARGE;
+        }
+        synchronized (addLock) {
+            if (index.documentCount() >= maxDocuments) {
+                return false;
+            }
+            index.add(document);
+        }
+        if (index.pendingCount() >= deltaMaxDocuments && flushQueued.compareAndSet(false, true)) {
+            scheduler.execute(this::maintain);
+        }
+        return true;
+    }
+
+    public int getDocumentCount() {
+        return index.documentCount();
+    }
+
+    public Map<String, Object> getIndexStats() {
+        Map<String, Object> stats = index.getStats();
+        stats.put("maintenanceFailures", maintenanceFailures.get());
+        return stats;
+    }
+
+    public void writePrometheus(StringBuilder out) {
+        index.writePrometheus(out);
+    }
+
+    private void maintain() {
+        flushQueued.set(false);
+        try {
+            index.flush();
+            index.merge(maxSegments);
+        } catch (IOException | RuntimeException e) {
+            // 增量还在内存里，下一轮重试
+            maintenanceFailures.incrementAndGet();
+            log.warn("Search index flush/merge failed", e);
+        }
+    }
+
+    private static SearchIndex openIndex(Path dir) throws IOException {
+        SearchIndex index;
+        try {
+            index = new SearchIndex(dir);
+        } catch (IOException e) {
+            log.warn("Search index at {} is unreadable, rebuilding", dir, e);
+            SearchIndex.delete(dir);
+            index = new SearchIndex(dir);
+        }
+        if (index.documentCount() == 0) {
+            index.addAll(defaultDocuments());
+            index.flush();
+        }
+        log.info("Search index opened from {}: {} documents in {} ms",
+                dir, index.documentCount(), index.getStats().get("openMillis"));
+        return index;
+    }
+
+    private static SearchIndex seededIndex(List<Map<String, Object>> documents) {
+        try {
+            SearchIndex index = new SearchIndex(Files.createTempDirectory("search-index"));
+            index.addAll(documents);
+            index.flush();
+            return index;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 生成 count 篇模拟文档，标题在内置标题上追加序号
+     */
+    public static List<Map<String, Object>> generateDocuments(int count) {
+        List<Map<String, Object>> generated = new ArrayList<>(count);
+        List<Map<String, Object>> base = defaultDocuments();
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> item = new HashMap<>(base.get(i % base.size()));
+            item.put("id", i + 1);
+            item.put("title", item.get("title") + " #" + (i + 1));
+            item.put("score", random.nextDouble());
+            generated.add(item);
+        }
+        return generated;
+    }
+
+    private static List<Map<String, Object>> defaultDocuments() {
+        // 初始化模拟数据
+        String[] titles = {
+                "完成 CI/CD 配置",
+                "学习 AWS CloudFormation",
+                "编写单元测试",
+                "优化数据库查询",
+                "部署生产环境",
+                "代码审查",
+                "性能优化",
+                "安全加固",
+                "监控告警配置",
+                "日志采集设置"
+        };
+
+        List<Map<String, Object>> data = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < titles.length; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", i + 1);
+            item.put("title", titles[i]);
+            item.put("category", CATEGORIES.get(random.nextInt(CATEGORIES.size())));
+            item.put("priority", PRIORITIES[random.nextInt(PRIORITIES.length)]);
+            item.put("score", random.nextDouble());
+            data.add(item);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,128 @@
+package com.helloworld.service;
+
+import com.helloworld.repository.TaskRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 已完成任务的分层归档
+ *
+ * 删除中优先级任务只是把它标成 COMPLETED，已完成任务会一直留在堆里。这里定时把完成超过
+ * min-age-minutes 的任务移到压缩段文件（TaskRepository.archiveCompleted），堆占用只随进行中的任务增长；
+ * 按 id 查找和各查询仍能透明地读到它们。每轮最多移出 segment-max-tasks 个，写成一个段。
+ * 每轮之后整理段（TaskRepository.compactArchive）：段数超过 max-segments 时合并，
+ * 归档后又被修改或删除的副本过半时重写，旧段和遮蔽在不再被视图用到后回收。
+ *
+ * 配置（均可选）：
+ *   archive.enabled=true
+ *   archive.dir=${java.io.tmpdir}/task-archive  启动时清空，同一台机器上的每个实例要配置各自的目录，
+ *                                              目录被占用时启动失败
+ *   archive.min-age-minutes=1440
+ *   archive.interval-seconds=60
+ *   archive.segment-max-tasks=50000
+ *   archive.max-segments=8
+ */
+@Service
+public class TaskArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskArchiveService.class);
+
+    private final TaskRepository taskRepository;
+    private final boolean enabled;
+    private final String dir;
+    private final long minAgeMillis;
+    private final long intervalSeconds;
+    private final int segmentMaxTasks;
+    private final int maxSegments;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong archivedTotal = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Date lastRunAt;
+    private volatile long lastRunMillis;
+    private volatile int lastArchived;
+
+    @Autowired
+    public TaskArchiveService(TaskRepository taskRepository,
+                              @Value("${archive.enabled:true}") boolean enabled,
+                              @Value("${archive.dir:${java.io.tmpdir}/task-archive}") String dir,
+                              @Value("${archive.min-age-minutes:1440}") long minAgeMinutes,
+                              @Value("${archive.interval-seconds:60}") long intervalSeconds,
+                              @Value("${archive.segment-max-tasks:50000}") int segmentMaxTasks,
+                              @Value("${archive.max-segments:8}") int maxSegments) {
+        this.taskRepository = taskRepository;
+        this.enabled = enabled;
+        this.dir = dir;
+        this.minAgeMillis = TimeUnit.MINUTES.toMillis(minAgeMinutes);
+        this.intervalSeconds = intervalSeconds;
+        this.segmentMaxTasks = segmentMaxTasks;
+        this.maxSegments = maxSegments;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("task-archiver"));
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        taskRepository.enableArchive(Paths.get(dir));
+        scheduler.scheduleWithFixedDelay(this::archive, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        log.info("Task archive enabled: completed tasks older than {} min move to {}",
+                TimeUnit.MILLISECONDS.toMinutes(minAgeMillis), dir);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void archive() {
+        long start = System.currentTimeMillis();
+        try {
+            int archived = taskRepository.archiveCompleted(start - minAgeMillis, segmentMaxTasks);
+            lastArchived = archived;
+            archivedTotal.addAndGet(archived);
+            if (archived > 0) {
+                log.info("Archived {} completed tasks", archived);
+            }
+            taskRepository.compactArchive(maxSegments);
+        } catch (IOException | RuntimeException e) {
+            // 段文件没有发布就不会有任务被移出，整理失败时旧段仍然有效，下一轮重试
+            failures.incrementAndGet();
+            log.warn("Task archive run failed", e);
+        }
+        runs.incrementAndGet();
+        lastRunAt = new Date(start);
+        lastRunMillis = System.currentTimeMillis() - start;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minAgeMinutes", TimeUnit.MILLISECONDS.toMinutes(minAgeMillis));
+        stats.put("runs", runs.get());
+        stats.put("failures", failures.get());
+        stats.put("lastRunAt", lastRunAt);
+        stats.put("lastRunMillis", lastRunMillis);
+        stats.put("lastArchived", lastArchived);
+        stats.put("archivedTotal", archivedTotal.get());
+        stats.put("archive", taskRepository.getArchiveStats());
+        return stats;
+    }
+}
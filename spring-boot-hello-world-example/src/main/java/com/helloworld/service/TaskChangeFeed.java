@@ -0,0 +1,249 @@
+package com.helloworld.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.exception.AdmissionRejectedException;
+import com.helloworld.repository.TaskChange;
+import com.helloworld.repository.TaskChangeListener;
+import com.helloworld.repository.TaskRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务变更推送（Server-Sent Events）
+ *
+ * 客户端原来靠轮询 GET /api/tasks 发现变化，每次都下载全量列表。这里订阅 TaskRepository 的变更
+ * （TaskService 的增删改，以及复制过来的其他节点的变更），写入有界的 TaskChangeLog，
+ * 再推送给 /api/tasks/changes 的订阅方，开销与变更数成正比，与任务总数无关。
+ *
+ * - 调度线程每 coalesce-ms 检查一次各订阅方，窗口内同一任务的多次修改只推最新一次
+ * - 事件 id 即日志序号，断线后带 since 参数或 Last-Event-ID 头从断点续读
+ * - 续读点已被挤出日志时推送 reset 事件后断开，客户端应重新拉取全量再从 reset 给出的序号订阅
+ * - 每个订阅方同一时间只有一次在途发送；发送阻塞超过 max-stall-ms（客户端读得太慢）即断开，
+ *   未发送的变更留在共享日志里，不为慢订阅方单独堆积
+ * - 空闲时每 heartbeat-seconds 发一条注释，防止 ALB 空闲超时断开连接
+ *
+ * 配置（均可选）：
+ *   changes.log-capacity=10000
+ *   changes.coalesce-ms=100
+ *   changes.batch-size=200
+ *   changes.max-subscribers=500
+ *   changes.sender-threads=8
+ *   changes.max-stall-ms=30000
+ *   changes.heartbeat-seconds=15
+ *   changes.timeout-minutes=30     连接最长保持时间，到期后客户端按 Last-Event-ID 重连
+ */
+@Service
+public class TaskChangeFeed implements TaskChangeListener {
+
+    private final TaskRepository taskRepository;
+    private final ObjectMapper objectMapper;
+    private final TaskChangeLog log;
+    private final long coalesceMs;
+    private final int batchSize;
+    private final int maxSubscribers;
+    private final int senderThreads;
+    private final long maxStallMs;
+    private final long heartbeatMs;
+    private final long timeoutMs;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder disconnectedStalled = new LongAdder();
+    private final LongAdder disconnectedReset = new LongAdder();
+
+    private ScheduledExecutorService dispatcher;
+    private ExecutorService senders;
+
+    @Autowired
+    public TaskChangeFeed(TaskRepository taskRepository, ObjectMapper objectMapper, Environment environment) {
+        this.taskRepository = taskRepository;
+        this.objectMapper = objectMapper;
+        this.log = new TaskChangeLog(environment.getProperty("changes.log-capacity", Integer.class, 10_000));
+        this.coalesceMs = environment.getProperty("changes.coalesce-ms", Long.class, 100L);
+        this.batchSize = environment.getProperty("changes.batch-size", Integer.class, 200);
+        this.maxSubscribers = environment.getProperty("changes.max-subscribers", Integer.class, 500);
+        this.senderThreads = environment.getProperty("changes.sender-threads", Integer.class, 8);
+        this.maxStallMs = environment.getProperty("changes.max-stall-ms", Long.class, 30_000L);
+        this.heartbeatMs = environment.getProperty("changes.heartbeat-seconds", Long.class, 15L) * 1000;
+        this.timeoutMs = environment.getProperty("changes.timeout-minutes", Long.class, 30L) * 60_000;
+    }
+
+    @PostConstruct
+    public void start() {
+        taskRepository.addChangeListener(this);
+        senders = Executors.newFixedThreadPool(senderThreads, DaemonThreads.named("task-changes-sender"));
+        dispatcher = Executors.newSingleThreadScheduledExecutor(DaemonThreads.named("task-changes"));
+        dispatcher.scheduleWithFixedDelay(this::dispatch, coalesceMs, coalesceMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        taskRepository.removeChangeListener(this);
+        dispatcher.shutdownNow();
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    @Override
+    public void onChange(TaskChange change) {
+        log.append(change);
+        appended.increment();
+    }
+
+    /**
+     * 新建订阅
+     *
+     * @param since 从该序号之后开始推送；null 表示只推送订阅之后的变更
+     * @throws AdmissionRejectedException 订阅数已满（503）
+     */
+    public SseEmitter subscribe(Long since) {
+        if (subscribers.size() >= maxSubscribers) {
+            rejected.increment();
+            throw new AdmissionRejectedException(HttpStatus.SERVICE_UNAVAILABLE, 5,
+                    "Too many change feed subscribers, retry later");
+        }
+        long head = log.headSeq();
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, since != null ? Math.min(since, head) : head);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("headSeq", log.headSeq());
+        stats.put("logCapacity", log.getCapacity());
+        stats.put("appended", appended.sum());
+        stats.put("coalesced", log.getCoalesced());
+        stats.put("delivered", delivered.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("disconnectedStalled", disconnectedStalled.sum());
+        stats.put("disconnectedReset", disconnectedReset.sum());
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP task_changes_subscribers Open change feed connections\n");
+        out.append("# TYPE task_changes_subscribers gauge\n");
+        out.append("task_changes_subscribers ").append(subscribers.size()).append('\n');
+        out.append("# HELP task_changes_appended_total Task changes written to the change log\n");
+        out.append("# TYPE task_changes_appended_total counter\n");
+        out.append("task_changes_appended_total ").append(appended.sum()).append('\n');
+        out.append("# HELP task_changes_coalesced_total Changes superseded by a newer change to the same task\n");
+        out.append("# TYPE task_changes_coalesced_total counter\n");
+        out.append("task_changes_coalesced_total ").append(log.getCoalesced()).append('\n');
+        out.append("# HELP task_changes_delivered_total Change events sent to subscribers\n");
+        out.append("# TYPE task_changes_delivered_total counter\n");
+        out.append("task_changes_delivered_total ").append(delivered.sum()).append('\n');
+        out.append("# HELP task_changes_disconnects_total Subscribers disconnected by the server\n");
+        out.append("# TYPE task_changes_disconnects_total counter\n");
+        out.append("task_changes_disconnects_total{reason=\"stalled\"} ").append(disconnectedStalled.sum()).append('\n');
+        out.append("task_changes_disconnects_total{reason=\"reset\"} ").append(disconnectedReset.sum()).append('\n');
+        out.append("# HELP task_changes_rejected_total Subscriptions refused because max-subscribers was reached\n");
+        out.append("# TYPE task_changes_rejected_total counter\n");
+        out.append("task_changes_rejected_total ").append(rejected.sum()).append('\n');
+    }
+
+    /**
+     * 调度线程：给有新变更或该发心跳的空闲订阅方安排一次发送
+     */
+    private void dispatch() {
+        long now = System.currentTimeMillis();
+        long head = log.headSeq();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.sending.get()) {
+                if (now - subscriber.sendStartedAt > maxStallMs) {
+                    // 客户端长时间不读，写操作一直阻塞
+                    disconnectedStalled.increment();
+                    subscribers.remove(subscriber);
+                    subscriber.emitter.complete();
+                }
+                continue;
+            }
+            boolean heartbeatDue = now - subscriber.lastSentAt >= heartbeatMs;
+            if (subscriber.cursor < head || heartbeatDue) {
+                subscriber.sending.set(true);
+                subscriber.sendStartedAt = now;
+                senders.execute(() -> deliver(subscriber, heartbeatDue));
+            }
+        }
+    }
+
+    private void deliver(Subscriber subscriber, boolean heartbeatDue) {
+        try {
+            List<TaskChangeLog.Entry> batch = new ArrayList<>();
+            long next = log.read(subscriber.cursor, batchSize, batch);
+            if (next < 0) {
+                disconnectedReset.increment();
+                subscribers.remove(subscriber);
+                subscriber.emitter.send(SseEmitter.event().name("reset")
+                        .data("{\"seq\":" + log.headSeq() + "}", MediaType.APPLICATION_JSON));
+                subscriber.emitter.complete();
+                return;
+            }
+            for (TaskChangeLog.Entry entry : batch) {
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(Long.toString(entry.seq))
+                        .name("change")
+                        .data(entry.json(objectMapper), MediaType.APPLICATION_JSON));
+            }
+            if (batch.isEmpty() && heartbeatDue) {
+                subscriber.emitter.send(SseEmitter.event().comment("ping"));
+            }
+            subscriber.cursor = next;
+            subscriber.lastSentAt = System.currentTimeMillis();
+            delivered.add(batch.size());
+        } catch (IOException | IllegalStateException e) {
+            // 客户端已断开或连接已结束
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.sending.set(false);
+        }
+    }
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final AtomicBoolean sending = new AtomicBoolean();
+        // cursor 只由持有 sending 的发送线程读写
+        volatile long cursor;
+        volatile long sendStartedAt;
+        volatile long lastSentAt;
+
+        Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+}
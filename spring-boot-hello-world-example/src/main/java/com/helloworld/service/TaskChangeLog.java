@@ -0,0 +1,121 @@
+package com.helloworld.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.repository.TaskChange;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 有界的任务变更日志（环形数组），按序号顺序保存最近 capacity 条变更
+ *
+ * 同一任务的新变更写入时，旧条目标记为已覆盖，读取时跳过：订阅方从任意序号续读，
+ * 拿到的是这之后每个变更过的任务的最新状态，同一任务的多次快速修改只推送一次。
+ * 序号只增不减，被覆盖的条目留下的空洞对订阅方不可见。
+ * 同一任务的变更按版本号排序：版本号比已记录的旧的变更直接丢弃，订阅方不会被推回旧状态。
+ */
+class TaskChangeLog {
+
+    private final Entry[] ring;
+    private final Map<Long, Entry> latestById = new HashMap<>();
+    private long nextSeq = 1;
+    private long coalesced;
+
+    TaskChangeLog(int capacity) {
+        this.ring = new Entry[capacity];
+    }
+
+    /**
+     * 追加一条变更；同一任务已记录了更新的版本时丢弃这条（计入合并数），不占用序号
+     */
+    synchronized void append(TaskChange change) {
+        Entry latest = latestById.get(change.getId());
+        if (latest != null && latest.change.getVersion() > change.getVersion()) {
+            coalesced++;
+            return;
+        }
+        long seq = nextSeq++;
+        int slot = (int) (seq % ring.length);
+        Entry evicted = ring[slot];
+        if (evicted != null && latestById.get(evicted.taskId) == evicted) {
+            latestById.remove(evicted.taskId);
+        }
+        Entry entry = new Entry(seq, change);
+        ring[slot] = entry;
+        Entry previous = latestById.put(change.getId(), entry);
+        if (previous != null) {
+            previous.superseded = true;
+            coalesced++;
+        }
+    }
+
+    /**
+     * 最新一条变更的序号，没有变更时为 0
+     */
+    synchronized long headSeq() {
+        return nextSeq - 1;
+    }
+
+    /**
+     * 读取序号 after 之后、未被覆盖的条目，最多 max 条
+     *
+     * @return 本次扫描到的最后一个序号（含被跳过的），下次从这里续读；
+     *         after 之后的条目已被挤出日志时返回 -1，订阅方需要重新拉取全量
+     */
+    synchronized long read(long after, int max, List<Entry> out) {
+        long oldest = Math.max(1, nextSeq - ring.length);
+        if (after + 1 < oldest) {
+            return -1;
+        }
+        long seq = after + 1;
+        for (; seq < nextSeq && out.size() < max; seq++) {
+            Entry entry = ring[(int) (seq % ring.length)];
+            if (!entry.superseded) {
+                out.add(entry);
+            }
+        }
+        return seq - 1;
+    }
+
+    synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    int getCapacity() {
+        return ring.length;
+    }
+
+    static final class Entry {
+        final long seq;
+        final long taskId;
+        final TaskChange change;
+        volatile boolean superseded;
+        private volatile String json;
+
+        Entry(long seq, TaskChange change) {
+            this.seq = seq;
+            this.taskId = change.getId();
+            this.change = change;
+        }
+
+        /**
+         * 事件数据，第一次推送时序列化，之后所有订阅方共用
+         */
+        String json(ObjectMapper objectMapper) throws JsonProcessingException {
+            String result = json;
+            if (result == null) {
+                Map<String, Object> data = new LinkedHashMap<>();
+                data.put("seq", seq);
+                data.put("type", change.getType() == TaskChange.Type.DELETE ? "delete" : "upsert");
+                data.put("id", taskId);
+                data.put("task", change.getTask());
+                result = objectMapper.writeValueAsString(data);
+                json = result;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.helloworld.service;
+
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.repository.TaskChange;
+import com.helloworld.repository.TaskChangeListener;
+import com.helloworld.repository.TaskRepository;
+import com.helloworld.repository.TaskSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 任务汇总：按小时、按天分桶，随每次变更增量维护
+ *
+ * 订阅 TaskRepository 的变更，每次变更只更新所在小时桶和日桶的计数：新建、完成、修改、删除数，
+ * 以及各状态、各优先级任务数的净变化。报表按桶读取，last_year 只读 365 个日桶，不扫描任务。
+ * 某个桶结束时各状态、各优先级的任务数，由当前总数依次减去其后各桶的净变化倒推得出。
+ *
+ * 变更按本节点应用它的时刻记桶，桶边界按 rollups.zone 划分。
+ * 启动时按现有任务的 createdAt 回填；修改、删除的历史只在内存中，重启后不保留。
+ * 计数逐项原子更新，报表与正在进行的变更之间可能差一次变更。
+ *
+ * 配置（均可选）：
+ *   rollups.zone=Asia/Shanghai           默认取系统时区
+ *   rollups.hourly-retention-days=8
+ *   rollups.daily-retention-days=400
+ */
+@Service
+public class TaskRollupService implements TaskChangeListener {
+
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    // 桶内计数的下标：4 项吞吐量，之后依次是各状态、各优先级的净变化
+    private static final int CREATED = 0;
+    private static final int COMPLETED = 1;
+    private static final int UPDATED = 2;
+    private static final int DELETED = 3;
+    private static final int STATUS_DELTA = 4;
+    private static final int PRIORITY_DELTA = STATUS_DELTA + STATUSES.length;
+    private static final int COUNTERS = PRIORITY_DELTA + PRIORITIES.length;
+
+    private static final String DEFAULT_RANGE = "last_week";
+    private static final Map<String, Range> RANGES = new HashMap<>();
+
+    static {
+        RANGES.put("last_week", new Range(Granularity.HOUR, 7 * 24));
+        RANGES.put("last_month", new Range(Granularity.DAY, 30));
+        RANGES.put("last_quarter", new Range(Granularity.DAY, 90));
+        RANGES.put("last_year", new Range(Granularity.DAY, 365));
+    }
+
+    private final TaskRepository taskRepository;
+    private final ZoneId zone;
+    private final Series hourly;
+    private final Series daily;
+
+    private final AtomicLongArray statusTotals = new AtomicLongArray(STATUSES.length);
+    private final AtomicLongArray priorityTotals = new AtomicLongArray(PRIORITIES.length);
+    private final LongAdder changes = new LongAdder();
+
+    @Autowired
+    public TaskRollupService(TaskRepository taskRepository, Environment environment) {
+        this.taskRepository = taskRepository;
+        String zoneId = environment.getProperty("rollups.zone");
+        this.zone = zoneId != null ? ZoneId.of(zoneId) : ZoneId.systemDefault();
+        this.hourly = new Series(Granularity.HOUR,
+                environment.getProperty("rollups.hourly-retention-days", Long.class, 8L));
+        this.daily = new Series(Granularity.DAY,
+                environment.getProperty("rollups.daily-retention-days", Long.class, 400L));
+    }
+
+    @PostConstruct
+    public void start() {
+        // 启动期间还没有请求进来，先回填再订阅
+        try (TaskSnapshot snapshot = taskRepository.openSnapshot()) {
+            for (Task task : snapshot) {
+                long now = System.currentTimeMillis();
+                record(null, task, task.getCreatedAt() != null ? Math.min(task.getCreatedAt().getTime(), now) : now);
+            }
+        }
+        taskRepository.addChangeListener(this);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        taskRepository.removeChangeListener(this);
+    }
+
+    /**
+     * 按本节点应用变更的时刻记桶：report 从当前总数逐桶倒推，桶必须对应本地总数变化的时刻。
+     * 任务的 updatedAt 和复制来的 committedAt 都是源节点的时钟，落在“现在”之后的桶永远不会被减掉
+     */
+    @Override
+    public void onChange(TaskChange change) {
+        record(change.getPrevious(), change.getTask(), System.currentTimeMillis());
+    }
+
+    /**
+     * report 认识的日期范围
+     */
+    public static boolean isKnownRange(String dateRange) {
+        return RANGES.containsKey(dateRange);
+    }
+
+    /**
+     * 按日期范围读取汇总：last_week 按小时（168 个桶），last_month / last_quarter / last_year 按天；
+     * 未知的范围按 last_week 处理
+     */
+    public RollupReport report(String dateRange) {
+        String name = RANGES.containsKey(dateRange) ? dateRange : DEFAULT_RANGE;
+        Range range = RANGES.get(name);
+        Series series = range.granularity == Granularity.HOUR ? hourly : daily;
+
+        long[] statusCounts = toArray(statusTotals);
+        long[] priorityCounts = toArray(priorityTotals);
+        List<Row> rows = new ArrayList<>(range.buckets);
+        ZonedDateTime start = range.granularity.start(ZonedDateTime.now(zone));
+        for (int i = 0; i < range.buckets; i++) {
+            AtomicLongArray bucket = series.buckets.get(start.toInstant().toEpochMilli());
+            long[] counters = bucket != null ? toArray(bucket) : new long[COUNTERS];
+            rows.add(new Row(range.granularity.label(start), counters, statusCounts.clone(), priorityCounts.clone()));
+            // 倒推上一个桶结束时的任务数
+            for (int s = 0; s < STATUSES.length; s++) {
+                statusCounts[s] -= counters[STATUS_DELTA + s];
+            }
+            for (int p = 0; p < PRIORITIES.length; p++) {
+                priorityCounts[p] -= counters[PRIORITY_DELTA + p];
+            }
+            start = range.granularity.previous(start);
+        }
+        Collections.reverse(rows);
+        return new RollupReport(name, range.granularity.name().toLowerCase(), rows);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("zone", zone.getId());
+        stats.put("hourlyBuckets", hourly.buckets.size());
+        stats.put("dailyBuckets", daily.buckets.size());
+        stats.put("changes", changes.sum());
+        return stats;
+    }
+
+    private void record(Task previous, Task current, long time) {
+        changes.increment();
+        long now = System.currentTimeMillis();
+        ZonedDateTime at = Instant.ofEpochMilli(time).atZone(zone);
+        AtomicLongArray hour = hourly.bucket(at, now);
+        AtomicLongArray day = daily.bucket(at, now);
+
+        if (previous == null && current != null) {
+            add(hour, day, CREATED, 1);
+        } else if (previous != null && current != null) {
+            add(hour, day, UPDATED, 1);
+        } else if (previous != null) {
+            add(hour, day, DELETED, 1);
+        }
+        if (current != null && current.getStatus() == TaskStatus.COMPLETED
+                && (previous == null || previous.getStatus() != TaskStatus.COMPLETED)) {
+            add(hour, day, COMPLETED, 1);
+        }
+
+        TaskStatus oldStatus = previous != null ? previous.getStatus() : null;
+        TaskStatus newStatus = current != null ? current.getStatus() : null;
+        if (oldStatus != newStatus) {
+            if (oldStatus != null) {
+                add(hour, day, STATUS_DELTA + oldStatus.ordinal(), -1);
+                statusTotals.decrementAndGet(oldStatus.ordinal());
+            }
+            if (newStatus != null) {
+                add(hour, day, STATUS_DELTA + newStatus.ordinal(), 1);
+                statusTotals.incrementAndGet(newStatus.ordinal());
+            }
+        }
+        TaskPriority oldPriority = previous != null ? previous.getPriority() : null;
+        TaskPriority newPriority = current != null ? current.getPriority() : null;
+        if (oldPriority != newPriority) {
+            if (oldPriority != null) {
+                add(hour, day, PRIORITY_DELTA + oldPriority.ordinal(), -1);
+                priorityTotals.decrementAndGet(oldPriority.ordinal());
+            }
+            if (newPriority != null) {
+                add(hour, day, PRIORITY_DELTA + newPriority.ordinal(), 1);
+                priorityTotals.incrementAndGet(newPriority.ordinal());
+            }
+        }
+    }
+
+    /**
+     * 桶已过保留期（或时间早于保留期）时为 null，只计入总数
+     */
+    private static void add(AtomicLongArray hour, AtomicLongArray day, int index, long delta) {
+        if (hour != null) {
+            hour.addAndGet(index, delta);
+        }
+        if (day != null) {
+            day.addAndGet(index, delta);
+        }
+    }
+
+    private static long[] toArray(AtomicLongArray values) {
+        long[] result = new long[values.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    private enum Granularity {
+        HOUR(ChronoUnit.HOURS, DateTimeFormatter.ISO_OFFSET_DATE_TIME),
+        DAY(ChronoUnit.DAYS, DateTimeFormatter.ISO_LOCAL_DATE);
+
+        private final ChronoUnit unit;
+        private final DateTimeFormatter format;
+
+        Granularity(ChronoUnit unit, DateTimeFormatter format) {
+            this.unit = unit;
+            this.format = format;
+        }
+
+        ZonedDateTime start(ZonedDateTime time) {
+            // 按天取当地零点，夏令时切换日不会错位
+            return this == DAY ? time.toLocalDate().atStartOfDay(time.getZone()) : time.truncatedTo(unit);
+        }
+
+        ZonedDateTime previous(ZonedDateTime start) {
+            return start(start.minus(1, unit));
+        }
+
+        String label(ZonedDateTime start) {
+            return start.format(format);
+        }
+    }
+
+    private static final class Range {
+        final Granularity granularity;
+        final int buckets;
+
+        Range(Granularity granularity, int buckets) {
+            this.granularity = granularity;
+            this.buckets = buckets;
+        }
+    }
+
+    /**
+     * 一种粒度的全部桶，按桶起点（毫秒）索引；新建桶时顺带清掉过了保留期的桶
+     */
+    private static final class Series {
+        final Granularity granularity;
+        final long retentionMillis;
+        final Map<Long, AtomicLongArray> buckets = new ConcurrentHashMap<>();
+
+        Series(Granularity granularity, long retentionDays) {
+            this.granularity = granularity;
+            this.retentionMillis = TimeUnit.DAYS.toMillis(retentionDays);
+        }
+
+        AtomicLongArray bucket(ZonedDateTime time, long now) {
+            long cutoff = now - retentionMillis;
+            long start = granularity.start(time).toInstant().toEpochMilli();
+            if (start < cutoff) {
+                return null;
+            }
+            AtomicLongArray bucket = buckets.get(start);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(start, key -> new AtomicLongArray(COUNTERS));
+                buckets.keySet().removeIf(key -> key < cutoff);
+            }
+            return bucket;
+        }
+    }
+
+    /**
+     * 一个桶的汇总：桶内的新建、完成、修改、删除数，以及桶结束时各状态、各优先级的任务数
+     */
+    public static final class Row {
+        private final String bucket;
+        private final long[] counters;
+        private final long[] statusCounts;
+        private final long[] priorityCounts;
+
+        Row(String bucket, long[] counters, long[] statusCounts, long[] priorityCounts) {
+            this.bucket = bucket;
+            this.counters = counters;
+            this.statusCounts = statusCounts;
+            this.priorityCounts = priorityCounts;
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("bucket", bucket);
+            row.put("created", counters[CREATED]);
+            row.put("completed", counters[COMPLETED]);
+            row.put("updated", counters[UPDATED]);
+            row.put("deleted", counters[DELETED]);
+            Map<String, Object> byStatus = new LinkedHashMap<>();
+            for (TaskStatus status : STATUSES) {
+                byStatus.put(status.name(), statusCounts[status.ordinal()]);
+            }
+            row.put("byStatus", byStatus);
+            Map<String, Object> byPriority = new LinkedHashMap<>();
+            for (TaskPriority priority : PRIORITIES) {
+                byPriority.put(priority.name(), priorityCounts[priority.ordinal()]);
+            }
+            row.put("byPriority", byPriority);
+            return row;
+        }
+
+        public String toCsv() {
+            StringBuilder line = new StringBuilder(96).append(bucket);
+            for (int i = CREATED; i <= DELETED; i++) {
+                line.append(',').append(counters[i]);
+            }
+            for (long count : statusCounts) {
+                line.append(',').append(count);
+            }
+            for (long count : priorityCounts) {
+                line.append(',').append(count);
+            }
+            return line.append('\n').toString();
+        }
+
+        public String toJson() {
+            StringBuilder line = new StringBuilder(192)
+                    .append("{\"bucket\":\"").append(bucket)
+                    .append("\",\"created\":").append(counters[CREATED])
+                    .append(",\"completed\":").append(counters[COMPLETED])
+                    .append(",\"updated\":").append(counters[UPDATED])
+                    .append(",\"deleted\":").append(counters[DELETED])
+                    .append(",\"byStatus\":{");
+            for (TaskStatus status : STATUSES) {
+                line.append(status.ordinal() == 0 ? "" : ",")
+                        .append('"').append(status.name()).append("\":").append(statusCounts[status.ordinal()]);
+            }
+            line.append("},\"byPriority\":{");
+            for (TaskPriority priority : PRIORITIES) {
+                line.append(priority.ordinal() == 0 ? "" : ",")
+                        .append('"').append(priority.name()).append("\":").append(priorityCounts[priority.ordinal()]);
+            }
+            return line.append("}}\n").toString();
+        }
+    }
+
+    /**
+     * 一个日期范围的汇总报表，桶按时间从早到晚排列
+     */
+    public static final class RollupReport {
+        private final String dateRange;
+        private final String granularity;
+        private final List<Row> rows;
+
+        RollupReport(String dateRange, String granularity, List<Row> rows) {
+            this.dateRange = dateRange;
+            this.granularity = granularity;
+            this.rows = rows;
+        }
+
+        public String getDateRange() {
+            return dateRange;
+        }
+
+        public String getGranularity() {
+            return granularity;
+        }
+
+        public List<Row> getRows() {
+            return rows;
+        }
+
+        public static String csvHeader() {
+            StringBuilder header = new StringBuilder("bucket,created,completed,updated,deleted");
+            for (TaskStatus status : STATUSES) {
+                header.append(",status_").append(status.name().toLowerCase());
+            }
+            for (TaskPriority priority : PRIORITIES) {
+                header.append(",priority_").append(priority.name().toLowerCase());
+            }
+            return header.append('\n').toString();
+        }
+
+        public String toCsv() {
+            StringBuilder csv = new StringBuilder(csvHeader());
+            for (Row row : rows) {
+                csv.append(row.toCsv());
+            }
+            return csv.toString();
+        }
+
+        /**
+         * 范围内的合计和最后一个桶结束时（即当前）的任务分布
+         */
+        public Map<String, Object> summary() {
+            long[] totals = new long[DELETED + 1];
+            for (Row row : rows) {
+                for (int i = CREATED; i <= DELETED; i++) {
+                    totals[i] += row.counters[i];
+                }
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("dateRange", dateRange);
+            summary.put("granularity", granularity);
+            summary.put("buckets", rows.size());
+            summary.put("from", rows.isEmpty() ? null : rows.get(0).bucket);
+            summary.put("created", totals[CREATED]);
+            summary.put("completed", totals[COMPLETED]);
+            summary.put("updated", totals[UPDATED]);
+            summary.put("deleted", totals[DELETED]);
+            if (!rows.isEmpty()) {
+                Map<String, Object> latest = rows.get(rows.size() - 1).toMap();
+                summary.put("byStatus", latest.get("byStatus"));
+                summary.put("byPriority", latest.get("byPriority"));
+            }
+            return summary;
+        }
+    }
+}
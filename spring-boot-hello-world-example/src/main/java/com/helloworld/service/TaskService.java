@@ -4,6 +4,7 @@ import com.helloworld.model.Task;
 import com.helloworld.model.Task.TaskPriority;
 import com.helloworld.model.Task.TaskStatus;
 import com.helloworld.repository.TaskRepository;
+import com.helloworld.repository.TaskSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -43,7 +44,8 @@ public class TaskService {
     }
 
     public Optional<Task> updateTask(Long id, Task taskDetails) {
-        return taskRepository.findById(id).map(existingTask -> {
+        // 仓库里的任务是共享的只读版本，在副本上修改
+        return taskRepository.findById(id).map(Task::copy).map(existingTask -> {
             if (taskDetails.getTitle() != null) {
                 existingTask.setTitle(taskDetails.getTitle());
             }
@@ -79,5 +81,12 @@ public class TaskService {
     public long getTaskCount() {
         return taskRepository.count();
     }
+
+    /**
+     * 当前时间点的只读视图，跨多次读取需要一致的结果时使用（统计、导出），用完关闭
+     */
+    public TaskSnapshot openSnapshot() {
+        return taskRepository.openSnapshot();
+    }
 }
 
@@ -0,0 +1,139 @@
+package com.helloworld.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按租户公平调度的有界执行器
+ *
+ * 每个租户一个 FIFO 队列，工作线程在有待执行任务的租户之间轮转取任务，
+ * 一个租户提交再多的任务也只会轮到自己那一份，不会饿死其他租户。
+ * 工作线程数固定，每个租户排队数有上限，超出时直接拒绝。
+ */
+public class TenantFairExecutor {
+
+    private final ExecutorService workers;
+    private final int parallelism;
+    private final int maxQueuedPerTenant;
+
+    // 以下状态均由 this 锁保护
+    private final Map<String, Deque<Runnable>> queues = new HashMap<>();
+    private final Deque<String> readyTenants = new ArrayDeque<>();
+    private int activeWorkers;
+
+    public TenantFairExecutor(String name, int parallelism, int maxQueuedPerTenant) {
+        this.parallelism = parallelism;
+        this.maxQueuedPerTenant = maxQueuedPerTenant;
+        this.workers = Executors.newFixedThreadPool(parallelism, DaemonThreads.named(name));
+    }
+
+    /**
+     * 提交任务，租户排队已满时抛出 RejectedExecutionException
+     */
+    public void submit(String tenant, Runnable task) {
+        synchronized (this) {
+            Deque<Runnable> queue = queues.get(tenant);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                queues.put(tenant, queue);
+                readyTenants.addLast(tenant);
+            }
+            if (queue.size() >= maxQueuedPerTenant) {
+                throw new RejectedExecutionException("Too many queued jobs for tenant: " + tenant);
+            }
+            queue.addLast(task);
+            if (activeWorkers >= parallelism) {
+                return;
+            }
+            activeWorkers++;
+        }
+        workers.execute(this::drain);
+    }
+
+    public synchronized int queuedCount() {
+        int total = 0;
+        for (Deque<Runnable> queue : queues.values()) {
+            total += queue.size();
+        }
+        return total;
+    }
+
+    public synchronized int activeCount() {
+        return activeWorkers;
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        boolean released = false;
+        try {
+            Runnable task;
+            while ((task = next()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // 单个任务失败不影响工作线程继续轮转
+                }
+            }
+            // next() 返回 null 时已经释放了名额
+            released = true;
+        } finally {
+            if (!released) {
+                abandon();
+            }
+        }
+    }
+
+    /**
+     * 任务抛出 Error 使工作线程退出：释放它的名额，还有待执行的任务时交给新的工作线程
+     */
+    private void abandon() {
+        synchronized (this) {
+            activeWorkers--;
+            if (readyTenants.isEmpty()) {
+                return;
+            }
+            activeWorkers++;
+        }
+        try {
+            workers.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // 执行器已关闭
+            synchronized (this) {
+                activeWorkers--;
+            }
+        }
+    }
+
+    /**
+     * 轮转取出下一个任务；没有待执行任务时释放当前工作线程名额
+     */
+    private synchronized Runnable next() {
+        String tenant = readyTenants.pollFirst();
+        if (tenant == null) {
+            activeWorkers--;
+            return null;
+        }
+        Deque<Runnable> queue = queues.get(tenant);
+        Runnable task = queue.pollFirst();
+        if (queue.isEmpty()) {
+            queues.remove(tenant);
+        } else {
+            readyTenants.addLast(tenant);
+        }
+        return task;
+    }
+}
@@ -0,0 +1,343 @@
+package com.helloworld.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.helloworld.analytics.TaskColumnStore;
+import com.helloworld.analytics.TaskFilter;
+import com.helloworld.model.ApiResponse;
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.repository.TaskSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动预热
+ *
+ * 容器启动完成（ApplicationReadyEvent）后，在后台线程上按轮次反复执行热点路径的合成请求：
+ * 任务读取和快照遍历、列存聚合、搜索、JSON / CBOR 序列化与反序列化、任务和报表导出编码。
+ * 全部只读，不写存储、不产生变更事件、不落盘。
+ *
+ * 每轮至少持续 roundMillis（编译耗时以毫秒计，轮次太短比例会失真），结束后看这一轮里 JIT 编译耗时占本轮墙钟时间的比例，连续 stableRounds 轮低于
+ * settlePercent 即认为编译已基本完成，预热结束；WarmupCheck 在此之前让 /health/ready 返回 503，
+ * ALB 不会把流量打到冷 JVM 上。超过 maxSeconds 仍未稳定也结束预热，避免部署卡死，状态记为 TIMED_OUT。
+ *
+ * 配置（均可选）：
+ *   warmup.enabled=true
+ *   warmup.max-seconds=120
+ *   warmup.round-millis=500
+ *   warmup.min-rounds=5
+ *   warmup.stable-rounds=3
+ *   warmup.settle-percent=2
+ */
+@Service
+public class WarmupService {
+
+    public enum State { PENDING, RUNNING, COMPLETED, TIMED_OUT, DISABLED }
+
+    private static final int SAMPLE_TASKS = 200;
+    private static final int EXPORT_RECORDS = 500;
+    private static final int MAX_ROUND_HISTORY = 100;
+    private static final String[] EXPORT_FORMATS = {"csv", "json", "cbor"};
+    private static final String[] QUERIES = {"开发", "运维", "测试", "安全", "task", "deploy"};
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private final TaskService taskService;
+    private final SearchService searchService;
+    private final ExportJobService exportJobService;
+    private final TaskRollupService taskRollupService;
+    private final TaskColumnStore taskColumnStore;
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper cborMapper;
+    private final boolean enabled;
+    private final long maxMillis;
+    private final long roundNanos;
+    private final int minRounds;
+    private final int stableRounds;
+    private final double settleRatio;
+
+    private final CompilationMXBean compilationBean = compilationBean();
+    private final Deque<Long> roundMeanMicros = new ArrayDeque<>();
+
+    // 以下统计只由预热线程写入
+    private volatile State state = State.PENDING;
+    private volatile long startupMillis = -1;
+    private volatile long warmupMillis = -1;
+    private volatile int rounds;
+    private volatile long operations;
+    private volatile long errors;
+    private volatile long compileMillis;
+    private volatile long firstRoundMeanMicros = -1;
+    private volatile long lastRoundMeanMicros = -1;
+    private volatile String lastError;
+
+    @Autowired
+    public WarmupService(TaskService taskService, SearchService searchService, ExportJobService exportJobService,
+                         TaskRollupService taskRollupService, TaskColumnStore taskColumnStore,
+                         ObjectMapper objectMapper, MappingJackson2CborHttpMessageConverter cborConverter,
+                         @Value("${warmup.enabled:true}") boolean enabled,
+                         @Value("${warmup.max-seconds:120}") long maxSeconds,
+                         @Value("${warmup.round-millis:500}") long roundMillis,
+                         @Value("${warmup.min-rounds:5}") int minRounds,
+                         @Value("${warmup.stable-rounds:3}") int stableRounds,
+                         @Value("${warmup.settle-percent:2}") double settlePercent) {
+        this.taskService = taskService;
+        this.searchService = searchService;
+        this.exportJobService = exportJobService;
+        this.taskRollupService = taskRollupService;
+        this.taskColumnStore = taskColumnStore;
+        this.jsonMapper = objectMapper;
+        this.cborMapper = cborConverter.getObjectMapper();
+        this.enabled = enabled;
+        this.maxMillis = TimeUnit.SECONDS.toMillis(maxSeconds);
+        this.roundNanos = TimeUnit.MILLISECONDS.toNanos(roundMillis);
+        this.minRounds = minRounds;
+        this.stableRounds = stableRounds;
+        this.settleRatio = settlePercent / 100;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // JVM 启动到 Spring 容器就绪的耗时，预热前的冷启动部分
+        startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        if (!enabled) {
+            state = State.DISABLED;
+            return;
+        }
+        Thread thread = new Thread(this::run, "warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 预热是否已结束（完成、超时或未启用）
+     */
+    public boolean isComplete() {
+        State current = state;
+        return current != State.PENDING && current != State.RUNNING;
+    }
+
+    public String getDetail() {
+        switch (state) {
+            case PENDING:
+                return "waiting for application context";
+            case RUNNING:
+                return "warming up: round " + rounds + ", last round mean " + lastRoundMeanMicros + "us";
+            case DISABLED:
+                return "disabled";
+            default:
+                return String.format("%s in %.1fs after %.1fs startup: %d rounds, round mean %dus -> %dus",
+                        state, warmupMillis / 1000.0, startupMillis / 1000.0, rounds,
+                        firstRoundMeanMicros, lastRoundMeanMicros);
+        }
+    }
+
+    private void run() {
+        state = State.RUNNING;
+        long startedAt = System.currentTimeMillis();
+        long deadline = startedAt + maxMillis;
+        int settledRounds = 0;
+        try {
+            while (true) {
+                long compileBefore = compileTimeMillis();
+                long roundStart = System.nanoTime();
+                int roundOperations = runRound(roundStart);
+                long elapsed = System.nanoTime() - roundStart;
+                long compiled = compileTimeMillis() - compileBefore;
+                recordRound(elapsed, roundOperations, compiled);
+
+                // 取不到编译耗时的 JVM 上只按最少轮次判断
+                boolean settled = compilationBean == null
+                        || compiled <= settleRatio * TimeUnit.NANOSECONDS.toMillis(elapsed);
+                settledRounds = settled ? settledRounds + 1 : 0;
+                if (rounds >= minRounds && settledRounds >= stableRounds) {
+                    finish(State.COMPLETED, startedAt);
+                    return;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    finish(State.TIMED_OUT, startedAt);
+                    return;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            // 预热本身出错不应让节点永远不就绪，按超时处理，原因记在 lastError
+            lastError = e.toString();
+            finish(State.TIMED_OUT, startedAt);
+        }
+    }
+
+    private void finish(State result, long startedAt) {
+        warmupMillis = System.currentTimeMillis() - startedAt;
+        state = result;
+    }
+
+    /**
+     * @return 本轮执行的操作数
+     */
+    private int runRound(long roundStart) {
+        List<Task> sample = sampleTasks();
+        int i = 0;
+        do {
+            try {
+                runOperation(i, sample);
+            } catch (IOException | RuntimeException e) {
+                errors++;
+                lastError = e.toString();
+            }
+            operations++;
+            i++;
+        } while (System.nanoTime() - roundStart < roundNanos);
+        return i;
+    }
+
+    private void runOperation(int i, List<Task> sample) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (i % 8) {
+            case 0:
+                if (!sample.isEmpty()) {
+                    taskService.getTaskById(sample.get(random.nextInt(sample.size())).getId());
+                }
+                break;
+            case 1: {
+                byte[] json = jsonMapper.writeValueAsBytes(ApiResponse.success(sample));
+                jsonMapper.readTree(json);
+                break;
+            }
+            case 2: {
+                byte[] cbor = cborMapper.writeValueAsBytes(ApiResponse.success(sample));
+                cborMapper.readTree(cbor);
+                break;
+            }
+            case 3:
+                if (!sample.isEmpty()) {
+                    Task task = sample.get(random.nextInt(sample.size()));
+                    jsonMapper.readValue(jsonMapper.writeValueAsBytes(task), Task.class);
+                }
+                break;
+            case 4: {
+                String query = QUERIES[random.nextInt(QUERIES.length)];
+                searchService.search(query);
+                searchService.suggest(query.substring(0, 1));
+                break;
+            }
+            case 5: {
+                TaskStatus status = TaskStatus.values()[random.nextInt(TaskStatus.values().length)];
+                taskColumnStore.countByStatusAndPriority(TaskFilter.ALL);
+                taskColumnStore.countByStatusAndPriority(TaskFilter.ALL.status(status));
+                break;
+            }
+            case 6:
+                exportJobService.writeDirect("tasks", EXPORT_FORMATS[random.nextInt(EXPORT_FORMATS.length)],
+                        null, EXPORT_RECORDS, DISCARD);
+                break;
+            default:
+                exportJobService.writeDirect("reports", random.nextBoolean() ? "csv" : "json",
+                        "last_week", 0, DISCARD);
+                taskRollupService.report("last_month").summary();
+                break;
+        }
+    }
+
+    private List<Task> sampleTasks() {
+        List<Task> sample = new ArrayList<>(SAMPLE_TASKS);
+        try (TaskSnapshot snapshot = taskService.openSnapshot()) {
+            for (Task task : snapshot) {
+                if (sample.size() >= SAMPLE_TASKS) {
+                    break;
+                }
+                sample.add(task);
+            }
+        }
+        return sample;
+    }
+
+    private void recordRound(long elapsedNanos, int roundOperations, long compiled) {
+        long meanMicros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos) / roundOperations;
+        synchronized (roundMeanMicros) {
+            roundMeanMicros.addLast(meanMicros);
+            if (roundMeanMicros.size() > MAX_ROUND_HISTORY) {
+                roundMeanMicros.removeFirst();
+            }
+        }
+        if (rounds == 0) {
+            firstRoundMeanMicros = meanMicros;
+        }
+        lastRoundMeanMicros = meanMicros;
+        compileMillis += compiled;
+        rounds++;
+    }
+
+    private long compileTimeMillis() {
+        return compilationBean != null ? compilationBean.getTotalCompilationTime() : 0;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("startupSeconds", startupMillis / 1000.0);
+        stats.put("warmupSeconds", warmupMillis / 1000.0);
+        stats.put("rounds", rounds);
+        stats.put("operations", operations);
+        stats.put("errors", errors);
+        stats.put("lastError", lastError);
+        stats.put("compileMillis", compileMillis);
+        stats.put("firstRoundMeanMicros", firstRoundMeanMicros);
+        stats.put("lastRoundMeanMicros", lastRoundMeanMicros);
+        synchronized (roundMeanMicros) {
+            stats.put("roundMeanMicros", new ArrayList<>(roundMeanMicros));
+        }
+        return stats;
+    }
+
+    /**
+     * 输出 Prometheus 文本格式（0.0.4）
+     */
+    public void writePrometheus(StringBuilder out) {
+        out.append("# HELP app_startup_seconds JVM start to application context ready\n");
+        out.append("# TYPE app_startup_seconds gauge\n");
+        out.append("app_startup_seconds ").append(startupMillis / 1000.0).append('\n');
+        out.append("# HELP app_warmup_seconds Duration of the warm-up phase before the node reported ready\n");
+        out.append("# TYPE app_warmup_seconds gauge\n");
+        out.append("app_warmup_seconds ").append(warmupMillis / 1000.0).append('\n');
+        out.append("# HELP app_warmup_complete Whether the warm-up phase has finished\n");
+        out.append("# TYPE app_warmup_complete gauge\n");
+        out.append("app_warmup_complete ").append(isComplete() ? 1 : 0).append('\n');
+        out.append("# HELP app_warmup_rounds Warm-up rounds executed\n");
+        out.append("# TYPE app_warmup_rounds gauge\n");
+        out.append("app_warmup_rounds ").append(rounds).append('\n');
+        out.append("# HELP app_warmup_round_mean_microseconds Mean synthetic operation latency in the first and last warm-up round\n");
+        out.append("# TYPE app_warmup_round_mean_microseconds gauge\n");
+        out.append("app_warmup_round_mean_microseconds{round=\"first\"} ").append(firstRoundMeanMicros).append('\n');
+        out.append("app_warmup_round_mean_microseconds{round=\"last\"} ").append(lastRoundMeanMicros).append('\n');
+    }
+
+    private static CompilationMXBean compilationBean() {
+        CompilationMXBean bean = ManagementFactory.getCompilationMXBean();
+        return bean != null && bean.isCompilationTimeMonitoringSupported() ? bean : null;
+    }
+}
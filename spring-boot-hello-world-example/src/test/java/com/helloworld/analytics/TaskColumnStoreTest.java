@@ -0,0 +1,188 @@
+package com.helloworld.analytics;
+
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+import com.helloworld.repository.TaskRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 列存与仓库的一致性：删除把最后一行移进空位后，各种过滤条件的聚合结果仍与逐条统计仓库内容相同
+ */
+class TaskColumnStoreTest {
+
+    private static final String[] TITLES = {"alpha", "beta", "gamma", "delta", "epsilon"};
+
+    private TaskRepository repository;
+    private TaskColumnStore store;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TaskRepository(4, 2);
+        // 块很小，几十行就会拆成多块并行扫描
+        store = new TaskColumnStore(repository, 4, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+        repository.shutdown();
+    }
+
+    @Test
+    void removeThenQueryMatchesRepository() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(repository.save(task(i)).getId());
+        }
+        // 前一半由 start 回填，后一半经监听写入
+        store.start();
+        for (int i = 20; i < 40; i++) {
+            ids.add(repository.save(task(i)).getId());
+        }
+        assertMatchesRepository();
+
+        // 首行、末行和中间行；每次删除都会把当时的末行移进空位
+        repository.deleteById(ids.get(0));
+        repository.deleteById(ids.get(39));
+        repository.deleteById(ids.get(17));
+        repository.deleteById(ids.get(18));
+        assertFalse(repository.deleteById(ids.get(17)));
+        assertMatchesRepository();
+
+        // 被移动过的行再更新、再删除，要命中它的新位置
+        Task moved = repository.findById(ids.get(38)).get().copy();
+        moved.setStatus(TaskStatus.COMPLETED);
+        moved.setPriority(TaskPriority.HIGH);
+        moved.setTitle("moved");
+        repository.save(moved);
+        assertMatchesRepository();
+        assertEquals(1, store.countByStatusAndPriority(TaskFilter.ALL.title("moved")).total());
+        repository.deleteById(ids.get(38));
+        assertEquals(0, store.countByStatusAndPriority(TaskFilter.ALL.title("moved")).total());
+        assertMatchesRepository();
+
+        // 恢复一个删掉的 id 作为新行追加
+        repository.save(new Task(ids.get(0), "alpha", null));
+        assertMatchesRepository();
+    }
+
+    @Test
+    void removingEveryRowLeavesEmptyStore() {
+        store.start();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(repository.save(task(i)).getId());
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            repository.deleteById(ids.get(i));
+        }
+        for (int i = ids.size() - 1; i > 0; i -= 2) {
+            repository.deleteById(ids.get(i));
+        }
+        assertEquals(0, store.countByStatusAndPriority(TaskFilter.ALL).total());
+        assertEquals(0, store.completionTimes(TaskFilter.ALL, new long[]{1000}).count());
+
+        repository.save(task(3));
+        assertMatchesRepository();
+    }
+
+    @Test
+    void concurrentWritesToSameTasksLeaveStoreMatchingRepository() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ids.add(repository.save(task(i)).getId());
+        }
+        store.start();
+
+        // 多个线程同时改删同一批任务，监听按提交顺序到达时列存的最终状态才与仓库一致
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    Random random = new Random(seed);
+                    go.await();
+                    for (int op = 0; op < 5000; op++) {
+                        Long id = ids.get(random.nextInt(ids.size()));
+                        if (random.nextInt(4) == 0) {
+                            repository.deleteById(id);
+                        } else {
+                            Task task = task(random.nextInt(1000));
+                            task.setId(id);
+                            repository.save(task);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+        assertMatchesRepository();
+    }
+
+    private void assertMatchesRepository() {
+        List<Task> tasks = repository.findAll();
+        TaskColumnStore.GroupCounts all = store.countByStatusAndPriority(TaskFilter.ALL);
+        assertEquals(tasks.size(), all.total());
+        for (TaskStatus status : TaskStatus.values()) {
+            assertEquals(count(tasks, t -> t.getStatus() == status), all.byStatus(status), status.name());
+            for (TaskPriority priority : TaskPriority.values()) {
+                assertEquals(count(tasks, t -> t.getStatus() == status && t.getPriority() == priority),
+                        all.count(status, priority), status + "/" + priority);
+            }
+        }
+        for (TaskPriority priority : TaskPriority.values()) {
+            assertEquals(count(tasks, t -> t.getPriority() == priority),
+                    store.countByStatusAndPriority(TaskFilter.ALL.priority(priority)).total(), priority.name());
+        }
+        for (String title : TITLES) {
+            assertEquals(count(tasks, t -> title.equals(t.getTitle())),
+                    store.countByStatusAndPriority(TaskFilter.ALL.title(title)).total(), title);
+            assertEquals(count(tasks, t -> title.equals(t.getTitle()) && t.getStatus() == TaskStatus.PENDING),
+                    store.countByStatusAndPriority(TaskFilter.ALL.title(title).status(TaskStatus.PENDING)).total(),
+                    title + "/PENDING");
+        }
+        assertEquals(0, store.countByStatusAndPriority(TaskFilter.ALL.title("no such title")).total());
+        if (!tasks.isEmpty()) {
+            long from = tasks.get(tasks.size() / 2).getCreatedAt().getTime();
+            assertEquals(count(tasks, t -> t.getCreatedAt().getTime() >= from),
+                    store.countByStatusAndPriority(TaskFilter.ALL.createdBetween(from, null)).total(), "created");
+        }
+        assertEquals(count(tasks, t -> t.getStatus() == TaskStatus.COMPLETED),
+                store.completionTimes(TaskFilter.ALL, new long[]{1000, 60000}).count());
+    }
+
+    private static long count(List<Task> tasks, Predicate<Task> predicate) {
+        return tasks.stream().filter(predicate).count();
+    }
+
+    private static Task task(int i) {
+        Task task = new Task(null, TITLES[i % TITLES.length], null);
+        task.setStatus(TaskStatus.values()[i % 3]);
+        task.setPriority(TaskPriority.values()[(i / 3) % 3]);
+        return task;
+    }
+}
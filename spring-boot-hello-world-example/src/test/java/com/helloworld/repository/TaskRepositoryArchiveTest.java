@@ -0,0 +1,200 @@
+package com.helloworld.repository;
+
+import com.helloworld.model.Task;
+import com.helloworld.model.Task.TaskPriority;
+import com.helloworld.model.Task.TaskStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TaskRepository 的视图与归档：视图只看到打开时的版本，归档后的任务透明地从段文件读出，
+ * 归档后再修改或删除的任务由遮蔽屏蔽段里的旧副本
+ */
+class TaskRepositoryArchiveTest {
+
+    @TempDir
+    Path archiveDir;
+
+    private TaskRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new TaskRepository(4, 2);
+        repository.enableArchive(archiveDir);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    void snapshotKeepsVersionsVisibleWhenOpened() {
+        Task updated = repository.save(task("before update", TaskStatus.PENDING));
+        Task deleted = repository.save(task("before delete", TaskStatus.PENDING));
+
+        try (TaskSnapshot snapshot = repository.openSnapshot()) {
+            Task changed = updated.copy();
+            changed.setTitle("after update");
+            repository.save(changed);
+            repository.deleteById(deleted.getId());
+            Task added = repository.save(task("added later", TaskStatus.PENDING));
+
+            Map<Long, String> seen = titles(snapshot);
+            assertEquals(2, seen.size());
+            assertEquals("before update", seen.get(updated.getId()));
+            assertEquals("before delete", seen.get(deleted.getId()));
+            assertEquals("before update", snapshot.findById(updated.getId()).get().getTitle());
+            assertTrue(snapshot.findById(deleted.getId()).isPresent());
+            assertFalse(snapshot.findById(added.getId()).isPresent());
+        }
+
+        assertEquals("after update", repository.findById(updated.getId()).get().getTitle());
+        assertFalse(repository.findById(deleted.getId()).isPresent());
+        assertEquals(2, repository.count());
+    }
+
+    @Test
+    void archivedTasksFallThroughToSegments() throws Exception {
+        Task done = repository.save(task("done", TaskStatus.COMPLETED));
+        Task open = repository.save(task("open", TaskStatus.PENDING));
+
+        assertEquals(1, archive());
+        assertEquals(1L, repository.getArchiveStats().get("tasks"));
+
+        Task archived = repository.findById(done.getId()).get();
+        assertEquals("done", archived.getTitle());
+        assertEquals(done.getUpdatedAt(), archived.getUpdatedAt());
+        assertEquals(2, repository.count());
+        assertEquals(1, repository.findByStatus(TaskStatus.COMPLETED).size());
+        assertEquals(2, titles(repository.findAll()).size());
+
+        try (TaskSnapshot snapshot = repository.openSnapshot()) {
+            Map<Long, String> seen = titles(snapshot);
+            assertEquals("done", seen.get(done.getId()));
+            assertEquals("open", seen.get(open.getId()));
+            assertEquals("done", snapshot.findById(done.getId()).get().getTitle());
+            assertEquals(2, snapshot.count());
+        }
+    }
+
+    @Test
+    void updateAfterArchiveMasksArchivedCopy() throws Exception {
+        Task done = repository.save(task("archived title", TaskStatus.COMPLETED));
+        archive();
+
+        try (TaskSnapshot before = repository.openSnapshot()) {
+            Task reopened = repository.findById(done.getId()).get().copy();
+            reopened.setTitle("reopened");
+            reopened.setStatus(TaskStatus.IN_PROGRESS);
+            repository.save(reopened);
+
+            assertEquals("archived title", before.findById(done.getId()).get().getTitle());
+            assertEquals("archived title", titles(before).get(done.getId()));
+        }
+
+        assertEquals("reopened", repository.findById(done.getId()).get().getTitle());
+        assertEquals(1, repository.findAll().size());
+        assertTrue(repository.findByStatus(TaskStatus.COMPLETED).isEmpty());
+        assertEquals(1, repository.count());
+        assertEquals(0L, repository.getArchiveStats().get("tasks"));
+        try (TaskSnapshot after = repository.openSnapshot()) {
+            assertEquals("reopened", titles(after).get(done.getId()));
+            assertEquals(1, after.count());
+        }
+    }
+
+    @Test
+    void deleteAfterArchiveMasksArchivedCopy() throws Exception {
+        Task done = repository.save(task("archived", TaskStatus.COMPLETED));
+        archive();
+
+        try (TaskSnapshot before = repository.openSnapshot()) {
+            assertTrue(repository.deleteById(done.getId()));
+            assertFalse(repository.deleteById(done.getId()));
+
+            assertTrue(before.findById(done.getId()).isPresent());
+            assertEquals(1, before.count());
+        }
+
+        assertFalse(repository.findById(done.getId()).isPresent());
+        assertTrue(repository.findAll().isEmpty());
+        assertEquals(0, repository.count());
+        try (TaskSnapshot after = repository.openSnapshot()) {
+            assertFalse(after.findById(done.getId()).isPresent());
+            assertEquals(0, after.count());
+        }
+    }
+
+    @Test
+    void compactionDropsMaskedCopiesAndKeepsOpenSnapshotsConsistent() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                ids.add(repository.save(task("r" + round + "-" + i, TaskStatus.COMPLETED)).getId());
+            }
+            archive();
+        }
+        TaskSnapshot snapshot = repository.openSnapshot();
+        Map<Long, String> atSnapshot = titles(snapshot);
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 3 == 0) {
+                repository.deleteById(ids.get(i));
+            } else if (i % 3 == 1) {
+                Task changed = repository.findById(ids.get(i)).get().copy();
+                changed.setTitle("changed-" + i);
+                repository.save(changed);
+            }
+        }
+        Map<Long, String> latest = titles(repository.findAll());
+        assertEquals(200, (int) repository.getArchiveStats().get("maskedTasks"));
+
+        // 半数以上的副本被屏蔽，三段重写成一段；视图还开着，旧段和遮蔽都要留着
+        assertTrue(repository.compactArchive(8) > 0);
+        assertEquals(latest, titles(repository.findAll()));
+        assertEquals(atSnapshot, titles(snapshot));
+        assertEquals(200, (int) repository.getArchiveStats().get("maskedTasks"));
+
+        snapshot.close();
+        repository.compactArchive(8);
+        Map<String, Object> stats = repository.getArchiveStats();
+        assertEquals(1, stats.get("segments"));
+        assertEquals(0, stats.get("maskedTasks"));
+        assertEquals(100L, stats.get("tasks"));
+        assertEquals(latest, titles(repository.findAll()));
+        assertEquals(200, repository.count());
+        assertEquals("r0-2", repository.findById(ids.get(2)).get().getTitle());
+        assertFalse(repository.findById(ids.get(3)).isPresent());
+    }
+
+    private int archive() throws Exception {
+        return repository.archiveCompleted(System.currentTimeMillis() + 1, Integer.MAX_VALUE);
+    }
+
+    private static Task task(String title, TaskStatus status) {
+        Task task = new Task(null, title, null);
+        task.setStatus(status);
+        task.setPriority(TaskPriority.MEDIUM);
+        return task;
+    }
+
+    private static Map<Long, String> titles(Iterable<Task> tasks) {
+        Map<Long, String> titles = new HashMap<>();
+        for (Task task : tasks) {
+            assertEquals(null, titles.put(task.getId(), task.getTitle()), "duplicate task " + task.getId());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,199 @@
+package com.helloworld.repository;
+
+import com.helloworld.model.Task;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 复制的最后写入者胜出：applyRemote 只接受比本地（含墓碑）更新的版本，删除和更新并发到达时与顺序无关地收敛到最高版本
+ */
+class TaskRepositoryReplicationTest {
+
+    private static final int REMOTE_NODE = 1;
+
+    private TaskRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TaskRepository(4, 2);
+        repository.configureReplication(0, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    void onlyNewerVersionsAreApplied() {
+        long id = 16 + REMOTE_NODE;
+        assertTrue(repository.applyRemote(id, version(10), task(id, "v10"), 0));
+
+        assertFalse(repository.applyRemote(id, version(10), task(id, "equal"), 0));
+        assertFalse(repository.applyRemote(id, version(9), task(id, "older"), 0));
+        assertEquals("v10", repository.findById(id).get().getTitle());
+
+        assertTrue(repository.applyRemote(id, version(11), task(id, "v11"), 0));
+        assertEquals("v11", repository.findById(id).get().getTitle());
+        assertEquals(1, repository.count());
+    }
+
+    @Test
+    void tombstoneRejectsStaleUpsertUntilPurged() {
+        long id = 16 + REMOTE_NODE;
+        repository.applyRemote(id, version(10), task(id, "live"), 0);
+
+        assertTrue(repository.applyRemote(id, version(12), null, 0));
+        assertFalse(repository.findById(id).isPresent());
+        assertEquals(1, repository.getTombstoneCount());
+        assertFalse(repository.applyRemote(id, version(11), task(id, "stale"), 0));
+        assertFalse(repository.applyRemote(id, version(12), task(id, "equal"), 0));
+        assertFalse(repository.findById(id).isPresent());
+
+        assertTrue(repository.applyRemote(id, version(13), task(id, "newer"), 0));
+        assertEquals("newer", repository.findById(id).get().getTitle());
+        assertEquals(0, repository.getTombstoneCount());
+
+        // 删除先于任何更新到达也要留下墓碑
+        long unseen = 32 + REMOTE_NODE;
+        assertTrue(repository.applyRemote(unseen, version(20), null, 0));
+        assertFalse(repository.applyRemote(unseen, version(19), task(unseen, "late"), 0));
+        assertFalse(repository.findById(unseen).isPresent());
+
+        assertEquals(1, repository.purgeTombstones(System.currentTimeMillis() + 1));
+        assertTrue(repository.applyRemote(unseen, version(19), task(unseen, "after purge"), 0));
+    }
+
+    @Test
+    void localWritesAfterRemoteGetHigherVersions() {
+        List<TaskChange> changes = new ArrayList<>();
+        repository.addChangeListener(changes::add);
+        long id = 16 + REMOTE_NODE;
+        repository.applyRemote(id, version(1000), task(id, "remote"), 0);
+
+        Task local = repository.findById(id).get().copy();
+        local.setTitle("local");
+        repository.save(local);
+        repository.deleteById(id);
+
+        assertEquals(3, changes.size());
+        assertEquals(REMOTE_NODE, changes.get(0).getOrigin());
+        assertEquals(0, changes.get(1).getOrigin());
+        assertTrue(changes.get(1).getVersion() > version(1000));
+        assertTrue(changes.get(2).getVersion() > changes.get(1).getVersion());
+        assertEquals("remote", changes.get(1).getPrevious().getTitle());
+        assertEquals(TaskChange.Type.DELETE, changes.get(2).getType());
+        assertFalse(repository.applyRemote(id, version(1000), task(id, "replayed"), 0));
+        assertFalse(repository.findById(id).isPresent());
+    }
+
+    @Test
+    void tombstoneRacingUpsertConvergesOnHighestVersion() throws Exception {
+        int ids = 500;
+        Random random = new Random(42);
+        long[] upserts = new long[ids];
+        long[] deletes = new long[ids];
+        int deletedWins = 0;
+        for (int i = 0; i < ids; i++) {
+            long a = version(2 * i + 1);
+            long b = version(2 * i + 2);
+            boolean deleteLater = random.nextBoolean();
+            upserts[i] = deleteLater ? a : b;
+            deletes[i] = deleteLater ? b : a;
+            deletedWins += deleteLater ? 1 : 0;
+        }
+
+        Map<Long, Long> lastPublished = new ConcurrentHashMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        repository.addChangeListener(change -> {
+            Long last = lastPublished.put(change.getId(), change.getVersion());
+            if (last != null && last >= change.getVersion()) {
+                failure.compareAndSet(null, new AssertionError("change " + change.getVersion()
+                        + " published after " + last + " for task " + change.getId()));
+            }
+        });
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            int thread = t;
+            threads.add(start(failure, () -> {
+                await(go);
+                for (int n = 0; n < ids; n++) {
+                    // 删除线程倒序、两个更新线程正序（第二个模拟重复投递），同一任务上的先后随机交错
+                    int i = thread == 0 ? ids - 1 - n : n;
+                    long id = id(i);
+                    if (thread == 0) {
+                        repository.applyRemote(id, deletes[i], null, 0);
+                    } else {
+                        repository.applyRemote(id, upserts[i], task(id, "u" + i), 0);
+                    }
+                }
+            }));
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        for (int i = 0; i < ids; i++) {
+            boolean upsertWins = upserts[i] > deletes[i];
+            assertEquals(upsertWins, repository.findById(id(i)).isPresent(), "task " + i);
+            assertEquals(Math.max(upserts[i], deletes[i]), (long) lastPublished.get(id(i)), "task " + i);
+        }
+        assertEquals(ids - deletedWins, repository.count());
+        assertEquals(deletedWins, repository.getTombstoneCount());
+        for (TaskChange change : repository.snapshot()) {
+            int i = (int) (change.getId() / 16);
+            assertEquals(Math.max(upserts[i], deletes[i]), change.getVersion());
+            assertEquals(upserts[i] > deletes[i] ? TaskChange.Type.UPSERT : TaskChange.Type.DELETE,
+                    change.getType());
+        }
+    }
+
+    private static long version(long counter) {
+        return (counter << 8) | REMOTE_NODE;
+    }
+
+    private static long id(int i) {
+        return i * 16L + REMOTE_NODE;
+    }
+
+    private static Task task(long id, String title) {
+        return new Task(id, title, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Thread start(AtomicReference<Throwable> failure, Runnable body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
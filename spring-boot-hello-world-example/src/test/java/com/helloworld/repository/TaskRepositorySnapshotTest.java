@@ -0,0 +1,157 @@
+package com.helloworld.repository;
+
+import com.helloworld.model.Task;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 并发修改、删除时视图的一致性：打开的视图始终是打开那一刻的内容，新打开的视图内部不出现重复或计数不一致
+ */
+class TaskRepositorySnapshotTest {
+
+    private static final int TASKS = 200;
+    private static final int WRITERS = 4;
+    private static final int OPERATIONS_PER_WRITER = 3000;
+
+    private TaskRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        repository = new TaskRepository(4, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    void openSnapshotIsUnaffectedByConcurrentUpdatesAndDeletes() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < TASKS; i++) {
+            ids.add(repository.save(new Task(null, "t-" + i, null)).getId());
+        }
+        TaskSnapshot snapshot = repository.openSnapshot();
+        Map<Long, String> atSnapshot = titles(snapshot);
+        assertEquals(TASKS, atSnapshot.size());
+
+        // 每个写线程只改自己的那部分 id，最终状态可以逐个核对
+        Map<Long, String> expected = new ConcurrentHashMap<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            writers.add(start(failure, () -> {
+                Random random = new Random(writer);
+                Map<Long, String> mine = new HashMap<>();
+                for (int i = writer; i < TASKS; i += WRITERS) {
+                    mine.put(ids.get(i), "t-" + i);
+                }
+                List<Long> owned = new ArrayList<>(mine.keySet());
+                for (int op = 0; op < OPERATIONS_PER_WRITER; op++) {
+                    Long id = owned.get(random.nextInt(owned.size()));
+                    if (mine.get(id) != null && random.nextInt(3) == 0) {
+                        assertTrue(repository.deleteById(id));
+                        mine.put(id, null);
+                    } else {
+                        String title = "w" + writer + "-" + op;
+                        repository.save(new Task(id, title, null));
+                        mine.put(id, title);
+                    }
+                }
+                for (Map.Entry<Long, String> entry : mine.entrySet()) {
+                    if (entry.getValue() != null) {
+                        expected.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(start(failure, () -> {
+                Random random = new Random();
+                while (writing.get()) {
+                    assertEquals(atSnapshot, titles(snapshot));
+                    assertEquals(TASKS, snapshot.count());
+                    Long id = ids.get(random.nextInt(TASKS));
+                    assertEquals(atSnapshot.get(id), snapshot.findById(id).get().getTitle());
+                    try (TaskSnapshot fresh = repository.openSnapshot()) {
+                        assertEquals(fresh.count(), titles(fresh).size());
+                    }
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+
+        assertEquals(atSnapshot, titles(snapshot));
+        snapshot.close();
+        assertEquals(expected, titles(repository.findAll()));
+        assertEquals(expected.size(), repository.count());
+        for (Long id : ids) {
+            assertEquals(expected.get(id), repository.findById(id).map(Task::getTitle).orElse(null));
+        }
+        try (TaskSnapshot after = repository.openSnapshot()) {
+            assertEquals(expected, titles(after));
+        }
+    }
+
+    @Test
+    void snapshotSeesDeleteAndRecreateOfSameIdAsOriginal() {
+        Task task = repository.save(new Task(null, "original", null));
+        try (TaskSnapshot snapshot = repository.openSnapshot()) {
+            repository.deleteById(task.getId());
+            try (TaskSnapshot between = repository.openSnapshot()) {
+                repository.save(new Task(task.getId(), "recreated", null));
+
+                assertFalse(between.findById(task.getId()).isPresent());
+                assertEquals(0, between.count());
+            }
+            assertEquals("original", snapshot.findById(task.getId()).get().getTitle());
+            assertEquals(1, snapshot.count());
+        }
+        assertEquals("recreated", repository.findById(task.getId()).get().getTitle());
+    }
+
+    private static Thread start(AtomicReference<Throwable> failure, Runnable body) {
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static Map<Long, String> titles(Iterable<Task> tasks) {
+        Map<Long, String> titles = new HashMap<>();
+        for (Task task : tasks) {
+            assertEquals(null, titles.put(task.getId(), task.getTitle()), "duplicate task " + task.getId());
+        }
+        return titles;
+    }
+}